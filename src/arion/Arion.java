@@ -4,62 +4,135 @@ import callback.*;
 import exception.*;
 
 import java.util.*;
-import java.time.LocalDate;
 import java.awt.Toolkit;
 import java.awt.Dimension;
 import java.io.*;
+import java.time.LocalDate;
+import javax.swing.SwingUtilities;
 
 /*
  * Arion is a spaced repetition flashcard application.
  * It allows users to load, save, browse, edit, delete, sort, and study their flashcards.
  * Additionally, users can see a guide to better understand the program, and see an about page to get an overview of Arion.
+ * The flashcards themselves are managed by ArionCore; this class connects the core to the display,
+ * and turns the core's errors into messages for the user.
  */
 
 public class Arion {
-    private final static String DATABASE_FILENAME = "./flashcards.txt";
-    private Database database = new Database(DATABASE_FILENAME);
+    private ArionCore core = new ArionCore(".");
 
     private final static String LOG_FILEPATH = "./log.txt";
     private static Optional<PrintWriter> exceptionWriterOption = generateExceptionWriter(LOG_FILEPATH);
 
-    private ArionDisplay display;
-    private boolean headless;
-
-    private ArrayList<Flashcard> flashcards = new ArrayList<Flashcard>();
-    private Queue<Flashcard> dueFlashcards = new LinkedList<>();
+    private volatile ArionDisplay display; // read by the loader before the window is built
+    private TaskRunner tasks;
 
-    private AddCallback addCallback = (String[] fields) -> addFlashcard(fields);
+    private AddCallback addCallback = (String[] fields, boolean merge) -> runAfterLoad(() -> {
+        if (merge) {
+            mergeFlashcards(new String[][] { fields });
+        } else {
+            addFlashcard(fields);
+        }
+    });
+    private BatchAddCallback batchAddCallback = (String[][] fieldsList, boolean merge) -> runAfterLoad(() -> {
+        if (merge) {
+            mergeFlashcards(fieldsList);
+        } else {
+            addFlashcards(fieldsList);
+        }
+    });
     private ReviewCallback reviewCallback = (boolean success) -> updateReviewedFlashcard(success);
 
     private final static double WINDOW_SCREEN_RATIO = 1.6;
+    private final static int SUMMARY_LENGTH = 60;
+
+    // the phases of startup are printed once the window is usable with -Darion.startup=true;
+    // with -Darion.startup.budget=<milliseconds>, a slower startup prints a warning, and with
+    // -Darion.startup.exit=true, Arion exits once usable, failing if it was over the budget
+    private final static String STARTUP_PROPERTY = "arion.startup";
+    private final static String STARTUP_BUDGET_PROPERTY = "arion.startup.budget";
+    private final static String STARTUP_EXIT_PROPERTY = "arion.startup.exit";
+    private final static String USABLE_PHASE = "window usable";
+    private static StartupTimeline startup = new StartupTimeline();
+    private int unfinishedStartupPhases = 2; // the first paint and the load of the due flashcards
+    private Thread loader;
+    private boolean dueLoadReported = false; // only used by the loader
+    private boolean duplicateIndexRequested = false; // only used on the event dispatch thread
+
+    // actions the user started before the flashcards they use were loaded; these are only used on the
+    // event dispatch thread, which runs the actions once the load they wait for finishes
+    private boolean dueLoadFinished = false;
+    private boolean loadFinished = false;
+    private ArrayList<Runnable> actionsAfterDueLoad = new ArrayList<>();
+    private ArrayList<Runnable> actionsAfterLoad = new ArrayList<>();
 
     /*
-     * The Arion constructor constructs a new Arion, optionally initializing
-     * a new display.
+     * The Arion constructor constructs a new Arion and its display.
+     * The stored flashcards are loaded on a background thread while the window is built. The due
+     * flashcards are loaded first, so studying only waits for them; other actions that use the
+     * flashcards wait for the whole load to finish. The window stays responsive meanwhile: actions
+     * started during the load are queued, and run once it finishes. The progress of the load is shown
+     * on the main screen.
      *
      * Input: no input.
      * Output: new Arion class.
      */
     public Arion() {
-        
+        startup.mark("core constructed");
+
+        loader = new Thread(() -> {
+            try {
+                core.loadDueFirst((long done, long total) -> SwingUtilities.invokeLater(() -> {
+                    if (display != null) {
+                        display.updateLoadProgress(done, total);
+                    }
+                }), () -> finishDueLoad());
+            } catch (DatabaseFormatException | DatabaseReadException e) {
+                // the message is not displayed, since the user did not ask for the load
+            } catch (IOException e) {
+                displayException(e);
+            } finally {
+                finishDueLoad();
+                startup.mark("flashcards loaded");
+                SwingUtilities.invokeLater(() -> {
+                    if (display != null) {
+                        display.hideLoadProgress();
+                    }
+                    loadFinished = true;
+                    runQueuedActions(actionsAfterLoad);
+                });
+            }
+        }, "flashcard-loader");
+        loader.start();
+
         // make the window proportional to the screen size
         Dimension windowSize = Toolkit.getDefaultToolkit().getScreenSize();
         int width = (int) (windowSize.width / WINDOW_SCREEN_RATIO);
         int height = (int) (windowSize.height / WINDOW_SCREEN_RATIO);
-        display = new ArionDisplay("Arion", width, height);
+        display = new ArionDisplay("Arion", width, height, () -> finishStartupPhase("first paint"));
+        startup.mark("window shown");
+
+        // long operations on the deck run one at a time in the background, shown in the task bar
+        tasks = new TaskRunner(new TaskRunner.Listener() {
+            public void started(String name, boolean cancellable) {
+                display.showTaskProgress(name, cancellable, () -> tasks.cancel());
+            }
+            public void progressed(long done, long total) {
+                display.updateTaskProgress(done, total);
+            }
+            public void finished(String name) {
+                display.hideTaskProgress();
+            }
+        });
 
         prepareMenuBar();
         enterMainScreen();
-
-        // Load flashcards after the GUI is displayed so if a message is displayed,
-        // the GUI is not empty in the background.
-        // The message to display is also ignored.
-        loadFlashcardsRoutine();
+        startup.mark("main screen");
     }
 
     /*
      * loadFlashcards loads the flashcards in the flashcard database
-     * into memory.
+     * into memory, in the background. The load can be cancelled, leaving the deck as it was.
      *
      * Input: no input value.
      * Output: no return value, modifies the flashcard ArrayList.
@@ -70,15 +143,15 @@ public class Arion {
         if (!confirm) {
             return;
         }
-        Optional<String> message = loadFlashcardsRoutine();
-        if (message.isPresent()) {
-            ArionDisplay.alert(message.get());
-        }
+        submitTask("Loading flashcards", true,
+                (ProgressCallback progress) -> loadFlashcardsRoutine(progress),
+                (Optional<String> message) -> message.ifPresent((String text) -> ArionDisplay.alert(text)));
     }
 
     /*
      * saveFlashcards saves the flashcards in memory to the
-     * flashcard database.
+     * flashcard database, in the background. A save cannot be cancelled, since the database
+     * would be left partly written.
      *
      * Input: no input value.
      * Output: no return value, writes to the flashcard database.
@@ -89,58 +162,119 @@ public class Arion {
         if (!confirm) {
             return;
         }
+        submitTask("Saving flashcards", false,
+                (ProgressCallback progress) -> saveFlashcardsRoutine(progress),
+                (Optional<String> warning) -> {
+                    if (warning.isPresent()) {
+                        ArionDisplay.warningAlert(warning.get());
+                    } else {
+                        ArionDisplay.alert("Wrote Flashcards.");
+                    }
+                });
+    }
+
+    /*
+     * deleteFlashcards deletes the flashcards with the given identifiers, in the background.
+     * Flashcards are passed by identifier, so the flashcards selected are the ones deleted even if
+     * another task restructures the deck first.
+     *
+     * Input: identifiers of the flashcards to delete.
+     * Output: no return value, modifies the deck.
+     */
+    public void deleteFlashcards(long[] ids) {
+        if (ids == null) {
+            throw new NullPointerException("Null array when trying to delete flashcards.");
+        }
+        submitTask("Deleting flashcards", false,
+                (ProgressCallback progress) -> core.deleteFlashcardsById(ids),
+                (Integer deleted) -> {});
+    }
+
+    /*
+     * deleteQueriedFlashcards asks the user for a query, finds the flashcards matching it in the
+     * background, since the query may scan the deck, then deletes them in the background once the
+     * user confirms how many will be deleted.
+     *
+     * Input: no input.
+     * Output: no return value, modifies the deck.
+     */
+    public void deleteQueriedFlashcards() {
+        Optional<String> textOption = display.displayInputWindow(
+                "Delete the flashcards matching a query (e.g. \"interval > 300 AND tag = learned\"):", "Delete Query");
+        if (textOption.isEmpty()) {
+            return;
+        }
+        String text = textOption.get();
         try {
-            database.writeFlashcards(flashcards);
-            ArionDisplay.alert("Wrote Flashcards.");
-        } catch (IOException e) {
-            e.printStackTrace();
-            ArionDisplay.warningAlert("Could not save flashcards due to error.");
-        } catch (DatabaseWriteException e) {
-            ArionDisplay.warningAlert("Cannot write to " + database.filepath);
+            DeckQuery.parse(text);
+        } catch (QueryFormatException e) {
+            ArionDisplay.alert(e.getMessage());
+            return;
         }
+        submitTask("Finding flashcards", false,
+                (ProgressCallback progress) -> core.query(text).ids,
+                (long[] ids) -> confirmDeleteFlashcards(ids));
     }
 
     /*
-     * deleteFlashcards deletes the flashcards at the indices provided in an array.
-     * Since this method is called with indices from a JTable, they are always in ascending order;
-     * thus, no sorting needs to be done in order to loop the indices in descending order.
-     * The getDeletionIndex method checks that the indices do ascend.
+     * confirmDeleteFlashcards asks the user to confirm deleting the flashcards a query found, then
+     * deletes them in the background.
      *
-     * Input: ascending array of indices at which to delete flashcards.
-     * Output: no return value, modifies the flashcard ArrayList.
+     * Input: identifiers of the flashcards found.
+     * Output: no return value, modifies the deck.
+     */
+    private void confirmDeleteFlashcards(long[] ids) {
+        if (ids.length == 0) {
+            ArionDisplay.alert("No flashcards match that query.");
+            return;
+        }
+        boolean confirm = display.displayConfirmationWindow(
+                "Delete " + ids.length + (ids.length == 1 ? " flashcard?" : " flashcards?"), "Delete Confirmation");
+        if (!confirm) {
+            return;
+        }
+        submitTask("Deleting flashcards", false,
+                (ProgressCallback progress) -> core.deleteFlashcardsById(ids),
+                (Integer deleted) -> {});
+    }
+
+    /*
+     * exportFlashcards asks the user for a query, then writes the flashcards matching it to the export
+     * file in the background. A blank query exports every flashcard.
+     *
+     * Input: no input.
+     * Output: no return value, writes to the export file.
      */
-    public void deleteFlashcards(int[] indices) {
-        if (indices == null) {
-            throw new NullPointerException("Null array when trying to delete flashcard.");
+    public void exportFlashcards() {
+        Optional<String> textOption = display.displayInputWindow(
+                "Export the flashcards matching a query, or every flashcard if blank:", "Export");
+        if (textOption.isEmpty()) {
+            return;
         }
-        for (int i = indices.length - 1; i >= 0; --i) { // loop backwards so indices are in descending order;
-            int idx = getDeletionIndex(indices, i);     // otherwise deleting them will move the index of the other elements
-            flashcards.remove(idx);
+        String text = textOption.get();
+        try {
+            DeckQuery.parse(text);
+        } catch (QueryFormatException e) {
+            ArionDisplay.alert(e.getMessage());
+            return;
         }
+        submitTask("Exporting flashcards", false,
+                (ProgressCallback progress) -> exportFlashcardsRoutine(text, progress),
+                (String message) -> ArionDisplay.alert(message));
     }
 
     /*
-     * editFlashcard edits a flashcard at a given index, replacing it with a new flashcard given by
-     * the fields String array.
+     * editFlashcard edits a flashcard at a given index, replacing its fields with the fields
+     * given by the String array. Incorrectly formatted edits are discarded with a warning.
      *
      * Input: the index of the flashcard to edit, the new fields of the flashcards.
-     * Output: no return value, modifies the flashcard ArrayList.
+     * Output: no return value, modifies the deck.
      */
     public void editFlashcard(int index, String[] fields) {
         int flashcardNum = index + 1; // index starts at 0, numbering starts at 1
 
-        if (fields == null) {
-            throw new NullPointerException("Null flashcard fields when trying to edit flashcard #" + flashcardNum);
-        }
-        if (fields.length != 4) {
-            throw new IllegalArgumentException("Editing flashcards requires four fields.");
-        }
-        if (index < 0 || index >= flashcards.size()) {
-            throw new IllegalArgumentException("Invalid index.");
-        }
-
         try {
-            flashcards.set(index, Flashcard.fromStringArray(fields));
+            core.editFlashcard(index, fields);
         } catch (DateFormatException e) {
             ArionDisplay.warningAlert("Incorrectly formatted review date; discarding edits to flashcard #" + flashcardNum);
         } catch (IntervalFormatException e) {
@@ -149,28 +283,125 @@ public class Arion {
         }
     }
 
+    /*
+     * editFlashcards edits the flashcards with the given identifiers, replacing the fields of each with
+     * the matching row of fields. Incorrectly formatted edits are discarded, with one warning
+     * listing every discarded flashcard by its current position in the deck.
+     *
+     * Input: the identifiers of the flashcards to edit, the new fields of each flashcard.
+     * Output: no return value, modifies the deck.
+     */
+    public void editFlashcards(long[] ids, String[][] fieldsList) {
+        try {
+            core.editFlashcardsById(ids, fieldsList);
+        } catch (BatchFormatException e) {
+            long[] rejected = new long[e.rows.length];
+            for (int i = 0; i < rejected.length; i++) {
+                rejected[i] = ids[e.rows[i]];
+            }
+            StringBuilder numbers = new StringBuilder();
+            for (int index : core.getDeck().indicesOf(rejected)) {
+                if (index >= 0) {
+                    // index starts at 0, numbering starts at 1
+                    numbers.append(numbers.length() == 0 ? " #" : ", #").append(index + 1);
+                }
+            }
+            ArionDisplay.warningAlert("Incorrectly formatted review date or interval;"
+                    + " discarding edits to flashcard" + (rejected.length == 1 ? "" : "s") + numbers);
+        }
+    }
+
+    /*
+     * addFlashcards appends many flashcards to the deck at once, such as rows pasted from a spreadsheet.
+     * Each row contains either a front and back, or all four fields.
+     *
+     * Input: array of String arrays, each representing a flashcard.
+     * Output: no return value, appends to the deck.
+     */
+    public void addFlashcards(String[][] fieldsList) {
+        try {
+            ArrayList<Flashcard> added = core.addFlashcards(fieldsList);
+            ArionDisplay.alert("Added " + added.size() + " flashcards.");
+        } catch (BatchFormatException e) {
+            int addedCount = fieldsList.length - e.rows.length;
+            StringBuilder numbers = new StringBuilder();
+            for (int row : e.rows) {
+                numbers.append(numbers.length() == 0 ? "" : ", ").append(row + 1);
+            }
+            ArionDisplay.warningAlert("Added " + addedCount + " flashcards; skipped improperly formatted rows "
+                    + numbers + ".");
+        }
+    }
+
+    /*
+     * mergeFlashcards merges many flashcards into the deck in the background, such as an updated
+     * vocabulary list. Flashcards whose front is already in the deck get the new back and any new tags,
+     * and keep their review date and interval; the others are added.
+     *
+     * Input: array of String arrays, each representing a flashcard.
+     * Output: no return value, modifies the deck.
+     */
+    public void mergeFlashcards(String[][] fieldsList) {
+        if (fieldsList == null) {
+            throw new NullPointerException("Cannot merge null fields.");
+        }
+        submitTask("Merging flashcards", false,
+                (ProgressCallback progress) -> core.mergeFlashcards(fieldsList),
+                (ArionCore.MergeResult result) -> {
+                    String message = String.format("Added %d flashcards and updated %d; %d were already up to date.",
+                            result.added, result.updated, result.unchanged);
+                    if (result.skippedRows.length == 0) {
+                        ArionDisplay.alert(message);
+                        return;
+                    }
+                    StringBuilder numbers = new StringBuilder();
+                    for (int row : result.skippedRows) {
+                        numbers.append(numbers.length() == 0 ? "" : ", ").append(row + 1);
+                    }
+                    ArionDisplay.warningAlert(message + " Skipped improperly formatted rows " + numbers + ".");
+                });
+    }
+
     /*
      * addFlashcard appends a flashcard to the flashcard ArrayList.
      * The flashcard to append is represented as a String array containing the
-     * flashcard front and back.
+     * flashcard front and back, optionally followed by its tags. If it is nearly the same as a flashcard in the deck,
+     * the user is asked whether to add it anyway; until the duplicate index is built, it is added unchecked.
      * 
      * Input: String array representing a flashcard.
-     * Output: no return value, appends to the flashcard ArrayList.
+     * Output: no return value, appends to the deck.
      */
     public void addFlashcard(String[] fields) {
         if (fields == null) {
             throw new NullPointerException("Cannot add null fields.");
         }
-        
-        if (fields.length != 2) {
+        if (fields.length != 2 && fields.length != 3) {
             String msg = "Could not construct flashcards because field array is improperly sized.";
             throw new IllegalArgumentException(msg);
         }
 
+        // the duplicate index takes a while to build, so until it is built flashcards are added unchecked
+        Optional<DuplicateIndex> indexOption = core.getBuiltDuplicateIndex();
+        ArrayList<DuplicateIndex.Match> duplicates = new ArrayList<>();
+        if (indexOption.isPresent()) {
+            duplicates = indexOption.get().similarTo(fields[0], fields[1], DuplicateIndex.SIMILARITY_THRESHOLD, 1);
+        } else {
+            buildDuplicateIndexLater();
+        }
+        if (!duplicates.isEmpty()) {
+            Optional<Flashcard> existingOption = core.getDeck().find(duplicates.get(0).id);
+            if (existingOption.isPresent() && !display.displayConfirmationWindow(String.format(
+                    "This flashcard is about %d%% the same as an existing flashcard:%n%s%n%nAdd it anyway?",
+                    Math.round(duplicates.get(0).similarity * 100), summarize(existingOption.get())),
+                    "Possible Duplicate")) {
+                return;
+            }
+        }
+
         // these exceptions can never be thrown, because the review date and interval
         // are not given here
         try {
-            flashcards.add(Flashcard.fromStringArray(fields));
+            core.addFlashcard(fields);
         } catch (IntervalFormatException | DateFormatException e) {
             displayException(e);
         }
@@ -178,40 +409,220 @@ public class Arion {
 
     /*
      * studyFlashcards initiates the studying loop.
+     * If Arion was quit during a study session, that session is resumed instead of starting a new one.
      *
      * Input: no input.
      * Output: no output.
      */
     public void studyFlashcards() {
-        dueFlashcards = new LinkedList<>();
-        for (Flashcard flashcard : flashcards) {
-            if (flashcard.isDue()) {
-                dueFlashcards.add(flashcard);
-            }
+        if (core.startSession().isEmpty()) {
+            ArionDisplay.alert("There are no flashcards due to study.");
+            return;
         }
+        display.resetStudyScreen();
+        displayDueFlashcard();
+    }
 
-        if (dueFlashcards.isEmpty()) {
-            ArionDisplay.alert("There are no flashcards due to study.");
+    /*
+     * studyTaggedFlashcards asks the user for a tag filter, then studies the due flashcards matching it.
+     * A session saved when Arion was quit is kept for the next unfiltered study.
+     *
+     * Input: no input.
+     * Output: no output.
+     */
+    public void studyTaggedFlashcards() {
+        Optional<String> filterOption = display.displayInputWindow(
+                "Study the due flashcards with tags (e.g. \"chapter3 noun|verb -learned\"):", "Study Tagged");
+        if (filterOption.isEmpty()) {
+            return;
+        }
+        if (core.startSession(filterOption.get()).isEmpty()) {
+            ArionDisplay.alert("There are no flashcards with those tags due to study.");
             return;
         }
-        display.displayStudyScreen(dueFlashcards.peek(), true, reviewCallback);
+        display.resetStudyScreen();
+        displayDueFlashcard();
     }
 
     /*
-     * sortFlashcards sorts the flashcards ArrayList by the given field and
-     * whether to reverse it.
+     * studyQueriedFlashcards asks the user for a query, then studies every flashcard matching it,
+     * whether it is due or not. A session saved when Arion was quit is kept for the next unfiltered study.
+     *
+     * Input: no input.
+     * Output: no output.
+     */
+    public void studyQueriedFlashcards() {
+        Optional<String> textOption = display.displayInputWindow(
+                "Study the flashcards matching a query (e.g. \"due within 7 days AND tag = verb\"):", "Study Query");
+        if (textOption.isEmpty()) {
+            return;
+        }
+        try {
+            if (core.startQuerySession(textOption.get()).isEmpty()) {
+                ArionDisplay.alert("No flashcards match that query.");
+                return;
+            }
+        } catch (QueryFormatException e) {
+            ArionDisplay.alert(e.getMessage());
+            return;
+        }
+        display.resetStudyScreen();
+        displayDueFlashcard();
+    }
+
+    /*
+     * showStatistics shows the statistics of the deck and its reviews. They are kept up to date as the
+     * deck changes, so they are shown at once, except the first time, when the review log is read in
+     * the background.
+     *
+     * Input: no input.
+     * Output: no return value, displays the statistics.
+     */
+    public void showStatistics() {
+        submitTask("Counting statistics", false,
+                (ProgressCallback progress) -> core.getDeckStats().report(LocalDate.now()),
+                (String report) -> display.displayReport("Statistics", report));
+    }
+
+    /*
+     * exportStatistics writes the statistics of the deck and the summaries they are made from to the
+     * statistics file, in the background.
+     *
+     * Input: no input.
+     * Output: no return value, writes to the statistics file.
+     */
+    public void exportStatistics() {
+        submitTask("Exporting statistics", false,
+                (ProgressCallback progress) -> {
+                    core.exportStats();
+                    return "Wrote statistics to " + core.getStatsPath();
+                },
+                (String message) -> ArionDisplay.alert(message));
+    }
+
+    /*
+     * sortFlashcards sorts the deck by the given field and whether to reverse it, in the background.
+     * The sort can be cancelled, leaving the deck in its previous order.
      *
      * Input: field to sort the flashcards by, and whether to reverse the list.
-     * Output: no return value, modifies the flashcard ArrayList.
+     * Output: no return value, modifies the deck.
      */
     public void sortFlashcards(Flashcard.Field field, boolean reversed) {
-        if (field == null) {
-            throw new NullPointerException("Cannot sort with null field.");
+        submitTask("Sorting flashcards", true,
+                (ProgressCallback progress) -> {
+                    core.sortFlashcards(field, reversed, progress);
+                    return Boolean.TRUE;
+                },
+                (Boolean sorted) -> {});
+    }
+
+    /*
+     * optimizeScheduler fits the scheduling parameters to the review history, then uses and saves
+     * the fitted parameters.
+     *
+     * Input: no input.
+     * Output: no return value, modifies the scheduling parameters and writes them to a file.
+     */
+    public void optimizeScheduler() {
+        submitTask("Optimizing scheduler", false,
+                (ProgressCallback progress) -> core.optimizeScheduler(),
+                (Optional<SchedulerOptimizer.Result> resultOption) -> showOptimizeResult(resultOption));
+    }
+
+    /*
+     * showOptimizeResult tells the user the result of optimizing the scheduling parameters.
+     *
+     * Input: optionally the result of the optimization.
+     * Output: no return value, displays the result.
+     */
+    private void showOptimizeResult(Optional<SchedulerOptimizer.Result> resultOption) {
+        if (resultOption.isEmpty()) {
+            ArionDisplay.alert("Not enough review history to optimize scheduling; at least "
+                    + SchedulerOptimizer.MIN_REVIEWS + " spaced reviews are needed.");
+            return;
         }
+        SchedulerOptimizer.Result result = resultOption.get();
+        ArionDisplay.alert(String.format("Fitted to %d reviews (%.1f%% recalled).%n"
+                + "Review intervals now grow %.2f times after each correct review.",
+                result.reviewCount, result.retention * 100, result.parameters.intervalMultiplicand));
+    }
 
-        Flashcard[] oldFlashcards = flashcards.toArray(new Flashcard[] {});
-        Flashcard[] newFlashcards = mergeSort(oldFlashcards, field, reversed, 0, flashcards.size());
-        flashcards = ArionUtils.toArrayList(newFlashcards);
+    /*
+     * findDuplicates groups the flashcards of the deck that are nearly the same, in the background,
+     * and shows them to the user. The search can be cancelled.
+     *
+     * Input: no input.
+     * Output: no return value, displays the groups of near duplicates.
+     */
+    public void findDuplicates() {
+        submitTask("Finding duplicates", true,
+                (ProgressCallback progress) -> core.getDuplicateIndex().clusters(
+                        DuplicateIndex.SIMILARITY_THRESHOLD, progress),
+                (ArrayList<long[]> clusters) -> showDuplicateReport(clusters));
+    }
+
+    /*
+     * showDuplicateReport shows the groups of near duplicates found in the deck, numbered
+     * as in the browse screen.
+     *
+     * Input: identifiers of the flashcards in each group.
+     * Output: no return value, displays the groups.
+     */
+    private void showDuplicateReport(ArrayList<long[]> clusters) {
+        if (clusters.isEmpty()) {
+            ArionDisplay.alert("No flashcards are nearly the same as another.");
+            return;
+        }
+        Deck deck = core.getDeck();
+        StringBuilder report = new StringBuilder();
+        int duplicateCount = 0;
+        for (long[] cluster : clusters) {
+            int[] indices = deck.indicesOf(cluster);
+            for (int i = 0; i < cluster.length; i++) {
+                Optional<Flashcard> flashcardOption = deck.find(cluster[i]);
+                if (indices[i] >= 0 && flashcardOption.isPresent()) {
+                    // index starts at 0, numbering starts at 1
+                    report.append('#').append(indices[i] + 1).append("  ")
+                            .append(summarize(flashcardOption.get())).append(System.lineSeparator());
+                }
+            }
+            report.append(System.lineSeparator());
+            duplicateCount += cluster.length - 1;
+        }
+        display.displayReport("Duplicates", String.format("%d groups of nearly identical flashcards, with %d"
+                + " flashcards more than one of each.%n%n", clusters.size(), duplicateCount) + report);
+    }
+
+    /*
+     * buildDuplicateIndexLater starts building the duplicate index on a background thread, once, so the
+     * flashcards added after it is built are checked for duplicates.
+     *
+     * Input: no input.
+     * Output: no return value.
+     */
+    private void buildDuplicateIndexLater() {
+        if (duplicateIndexRequested) {
+            return;
+        }
+        duplicateIndexRequested = true;
+        Thread indexer = new Thread(() -> core.getDuplicateIndex(), "duplicate-indexer");
+        indexer.setDaemon(true);
+        indexer.start();
+    }
+
+    /*
+     * summarize shortens a flashcard to one line for a message.
+     *
+     * Input: the flashcard.
+     * Output: its front and back, each cut to SUMMARY_LENGTH characters.
+     */
+    private static String summarize(Flashcard flashcard) {
+        String[] sides = { flashcard.front, flashcard.back };
+        for (int i = 0; i < sides.length; i++) {
+            String side = sides[i].replaceAll("\\s+", " ").trim();
+            sides[i] = side.length() > SUMMARY_LENGTH ? side.substring(0, SUMMARY_LENGTH) + "..." : side;
+        }
+        return sides[0] + " / " + sides[1];
     }
 
     /*
@@ -280,17 +691,56 @@ public class Arion {
     }
 
     /*
-     * quit quits Arion.
+     * quit quits Arion, saving the flashcards first if the user confirms.
+     * The flashcards, study session, and review log are written in the background, so the window keeps
+     * painting, and it is closed once they are written.
+     * Arion cannot quit while a background task is running.
      *
      * Input: no input value.
      * Output: no output.
      */
     public void quit() {
-        saveFlashcards();
+        Optional<String> runningOption = tasks.running();
+        if (runningOption.isPresent()) {
+            ArionDisplay.alert("Wait for " + runningOption.get().toLowerCase() + " to finish before quitting.");
+            return;
+        }
+
+        boolean save = display.displayConfirmationWindow(
+                "Save Flashcards?", "Overwrite Confirmation");
+        submitTask(save ? "Saving flashcards" : "Quitting", false,
+                (ProgressCallback progress) -> quitRoutine(save, progress),
+                (Optional<String> warning) -> {
+                    if (warning.isPresent()) {
+                        ArionDisplay.warningAlert(warning.get());
+                    }
+                    display.quit();
+                });
+    }
+
+    /*
+     * quitRoutine writes what Arion keeps between runs before it quits: optionally the flashcards,
+     * then the study session and the review log.
+     *
+     * Input: whether to save the flashcards, and a callback told the progress of the save.
+     * Output: optionally a warning about the save to show the user.
+     */
+    private Optional<String> quitRoutine(boolean save, ProgressCallback progress) {
+        Optional<String> warning = save ? saveFlashcardsRoutine(progress) : Optional.empty();
+        try {
+            core.saveSession();
+        } catch (IOException e) {
+            displayException("Could not save study session.", e);
+        }
+        try {
+            core.close();
+        } catch (IOException e) {
+            displayException("Could not write review log.", e);
+        }
         if (exceptionWriterOption.isPresent()) {
             exceptionWriterOption.get().flush();
         }
-        display.quit();
+        return warning;
     }
     
     /*
@@ -302,36 +752,46 @@ public class Arion {
     private void prepareMenuBar() {
         String[] menuTitles = new String[] { "File", "Edit", "View", "Help", "Quit" };
         String[][] actions = new String[][] {
-                { "Load", "Save" },
-                { "Browse", "Add" },
-                { "Study", "Sort" },
+                { "Load", "Save", "Export", "Export Stats" },
+                { "Browse", "Add", "Duplicates", "Delete Query" },
+                { "Study", "Study Tagged", "Study Query", "Statistics", "Sort", "Optimize" },
                 { "Guide", "About" },
                 { "Confirm?" },
         };
 
         final SortCallback sortCallback = (Flashcard.Field field, boolean reversed) -> sortFlashcards(field, reversed);
-        final DeleteCallback deleteCallback = (int[] indices) -> deleteFlashcards(indices);
-        final EditCallback editCallback = (int index, String[] fields) -> editFlashcard(index, fields);
+        final DeleteCallback deleteCallback = (long[] ids) -> deleteFlashcards(ids);
+        final BatchEditCallback editCallback = (long[] ids, String[][] fieldsList) ->
+                editFlashcards(ids, fieldsList);
 
         Runnable[][] callbacks = new Runnable[][] {
                 { // File
-                        () -> loadFlashcards(), // Load
-                        () -> saveFlashcards(), // Save
+                        afterLoad(() -> loadFlashcards()), // Load
+                        afterLoad(() -> saveFlashcards()), // Save
+                        afterLoad(() -> exportFlashcards()), // Export
+                        afterLoad(() -> exportStatistics()), // Export Stats
                 },
                 { // Edit
-                        () -> display.displayBrowseScreen(flashcards, editCallback, deleteCallback), // Browse
-                        () -> display.displayAddScreen(addCallback), // Add
+                        afterLoad(() -> display.displayBrowseScreen(core.getDeck(), core.getSearchIndex(),
+                                core.getTagIndex(), core.getQueryPlanner(), editCallback, deleteCallback)), // Browse
+                        () -> display.displayAddScreen(addCallback, batchAddCallback), // Add
+                        afterLoad(() -> findDuplicates()), // Duplicates
+                        afterLoad(() -> deleteQueriedFlashcards()), // Delete Query
                 },
                 { // View
-                        () -> studyFlashcards(), // Study
-                        () -> display.displaySortScreen(sortCallback), // Sort
+                        afterDueLoad(() -> studyFlashcards()), // Study
+                        afterLoad(() -> studyTaggedFlashcards()), // Study Tagged
+                        afterLoad(() -> studyQueriedFlashcards()), // Study Query
+                        afterLoad(() -> showStatistics()), // Statistics
+                        afterLoad(() -> display.displaySortScreen(sortCallback)), // Sort
+                        afterLoad(() -> optimizeScheduler()), // Optimize
                 },
                 { // Help
                         () -> display.displayGuidePage(0), // Guide
                         () -> display.displayAboutScreen(), // About
                 },
                 { // Quit
-                        () -> quit(), // Confirm?
+                        afterLoad(() -> quit()), // Confirm?
                 }
         };
         display.displayMenuBar(menuTitles, actions, callbacks);
@@ -346,105 +806,199 @@ public class Arion {
      */
     private void enterMainScreen() {
         display.displayMainScreen(
-                () -> display.displayAddScreen(addCallback),
-                () -> studyFlashcards());
+                () -> display.displayAddScreen(addCallback, batchAddCallback),
+                afterDueLoad(() -> studyFlashcards()));
     }
 
     /*
-     * updateReviewedFlashcard updates the most recent flashcard to be reviewed,
-     * which is the first flashcard in the dueFlashcards queue.
+     * submitTask runs a task in the background, or tells the user to wait if another task is running.
      *
-     * Input: whether the user correctly reviewed the last flashcard.
-     * Output: no return value, modifies the dueFlashcards queue.
+     * Input: name of the task, whether it may be cancelled, the task, and the completion run with its result.
+     * Output: no return value, starts the task.
      */
-    private void updateReviewedFlashcard(boolean success) {
-        
-        // flashcard can never be null, but it is checked just in case
-        Flashcard flashcard = dueFlashcards.poll();
-        if (flashcard == null) {
-            Arion.displayException(new NullPointerException("Reviewed flashcard is null"));
-            return;
+    private <T> void submitTask(String name, boolean cancellable, TaskRunner.Task<T> task,
+            TaskRunner.Completion<T> completion) {
+        Optional<String> runningOption = tasks.running();
+        if (!tasks.submit(name, cancellable, task, completion)) {
+            ArionDisplay.alert("Wait for " + runningOption.get().toLowerCase() + " to finish, or cancel it.");
         }
-        
-        flashcard.updateReview(success);
-        if (!success) {
-            dueFlashcards.add(flashcard);
+    }
+
+    /*
+     * afterLoad wraps an action that uses the flashcards, so that it waits for the flashcards loaded
+     * at startup.
+     *
+     * Input: the action.
+     * Output: the action, run after the load.
+     */
+    private Runnable afterLoad(Runnable action) {
+        if (action == null) {
+            throw new NullPointerException("Cannot wait for load before null action.");
         }
+        return () -> runAfterLoad(action);
+    }
 
-        if (dueFlashcards.isEmpty()) {
-            display.displaySuccessScreen();
-            return;
+    /*
+     * runAfterLoad runs an action that uses the flashcards once the flashcards loaded at startup are
+     * in the deck: at once if the load has finished, and otherwise when it finishes, so the event
+     * dispatch thread never waits for the load. It is only called on the event dispatch thread.
+     *
+     * Input: the action.
+     * Output: no return value, runs or queues the action.
+     */
+    private void runAfterLoad(Runnable action) {
+        if (loadFinished) {
+            action.run();
+        } else {
+            actionsAfterLoad.add(action);
         }
-        display.displayStudyScreen(dueFlashcards.peek(), true, reviewCallback);
     }
 
     /*
-     * mergeSort sorts the provided array by the given field and direction, between the provided start and end.
-     * It uses merge sort to ensure adequate performance even at large Flashcard lists (O(nlogn) vs O(n*n)).
+     * afterDueLoad wraps the action that starts studying, so that it waits for the due flashcards
+     * loaded at startup. A saved study session may hold flashcards that are not due, so resuming one
+     * waits for the whole load. Like runAfterLoad, the wait queues the action instead of blocking.
      *
-     * Input: flashcard array to sort, field to sort by, whether to sort in reversed order, the starting index,
-     * and the number of elements to sort.
-     * Output: a new array containing the elements in sorted order.
+     * Input: the action.
+     * Output: the action, run after the due flashcards are loaded.
      */
-    private Flashcard[] mergeSort(Flashcard[] flashcards, Flashcard.Field field, boolean reversed, int start, int len) {
-        if (flashcards == null || field == null) {
-            throw new NullPointerException("Cannot merge sort with null parameters.");
+    private Runnable afterDueLoad(Runnable action) {
+        if (action == null) {
+            throw new NullPointerException("Cannot wait for load before null action.");
         }
-        if (start < 0 || start + len > flashcards.length || len < 1) {
-            throw new IllegalArgumentException("Parameters are out of bounds.");
+        return new Runnable() {
+            public void run() {
+                if (!dueLoadFinished) {
+                    actionsAfterDueLoad.add(this); // checked again once the due flashcards are loaded
+                } else if (core.hasSavedSession()) {
+                    runAfterLoad(action);
+                } else {
+                    action.run();
+                }
+            }
+        };
+    }
+
+    /*
+     * finishDueLoad records that the due flashcards loaded at startup are in the deck, and runs the
+     * actions waiting for them on the event dispatch thread.
+     * It is only called by the loader, and only the first call has an effect.
+     *
+     * Input: no input.
+     * Output: no return value.
+     */
+    private void finishDueLoad() {
+        if (!dueLoadReported) {
+            dueLoadReported = true;
+            finishStartupPhase("due flashcards loaded");
+            SwingUtilities.invokeLater(() -> {
+                dueLoadFinished = true;
+                runQueuedActions(actionsAfterDueLoad);
+            });
         }
+    }
 
-        if (len == 1) {
-            if (flashcards[start] == null) {
-                throw new NullPointerException("Cannot merges sort with null flashcards.");
-            }
-            return new Flashcard[] { flashcards[start] };
+    /*
+     * runQueuedActions runs the actions queued while waiting for a load, in the order they were started.
+     *
+     * Input: the queued actions, which are removed.
+     * Output: no return value, runs the actions.
+     */
+    private static void runQueuedActions(ArrayList<Runnable> actions) {
+        ArrayList<Runnable> queued = new ArrayList<>(actions);
+        actions.clear();
+        for (Runnable action : queued) {
+            action.run();
         }
-        if (len == 2) {
-            Flashcard flashcard1 = flashcards[start];
-            Flashcard flashcard2 = flashcards[start + 1];
-            if (flashcard1 == null || flashcard2 == null) {
-                throw new NullPointerException("Cannot merge sort with null flashcards.");
-            }
-            if (flashcard1.compareTo(flashcard2, field, reversed)) {
-                return new Flashcard[] { flashcard1, flashcard2 };
-            }
-            else {
-                return new Flashcard[] { flashcard2, flashcard1 };
-            }
+    }
+
+    /*
+     * finishStartupPhase records a phase the window waits for before it is usable.
+     * Once every such phase is finished, the window is usable and the startup is reported.
+     *
+     * Input: name of the phase.
+     * Output: no return value, records the phase.
+     */
+    private void finishStartupPhase(String phase) {
+        boolean usable;
+        synchronized (this) {
+            startup.mark(phase);
+            unfinishedStartupPhases--;
+            usable = (unfinishedStartupPhases == 0);
+        }
+        if (usable) {
+            startup.mark(USABLE_PHASE);
+            reportStartup();
         }
+    }
 
-        int mid = len / 2 + start;
-        Flashcard[] left = mergeSort(flashcards, field, reversed, start, len / 2);
-        Flashcard[] right = mergeSort(flashcards, field, reversed, mid, len - len / 2);
+    /*
+     * reportStartup prints the startup timeline if it was requested, or if the window took
+     * longer to become usable than the startup budget.
+     *
+     * Input: no input.
+     * Output: no return value, prints the timeline and may exit.
+     */
+    private static void reportStartup() {
+        long usableMillis = startup.elapsed(USABLE_PHASE) / 1_000_000;
+        Long budget = Long.getLong(STARTUP_BUDGET_PROPERTY);
+        boolean overBudget = (budget != null && usableMillis > budget);
 
-        int leftIdx = 0;
-        int rightIdx = 0;
-        Flashcard[] sorted = new Flashcard[len];
+        if (Boolean.getBoolean(STARTUP_PROPERTY) || overBudget) {
+            System.out.print(startup.summary());
+        }
+        if (overBudget) {
+            System.err.println("WARNING: Window took " + usableMillis
+                    + " ms to become usable, over the startup budget of " + budget + " ms.");
+        }
+        if (Boolean.getBoolean(STARTUP_EXIT_PROPERTY)) {
+            System.exit(overBudget ? 1 : 0);
+        }
+    }
 
-        for (int sortedIdx = 0; sortedIdx < sorted.length; sortedIdx++) {
-            boolean appendLeft;
+    /*
+     * updateReviewedFlashcard updates the most recent flashcard to be reviewed,
+     * which is the current flashcard of the study session.
+     *
+     * Input: whether the user correctly reviewed the last flashcard.
+     * Output: no return value, modifies the study session.
+     */
+    private void updateReviewedFlashcard(boolean success) {
+        
+        // the session can never be missing or empty, but it is checked just in case
+        Optional<SessionQueue> sessionOption = core.getSession();
+        if (sessionOption.isEmpty() || sessionOption.get().isEmpty()) {
+            Arion.displayException(new IllegalStateException("Reviewed flashcard without a study session."));
+            return;
+        }
+        SessionQueue session = sessionOption.get();
 
-            // determine whether to append an element from the left or right half
-            if (leftIdx == left.length) {
-                appendLeft = false;
-            } else if (rightIdx == right.length) {
-                appendLeft = true;
-            } else if (left[leftIdx].compareTo(right[rightIdx], field, reversed)) {
-                appendLeft = true;
-            } else {
-                appendLeft = false;
-            }
+        try {
+            core.reviewCurrent(success);
+        } catch (IOException e) {
+            displayException("Could not record review.", e);
+        }
 
-            // append the appropriate element
-            if (appendLeft) {
-                sorted[sortedIdx] = left[leftIdx++];
-            } else {
-                sorted[sortedIdx] = right[rightIdx++];
-            }
+        if (session.isEmpty()) {
+            display.displaySuccessScreen();
+            return;
         }
+        displayDueFlashcard();
+    }
 
-        return sorted;
+    /*
+     * displayDueFlashcard displays the current flashcard of the study session, and has the
+     * display prepare the flashcard most likely to follow it.
+     *
+     * Input: no input.
+     * Output: no return value, displays the study screen.
+     */
+    private void displayDueFlashcard() {
+        SessionQueue session = core.getSession().get();
+        display.displayStudyScreen(session.current(), true, reviewCallback);
+        if (session.size() > 1) {
+            display.prefetchStudyScreen(session.peek(1), reviewCallback);
+        }
     }
 
     /*
@@ -465,61 +1019,85 @@ public class Arion {
     }
 
     /*
-     * getDeletionIndex reads the flashcard index to delete from the provided indices array.
-     * This method is separate from the deleteFlashcards method to simplify the code; the checks
-     * take many lines, and have little relevant functionality to understanding the program.
+     * loadFlashcardsRoutine performs the routine to load flashcards, without the initial check
+     * from the user, turning the errors of the load into a message for the user.
+     * It may run on any thread.
      *
-     * Input: array of flashcard indices to delete, index into the indices array.
-     * Output: index of the flashcard to delete.
+     * Input: callback told the progress of the load.
+     * Output: optionally returns a message to display to the user, writes to the deck.
      */
-    private int getDeletionIndex(int[] indices, int i) {
-        if (indices == null) {
-            throw new NullPointerException("Cannot get deletion index of null array.");
-        }
-        if (i < 0 || i >= indices.length) {
-            throw new IllegalArgumentException("'i' not in range.");
-        }
-        
-        int idx = indices[i]; 
-        if (idx < 0 || idx >= flashcards.size()) {
-            throw new IllegalArgumentException("Invalid index when trying to delete flashcard.");
-        }
-        if (i > 0 && indices[i-1] >= idx) {
-            throw new IllegalArgumentException("Indices to delete were not provided in ascending order");
+    private Optional<String> loadFlashcardsRoutine(ProgressCallback progress) throws IOException {
+        try {
+            core.load(progress);
+            return Optional.of("Read Flashcards.");
+        } catch (DatabaseFormatException e) {
+            return Optional.of("Warning: Database file is improperly formatted; please delete " + core.getDatabasePath());
+        } catch (DatabaseReadException e) {
+            return Optional.of("Cannot read from " + core.getDatabasePath() + "\nDoes it exist?");
         }
-        return idx;
     }
 
     /*
-     * loadFlashcardsRoutine performs the routine to load flashcards, without the initial check
-     * from the user; this method exists so upon initializing Arion, it can load the
-     * previously stored flashcards without prompting the user.
+     * saveFlashcardsRoutine performs the routine to save flashcards, without the check from the user.
+     * It may run on any thread.
      *
-     * Input: no input.
-     * Output: optionally returns a message to display to the user, writes to the flashcard ArrayList.
+     * Input: callback told the progress of the save.
+     * Output: optionally returns a warning to display to the user, writes to the flashcard database.
      */
-    private Optional<String> loadFlashcardsRoutine() {
+    private Optional<String> saveFlashcardsRoutine(ProgressCallback progress) {
         try {
-            flashcards = database.readFlashcards();
-            return Optional.of("Read Flashcards.");
-        } catch (DatabaseFormatException e) {
-            return Optional.of("Warning: Database file is improperly formatted; please delete " + DATABASE_FILENAME);
-        } catch (DatabaseReadException e) {
-            return Optional.of("Cannot read from " + database.filepath + "\nDoes it exist?");
-        } catch (IOException e) {
-            displayException(e);
+            core.save(progress);
             return Optional.empty();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Optional.of("Could not save flashcards due to error.");
+        } catch (DatabaseWriteException e) {
+            return Optional.of("Cannot write to " + core.getDatabasePath());
         }
     }
     
+    /*
+     * exportFlashcardsRoutine writes the flashcards matching a query to the export file.
+     *
+     * Input: text of the query, and a callback told the number of flashcards written and the count.
+     * Output: message to show the user.
+     */
+    private String exportFlashcardsRoutine(String text, ProgressCallback progress) throws QueryFormatException {
+        try {
+            int exported = core.exportFlashcards(text, progress);
+            return "Exported " + exported + (exported == 1 ? " flashcard" : " flashcards") + " to "
+                    + core.getExportPath();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return "Could not export flashcards due to error.";
+        } catch (DatabaseWriteException e) {
+            return "Cannot write to " + core.getExportPath();
+        }
+    }
+
     /*
      * main is the entry point to the program. It initializes an Arion class, and
      * catches exceptions so they are displayed to the user.
+     * With --server, it runs a StudyServer instead of displaying a window, and with --sync, it
+     * synchronizes two replicas of a deck.
      *
-     * Input: command line arguments.
+     * Input: command line arguments: optionally --server or --sync, followed by their arguments.
      * Output: no output.
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--server")) {
+            server.StudyServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--sync")) {
+            try {
+                sync.DeckSync.main(Arrays.copyOfRange(args, 1, args.length));
+            } catch (DatabaseFormatException | DatabaseWriteException e) {
+                System.err.println("Could not synchronize: " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
         try {
             Arion arion = new Arion();
         } catch (Exception e) {
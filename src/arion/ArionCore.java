@@ -0,0 +1,1181 @@
+package arion;
+
+import callback.ProgressCallback;
+import exception.*;
+
+import java.io.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/*
+ * ArionCore is the part of Arion that does not depend on a display.
+ * It owns a deck and its database, review log, scheduling parameters, and study session, and
+ * provides the load, save, add, edit, delete, sort, query, export, statistics, and study operations
+ * Arion offers.
+ * It never touches java.awt or javax.swing, so it can be used from batch jobs and servers, and
+ * constructing it only reads the small scheduling parameter file.
+ * Errors are thrown to the caller instead of being displayed.
+ * Every method may be called from many threads, except startSession, getSession, and reviewCurrent,
+ * which manage a single study session; concurrent learners use createSession and review instead.
+ */
+
+public class ArionCore {
+    private final static String DATABASE_FILENAME = "flashcards.txt";
+    private final static String REVIEW_LOG_DIRECTORY = "reviews";
+    private final static String SCHEDULER_FILENAME = "scheduler.txt";
+    private final static String SESSION_FILENAME = "session.bin";
+    private final static String DELETIONS_FILENAME = "deleted.txt";
+    private final static String EXPORT_FILENAME = "export.txt";
+    private final static String STATS_FILENAME = "stats.txt";
+    private final static int MERGE_PROGRESS_SIZE = 4096; // smallest merge reported to a progress callback
+
+    private Database database;
+    private ReviewLog reviewLog;
+    private String schedulerFilepath;
+    private String sessionFilepath;
+    private String deletionsFilepath;
+    private String exportFilepath;
+    private String statsFilepath;
+
+    private volatile SchedulerParameters schedulerParameters;
+    private Deck flashcards = new Deck();
+    private Optional<SessionQueue> sessionOption = Optional.empty();
+    private ReviewQueue reviewQueue;
+    private DeckDigest digest = new DeckDigest(flashcards);
+    // each index is built the first time it is needed, under its own lock
+    private Lazy<SearchIndex> searchIndex = new Lazy<>(() -> new SearchIndex(flashcards, true));
+    private Lazy<DuplicateIndex> duplicateIndex = new Lazy<>(() -> new DuplicateIndex(flashcards));
+    private Lazy<FrontIndex> frontIndex = new Lazy<>(() -> new FrontIndex(flashcards));
+    private Lazy<TagIndex> tagIndex = new Lazy<>(() -> new TagIndex(flashcards));
+    private Lazy<DueIndex> dueIndex = new Lazy<>(() -> new DueIndex(flashcards));
+    private Lazy<DeckStats> deckStats = new Lazy<>(() -> {
+        try {
+            return new DeckStats(flashcards, reviewLog);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // unwrapped by getDeckStats
+        }
+    });
+    private Lazy<QueryPlanner> queryPlanner = new Lazy<>(() -> new QueryPlanner(flashcards,
+            () -> getDueIndex(), () -> getTagIndex(), () -> getSearchIndex()));
+
+    /*
+     * The MergeResult class counts what merging a list of flashcards into the deck did.
+     */
+    public static class MergeResult {
+        public final int added;
+        public final int updated; // existing flashcards given a new back
+        public final int unchanged; // existing flashcards that already had the back
+        public final int[] skippedRows; // improperly formatted rows, in ascending order
+
+        private MergeResult(int added, int updated, int unchanged, int[] skippedRows) {
+            this.added = added;
+            this.updated = updated;
+            this.unchanged = unchanged;
+            this.skippedRows = skippedRows;
+        }
+    }
+
+    /*
+     * The constructor opens the deck stored in the given directory.
+     * The flashcards are not read until load is called.
+     *
+     * Input: directory holding the deck's files.
+     * Output: new ArionCore class.
+     */
+    public ArionCore(String directory) {
+        if (directory == null) {
+            throw new NullPointerException("Cannot construct ArionCore with null directory.");
+        }
+
+        database = new Database(new File(directory, DATABASE_FILENAME).getPath());
+        reviewLog = new ReviewLog(new File(directory, REVIEW_LOG_DIRECTORY).getPath());
+        schedulerFilepath = new File(directory, SCHEDULER_FILENAME).getPath();
+        sessionFilepath = new File(directory, SESSION_FILENAME).getPath();
+        deletionsFilepath = new File(directory, DELETIONS_FILENAME).getPath();
+        exportFilepath = new File(directory, EXPORT_FILENAME).getPath();
+        statsFilepath = new File(directory, STATS_FILENAME).getPath();
+        schedulerParameters = SchedulerParameters.read(schedulerFilepath).orElse(SchedulerParameters.DEFAULT);
+        reviewQueue = new ReviewQueue(flashcards, reviewLog, () -> schedulerParameters);
+    }
+
+    /*
+     * getDeck returns the deck of flashcards.
+     *
+     * Input: no input.
+     * Output: the deck.
+     */
+    public Deck getDeck() {
+        return flashcards;
+    }
+
+    /*
+     * getDatabasePath returns the path of the database file.
+     *
+     * Input: no input.
+     * Output: path of the database file.
+     */
+    public String getDatabasePath() {
+        return database.filepath;
+    }
+
+    /*
+     * getSchedulerParameters returns the scheduling parameters of the deck.
+     *
+     * Input: no input.
+     * Output: scheduling parameters.
+     */
+    public SchedulerParameters getSchedulerParameters() {
+        return schedulerParameters;
+    }
+
+    /*
+     * getDigest returns the Merkle tree digest of the deck, used to synchronize it with other replicas.
+     *
+     * Input: no input.
+     * Output: the deck's digest.
+     */
+    public DeckDigest getDigest() {
+        return digest;
+    }
+
+    /*
+     * getSearchIndex returns the full-text index of the deck, building it the first time it is needed.
+     * Once built, it is kept up to date as the deck changes.
+     *
+     * Input: no input.
+     * Output: the deck's search index.
+     */
+    public SearchIndex getSearchIndex() {
+        return searchIndex.get();
+    }
+
+    /*
+     * getDuplicateIndex returns the near-duplicate index of the deck, building it the first time it is
+     * needed. Once built, it is kept up to date as the deck changes.
+     *
+     * Input: no input.
+     * Output: the deck's duplicate index.
+     */
+    public DuplicateIndex getDuplicateIndex() {
+        return duplicateIndex.get();
+    }
+
+    /*
+     * getBuiltDuplicateIndex returns the near-duplicate index of the deck if it was built, without
+     * building it or waiting for it, for callers that cannot wait, such as the event dispatch thread.
+     *
+     * Input: no input.
+     * Output: optionally the deck's duplicate index.
+     */
+    public Optional<DuplicateIndex> getBuiltDuplicateIndex() {
+        return duplicateIndex.ifBuilt();
+    }
+
+    /*
+     * getFrontIndex returns the index of the deck's flashcards by normalized front, building it the first
+     * time it is needed. Once built, it is kept up to date as the deck changes.
+     *
+     * Input: no input.
+     * Output: the deck's front index.
+     */
+    public FrontIndex getFrontIndex() {
+        return frontIndex.get();
+    }
+
+    /*
+     * getTagIndex returns the index of the deck's flashcards by tag, building it the first time it is
+     * needed. Once built, it is kept up to date as the deck changes.
+     *
+     * Input: no input.
+     * Output: the deck's tag index.
+     */
+    public TagIndex getTagIndex() {
+        return tagIndex.get();
+    }
+
+    /*
+     * getDueIndex returns the index of the deck's flashcards by review date, building it the first
+     * time it is needed. Once built, it is kept up to date as the deck changes.
+     *
+     * Input: no input.
+     * Output: the deck's due index.
+     */
+    public DueIndex getDueIndex() {
+        return dueIndex.get();
+    }
+
+    /*
+     * getDeckStats returns the statistics of the deck and its reviews, building them the first time they
+     * are needed, which reads the review log. Once built, they are kept up to date as the deck changes.
+     *
+     * Input: no input.
+     * Output: the deck's statistics.
+     */
+    public DeckStats getDeckStats() throws IOException {
+        try {
+            return deckStats.get();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /*
+     * getQueryPlanner returns the planner running queries over the deck. It builds the indexes a query
+     * can use the first time such a query is run.
+     *
+     * Input: no input.
+     * Output: the deck's query planner.
+     */
+    public QueryPlanner getQueryPlanner() {
+        return queryPlanner.get();
+    }
+
+    /*
+     * getExportPath returns the path of the file exportFlashcards writes.
+     *
+     * Input: no input.
+     * Output: path of the export file.
+     */
+    public String getExportPath() {
+        return exportFilepath;
+    }
+
+    /*
+     * getStatsPath returns the path of the file exportStats writes.
+     *
+     * Input: no input.
+     * Output: path of the statistics file.
+     */
+    public String getStatsPath() {
+        return statsFilepath;
+    }
+
+    /*
+     * exportStats writes the statistics report of the deck, followed by the summaries it is made from,
+     * so they can be read by other tools or merged with the statistics of another deck.
+     *
+     * Input: no input.
+     * Output: no return value, writes the statistics file.
+     */
+    public void exportStats() throws IOException {
+        DeckStats stats = getDeckStats();
+        StringBuilder builder = new StringBuilder(stats.report(LocalDate.now()));
+        builder.append(String.format("%n"));
+        stats.format(builder);
+        try (PrintWriter writer = new PrintWriter(statsFilepath)) {
+            writer.print(builder);
+        }
+    }
+
+    /*
+     * query finds the flashcards matching a query, as described in DeckQuery.
+     *
+     * Input: text of the query.
+     * Output: the matching flashcards, and the plan that found them.
+     */
+    public QueryPlanner.Result query(String text) throws QueryFormatException {
+        if (text == null) {
+            throw new NullPointerException("Cannot run null query.");
+        }
+        return getQueryPlanner().run(DeckQuery.parse(text));
+    }
+
+    /*
+     * exportFlashcards writes the flashcards matching a query, in deck order, to the export file in the
+     * database format, so they can be loaded as a deck of their own.
+     *
+     * Input: text of the query, and a callback told the number of flashcards written and the count.
+     * Output: number of flashcards exported.
+     */
+    public int exportFlashcards(String text, ProgressCallback progress)
+            throws QueryFormatException, IOException, DatabaseWriteException {
+        if (text == null || progress == null) {
+            throw new NullPointerException("Cannot export flashcards with null parameters.");
+        }
+        ArrayList<Flashcard> exported = inDeckOrder(query(text).ids);
+        new Database(exportFilepath).writeFlashcards(exported, progress);
+        return exported.size();
+    }
+
+    /*
+     * load replaces the flashcards in memory with the flashcards in the database, and the recorded
+     * deletions with the deletions saved alongside it.
+     *
+     * Input: no input.
+     * Output: no return value, modifies the deck.
+     */
+    public void load() throws IOException, DatabaseFormatException, DatabaseReadException {
+        load(ProgressCallback.NONE);
+    }
+
+    /*
+     * This load signature also reports the number of flashcards read so far.
+     * Cancelling through the progress callback leaves the deck unchanged.
+     *
+     * Input: callback told the number of flashcards read and the flashcard count.
+     * Output: no return value, modifies the deck.
+     */
+    public void load(ProgressCallback progress) throws IOException, DatabaseFormatException, DatabaseReadException {
+        try {
+            ArrayList<Flashcard> loaded = database.readFlashcards(progress);
+            digest.readDeletions(deletionsFilepath);
+            flashcards.replaceAll(loaded);
+        } catch (NumberFormatException e) {
+            throw new DatabaseFormatException("Database header is not a flashcard count.");
+        }
+    }
+
+    /*
+     * loadDueFirst loads the deck like load, but first puts the flashcards due today in the deck, read
+     * through the database's due index, so they can be studied while the rest of the deck is read.
+     * The flashcards put in early are kept once the whole deck is read, along with any reviews made
+     * meanwhile. If the load fails after that, the deck is put back as it was before the load, so part
+     * of the deck is never mistaken for the whole deck.
+     * Until the whole deck is read, only the due flashcards should be studied; nothing else should
+     * read or change the deck.
+     *
+     * Input: callback told the number of flashcards read and the flashcard count, and callback run
+     * once the due flashcards are in the deck; without a usable due index, it runs once the whole
+     * deck is read.
+     * Output: no return value, modifies the deck.
+     */
+    public void loadDueFirst(ProgressCallback progress, Runnable dueLoaded)
+            throws IOException, DatabaseFormatException, DatabaseReadException {
+        if (progress == null || dueLoaded == null) {
+            throw new NullPointerException("Cannot load with null callbacks.");
+        }
+
+        Optional<ArrayList<Flashcard>> dueOption = database.readDueFlashcards(LocalDate.now());
+        if (dueOption.isEmpty()) {
+            load(progress);
+            dueLoaded.run();
+            return;
+        }
+
+        ArrayList<Flashcard> previous = flashcards.snapshot();
+        flashcards.replaceAll(dueOption.get());
+        dueLoaded.run();
+
+        boolean loaded = false;
+        try {
+            ArrayList<Flashcard> all = database.readFlashcards(progress);
+            digest.readDeletions(deletionsFilepath);
+
+            // keep the flashcards that are already in the deck, since they may have been reviewed
+            for (int i = 0; i < all.size(); i++) {
+                Optional<Flashcard> publishedOption = flashcards.find(all.get(i).id);
+                if (publishedOption.isPresent()) {
+                    all.set(i, publishedOption.get());
+                }
+            }
+            flashcards.replaceAll(all);
+            loaded = true;
+        } catch (NumberFormatException e) {
+            throw new DatabaseFormatException("Database header is not a flashcard count.");
+        } finally {
+            if (!loaded) {
+                flashcards.replaceAll(previous);
+            }
+        }
+    }
+
+    /*
+     * save writes the flashcards in memory to the database, and the recorded deletions alongside it,
+     * and flushes the review log.
+     *
+     * Input: no input.
+     * Output: no return value, writes to the database.
+     */
+    public void save() throws IOException, DatabaseWriteException {
+        save(ProgressCallback.NONE);
+    }
+
+    /*
+     * This save signature also reports the number of flashcards written so far.
+     * It should not be cancelled, since the database would be left partly written.
+     *
+     * Input: callback told the number of flashcards written and the flashcard count.
+     * Output: no return value, writes to the database.
+     */
+    public synchronized void save(ProgressCallback progress) throws IOException, DatabaseWriteException {
+        reviewQueue.awaitApplied();
+        database.writeFlashcards(flashcards.snapshot(), progress);
+        digest.writeDeletions(deletionsFilepath);
+        reviewLog.flush();
+    }
+
+    /*
+     * addFlashcard appends a flashcard to the deck.
+     * The flashcard is represented as a String array containing either the front and back,
+     * or all four fields, optionally followed by the tags.
+     *
+     * Input: String array representing a flashcard.
+     * Output: the added flashcard.
+     */
+    public Flashcard addFlashcard(String[] fields) throws DateFormatException, IntervalFormatException {
+        if (fields == null) {
+            throw new NullPointerException("Cannot add null fields.");
+        }
+        if (fields.length < 2 || fields.length > Flashcard.TAGGED_FIELD_COUNT) {
+            String msg = "Could not construct flashcards because field array is improperly sized.";
+            throw new IllegalArgumentException(msg);
+        }
+
+        Flashcard flashcard = Flashcard.fromStringArray(fields);
+        flashcards.add(flashcard);
+        return flashcard;
+    }
+
+    /*
+     * addFlashcards appends many flashcards to the deck in one structural operation.
+     * Each row is a String array containing either the front and back, or all four fields,
+     * optionally followed by the tags. Every row is validated first; rows that cannot be parsed are
+     * skipped and the valid rows are still added, then a BatchFormatException lists the skipped rows.
+     *
+     * Input: array of String arrays, each representing a flashcard.
+     * Output: the added flashcards.
+     */
+    public ArrayList<Flashcard> addFlashcards(String[][] fieldsList) throws BatchFormatException {
+        if (fieldsList == null) {
+            throw new NullPointerException("Cannot add null fields.");
+        }
+
+        Flashcard.Parser parser = new Flashcard.Parser();
+        ArrayList<Flashcard> added = new ArrayList<>(fieldsList.length);
+        ArrayList<Integer> invalidRows = new ArrayList<>();
+        for (int row = 0; row < fieldsList.length; row++) {
+            try {
+                added.add(parser.parse(fieldsList[row]));
+            } catch (DateFormatException | IntervalFormatException | IllegalArgumentException e) {
+                invalidRows.add(row);
+            }
+        }
+
+        flashcards.addAll(added);
+        if (!invalidRows.isEmpty()) {
+            throw new BatchFormatException(toIntArray(invalidRows), "Skipped improperly formatted rows.");
+        }
+        return added;
+    }
+
+    /*
+     * mergeFlashcards merges a list of flashcards into the deck, such as an updated vocabulary list.
+     * A row whose front matches the front of a flashcard in the deck, after normalization, replaces
+     * that flashcard's back, adds the row's tags to the flashcard's tags, and keeps its review date and
+     * interval; other rows are added in one structural operation. When several rows have the same front,
+     * the last back wins and the tags of every row are kept. Rows are matched in one pass, and each
+     * stripe of the deck is locked once for all the updates.
+     * Each row is a String array containing either the front and back, or all four fields, optionally
+     * followed by the tags; rows that cannot be parsed are skipped.
+     *
+     * Input: array of String arrays, each representing a flashcard.
+     * Output: the numbers of flashcards added, updated, and unchanged, and the skipped rows.
+     */
+    public MergeResult mergeFlashcards(String[][] fieldsList) {
+        if (fieldsList == null) {
+            throw new NullPointerException("Cannot merge null fields.");
+        }
+
+        Flashcard.Parser parser = new Flashcard.Parser();
+        Flashcard[] parsed = new Flashcard[fieldsList.length];
+        String[] fronts = new String[fieldsList.length];
+        ArrayList<Integer> invalidRows = new ArrayList<>();
+        for (int row = 0; row < fieldsList.length; row++) {
+            try {
+                parsed[row] = parser.parse(fieldsList[row]);
+                fronts[row] = parsed[row].front;
+            } catch (DateFormatException | IntervalFormatException | IllegalArgumentException e) {
+                invalidRows.add(row);
+                fronts[row] = "";
+            }
+        }
+        ArrayList<Optional<Long>> existing = getFrontIndex().findAll(fronts);
+
+        // the last row for each existing flashcard, and the new flashcard for each new front
+        LongIntMap lastRowOf = new LongIntMap(fieldsList.length);
+        long[] updatedIds = new long[fieldsList.length];
+        int updatedCount = 0;
+        HashMap<String, Flashcard> addedByFront = new HashMap<>();
+        ArrayList<Flashcard> added = new ArrayList<>();
+        for (int row = 0; row < fieldsList.length; row++) {
+            if (parsed[row] == null) {
+                continue;
+            }
+            if (existing.get(row).isPresent()) {
+                long id = existing.get(row).get();
+                int last = lastRowOf.get(id);
+                if (last == LongIntMap.MISSING) {
+                    updatedIds[updatedCount++] = id;
+                } else {
+                    parsed[row].tags = Flashcard.unionTags(parsed[last].tags, parsed[row].tags);
+                }
+                lastRowOf.put(id, row);
+                continue;
+            }
+            String front = FrontIndex.normalize(parsed[row].front);
+            Flashcard earlier = addedByFront.get(front);
+            if (earlier == null) {
+                addedByFront.put(front, parsed[row]);
+                added.add(parsed[row]);
+            } else {
+                earlier.back = parsed[row].back;
+                earlier.tags = Flashcard.unionTags(earlier.tags, parsed[row].tags);
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        boolean[] changed = new boolean[updatedCount];
+        flashcards.updateAll(updatedIds, updatedCount, (int i, Flashcard flashcard) -> {
+            Flashcard row = parsed[lastRowOf.get(updatedIds[i])];
+            String[] tags = Flashcard.unionTags(flashcard.tags, row.tags);
+            if (!flashcard.back.equals(row.back) || tags != flashcard.tags) {
+                flashcard.back = row.back;
+                flashcard.tags = tags;
+                flashcard.modified = now;
+                changed[i] = true;
+            }
+        });
+        long[] changedIds = new long[updatedCount];
+        int changedCount = 0;
+        for (int i = 0; i < updatedCount; i++) {
+            if (changed[i]) {
+                changedIds[changedCount++] = updatedIds[i];
+            }
+        }
+        flashcards.events().publish(DeckChanges.Change.EDITED, changedIds, changedCount);
+        flashcards.addAll(added);
+        return new MergeResult(added.size(), changedCount, updatedCount - changedCount, toIntArray(invalidRows));
+    }
+
+    /*
+     * editFlashcard edits a flashcard at a given index, replacing its fields with the fields
+     * given by the String array. The flashcard keeps its identifier, and only its stripe of the
+     * deck is locked while it is edited. The tags are replaced too if they follow the fields.
+     *
+     * Input: the index of the flashcard to edit, the new fields of the flashcards.
+     * Output: no return value, modifies the deck.
+     */
+    public void editFlashcard(int index, String[] fields) throws DateFormatException, IntervalFormatException {
+        if (fields == null) {
+            throw new NullPointerException("Null flashcard fields when trying to edit flashcard #" + (index + 1));
+        }
+        if (fields.length != Flashcard.FIELD_COUNT && fields.length != Flashcard.TAGGED_FIELD_COUNT) {
+            throw new IllegalArgumentException("Editing flashcards requires four fields.");
+        }
+        if (index < 0 || index >= flashcards.size()) {
+            throw new IllegalArgumentException("Invalid index.");
+        }
+
+        Flashcard edited = Flashcard.fromStringArray(fields);
+        boolean tagged = fields.length == Flashcard.TAGGED_FIELD_COUNT;
+        long id = flashcards.get(index).id;
+        if (flashcards.update(id, (Flashcard flashcard) -> applyEdit(flashcard, edited, tagged))) {
+            flashcards.events().publish(DeckChanges.Change.EDITED, id);
+        }
+    }
+
+    /*
+     * editFlashcards edits many flashcards, replacing the fields of the flashcard at each index with
+     * the matching row of fields, and its tags if they follow the fields. The indices are resolved in one
+     * read of the deck, then the flashcards are edited as by editFlashcardsById.
+     *
+     * Input: indices of the flashcards to edit, the new fields of each flashcard.
+     * Output: no return value, modifies the deck.
+     */
+    public void editFlashcards(int[] indices, String[][] fieldsList) throws BatchFormatException {
+        if (indices == null || fieldsList == null) {
+            throw new NullPointerException("Cannot edit flashcards with null parameters.");
+        }
+        editFlashcardsById(flashcards.idsAt(indices), fieldsList);
+    }
+
+    /*
+     * editFlashcardsById edits many flashcards, replacing the fields of the flashcard with each identifier
+     * with the matching row of fields, and its tags if they follow the fields. Each stripe of the deck is
+     * locked once for the whole batch, and flashcards no longer in the deck are skipped.
+     * Every row is validated first; rows that cannot be parsed are skipped and the valid rows are
+     * still applied, then a BatchFormatException lists the positions of the skipped rows.
+     *
+     * Input: identifiers of the flashcards to edit, the new fields of each flashcard.
+     * Output: no return value, modifies the deck.
+     */
+    public void editFlashcardsById(long[] ids, String[][] fieldsList) throws BatchFormatException {
+        if (ids == null || fieldsList == null) {
+            throw new NullPointerException("Cannot edit flashcards with null parameters.");
+        }
+        if (ids.length != fieldsList.length) {
+            throw new IllegalArgumentException("Each edited flashcard requires one row of fields.");
+        }
+
+        Flashcard.Parser parser = new Flashcard.Parser();
+        Flashcard[] edited = new Flashcard[ids.length];
+        long[] validIds = new long[ids.length];
+        int[] validRows = new int[ids.length];
+        int validCount = 0;
+        ArrayList<Integer> invalidRows = new ArrayList<>();
+        for (int row = 0; row < ids.length; row++) {
+            if (fieldsList[row] == null || (fieldsList[row].length != Flashcard.FIELD_COUNT
+                    && fieldsList[row].length != Flashcard.TAGGED_FIELD_COUNT)) {
+                throw new IllegalArgumentException("Editing flashcards requires four fields.");
+            }
+            try {
+                edited[row] = parser.parse(fieldsList[row]);
+                validIds[validCount] = ids[row];
+                validRows[validCount] = row;
+                validCount++;
+            } catch (DateFormatException | IntervalFormatException e) {
+                invalidRows.add(row);
+            }
+        }
+
+        boolean[] found = new boolean[validCount];
+        flashcards.updateAll(validIds, validCount, (int i, Flashcard flashcard) -> {
+            int row = validRows[i];
+            applyEdit(flashcard, edited[row], fieldsList[row].length == Flashcard.TAGGED_FIELD_COUNT);
+            found[i] = true;
+        });
+        int foundCount = 0;
+        for (int i = 0; i < validCount; i++) {
+            if (found[i]) {
+                validIds[foundCount++] = validIds[i];
+            }
+        }
+        flashcards.events().publish(DeckChanges.Change.EDITED, validIds, foundCount);
+        if (!invalidRows.isEmpty()) {
+            throw new BatchFormatException(toIntArray(invalidRows), "Skipped improperly formatted rows.");
+        }
+    }
+
+    /*
+     * editFlashcardById edits the flashcard with the given identifier, replacing its fields with
+     * the fields given by the String array, and its tags if they follow the fields.
+     *
+     * Input: the identifier of the flashcard to edit, the new fields of the flashcard.
+     * Output: whether the flashcard is in the deck.
+     */
+    public boolean editFlashcardById(long id, String[] fields) throws DateFormatException, IntervalFormatException {
+        if (fields == null) {
+            throw new NullPointerException("Null flashcard fields when trying to edit flashcard " + id);
+        }
+        if (fields.length != Flashcard.FIELD_COUNT && fields.length != Flashcard.TAGGED_FIELD_COUNT) {
+            throw new IllegalArgumentException("Editing flashcards requires four fields.");
+        }
+
+        Flashcard edited = Flashcard.fromStringArray(fields);
+        boolean tagged = fields.length == Flashcard.TAGGED_FIELD_COUNT;
+        boolean found = flashcards.update(id, (Flashcard flashcard) -> applyEdit(flashcard, edited, tagged));
+        if (found) {
+            flashcards.events().publish(DeckChanges.Change.EDITED, id);
+        }
+        return found;
+    }
+
+    /*
+     * applySyncRecords applies the records that won a synchronization with another replica.
+     * Flashcards are replaced or added with the record's fields, tags, and modification time, and deletions
+     * are recorded with the time they were made before the flashcard is removed. Every record is parsed
+     * before any is applied, so an incorrectly formatted record leaves the deck as it was.
+     *
+     * Input: winning records.
+     * Output: no return value, modifies the deck.
+     */
+    public void applySyncRecords(ArrayList<SyncRecord> records) throws DatabaseFormatException {
+        if (records == null) {
+            throw new NullPointerException("Cannot apply null sync records.");
+        }
+
+        Flashcard.Parser parser = new Flashcard.Parser();
+        Flashcard[] received = new Flashcard[records.size()];
+        long[] receivedIds = new long[records.size()];
+        int receivedCount = 0;
+        long[] deletedIds = new long[records.size()];
+        int deletedCount = 0;
+        for (SyncRecord record : records) {
+            if (record.deleted) {
+                deletedIds[deletedCount++] = record.id;
+                continue;
+            }
+            try {
+                received[receivedCount] = record.toFlashcard(parser);
+            } catch (DateFormatException | IntervalFormatException e) {
+                throw new DatabaseFormatException("Received incorrectly formatted flashcard " + record.id);
+            }
+            receivedIds[receivedCount++] = record.id;
+        }
+
+        boolean[] found = new boolean[receivedCount];
+        flashcards.updateAll(receivedIds, receivedCount, (int i, Flashcard flashcard) -> {
+            applyEdit(flashcard, received[i], true);
+            found[i] = true;
+        });
+        ArrayList<Flashcard> added = new ArrayList<>();
+        int editedCount = 0;
+        for (int i = 0; i < receivedCount; i++) {
+            if (found[i]) {
+                receivedIds[editedCount++] = receivedIds[i];
+            } else {
+                added.add(received[i]);
+            }
+        }
+        flashcards.events().publish(DeckChanges.Change.EDITED, receivedIds, editedCount);
+        flashcards.addAll(added);
+
+        for (SyncRecord record : records) {
+            if (record.deleted) {
+                digest.recordDeletion(record.id, record.modified);
+            }
+        }
+        flashcards.removeIds(Arrays.copyOf(deletedIds, deletedCount));
+    }
+
+    /*
+     * deleteFlashcardsById deletes the flashcards with the given identifiers.
+     *
+     * Input: identifiers of the flashcards to delete.
+     * Output: number of flashcards deleted.
+     */
+    public int deleteFlashcardsById(long[] ids) {
+        if (ids == null) {
+            throw new NullPointerException("Null array when trying to delete flashcards.");
+        }
+        return flashcards.removeIds(ids);
+    }
+
+    /*
+     * deleteFlashcards deletes the flashcards at the indices provided in an array.
+     * The deck checks that the indices ascend, then removes them all in one structural operation.
+     *
+     * Input: ascending array of indices at which to delete flashcards.
+     * Output: no return value, modifies the deck.
+     */
+    public void deleteFlashcards(int[] indices) {
+        if (indices == null) {
+            throw new NullPointerException("Null array when trying to delete flashcard.");
+        }
+        flashcards.removeIndices(indices);
+    }
+
+    /*
+     * sortFlashcards sorts the deck by the given field and whether to reverse it.
+     *
+     * Input: field to sort the flashcards by, and whether to reverse the list.
+     * Output: no return value, modifies the deck.
+     */
+    public void sortFlashcards(Flashcard.Field field, boolean reversed) {
+        sortFlashcards(field, reversed, ProgressCallback.NONE);
+    }
+
+    /*
+     * This sortFlashcards signature also reports the progress of the sort.
+     * A snapshot of the deck is sorted without locking it, so the deck can be read and edited
+     * meanwhile, and the sorted order is then applied in one structural operation. If flashcards were
+     * added or removed during the sort, the deck is sorted again while it is locked.
+     * Cancelling through the progress callback leaves the deck unchanged.
+     *
+     * Input: field to sort the flashcards by, whether to reverse the list, and a callback told the
+     * number of flashcards merged and an estimate of the total.
+     * Output: no return value, modifies the deck.
+     */
+    public void sortFlashcards(Flashcard.Field field, boolean reversed, ProgressCallback progress) {
+        if (field == null || progress == null) {
+            throw new NullPointerException("Cannot sort with null field or progress callback.");
+        }
+
+        ArrayList<Flashcard> snapshot = flashcards.snapshot();
+        if (snapshot.size() < 2) {
+            return;
+        }
+        int levels = 64 - Long.numberOfLeadingZeros(snapshot.size() - 1); // ceiling of the base 2 logarithm
+        long total = (long) snapshot.size() * Math.max(levels - 1, 1);
+        long[] merged = new long[1];
+        Flashcard[] sorted = mergeSort(snapshot.toArray(new Flashcard[] {}), field, reversed, 0, snapshot.size(),
+                progress, merged, total);
+        progress.run(total, total);
+
+        flashcards.restructure((ArrayList<Flashcard> list) -> {
+            Flashcard[] newFlashcards = sorted;
+            if (!holdsSame(list, snapshot)) {
+                Flashcard[] oldFlashcards = list.toArray(new Flashcard[] {});
+                newFlashcards = mergeSort(oldFlashcards, field, reversed, 0, list.size(),
+                        ProgressCallback.NONE, new long[1], 0);
+            }
+            for (int i = 0; i < newFlashcards.length; i++) {
+                list.set(i, newFlashcards[i]);
+            }
+        });
+    }
+
+    /*
+     * holdsSame checks whether two lists hold the same flashcard objects in the same order.
+     *
+     * Input: the two lists.
+     * Output: whether they hold the same flashcards.
+     */
+    private static boolean holdsSame(ArrayList<Flashcard> first, ArrayList<Flashcard> second) {
+        if (first.size() != second.size()) {
+            return false;
+        }
+        for (int i = 0; i < first.size(); i++) {
+            if (first.get(i) != second.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * startSession starts a study session over the due flashcards.
+     * If a session was saved by saveSession, that session is resumed instead.
+     *
+     * Input: no input.
+     * Output: the study session, which is empty if no flashcards are due.
+     */
+    public SessionQueue startSession() {
+        Optional<SessionQueue> resumedOption = readSavedSession();
+        if (resumedOption.isPresent() && !resumedOption.get().isEmpty()) {
+            sessionOption = resumedOption;
+        } else {
+            sessionOption = Optional.of(createSession());
+        }
+        return sessionOption.get();
+    }
+
+    /*
+     * This startSession signature only studies the due flashcards matching a tag filter, as TagIndex
+     * reads it. A saved session is not resumed, since it may hold flashcards outside the filter; it is
+     * kept for the next unfiltered startSession.
+     *
+     * Input: the tag filter.
+     * Output: the study session, which is empty if no matching flashcards are due.
+     */
+    public SessionQueue startSession(String tagFilter) {
+        if (tagFilter == null) {
+            throw new NullPointerException("Cannot start session with null tag filter.");
+        }
+        ArrayList<Flashcard> due = findDueFlashcards();
+        long[] ids = new long[due.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = due.get(i).id;
+        }
+        boolean[] matches = getTagIndex().matches(ids, tagFilter);
+        ArrayList<Flashcard> matching = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (matches[i]) {
+                matching.add(due.get(i));
+            }
+        }
+        sessionOption = Optional.of(new SessionQueue(matching, schedulerParameters.getRelearningSteps()));
+        return sessionOption.get();
+    }
+
+    /*
+     * startQuerySession starts a study session over the flashcards matching a query, in deck order,
+     * whether they are due or not, replacing the current session. A saved session is not resumed.
+     *
+     * Input: text of the query.
+     * Output: the study session, which is empty if no flashcards match.
+     */
+    public SessionQueue startQuerySession(String text) throws QueryFormatException {
+        ArrayList<Flashcard> matching = inDeckOrder(query(text).ids);
+        sessionOption = Optional.of(new SessionQueue(matching, schedulerParameters.getRelearningSteps()));
+        return sessionOption.get();
+    }
+
+    /*
+     * createSession creates a new study session over the due flashcards, without affecting the
+     * session managed by startSession. Each session is only safe to use from one thread at a time.
+     *
+     * Input: no input.
+     * Output: new study session, which is empty if no flashcards are due.
+     */
+    public SessionQueue createSession() {
+        return new SessionQueue(findDueFlashcards(), schedulerParameters.getRelearningSteps());
+    }
+
+    /*
+     * hasSavedSession checks whether a study session was saved by saveSession, to be resumed by the
+     * next startSession.
+     *
+     * Input: no input.
+     * Output: whether there is a saved session.
+     */
+    public boolean hasSavedSession() {
+        return new File(sessionFilepath).canRead();
+    }
+
+    /*
+     * getSession returns the current study session.
+     *
+     * Input: no input.
+     * Output: optionally the current study session.
+     */
+    public Optional<SessionQueue> getSession() {
+        return sessionOption;
+    }
+
+    /*
+     * reviewCurrent reviews the current flashcard of the study session, records the review in
+     * the review log, and advances the session.
+     * If the flashcard was deleted since the session started, it is only dequeued.
+     * The review is applied even if recording it fails; the IOException is thrown afterwards.
+     *
+     * Input: whether the user correctly reviewed the current flashcard.
+     * Output: no return value, modifies the flashcard and the session.
+     */
+    public void reviewCurrent(boolean success) throws IOException {
+        if (sessionOption.isEmpty() || sessionOption.get().isEmpty()) {
+            throw new IllegalStateException("Reviewed flashcard without a study session.");
+        }
+        SessionQueue session = sessionOption.get();
+        Flashcard flashcard = session.current();
+        session.review(success);
+        review(flashcard.id, success);
+    }
+
+    /*
+     * review reviews the flashcard with the given identifier and records the review in the log,
+     * waiting until the review has been applied.
+     *
+     * Input: identifier of the flashcard, and whether it was correctly reviewed.
+     * Output: whether the flashcard is in the deck.
+     */
+    public boolean review(long id, boolean success) throws IOException {
+        try {
+            return submitReview(id, success).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /*
+     * submitReview queues a review of the flashcard with the given identifier, without waiting for it.
+     * Reviews from every thread are applied in batches by the review queue's single writer.
+     *
+     * Input: identifier of the flashcard, and whether it was correctly reviewed.
+     * Output: future completed with whether the flashcard is in the deck once the review is recorded.
+     */
+    public CompletableFuture<Boolean> submitReview(long id, boolean success) {
+        return reviewQueue.submit(id, success);
+    }
+
+    /*
+     * optimizeScheduler fits the interval multiplicand to the review history, then uses and saves it.
+     *
+     * Input: no input.
+     * Output: optionally the result of the fit; nothing if there is not enough review history.
+     */
+    public Optional<SchedulerOptimizer.Result> optimizeScheduler() throws IOException {
+        reviewQueue.awaitApplied();
+        reviewLog.flush();
+        Optional<SchedulerOptimizer.Result> resultOption = SchedulerOptimizer.fit(reviewLog);
+        if (resultOption.isEmpty()) {
+            return resultOption;
+        }
+
+        schedulerParameters = schedulerParameters.withIntervalMultiplicand(
+                resultOption.get().parameters.intervalMultiplicand);
+        schedulerParameters.write(schedulerFilepath);
+        return resultOption;
+    }
+
+    /*
+     * saveSession writes the unfinished study session so it can be resumed by the next startSession.
+     * If there is no unfinished session, any previously saved session is deleted.
+     *
+     * Input: no input.
+     * Output: no return value, writes to the session file.
+     */
+    public void saveSession() throws IOException {
+        File file = new File(sessionFilepath);
+        if (sessionOption.isEmpty() || sessionOption.get().isEmpty()) {
+            file.delete();
+            return;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            sessionOption.get().write(out);
+        }
+    }
+
+    /*
+     * close applies the queued reviews, then flushes and closes the review log.
+     *
+     * Input: no input.
+     * Output: no return value.
+     */
+    public void close() throws IOException {
+        reviewQueue.close();
+        reviewLog.close();
+    }
+
+    /*
+     * applyEdit copies the fields of an edited flashcard into a flashcard of the deck, and its tags
+     * if they were edited too.
+     *
+     * Input: flashcard of the deck, the edited flashcard, whether the tags were edited.
+     * Output: no return value, modifies the flashcard.
+     */
+    private static void applyEdit(Flashcard flashcard, Flashcard edited, boolean tagged) {
+        flashcard.copyFields(edited);
+        if (tagged) {
+            flashcard.tags = edited.tags;
+        }
+    }
+
+    /*
+     * inDeckOrder finds the flashcards with the given identifiers, in deck order, with one pass over the deck.
+     *
+     * Input: identifiers of the flashcards.
+     * Output: the flashcards that are in the deck.
+     */
+    private ArrayList<Flashcard> inDeckOrder(long[] ids) {
+        LongIntMap wanted = new LongIntMap(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            wanted.put(ids[i], i);
+        }
+        ArrayList<Flashcard> found = new ArrayList<>(ids.length);
+        for (Flashcard flashcard : flashcards.snapshot()) {
+            if (wanted.get(flashcard.id) != LongIntMap.MISSING) {
+                found.add(flashcard);
+            }
+        }
+        return found;
+    }
+
+    /*
+     * findDueFlashcards finds the flashcards that are due, in deck order.
+     *
+     * Input: no input.
+     * Output: list of due flashcards.
+     */
+    private ArrayList<Flashcard> findDueFlashcards() {
+        ArrayList<Flashcard> dueFlashcards = new ArrayList<>();
+        for (Flashcard flashcard : flashcards.snapshot()) {
+            if (flashcard.isDue()) {
+                dueFlashcards.add(flashcard);
+            }
+        }
+        return dueFlashcards;
+    }
+
+    /*
+     * readSavedSession reads the session saved by saveSession, then deletes it so it is only resumed once.
+     * If there is no saved session or it cannot be read, nothing is returned.
+     *
+     * Input: no input.
+     * Output: optionally the saved study session.
+     */
+    private Optional<SessionQueue> readSavedSession() {
+        File file = new File(sessionFilepath);
+        if (!file.canRead()) {
+            return Optional.empty();
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return Optional.of(SessionQueue.read(in, flashcards.snapshot()));
+        } catch (IOException e) {
+            return Optional.empty();
+        } finally {
+            file.delete();
+        }
+    }
+
+    /*
+     * toIntArray converts a list of integers to an array.
+     *
+     * Input: list of integers.
+     * Output: array of the integers.
+     */
+    private static int[] toIntArray(ArrayList<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    /*
+     * mergeSort sorts the provided array by the given field and direction, between the provided start and end.
+     * It uses merge sort to ensure adequate performance even at large Flashcard lists (O(nlogn) vs O(n*n)).
+     *
+     * Large merges are reported to the progress callback.
+     *
+     * Input: flashcard array to sort, field to sort by, whether to sort in reversed order, the starting index,
+     * the number of elements to sort, the progress callback, a counter of the elements merged so far,
+     * and the estimated total to report with it.
+     * Output: a new array containing the elements in sorted order.
+     */
+    private static Flashcard[] mergeSort(Flashcard[] flashcards, Flashcard.Field field, boolean reversed,
+            int start, int len, ProgressCallback progress, long[] merged, long total) {
+        if (flashcards == null || field == null) {
+            throw new NullPointerException("Cannot merge sort with null parameters.");
+        }
+        if (start < 0 || start + len > flashcards.length || len < 1) {
+            throw new IllegalArgumentException("Parameters are out of bounds.");
+        }
+
+        if (len == 1) {
+            if (flashcards[start] == null) {
+                throw new NullPointerException("Cannot merges sort with null flashcards.");
+            }
+            return new Flashcard[] { flashcards[start] };
+        }
+        if (len == 2) {
+            Flashcard flashcard1 = flashcards[start];
+            Flashcard flashcard2 = flashcards[start + 1];
+            if (flashcard1 == null || flashcard2 == null) {
+                throw new NullPointerException("Cannot merge sort with null flashcards.");
+            }
+            if (flashcard1.compareTo(flashcard2, field, reversed)) {
+                return new Flashcard[] { flashcard1, flashcard2 };
+            }
+            else {
+                return new Flashcard[] { flashcard2, flashcard1 };
+            }
+        }
+
+        int mid = len / 2 + start;
+        Flashcard[] left = mergeSort(flashcards, field, reversed, start, len / 2, progress, merged, total);
+        Flashcard[] right = mergeSort(flashcards, field, reversed, mid, len - len / 2, progress, merged, total);
+
+        int leftIdx = 0;
+        int rightIdx = 0;
+        Flashcard[] sorted = new Flashcard[len];
+
+        for (int sortedIdx = 0; sortedIdx < sorted.length; sortedIdx++) {
+            boolean appendLeft;
+
+            // determine whether to append an element from the left or right half
+            if (leftIdx == left.length) {
+                appendLeft = false;
+            } else if (rightIdx == right.length) {
+                appendLeft = true;
+            } else if (left[leftIdx].compareTo(right[rightIdx], field, reversed)) {
+                appendLeft = true;
+            } else {
+                appendLeft = false;
+            }
+
+            // append the appropriate element
+            if (appendLeft) {
+                sorted[sortedIdx] = left[leftIdx++];
+            } else {
+                sorted[sortedIdx] = right[rightIdx++];
+            }
+        }
+
+        merged[0] += len;
+        if (len >= MERGE_PROGRESS_SIZE) {
+            progress.run(Math.min(merged[0], total), total);
+        }
+        return sorted;
+    }
+}
@@ -11,41 +11,114 @@ import arion.Flashcard;
 import callback.*;
 import exception.GuideDisplayException;
 import exception.MainPanelDisplayException;
+import exception.QueryFormatException;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.border.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableModel;
 
 import java.awt.*;
 import java.awt.event.*;
-import java.awt.image.BufferedImage;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Scanner;
-
-import javax.xml.parsers.*;
-import org.w3c.dom.*;
-import org.xml.sax.*;
+import java.util.concurrent.ExecutionException;
 
 public class ArionDisplay {
     JFrame frame;
 
     private Optional<Runnable> addCallbackOption = Optional.empty();
     private Optional<Runnable> studyCallbackOption = Optional.empty();
-    private Optional<EditCallback> editCallbackOption = Optional.empty();
+    private Optional<AddCallback> addFlashcardCallbackOption = Optional.empty();
+    private Optional<BatchAddCallback> batchAddCallbackOption = Optional.empty();
+    private Optional<SortCallback> sortCallbackOption = Optional.empty();
+    private Optional<BatchEditCallback> editCallbackOption = Optional.empty();
     private Optional<DeleteCallback> deleteCallbackOption = Optional.empty();
-    private Optional<ArrayList<Flashcard>> browseFlashcardsOption = Optional.empty();
+    private Optional<Deck> browseDeckOption = Optional.empty();
+    private Optional<DeckEventBus.Subscription> browseSubscriptionOption = Optional.empty();
+    private Optional<DeckTableModel> browseModelOption = Optional.empty();
+    private Optional<SearchIndex> browseSearchOption = Optional.empty();
+    private Optional<TagIndex> browseTagOption = Optional.empty();
+    private Optional<QueryPlanner> browsePlannerOption = Optional.empty();
+    private String browseQuery = ""; // query last entered in the query box
+    private JTextField browseSearchField = new JTextField();
+    private JTextField browseTagField = new JTextField();
+    private JTextField browseQueryField = new JTextField();
+    private JLabel browseSearchLabel = new JLabel();
+    private Timer browseSearchTimer; // runs the search once typing pauses
+    private long browseSearchGeneration = 0; // counts the searches started, so older results are dropped
+    private boolean browseSearchRunning = false;
+    private boolean browseSearchPending = false; // whether to search again once the running search ends
+
+    // screens are built once and kept in the registry; they are sized to the window, so
+    // they are built again after the window is resized
+    private final static String MAIN_SCREEN = "main";
+    private final static String ADD_SCREEN = "add";
+    private final static String BROWSE_SCREEN = "browse";
+    private final static String SORT_SCREEN = "sort";
+    private final static String SUCCESS_SCREEN = "success";
+    private ScreenRegistry screens = new ScreenRegistry();
+    private Dimension screenSize = new Dimension();
+
+    // changes to the deck are coalesced and shown at most once per frame
+    private final static int FRAME_MILLIS = 16;
+    private final static int BROWSE_SEARCH_LIMIT = 1000; // most search results shown in the browse table
+    private final static int BROWSE_SEARCH_DELAY = 150; // milliseconds of no typing before searching
 
     private final static String[] IMAGE_DIRECTORIES = { "/", "/img/", "/res/img/" };
     private final static String GUIDE_FILEPATH = "/res/guide.xml";
     private final static String ABOUT_FILEPATH = "/res/about.txt";
     private final static String BACK_BUTTON_FILE = "back-button.png";
+    private final static long ICON_CACHE_BYTES = 16 * 1024 * 1024;
+    private final static IconCache ICON_CACHE = new IconCache(ArionDisplay.class, IMAGE_DIRECTORIES, ICON_CACHE_BYTES);
     final static Dimension MAX_DIMENSION = new Dimension(Integer.MAX_VALUE, Integer.MAX_VALUE);
     
-    private Optional<String> aboutContentOption = readAboutContent(ABOUT_FILEPATH);
-    private Optional<Node[]> guidePages = parseGuidePages(GUIDE_FILEPATH);
+    private Optional<String> aboutContentOption = Optional.empty(); // read when About is first opened
+    private Optional<Runnable> firstPaintCallbackOption = Optional.empty();
+
+    // the guide is parsed when it is first opened; pages of the open guide pop-up are kept once built,
+    // along with the pages next to the shown page, which are built ahead of time
+    private final static int GUIDE_PAGE_CACHE_SIZE = 3;
+    private Optional<Guide> guideOption = Optional.empty();
+    private Optional<MutablePopup> guidePopupOption = Optional.empty();
+    private int guidePanelWidth = 0;
+    private LinkedHashMap<Integer, JPanel> guidePanelCache = new LinkedHashMap<>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, JPanel> eldest) {
+            return size() > GUIDE_PAGE_CACHE_SIZE;
+        }
+    };
+
+    // study panels prepared ahead of time, holding the front and back panel of each flashcard by identifier
+    private final static int STUDY_PANEL_CACHE_SIZE = 4;
+    private final static String LATENCY_PROPERTY = "arion.latency";
+    private LinkedHashMap<Long, JPanel[]> studyPanelCache = new LinkedHashMap<>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, JPanel[]> eldest) {
+            return size() > STUDY_PANEL_CACHE_SIZE;
+        }
+    };
+    private Dimension studyPanelSize = new Dimension();
+    LatencyRecorder studyLatency = new LatencyRecorder("Study input to paint");
+
+    // the running background task is shown in a bar at the bottom of the window, hidden when idle
+    private final static int TASK_PROGRESS_MAX = 1000;
+    private JPanel taskPanel = new JPanel(new BorderLayout(Format.MARGIN_SIZE / 2, 0));
+    private JLabel taskLabel = new JLabel();
+    private JProgressBar taskProgressBar = new JProgressBar(0, TASK_PROGRESS_MAX);
+    private JButton taskCancelButton = new JButton("Cancel");
+    private Optional<Runnable> taskCancelCallbackOption = Optional.empty();
+
+    // the progress of the deck loaded at startup is shown on the main screen until it is loaded
+    private JLabel loadLabel = new JLabel();
+    private JProgressBar loadProgressBar = new JProgressBar(0, TASK_PROGRESS_MAX);
 
     /*
      * The Style class represents the styling parameters for a given element.
@@ -99,6 +172,21 @@ public class ArionDisplay {
      * Output: ArionDisplay class.
      */
     public ArionDisplay(String title, int width, int height) {
+        this(title, width, height, () -> {});
+    }
+
+    /*
+     * This constructor also takes a callback run once the window is first painted,
+     * on the event dispatch thread, so the time until the window is shown can be measured.
+     *
+     * Input: window title, width, height, and the first paint callback.
+     * Output: ArionDisplay class.
+     */
+    public ArionDisplay(String title, int width, int height, Runnable firstPaintCallback) {
+        if (firstPaintCallback == null) {
+            throw new NullPointerException("Cannot construct ArionDisplay with null first paint callback.");
+        }
+        firstPaintCallbackOption = Optional.of(firstPaintCallback);
 
         if (width < 0 || height < 0) {
             warningAlert("Cannot construct JFrame with invalid width and height values.\n"
@@ -111,10 +199,24 @@ public class ArionDisplay {
         }
 
         frame = new JFrame(title);
+        frame.setContentPane(new PaintNotifyingPanel(() -> {
+            studyLatency.markPainted();
+            if (firstPaintCallbackOption.isPresent()) {
+                Runnable callback = firstPaintCallbackOption.get();
+                firstPaintCallbackOption = Optional.empty();
+                callback.run();
+            }
+        }));
+        frame.getContentPane().add(screens.getContainer());
+        frame.getContentPane().add(generateTaskPanel(), BorderLayout.SOUTH);
+        hideLoadProgress(); // until the load reports its progress
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setSize(width, height);
         frame.setLocationRelativeTo(null);
         frame.setVisible(true);
+
+        // the back button is on every screen but the main screen, so it is read before it is first needed
+        ICON_CACHE.warm(new String[] { BACK_BUTTON_FILE }, new int[] { Format.BACK_BUTTON_WIDTH });
     }
 
     /*
@@ -185,27 +287,41 @@ public class ArionDisplay {
         this.addCallbackOption = Optional.of(addCallback);
         this.studyCallbackOption = Optional.of(studyCallback);
 
-        JPanel panel;
         try {
-            panel = generateMainPanel("Main Screen", false);
+            showScreen(MAIN_SCREEN, () -> generateMainScreen());
         } catch (MainPanelDisplayException e) {
             Arion.displayException(e);
-            return;
         }
+    }
+
+    /*
+     * generateMainScreen generates the main screen, whose buttons run the callbacks
+     * most recently passed to displayMainScreen.
+     *
+     * Input: no input.
+     * Output: the main screen.
+     */
+    private ScreenRegistry.Screen generateMainScreen() throws MainPanelDisplayException {
+        JPanel panel = generateMainPanel("Main Screen", false);
 
         JButton studyButton = generateButton("Study");
-        studyButton.addActionListener(generateActionListener(studyCallback));
+        studyButton.addActionListener(generateActionListener(() -> studyCallbackOption.get().run()));
         addPanelComponent(panel, studyButton, Format.COMPONENT, true);
 
         JButton addButton = generateButton("Add");
-        addButton.addActionListener(generateActionListener(addCallback));
-        addPanelComponent(panel, addButton, Format.COMPONENT, false);
+        addButton.addActionListener(generateActionListener(() -> addCallbackOption.get().run()));
+        addPanelComponent(panel, addButton, Format.COMPONENT, true);
 
-        setFrameContent(panel);
+        // the load progress keeps its visibility when the main screen is built again
+        addPanelComponent(panel, loadLabel, Format.COMPONENT, true);
+        Dimension barSize = new Dimension(Format.BUTTON_SIZE.width, loadProgressBar.getPreferredSize().height);
+        addPanelComponent(panel, loadProgressBar, barSize, Format.COMPONENT, false);
+
+        return new ScreenRegistry.Screen(panel, () -> {});
     }
 
     /*
-     * displayBrowseScreen sets flashcards, edit callback, and delete callback for
+     * displayBrowseScreen sets the deck, edit callback, and delete callback for
      * the edit screen.
      * It does not directly render the browse so that other internal methods can
      * render the previous browse screen,
@@ -213,18 +329,43 @@ public class ArionDisplay {
      * The description of the browse screen is described above the
      * renderBrowseScreen method.
      *
-     * Input: list of flashcards to display in the browse screen, and an edit and
-     * delete callback for the browse screen.
+     * The browse table reads the deck as it is painted. It subscribes to the deck's changes, and is
+     * refreshed once per frame when the deck has changed, however many flashcards changed and
+     * whoever changed them.
+     * A search box above the table filters it to the best matches of the search index as the user
+     * types, and a tag box next to it filters it to the flashcards matching a tag filter. A query box
+     * below them filters it to the flashcards matching a DeckQuery when Enter is pressed, and its
+     * Explain button shows how the query is run. The filters run again when flashcards are added,
+     * edited, or deleted.
+     *
+     * Input: deck to display in the browse screen, the deck's search and tag indexes and query planner,
+     * and a batch edit and delete callback for the browse screen.
      * Output: no return value, displays the browse screen.
      */
-    public void displayBrowseScreen(ArrayList<Flashcard> flashcards, EditCallback editCallback,
-            DeleteCallback deleteCallback) {
+    public void displayBrowseScreen(Deck deck, SearchIndex searchIndex, TagIndex tagIndex, QueryPlanner planner,
+            BatchEditCallback editCallback, DeleteCallback deleteCallback) {
         
-        if (flashcards == null || editCallback == null || deleteCallback == null) {
+        if (deck == null || searchIndex == null || tagIndex == null || planner == null || editCallback == null
+                || deleteCallback == null) {
             throw new NullPointerException("Could not display browse screen because passed callbacks are null.");
         }
 
-        this.browseFlashcardsOption = Optional.of(flashcards);
+        if (browseDeckOption.isEmpty() || browseDeckOption.get() != deck) {
+            browseSubscriptionOption.ifPresent((DeckEventBus.Subscription subscription) -> subscription.cancel());
+            browseSubscriptionOption = Optional.of(deck.events().subscribe(frameDispatcher(),
+                    (DeckChanges changes) -> browseModelOption.ifPresent((DeckTableModel model) -> {
+                        model.changed(changes);
+                        if (changes.ids(DeckChanges.Change.ADDED).length > 0
+                                || changes.ids(DeckChanges.Change.EDITED).length > 0
+                                || changes.ids(DeckChanges.Change.DELETED).length > 0) {
+                            scheduleBrowseSearch();
+                        }
+                    })));
+        }
+        this.browseDeckOption = Optional.of(deck);
+        this.browseSearchOption = Optional.of(searchIndex);
+        this.browseTagOption = Optional.of(tagIndex);
+        this.browsePlannerOption = Optional.of(planner);
         this.editCallbackOption = Optional.of(editCallback);
         this.deleteCallbackOption = Optional.of(deleteCallback);
         renderBrowseScreen();
@@ -237,24 +378,40 @@ public class ArionDisplay {
      * and a large text area for the user to input the back of the card.
      * It also has an "Add Flashcard" button for the user to confirm their inputs
      * and add a new flashcard with the provided fields to the deck.
-     * This functionality is provided through a callback passed to the method.
+     * The "Add Pasted Rows" button instead adds one flashcard per line of the large text area,
+     * with the fields of each line separated by tabs, as when pasting from a spreadsheet.
+     * This functionality is provided through callbacks passed to the method.
      *
-     * Input: "Add Flashcard" button callback.
+     * Input: "Add Flashcard" button callback, "Add Pasted Rows" button callback.
      * Output: no return value, displays add screen.
      */
-    public void displayAddScreen(AddCallback callback) {
+    public void displayAddScreen(AddCallback callback, BatchAddCallback batchCallback) {
         
-        if (callback == null) {
+        if (callback == null || batchCallback == null) {
             throw new NullPointerException("Could not display add screen because passed callback is null.");
         }
 
-        JPanel panel;
+        this.addFlashcardCallbackOption = Optional.of(callback);
+        this.batchAddCallbackOption = Optional.of(batchCallback);
+
         try {
-            panel = generateMainPanel("Add", true);
+            showScreen(ADD_SCREEN, () -> generateAddScreen());
         } catch (MainPanelDisplayException e) {
             Arion.displayException(e);
-            return;
         }
+    }
+
+    /*
+     * generateAddScreen generates the add screen, whose buttons run the callbacks most
+     * recently passed to displayAddScreen. Its inputs are emptied each time it is shown.
+     * With its merge box checked, flashcards whose front is already in the deck update it instead
+     * of being added. The tags of the flashcard, if any, are typed in a field below the back.
+     *
+     * Input: no input.
+     * Output: the add screen.
+     */
+    private ScreenRegistry.Screen generateAddScreen() throws MainPanelDisplayException {
+        JPanel panel = generateMainPanel("Add", true);
 
         JLabel frontLabel = new JLabel("Front");
         addPanelComponent(panel, frontLabel, Format.H2, true);
@@ -273,15 +430,40 @@ public class ArionDisplay {
 
         addPanelComponent(panel, scrollPane, Format.COMPONENT, true);
 
+        JLabel tagsLabel = new JLabel(Flashcard.TAGS_TITLE);
+        addPanelComponent(panel, tagsLabel, Format.H2, true);
+
+        JTextField tagsTextField = new JTextField(Format.TEXT_BOX_WIDTH);
+        addPanelComponent(panel, tagsTextField, Format.COMPONENT, true);
+
+        JCheckBox mergeCheckBox = new JCheckBox("Update flashcards with the same front");
+        addPanelComponent(panel, mergeCheckBox, Format.COMPONENT, true);
+
         JButton addButton = generateButton("Add Flashcard");
         addButton.addActionListener(generateActionListener(() -> {
-            String[] fields = { frontTextField.getText(), backTextArea.getText() };
-            callback.run(fields);
+            String[] fields = { frontTextField.getText(), backTextArea.getText(), tagsTextField.getText() };
+            addFlashcardCallbackOption.get().run(fields, mergeCheckBox.isSelected());
             reenterMainScreen();
         }));
-        addPanelComponent(panel, addButton, Format.COMPONENT, false);
 
-        setFrameContent(panel);
+        JButton pasteButton = generateButton("Add Pasted Rows");
+        pasteButton.addActionListener(generateActionListener(() -> {
+            batchAddCallbackOption.get().run(splitPastedRows(backTextArea.getText()), mergeCheckBox.isSelected());
+            reenterMainScreen();
+        }));
+
+        JPanel buttonPanel = new JPanel();
+        buttonPanel.setLayout(new BoxLayout(buttonPanel, BoxLayout.X_AXIS));
+        addPanelComponent(buttonPanel, addButton, Format.COMPONENT, true);
+        addPanelComponent(buttonPanel, pasteButton, Format.COMPONENT, false);
+        addPanelComponent(panel, buttonPanel, Format.NESTED_PANEL, false);
+
+        return new ScreenRegistry.Screen(panel, () -> {
+            frontTextField.setText("");
+            backTextArea.setText("");
+            tagsTextField.setText("");
+            mergeCheckBox.setSelected(false);
+        });
     }
 
     /*
@@ -300,6 +482,8 @@ public class ArionDisplay {
      * to correctly update the flashcard.
      * If there are more due flashcards, the callback will call this method again;
      * if not, it will exit the loop.
+     * Panels prepared by prefetchStudyScreen are reused, so showing them only swaps the frame content.
+     * While the front is shown, the back is prepared once the event queue is idle.
      *
      * Input: flashcard to study, whether to show the front, and a callback to be
      * run when the flashcard has been reviewed.
@@ -312,14 +496,111 @@ public class ArionDisplay {
             throw new NullPointerException("Could not display study screen because passed parameter is null.");
         }
 
-        JPanel panel;
+        JPanel[] panels;
         try {
-            panel = generateMainPanel("Study", true);
+            panels = getStudyPanels(flashcard, reviewCallback);
         } catch (MainPanelDisplayException e) {
             Arion.displayException(e);
             return;
         }
 
+        JPanel panel = front ? panels[0] : panels[1];
+        if (panel == null) {
+            try {
+                panel = generateStudyPanel(flashcard, front, reviewCallback);
+            } catch (MainPanelDisplayException e) {
+                Arion.displayException(e);
+                return;
+            }
+            panels[front ? 0 : 1] = panel;
+        }
+        setFrameContent(panel);
+
+        if (front) {
+            SwingUtilities.invokeLater(() -> prepareStudyPanels(flashcard, reviewCallback));
+        }
+    }
+
+    /*
+     * prefetchStudyScreen prepares the front and back study panels of a flashcard once the event
+     * queue is idle, so displaying it later is a single content switch.
+     *
+     * Input: flashcard likely to be studied next, and the callback to run when it has been reviewed.
+     * Output: no return value, caches the flashcard's study panels.
+     */
+    public void prefetchStudyScreen(Flashcard flashcard, ReviewCallback reviewCallback) {
+        if (flashcard == null || reviewCallback == null) {
+            throw new NullPointerException("Could not prefetch study screen because passed parameter is null.");
+        }
+        SwingUtilities.invokeLater(() -> prepareStudyPanels(flashcard, reviewCallback));
+    }
+
+    /*
+     * resetStudyScreen discards the prepared study panels, so a new study session shows the
+     * current content of its flashcards.
+     *
+     * Input: no input.
+     * Output: no return value, clears the study panel cache.
+     */
+    public void resetStudyScreen() {
+        studyPanelCache.clear();
+    }
+
+    /*
+     * prepareStudyPanels builds whichever of the flashcard's study panels are not cached yet.
+     * Any failure is ignored here; it is reported when the panel is actually displayed.
+     *
+     * Input: flashcard to prepare, and the callback to run when it has been reviewed.
+     * Output: no return value, caches the flashcard's study panels.
+     */
+    private void prepareStudyPanels(Flashcard flashcard, ReviewCallback reviewCallback) {
+        try {
+            JPanel[] panels = getStudyPanels(flashcard, reviewCallback);
+            for (int side = 0; side < 2; side++) {
+                if (panels[side] == null) {
+                    panels[side] = generateStudyPanel(flashcard, side == 0, reviewCallback);
+                }
+            }
+        } catch (MainPanelDisplayException e) {}
+    }
+
+    /*
+     * getStudyPanels gets the cached study panels of a flashcard, adding an empty entry if there are none.
+     * The cache is cleared whenever the frame has been resized, since panels are sized to the frame.
+     *
+     * Input: flashcard to get the panels of, and the callback to run when it has been reviewed.
+     * Output: array with the front and back panel, either of which may be null if not prepared yet.
+     */
+    private JPanel[] getStudyPanels(Flashcard flashcard, ReviewCallback reviewCallback)
+            throws MainPanelDisplayException {
+        if (!frame.getSize().equals(studyPanelSize)) {
+            studyPanelCache.clear();
+            studyPanelSize = frame.getSize();
+        }
+
+        JPanel[] panels = studyPanelCache.get(flashcard.id);
+        if (panels == null) {
+            panels = new JPanel[2];
+            studyPanelCache.put(flashcard.id, panels);
+        }
+        return panels;
+    }
+
+    /*
+     * generateStudyPanel generates the panel showing one side of a flashcard during studying.
+     *
+     * Input: flashcard to study, whether to show the front, and the callback to run when the
+     * flashcard has been reviewed.
+     * Output: study panel.
+     */
+    private JPanel generateStudyPanel(Flashcard flashcard, boolean front, ReviewCallback reviewCallback)
+            throws MainPanelDisplayException {
+        if (flashcard == null || reviewCallback == null) {
+            throw new NullPointerException("Could not generate study panel because passed parameter is null.");
+        }
+
+        JPanel panel = generateMainPanel("Study", true);
+
         String text;
         if (front) {
             text = flashcard.front;
@@ -334,10 +615,19 @@ public class ArionDisplay {
         buttonBar.setLayout(new BoxLayout(buttonBar, BoxLayout.X_AXIS));
         buttonBar.add(Box.createGlue());
 
-        // add actions to the JPanel
-        Runnable flipCard = () -> displayStudyScreen(flashcard, false, reviewCallback);
-        Runnable correctReview = () -> reviewCallback.run(true);
-        Runnable incorrectReview = () -> reviewCallback.run(false);
+        // add actions to the JPanel, timing each from the input until its result is painted
+        Runnable flipCard = () -> {
+            studyLatency.markInput();
+            displayStudyScreen(flashcard, false, reviewCallback);
+        };
+        Runnable correctReview = () -> {
+            studyLatency.markInput();
+            reviewCallback.run(true);
+        };
+        Runnable incorrectReview = () -> {
+            studyLatency.markInput();
+            reviewCallback.run(false);
+        };
         panel.getActionMap().put("flipCard", new ExecuteRunnable(flipCard));
         panel.getActionMap().put("correctReview", new ExecuteRunnable(correctReview));
         panel.getActionMap().put("incorrectReview", new ExecuteRunnable(incorrectReview));
@@ -373,7 +663,8 @@ public class ArionDisplay {
         panel.add(Box.createVerticalGlue());
         addPanelComponent(panel, buttonBar, Format.NESTED_PANEL, false);
 
-        setFrameContent(panel);
+        makeDisplayReady(panel);
+        return panel;
     }
 
     /*
@@ -393,13 +684,24 @@ public class ArionDisplay {
             throw new NullPointerException("Cannot display sort screen with null callback.");
         }
 
-        JPanel panel;
+        this.sortCallbackOption = Optional.of(sortCallback);
+
         try {
-            panel = generateMainPanel("Sort", true);
+            showScreen(SORT_SCREEN, () -> generateSortScreen());
         } catch (MainPanelDisplayException e) {
             Arion.displayException(e);
-            return;
         }
+    }
+
+    /*
+     * generateSortScreen generates the sort screen, whose button runs the callback most
+     * recently passed to displaySortScreen. Its selections are reset each time it is shown.
+     *
+     * Input: no input.
+     * Output: the sort screen.
+     */
+    private ScreenRegistry.Screen generateSortScreen() throws MainPanelDisplayException {
+        JPanel panel = generateMainPanel("Sort", true);
 
         JComboBox fieldSelector = new JComboBox<Flashcard.Field>(Flashcard.FIELDS);
 
@@ -430,12 +732,15 @@ public class ArionDisplay {
         confirmButton.addActionListener(generateActionListener(() -> {
             Flashcard.Field field = (Flashcard.Field) fieldSelector.getSelectedItem();
             boolean reversed = directionSelector.getSelectedIndex() == 1; // reversing direction is index 1
-            sortCallback.run(field, reversed);
+            sortCallbackOption.get().run(field, reversed);
             reenterMainScreen();
         }));
         addPanelComponent(panel, confirmButton, Format.COMPONENT, false);
 
-        setFrameContent(panel);
+        return new ScreenRegistry.Screen(panel, () -> {
+            fieldSelector.setSelectedIndex(0);
+            directionSelector.setSelectedIndex(0);
+        });
     }
 
     /*
@@ -447,6 +752,7 @@ public class ArionDisplay {
      * advances to the next page.
      * This particular method is a wrapper around the method that actually
      * displays the guide, to catch and handle any exceptions.
+     * The guide is parsed the first time it is displayed.
      *
      * Input: the number of the page to display.
      * Output: no return value, displays the requested guide page.
@@ -454,9 +760,10 @@ public class ArionDisplay {
     public void displayGuidePage(int pageNum) {
         try {
             MutablePopup popup = new MutablePopup(frame);
-            JPanel panel = generateGuidePanel(popup, pageNum);
+            JPanel panel = getGuidePanel(popup, pageNum);
             popup.setContent(panel);
             popup.show();
+            prerenderGuideNeighbours(popup, pageNum);
         } catch (GuideDisplayException e) {
             Arion.displayException(e);
         }
@@ -465,7 +772,7 @@ public class ArionDisplay {
     /*
      * displayAboutScreen displays the About screen.
      * The About screen gives an overview of the design and philosophy behind Arion.
-     * The text is defined in ABOUT_FILEPATH.
+     * The text is defined in ABOUT_FILEPATH, and is read the first time the screen is displayed.
      *
      * Input: no input.
      * Output: no return value, displays the about screen.
@@ -481,6 +788,9 @@ public class ArionDisplay {
         panel.setPreferredSize(getPopupSize());
         MutablePopup popup = new MutablePopup(frame, panel);
 
+        if (aboutContentOption.isEmpty()) {
+            aboutContentOption = readAboutContent(ABOUT_FILEPATH);
+        }
         if (aboutContentOption.isEmpty()) {
             warningAlert("Cannot display About window because could not read " + ABOUT_FILEPATH);
             return;
@@ -503,6 +813,45 @@ public class ArionDisplay {
         popup.show();
     }
 
+    /*
+     * displayReport displays a long read-only text in a popup, such as the result of a search of the deck.
+     *
+     * Input: title shown above the text, and the text.
+     * Output: no return value, displays the report.
+     */
+    public void displayReport(String title, String text) {
+        if (title == null || text == null) {
+            throw new NullPointerException("Cannot display report with null parameters.");
+        }
+        JPanel panel;
+        try {
+            panel = generateMainPanel(title, false);
+        } catch (MainPanelDisplayException e) {
+            Arion.displayException(e);
+            return;
+        }
+        panel.setPreferredSize(getPopupSize());
+        MutablePopup popup = new MutablePopup(frame, panel);
+
+        JTextArea textArea = generateTextArea(text);
+        textArea.setEditable(false);
+        textArea.setBackground(panel.getBackground());
+        setFont(textArea, Format.POPUP);
+        textArea.setCaretPosition(0);
+
+        JScrollPane scrollPane = scrollWrap(textArea);
+        scrollPane.setBorder(BorderFactory.createEmptyBorder());
+        addPanelComponent(panel, scrollPane, MAX_DIMENSION, Format.POPUP, true);
+
+        JButton closeButton = generatePopupButton("Close");
+        closeButton.addActionListener(generateActionListener(() -> {
+            popup.hide();
+        }));
+        addPanelComponent(panel, closeButton, Format.COMPONENT, false);
+
+        popup.show();
+    }
+
     /*
      * alert statically displays a message in a dialog box; this is useful if
      * ArionDisplay may not be initialized.
@@ -545,6 +894,21 @@ public class ArionDisplay {
         return response == JOptionPane.YES_OPTION; 
     }
 
+    /*
+     * displayInputWindow displays a window asking the user to type a line of text.
+     *
+     * Input: message and title of the input window.
+     * Output: optionally the text typed, empty if the user cancelled.
+     */
+    public Optional<String> displayInputWindow(String message, String title) {
+        if (message == null || title == null) {
+            throw new NullPointerException("Cannot display input window with null parameters.");
+        }
+
+        String response = JOptionPane.showInputDialog(frame, message, title, JOptionPane.QUESTION_MESSAGE);
+        return Optional.ofNullable(response);
+    }
+
     /*
      * quit cleans the class, removing the JFrame.
      *
@@ -556,6 +920,111 @@ public class ArionDisplay {
         frame.dispose();
     }
 
+    /*
+     * showTaskProgress shows the bar of a background task that started, with its progress
+     * not yet known.
+     *
+     * Input: name of the task, whether it may be cancelled, and the callback to cancel it.
+     * Output: no return value, shows the task bar.
+     */
+    public void showTaskProgress(String name, boolean cancellable, Runnable cancelCallback) {
+        if (name == null || cancelCallback == null) {
+            throw new NullPointerException("Cannot show task progress with null parameters.");
+        }
+
+        taskCancelCallbackOption = Optional.of(cancelCallback);
+        taskLabel.setText(name + "...");
+        taskProgressBar.setIndeterminate(true);
+        taskCancelButton.setVisible(cancellable);
+        taskCancelButton.setEnabled(true);
+        taskPanel.setVisible(true);
+        frame.getContentPane().revalidate();
+    }
+
+    /*
+     * updateTaskProgress shows the progress of the running background task.
+     *
+     * Input: work done, and total work; a total of 0 or less means it is not known.
+     * Output: no return value, updates the task bar.
+     */
+    public void updateTaskProgress(long done, long total) {
+        if (total <= 0) {
+            taskProgressBar.setIndeterminate(true);
+            return;
+        }
+        taskProgressBar.setIndeterminate(false);
+        taskProgressBar.setValue((int) (Math.min(done, total) * TASK_PROGRESS_MAX / total));
+    }
+
+    /*
+     * hideTaskProgress hides the task bar once the background task finished.
+     *
+     * Input: no input.
+     * Output: no return value, hides the task bar.
+     */
+    public void hideTaskProgress() {
+        taskCancelCallbackOption = Optional.empty();
+        taskPanel.setVisible(false);
+        taskProgressBar.setIndeterminate(false);
+        taskProgressBar.setValue(0);
+        frame.getContentPane().revalidate();
+    }
+
+    /*
+     * updateLoadProgress shows the progress of the deck loaded at startup on the main screen.
+     *
+     * Input: number of flashcards read, and the flashcard count.
+     * Output: no return value, updates the main screen.
+     */
+    public void updateLoadProgress(long done, long total) {
+        loadLabel.setText("Loading flashcards: " + done + " of " + total);
+        loadProgressBar.setIndeterminate(total <= 0);
+        if (total > 0) {
+            loadProgressBar.setValue((int) (Math.min(done, total) * TASK_PROGRESS_MAX / total));
+        }
+        loadLabel.setVisible(true);
+        loadProgressBar.setVisible(true);
+        loadLabel.revalidate();
+    }
+
+    /*
+     * hideLoadProgress hides the progress of the deck loaded at startup once it is loaded.
+     *
+     * Input: no input.
+     * Output: no return value, updates the main screen.
+     */
+    public void hideLoadProgress() {
+        loadLabel.setVisible(false);
+        loadProgressBar.setVisible(false);
+    }
+
+    /*
+     * generateTaskPanel generates the task bar, which is hidden until a task starts.
+     *
+     * Input: no input.
+     * Output: the task bar.
+     */
+    private JPanel generateTaskPanel() {
+        setFont(taskLabel, Format.COMPONENT);
+        setFont(taskCancelButton, Format.COMPONENT);
+        taskCancelButton.addActionListener(generateActionListener(() -> {
+            taskCancelCallbackOption.ifPresent((Runnable callback) -> callback.run());
+            taskLabel.setText("Cancelling...");
+            taskCancelButton.setEnabled(false);
+        }));
+
+        taskPanel.add(taskLabel, BorderLayout.WEST);
+        taskPanel.add(taskProgressBar, BorderLayout.CENTER);
+        taskPanel.add(taskCancelButton, BorderLayout.EAST);
+        taskPanel.setBorder(BorderFactory.createEmptyBorder(
+                Format.MARGIN_SIZE / 2,
+                Format.MARGIN_SIZE,
+                Format.MARGIN_SIZE / 2,
+                Format.MARGIN_SIZE));
+        taskPanel.setVisible(false);
+        return taskPanel;
+    }
+
     /*
      * displaySuccessScreen displays a success screen, congratulating the user on
      * successfully studying all their flashcards.
@@ -564,13 +1033,26 @@ public class ArionDisplay {
      * Output: no return value, displays the success screen.
      */
     public void displaySuccessScreen() {
-        JPanel panel;
+        resetStudyScreen();
+        if (Boolean.getBoolean(LATENCY_PROPERTY)) {
+            System.out.println(studyLatency.summary());
+        }
+
         try {
-            panel = generateMainPanel("Congratulations!", false);
+            showScreen(SUCCESS_SCREEN, () -> generateSuccessScreen());
         } catch (MainPanelDisplayException e) {
             Arion.displayException(e);
-            return;
         }
+    }
+
+    /*
+     * generateSuccessScreen generates the success screen.
+     *
+     * Input: no input.
+     * Output: the success screen.
+     */
+    private ScreenRegistry.Screen generateSuccessScreen() throws MainPanelDisplayException {
+        JPanel panel = generateMainPanel("Congratulations!", false);
 
         JLabel text = new JLabel("All due flashcards have been studied.");
         addPanelComponent(panel, text, Format.COMPONENT, true);
@@ -579,7 +1061,7 @@ public class ArionDisplay {
         returnButton.addActionListener(generateActionListener(() -> reenterMainScreen()));
         addPanelComponent(panel, returnButton, Format.COMPONENT, false);
 
-        setFrameContent(panel);
+        return new ScreenRegistry.Screen(panel, () -> {});
     }
 
     /*
@@ -649,7 +1131,9 @@ public class ArionDisplay {
     }
 
     /*
-     * setFrameContent displays a panel to the user in the JFrame.
+     * setFrameContent displays a panel to the user in the JFrame, in place of the
+     * previous panel displayed this way. It is used for panels that are not screens
+     * of the registry, such as study panels.
      *
      * Input: panel to display.
      * Output: no return value, displays the given panel.
@@ -660,47 +1144,44 @@ public class ArionDisplay {
         }
         
         makeDisplayReady(panel);
+        screens.showPanel(panel);
+    }
 
-        Container contentPane = frame.getContentPane();
-        contentPane.removeAll();
-        contentPane.add(panel);
+    /*
+     * showScreen displays a screen of the registry, building it the first time it is shown.
+     * Screens are sized to the window, so they are all built again after it is resized.
+     *
+     * Input: name of the screen, and the builder of the screen.
+     * Output: no return value, displays the screen.
+     */
+    private void showScreen(String name, ScreenRegistry.Builder builder) throws MainPanelDisplayException {
+        if (name == null || builder == null) {
+            throw new NullPointerException("Cannot show screen with null parameters.");
+        }
+        if (!frame.getSize().equals(screenSize)) {
+            screens.clear();
+            screenSize = frame.getSize();
+        }
 
-        frame.validate();
+        screens.show(name, () -> {
+            ScreenRegistry.Screen screen = builder.build();
+            makeDisplayReady(screen.panel);
+            return screen;
+        });
     }
 
     /*
      * generateTable generates a JTable that can be displayed to the user.
      *
-     * Input: names of the columns and the table data.
+     * Input: model of the table's columns and data.
      * Output: formatted table.
      */
-    private JTable generateTable(String[] columnNames, String[][] data) {
-
-        // validate the data
-        if (columnNames == null || data == null) {
-            throw new NullPointerException("Cannot generate table with null parameters");
-        }
-        if (data.length != 0) {
-            if (columnNames.length != data[0].length) {
-                throw new IllegalArgumentException("Cannot generate table with differently sized columns and data.");
-            }
-        }
-        int len = columnNames.length;
-        for (int i = 0; i < len; i++) {
-            if (columnNames[i] == null) {
-                throw new NullPointerException("Column name #" + (i+1) + " is null.");
-            }
-            for (int j = 0; j < data.length; j++) {
-                if (data[j] == null) {
-                    throw new NullPointerException("Data row #" + (i+1) + " is null.");
-                }
-                if (data[j][i] == null) {
-                    throw new NullPointerException("Data array[" + i + "][" + j + "] is null.");
-                }
-            }
+    private JTable generateTable(TableModel model) {
+        if (model == null) {
+            throw new NullPointerException("Cannot generate table with null model.");
         }
 
-        JTable table = new JTable(data, columnNames);
+        JTable table = new JTable(model);
         setFont(table.getTableHeader(), Format.H2);
         setFont(table, Format.COMPONENT); // set the font of the table content
 
@@ -916,41 +1397,87 @@ public class ArionDisplay {
      * The browse screen consists of an editable table listing the flashcards in
      * memory,
      * where users can click and edit the fields of their flashcards.
-     * There is an "Update Flashcards" button to confirm the edited fields,
-     * and a "Delete Flashcard" button to delete any selected flashcards.
+     * The table is backed by the deck, so only the rows on screen are ever formatted.
+     * Edited rows are tracked as they are edited, and the "Update Flashcards" button sends only those
+     * rows to the edit callback.
+     * There is a "Delete Flashcard" button to delete any selected flashcards.
      *
      * Input: no inputs.
      * Output: no return value, displays the browse screen.
      */
     private void renderBrowseScreen() {
-        if (browseFlashcardsOption.isEmpty()
+        if (browseDeckOption.isEmpty()
                 || editCallbackOption.isEmpty()
                 || deleteCallbackOption.isEmpty()) {
             throw new IllegalStateException("Cannot render browse screen without having set"
                     + " browse flashcards, edit callback, or delete callback.");
         }
-        ArrayList<Flashcard> browseFlashcards = browseFlashcardsOption.get();
-        EditCallback editCallback = editCallbackOption.get(); 
-        DeleteCallback deleteCallback = deleteCallbackOption.get(); 
-        
-        JPanel panel;
+
         try {
-            panel = generateMainPanel("Browse", true);
+            showScreen(BROWSE_SCREEN, () -> generateBrowseScreen());
         } catch (MainPanelDisplayException e) {
             Arion.displayException(e);
-            return;
         }
+    }
 
-        String[] columnNames = Flashcard.FIELD_TITLES;
-        String[][] tableData = new String[browseFlashcards.size()][];
-        for (int i = 0; i < browseFlashcards.size(); i++) {
-            tableData[i] = browseFlashcards.get(i).toStringArray();
-        }
+    /*
+     * generateBrowseScreen generates the browse screen. Each time it is shown, its table is
+     * given a new model of the deck most recently passed to displayBrowseScreen, so edits that
+     * were not committed are discarded, and its buttons run the most recently passed callbacks.
+     *
+     * Input: no input.
+     * Output: the browse screen.
+     */
+    private ScreenRegistry.Screen generateBrowseScreen() throws MainPanelDisplayException {
+        JPanel panel = generateMainPanel("Browse", true);
 
-        JTable table = generateTable(columnNames, tableData);
+        JTable table = generateTable(new DefaultTableModel());
         int tableWidth = (int) (frame.getSize().width / Format.BROWSE_TABLE_WIDTH_RATIO);
         tableWidth = Math.min(tableWidth, Format.BROWSE_TABLE_MAX_WIDTH);
 
+        // the search and tag boxes filter the table as the user types
+        DocumentListener searchListener = new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                scheduleBrowseSearch();
+            }
+            public void removeUpdate(DocumentEvent e) {
+                scheduleBrowseSearch();
+            }
+            public void changedUpdate(DocumentEvent e) {
+                scheduleBrowseSearch();
+            }
+        };
+        JPanel searchPanel = new JPanel();
+        searchPanel.setLayout(new BoxLayout(searchPanel, BoxLayout.X_AXIS));
+        addPanelComponent(searchPanel, new JLabel("Search"), Format.COMPONENT, true);
+        browseSearchField = new JTextField(Format.TEXT_BOX_WIDTH);
+        browseSearchField.getDocument().addDocumentListener(searchListener);
+        addPanelComponent(searchPanel, browseSearchField, Format.COMPONENT, true);
+        addPanelComponent(searchPanel, new JLabel(Flashcard.TAGS_TITLE), Format.COMPONENT, true);
+        browseTagField = new JTextField(Format.TEXT_BOX_WIDTH / 2);
+        browseTagField.getDocument().addDocumentListener(searchListener);
+        addPanelComponent(searchPanel, browseTagField, Format.COMPONENT, true);
+        browseSearchLabel = new JLabel();
+        addPanelComponent(searchPanel, browseSearchLabel, Format.COMPONENT, false);
+        Dimension searchSize = new Dimension(tableWidth, searchPanel.getPreferredSize().height);
+        addPanelComponent(panel, searchPanel, searchSize, Format.NESTED_PANEL, true);
+
+        // the query box filters the table when Enter is pressed, since a query may scan the deck
+        JPanel queryPanel = new JPanel();
+        queryPanel.setLayout(new BoxLayout(queryPanel, BoxLayout.X_AXIS));
+        addPanelComponent(queryPanel, new JLabel("Query"), Format.COMPONENT, true);
+        browseQueryField = new JTextField(Format.TEXT_BOX_WIDTH);
+        browseQueryField.addActionListener(generateActionListener(() -> {
+            browseQuery = browseQueryField.getText();
+            applyBrowseSearch();
+        }));
+        addPanelComponent(queryPanel, browseQueryField, Format.COMPONENT, true);
+        JButton explainButton = generateButton("Explain");
+        explainButton.addActionListener(generateActionListener(() -> explainBrowseQuery()));
+        addPanelComponent(queryPanel, explainButton, Format.COMPONENT, false);
+        Dimension querySize = new Dimension(tableWidth, queryPanel.getPreferredSize().height);
+        addPanelComponent(panel, queryPanel, querySize, Format.NESTED_PANEL, true);
+
         JScrollPane scrollPane = scrollWrap(table);
         setPreferredWidth(scrollPane, tableWidth);
         addPanelComponent(panel, scrollPane, Format.COMPONENT, true);
@@ -958,16 +1485,12 @@ public class ArionDisplay {
         JPanel buttonPanel = new JPanel();
         buttonPanel.setLayout(new BoxLayout(buttonPanel, BoxLayout.X_AXIS));
 
-        // track the previous data to only update changed flashcards
-        String[][] prevData = new String[tableData.length][];
-        for (int i = 0; i < tableData.length; i++) {
-            prevData[i] = ArionUtils.cloneArray(tableData[i]);
-        }
-
         JButton updateButton = generateButton("Update Flashcards");
         updateButton.addActionListener(generateActionListener(() -> {
-            sendUpdatedFlashcards(tableData, prevData, editCallback);
-            renderBrowseScreen(); // re-render the screen with the updated flashcards
+            if (table.isEditing()) {
+                table.getCellEditor().stopCellEditing(); // include the cell being edited
+            }
+            browseModelOption.ifPresent((DeckTableModel model) -> model.commitEdits());
         }));
         addPanelComponent(buttonPanel, updateButton, Format.COMPONENT, true);
 
@@ -975,59 +1498,301 @@ public class ArionDisplay {
         deleteButton.addActionListener(generateActionListener(() -> {
             
             boolean confirmation = displayConfirmationWindow("Delete Flashcards?", "Delete Confirmation");
-            if (confirmation) {
-                deleteCallback.run(table.getSelectedRows());
+            if (confirmation && browseModelOption.isPresent()) {
+                // identifiers still name the selected flashcards if a background task moves them
+                deleteCallbackOption.get().run(browseModelOption.get().idsAt(table.getSelectedRows()));
             }
-            renderBrowseScreen(); // re-render the screen with the updated flashcards
-                                  
         }));
         addPanelComponent(buttonPanel, deleteButton, Format.COMPONENT, false);
 
         addPanelComponent(panel, buttonPanel, Format.NESTED_PANEL, false);
-        setFrameContent(panel);
+
+        return new ScreenRegistry.Screen(panel, () -> {
+            if (table.isEditing()) {
+                table.getCellEditor().cancelCellEditing();
+            }
+            DeckTableModel model = new DeckTableModel(browseDeckOption.get(), editCallbackOption.get());
+            browseModelOption = Optional.of(model);
+            table.setModel(model);
+            browseQuery = "";
+            browseQueryField.setText("");
+            browseSearchField.setText("");
+            browseTagField.setText("");
+        });
     }
 
     /*
-     * sendUpdatedFlashcards sends the updated flashcards to the passed edit callback.
-     * It loops through the Strings currently in the table, and the ones in the previous
-     * table.
-     * If they differ, it passes them to the edit callback to update the flashcard fields.
+     * explainBrowseQuery runs the query in the query box on a worker thread, since it may scan the
+     * deck, then shows how it was planned and run.
      *
-     * Input: current browse table data, previous browse table data, edit callback to update the
-     * flashcard's fields in memory.
-     * Output: no return value.
+     * Input: no input.
+     * Output: no return value, displays the report.
      */
-    private void sendUpdatedFlashcards(String[][] tableData, String[][] prevData, EditCallback editCallback) {
-        if (tableData == null || prevData == null || editCallback == null) {
-            throw new NullPointerException("Cannot send updated flashcards with null parameters.");
+    private void explainBrowseQuery() {
+        DeckQuery query;
+        try {
+            query = DeckQuery.parse(browseQueryField.getText());
+        } catch (QueryFormatException e) {
+            alert(e.getMessage());
+            return;
         }
-        if (tableData.length != prevData.length) {
-            throw new IllegalArgumentException("Cannot update flashcards because data is improperly sized.");
+        QueryPlanner planner = browsePlannerOption.get();
+        new SwingWorker<String, Void>() {
+            @Override
+            protected String doInBackground() {
+                return planner.run(query).explain();
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    displayReport("Explain", get());
+                } catch (ExecutionException e) {
+                    Arion.displayException("Explaining the query failed.",
+                            e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }.execute();
+    }
+
+    /*
+     * scheduleBrowseSearch filters the browse table once the filters have not changed for
+     * BROWSE_SEARCH_DELAY milliseconds, so typing a word searches once rather than once per key.
+     *
+     * Input: no input.
+     * Output: no return value, filters the browse table later.
+     */
+    private void scheduleBrowseSearch() {
+        if (browseSearchTimer == null) {
+            browseSearchTimer = new Timer(BROWSE_SEARCH_DELAY, (ActionEvent e) -> applyBrowseSearch());
+            browseSearchTimer.setRepeats(false);
         }
+        browseSearchTimer.restart();
+    }
 
-        for (int i = 0; i < tableData.length; i++) {
-            boolean tableValid = tableData[i].length == Flashcard.FIELD_COUNT;
-            boolean prevValid = prevData[i].length == Flashcard.FIELD_COUNT;
+    /*
+     * applyBrowseSearch filters the browse table to the flashcards matching every filter that is not
+     * blank: the best matches of the text in the search box, the flashcards matching the tag filter
+     * in the tag box, and the flashcards matching the query last entered in the query box. Without a
+     * search, every matching flashcard is shown in deck order; with every filter blank, the whole deck
+     * is shown. An invalid query leaves the table as it is and shows the error.
+     * The filters are matched on a worker thread, one search at a time; filters changed while a search
+     * runs are searched for once it ends, and the results of searches overtaken by another are dropped.
+     *
+     * Input: no input.
+     * Output: no return value, filters the browse table.
+     */
+    private void applyBrowseSearch() {
+        if (browseSearchTimer != null) {
+            browseSearchTimer.stop();
+        }
+        if (browseModelOption.isEmpty() || browseSearchOption.isEmpty() || browseTagOption.isEmpty()
+                || browsePlannerOption.isEmpty()) {
+            return;
+        }
+        browseSearchGeneration++;
+        DeckTableModel model = browseModelOption.get();
+        String search = browseSearchField.getText();
+        String tagFilter = browseTagField.getText();
+        String query = browseQuery;
+        if (search.isBlank() && tagFilter.isBlank() && query.isBlank()) {
+            browseSearchPending = false;
+            model.clearFilter();
+            browseSearchLabel.setText("");
+            return;
+        }
+        if (browseSearchRunning) {
+            browseSearchPending = true;
+            return;
+        }
+
+        long generation = browseSearchGeneration;
+        Deck deck = browseDeckOption.get();
+        SearchIndex searchIndex = browseSearchOption.get();
+        TagIndex tagIndex = browseTagOption.get();
+        QueryPlanner planner = browsePlannerOption.get();
+        browseSearchRunning = true;
+        new SwingWorker<BrowseResult, Void>() {
+            @Override
+            protected BrowseResult doInBackground() {
+                return searchBrowse(deck, searchIndex, tagIndex, planner, search, tagFilter, query);
+            }
+
+            @Override
+            protected void done() {
+                browseSearchRunning = false;
+                try {
+                    BrowseResult result = get();
+                    if (generation == browseSearchGeneration && browseModelOption.orElse(null) == model) {
+                        result.idsOption.ifPresent((long[] ids) -> model.setFilter(ids));
+                        browseSearchLabel.setText(result.label);
+                    }
+                } catch (ExecutionException e) {
+                    Arion.displayException("Search failed.",
+                            e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (browseSearchPending) {
+                    browseSearchPending = false;
+                    applyBrowseSearch();
+                }
+            }
+        }.execute();
+    }
+
+    /*
+     * The BrowseResult class holds the flashcards a browse search found, and the text shown beside
+     * the search box.
+     */
+    private static class BrowseResult {
+        Optional<long[]> idsOption; // empty if the table is left as it is
+        String label;
+
+        BrowseResult(Optional<long[]> idsOption, String label) {
+            this.idsOption = idsOption;
+            this.label = label;
+        }
+    }
+
+    /*
+     * searchBrowse finds the flashcards matching the browse filters, at least one of which is not
+     * blank. It only reads the deck and its indexes, so it may run on any thread.
+     *
+     * Input: the deck and its search index, tag index, and query planner, and the search text, tag
+     * filter, and query.
+     * Output: the flashcards to show, and the text to show beside the search box.
+     */
+    private static BrowseResult searchBrowse(Deck deck, SearchIndex searchIndex, TagIndex tagIndex,
+            QueryPlanner planner, String search, String tagFilter, String query) {
+        Optional<long[]> queriedOption = Optional.empty();
+        if (!query.isBlank()) {
+            try {
+                queriedOption = Optional.of(planner.run(DeckQuery.parse(query)).ids);
+            } catch (QueryFormatException e) {
+                return new BrowseResult(Optional.empty(), e.getMessage());
+            }
+        }
 
-            if (!tableValid || !prevValid) {
-                throw new IllegalArgumentException("Cannot update flashcard at index"
-                        + i + " because the data is improperly sized.");
+        if (search.isBlank()) {
+            long[] ids = queriedOption.isPresent() ? queriedOption.get() : tagIndex.ids(tagFilter);
+            if (queriedOption.isPresent() && !tagFilter.isBlank()) {
+                ids = retain(ids, tagIndex.matches(ids, tagFilter));
             }
+            ids = inDeckOrder(deck, ids);
+            return new BrowseResult(Optional.of(ids), ids.length + (ids.length == 1 ? " match" : " matches"));
+        }
 
-            boolean same = true;
-            for (int j = 0; j < Flashcard.FIELD_COUNT; j++) {
-                if (!tableData[i][j].equals(prevData[i][j])) {
-                    same = false;
-                    break;
+        long[] ids;
+        int total;
+        if (tagFilter.isBlank() && queriedOption.isEmpty()) {
+            SearchIndex.Results results = searchIndex.search(search, BROWSE_SEARCH_LIMIT);
+            ids = results.ids;
+            total = results.total;
+        } else {
+            // rank every match, so the best matches of the other filters are shown however few they are
+            ids = searchIndex.search(search, Integer.MAX_VALUE).ids;
+            if (!tagFilter.isBlank()) {
+                ids = retain(ids, tagIndex.matches(ids, tagFilter));
+            }
+            if (queriedOption.isPresent()) {
+                LongIntMap queried = new LongIntMap(queriedOption.get().length);
+                for (long id : queriedOption.get()) {
+                    queried.put(id, 0);
+                }
+                boolean[] matches = new boolean[ids.length];
+                for (int i = 0; i < ids.length; i++) {
+                    matches[i] = queried.get(ids[i]) != LongIntMap.MISSING;
                 }
+                ids = retain(ids, matches);
+            }
+            total = ids.length;
+            ids = Arrays.copyOf(ids, Math.min(total, BROWSE_SEARCH_LIMIT));
+        }
+        if (total > ids.length) {
+            return new BrowseResult(Optional.of(ids), "Best " + ids.length + " of " + total + " matches");
+        }
+        return new BrowseResult(Optional.of(ids), total + (total == 1 ? " match" : " matches"));
+    }
+
+    /*
+     * retain keeps the identifiers that match, in the same order.
+     *
+     * Input: identifiers, and whether each matches.
+     * Output: the matching identifiers.
+     */
+    private static long[] retain(long[] ids, boolean[] matches) {
+        long[] kept = new long[ids.length];
+        int count = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (matches[i]) {
+                kept[count++] = ids[i];
             }
-            if (!same) {
-                editCallback.run(i, tableData[i]);
+        }
+        return Arrays.copyOf(kept, count);
+    }
+
+    /*
+     * inDeckOrder sorts identifiers of flashcards in the order of the browsed deck, leaving out
+     * flashcards that are not in it.
+     *
+     * Input: the browsed deck, and identifiers of flashcards.
+     * Output: the identifiers, in deck order.
+     */
+    private static long[] inDeckOrder(Deck deck, long[] ids) {
+        int[] indices = deck.indicesOf(ids);
+        int count = 0;
+        for (int index : indices) {
+            if (index >= 0) {
+                indices[count++] = index;
             }
-            prevData[i] = ArionUtils.cloneArray(tableData[i]); // update the previous data
+        }
+        int[] sorted = Arrays.copyOf(indices, count);
+        Arrays.sort(sorted);
+        try {
+            return deck.idsAt(sorted);
+        } catch (IllegalArgumentException e) {
+            return ids; // the deck shrank in between, and the table is refreshed once it is told
         }
     }
 
+    /*
+     * frameDispatcher creates a deck event dispatcher that delivers on the event dispatch thread one
+     * frame after the first undelivered change, so the changes made during a frame are delivered together.
+     *
+     * Input: no input.
+     * Output: the dispatcher.
+     */
+    private static DeckEventBus.Dispatcher frameDispatcher() {
+        return (Runnable delivery) -> {
+            Timer timer = new Timer(FRAME_MILLIS, (ActionEvent e) -> delivery.run());
+            timer.setRepeats(false);
+            timer.start();
+        };
+    }
+
+    /*
+     * splitPastedRows splits pasted text into rows of flashcard fields.
+     * Each non-blank line is a row, and its fields are separated by tabs.
+     *
+     * Input: pasted text.
+     * Output: array of rows, each an array of fields.
+     */
+    private static String[][] splitPastedRows(String text) {
+        if (text == null) {
+            throw new NullPointerException("Cannot split null text.");
+        }
+        ArrayList<String[]> rows = new ArrayList<>();
+        for (String line : text.split("\\R")) {
+            if (!line.isBlank()) {
+                rows.add(line.split("\t", -1));
+            }
+        }
+        return rows.toArray(new String[rows.size()][]);
+    }
+
     /*
      * generateActionListener generates an action listener that catches any
      * exceptions, and sends them to Arion to be displayed to the user.
@@ -1066,38 +1831,76 @@ public class ArionDisplay {
     }
 
     /*
-     * parseGuidePages parses the xml file passed in guideFilepath that represents
-     * the guide.
-     * The guide file may not exist, or the file may be improperly formatted;
-     * thus, an Optional is returned in the case that the guide does not exist.
+     * getGuide returns the guide, parsing GUIDE_FILEPATH the first time it is needed.
+     * The guide file may not exist, or the file may be improperly formatted, in
+     * which case it is parsed again the next time the guide is requested.
      *
-     * Input: file path of the guide xml file.
-     * Output: optionally an array nodes, representing a list of pages.
+     * Input: no input.
+     * Output: the guide.
      */
-    private Optional<Node[]> parseGuidePages(String guideFilepath) {
-        if (guideFilepath == null) {
-            throw new NullPointerException("Cannot parse null guide");
+    private Guide getGuide() throws GuideDisplayException {
+        if (guideOption.isEmpty()) {
+            guideOption = Optional.of(Guide.read(getClass(), GUIDE_FILEPATH));
         }
-        
-        Document doc;
-        
-        try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setValidating(true); // validate the document as it is parsed
-            factory.setIgnoringElementContentWhitespace(true); // eliminate ignorable
-            
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            builder.setErrorHandler(new SAXErrorHandler());
+        return guideOption.get();
+    }
 
-            InputStream stream = getClass().getResourceAsStream(guideFilepath);
-            doc = builder.parse(stream);
-            doc.getDocumentElement().normalize();
+    /*
+     * getGuidePanel returns the panel displaying a guide page in a pop-up, generating it
+     * if it is not cached. The cache only holds the panels of one pop-up at one width,
+     * so it is emptied when either changes.
+     *
+     * Input: pop-up in which the guide will be displayed, and the page of the guide
+     * to display.
+     * Output: panel with the guide content.
+     */
+    private JPanel getGuidePanel(MutablePopup popup, int pageNum) throws GuideDisplayException {
+        if (popup == null) {
+            throw new NullPointerException("Cannot get guide panel with null pop-up");
+        }
 
-        } catch (ParserConfigurationException | SAXException | IOException e) {
-            return Optional.empty();
+        int width = getPopupSize().width;
+        if (guidePopupOption.isEmpty() || guidePopupOption.get() != popup || guidePanelWidth != width) {
+            guidePanelCache.clear();
+            guidePopupOption = Optional.of(popup);
+            guidePanelWidth = width;
+        }
+
+        JPanel panel = guidePanelCache.get(pageNum);
+        if (panel == null) {
+            panel = generateGuidePanel(popup, pageNum);
+            guidePanelCache.put(pageNum, panel);
+        }
+        return panel;
+    }
+
+    /*
+     * prerenderGuideNeighbours generates the pages before and after a guide page once the
+     * event queue reaches them, after the shown page has been laid out, so turning to either
+     * page only swaps the panel. The previous page is generated first, so the least recently
+     * shown page is the one evicted from the cache.
+     *
+     * Input: pop-up displaying the guide, and the page it displays.
+     * Output: no return value, fills the guide panel cache.
+     */
+    private void prerenderGuideNeighbours(MutablePopup popup, int pageNum) {
+        if (popup == null) {
+            throw new NullPointerException("Cannot prerender guide pages of null pop-up");
+        }
+
+        for (int neighbour : new int[] { pageNum - 1, pageNum + 1 }) {
+            SwingUtilities.invokeLater(() -> {
+                boolean open = guidePopupOption.isPresent() && guidePopupOption.get() == popup;
+                if (!open || guideOption.isEmpty() || neighbour < 0 || neighbour >= guideOption.get().pageCount()) {
+                    return;
+                }
+                try {
+                    getGuidePanel(popup, neighbour);
+                } catch (GuideDisplayException e) {
+                    // the error is displayed if the page is turned to
+                }
+            });
         }
-        
-        return Optional.of(getRealChildren(doc.getDocumentElement()));
     }
 
     /*
@@ -1114,24 +1917,13 @@ public class ArionDisplay {
             throw new NullPointerException("Cannot generate guide panel with null pop-up");
         }
 
-        Node[] pages = guidePages.orElseThrow(() -> new GuideDisplayException("Guide is not available."));
-        int pageCount = pages.length;
-        if (pageNum < 0) {
-            throw new GuideDisplayException("Cannot display guide page "
-                    + pageNum + " because it is less than 0.");
-        }
-        if (pageNum >= pageCount) {
-            throw new GuideDisplayException("Cannot display guide page "
-                    + pageNum + " because there are only " + pageCount + " pages.");
-        }
-
-        Node page = pages[pageNum];
-        String pageName = getNodeAttribute(page, "name")
-                .orElseThrow(() -> new GuideDisplayException("Page has no name."));
+        Guide guide = getGuide();
+        int pageCount = guide.pageCount();
+        Guide.Page page = guide.page(pageNum);
 
         JPanel panel;
         try {
-            panel = generateMainPanel(pageName, false);
+            panel = generateMainPanel(page.name, false);
         } catch (MainPanelDisplayException e) {
             throw new GuideDisplayException(e.getMessage());
         }
@@ -1148,18 +1940,17 @@ public class ArionDisplay {
 
         int contentWidth = calculateGuideContentWidth(scrollPane);
 
-        Node[] nodes = getRealChildren(page);
-        for (int i = 0; i < nodes.length; i++) {
-            Node node = nodes[i];
-            int nodeWidth = contentWidth;
+        Guide.Element[] elements = page.elements;
+        for (int i = 0; i < elements.length; i++) {
+            Guide.Element element = elements[i];
+            int elementWidth = contentWidth;
 
-            Optional<String> scaleOption = getNodeAttribute(node, "scale");
-            if (scaleOption.isPresent()) {
-                nodeWidth *= parseScale(scaleOption);
+            if (element.scaleOption.isPresent()) {
+                elementWidth *= parseScale(element.scaleOption);
             }
 
-            boolean addPadding = (i < nodes.length - 1);
-            addNode(content, node, nodeWidth, addPadding, content.getBackground());
+            boolean addPadding = (i < elements.length - 1);
+            addElement(content, element, elementWidth, addPadding, content.getBackground());
         }
         addPanelComponent(panel, scrollPane, Format.COMPONENT, true);
 
@@ -1183,6 +1974,8 @@ public class ArionDisplay {
         JButton closeButton = generatePopupButton("Close");
         closeButton.addActionListener(generateActionListener(() -> {
             popup.hide();
+            guidePanelCache.clear();
+            guidePopupOption = Optional.empty();
         }));
         addPanelComponent(buttonBar, closeButton, Format.COMPONENT, true);
         buttonCount++;
@@ -1238,75 +2031,28 @@ public class ArionDisplay {
     }
 
     /*
-     * getNodeAttribute optionally gets the String attribute of the node.
-     *
-     * Input: node with the attribute, and the attribute to get.
-     * Output: optionally a string representing the value of the attribute.
-     */
-    private static Optional<String> getNodeAttribute(Node node, String attribute) {
-        if (node == null || attribute == null) {
-            throw new NullPointerException("Cannot get node attribute will null parameters.");
-        }
-        
-        Node attributeNode = node.getAttributes().getNamedItem(attribute);
-        if (attributeNode == null) {
-            return Optional.empty();
-        } else {
-            return Optional.of(attributeNode.getNodeValue());
-        }
-    }
-
-    /*
-     * getRealChildren returns an array of the real children of the passed node.
-     * This method filters out comments in the xml file.
+     * addElement adds a guide element to the passed panel.
      *
-     * Input: parent of the children.
-     * Output: array of the parent's non-comment children.
-     */
-    private static Node[] getRealChildren(Node parent) {
-        if (parent == null) {
-            throw new NullPointerException("Cannot get real children of null parent.");
-        }
-        
-        NodeList children = parent.getChildNodes();
-        ArrayList<Node> realChildren = new ArrayList<>();
-
-        for (int i = 0; i < children.getLength(); i++) {
-            Node child = children.item(i);
-            if (child.getNodeType() == Node.COMMENT_NODE) {
-                continue;
-            }
-            realChildren.add(child);
-        }
-
-        return realChildren.toArray(new Node[0]);
-    }
-
-    /*
-     * addNode adds a node to the passed panel.
-     *
-     * Input: panel to add the node to, the node to add, the display width of the
-     * node, whether to add padding to the node, and the background color of the
-     * node.
+     * Input: panel to add the element to, the element to add, the display width of the
+     * element, whether to add padding to the element, and the background color of the
+     * element.
      * Output: no return value, adds content to the panel.
      */
-    private void addNode(JPanel panel, Node node, int width, boolean addPadding, Color background)
+    private void addElement(JPanel panel, Guide.Element element, int width, boolean addPadding, Color background)
             throws GuideDisplayException {
-        if (panel == null || node == null || background == null) {
-            throw new NullPointerException("Cannot add node with null parameters.");
+        if (panel == null || element == null || background == null) {
+            throw new NullPointerException("Cannot add element with null parameters.");
         }
-            
-        String name = node.getNodeName();
 
-        switch (name) {
-            case "txt":
-                addTextNode(panel, node, width, addPadding, background);
+        switch (element.kind) {
+            case TEXT:
+                addTextElement(panel, element, width, addPadding, background);
                 break;
-            case "img":
-                addImageNode(panel, node, width, addPadding);
+            case IMAGE:
+                addImageElement(panel, element, width, addPadding);
                 break;
-            case "pair":
-                addPairNode(panel, node, width, addPadding, background);
+            case PAIR:
+                addPairElement(panel, element, width, addPadding, background);
                 break;
             default:
                 throw new GuideDisplayException("Encountered invalid guide element.");
@@ -1314,35 +2060,22 @@ public class ArionDisplay {
     }
 
     /*
-     * addTextNode adds a text node to the passed panel.
+     * addTextElement adds a text element to the passed panel.
      *
-     * Input: panel to add the node to, the text node to add, the display width of
-     * the node, whether to add padding to the node, and the background color of the node.
+     * Input: panel to add the element to, the text element to add, the display width of
+     * the element, whether to add padding to the element, and the background color of the element.
      * Output: no return value, adds content to the panel.
      */
-    private static void addTextNode(JPanel panel, Node node, int width, boolean addPadding, Color background) {
-        if (panel == null || node == null || background == null) {
-            throw new NullPointerException("Cannot add text node with null parameters.");
+    private static void addTextElement(JPanel panel, Guide.Element element, int width, boolean addPadding,
+            Color background) {
+        if (panel == null || element == null || background == null) {
+            throw new NullPointerException("Cannot add text element with null parameters.");
         }
-        if (!node.getNodeName().equals("txt")) {
-            throw new IllegalArgumentException("Must pass text node");
-        }
-        
-        StringBuilder textBuilder = new StringBuilder();
-
-        for (Node child : getRealChildren(node)) {
-            if (child.getNodeName().equals("brk")) {
-                textBuilder.append("\n");
-            } else {
-                String cdata = child.getNodeValue()
-                        .replaceAll("\n *", " ") // remove new lines
-                        .replaceAll("^ *", "") // remove leading spaces
-                        .replaceAll(" *$", ""); // remove trailing spaces
-                textBuilder.append(cdata);
-            }
+        if (element.kind != Guide.Kind.TEXT) {
+            throw new IllegalArgumentException("Must pass text element");
         }
 
-        JTextArea textArea = generateTextArea(textBuilder.toString());
+        JTextArea textArea = generateTextArea(element.text);
         textArea.setSize(new Dimension(width, 1)); // this sets the preferred width without setting the height
         textArea.setEditable(false);
         textArea.setBackground(background);
@@ -1351,24 +2084,22 @@ public class ArionDisplay {
     }
 
     /*
-     * addImageNode adds an image node to the passed panel.
+     * addImageElement adds an image element to the passed panel.
      *
-     * Input: panel to add the node to, the image node to add, the display width of
-     * the node, whether to add padding to the node,
-     * and the background color of the node.
+     * Input: panel to add the element to, the image element to add, the display width of
+     * the element, and whether to add padding to the element.
      * Output: no return value, adds content to the panel.
      */
-    private void addImageNode(JPanel panel, Node node, int width, boolean addPadding)
+    private void addImageElement(JPanel panel, Guide.Element element, int width, boolean addPadding)
             throws GuideDisplayException {
-        if (panel == null || node == null) {
-            throw new NullPointerException("Cannot add image node with null parameters.");
+        if (panel == null || element == null) {
+            throw new NullPointerException("Cannot add image element with null parameters.");
         }
-            
-        if (!node.getNodeName().equals("img")) {
-            throw new IllegalArgumentException("Must pass text node");
+        if (element.kind != Guide.Kind.IMAGE) {
+            throw new IllegalArgumentException("Must pass image element");
         }
 
-        String src = getNodeAttribute(node, "src").get();
+        String src = element.src;
         width -= Format.IMAGE_BORDER_THICKNESS * 2;
         ImageIcon icon = readImageFile(src, width).orElseThrow(
                 () -> new GuideDisplayException("Could not read " + src));
@@ -1379,39 +2110,32 @@ public class ArionDisplay {
     }
 
     /*
-     * addPairNode adds a pair node to the passed panel.
-     * Pair nodes contains two children, and it groups them horizontally.
+     * addPairElement adds a pair element to the passed panel.
+     * Pair elements contain two children, and it groups them horizontally.
      *
-     * Input: panel to add the node to, the pair node to add, the display width of
-     * the node, whether to add padding to the node,
-     * and the background color of the node.
+     * Input: panel to add the element to, the pair element to add, the display width of
+     * the element, whether to add padding to the element,
+     * and the background color of the element.
      * Output: no return value, adds content to the panel.
      */
-    private void addPairNode(JPanel panel, Node node, int width, boolean addPadding, Color background)
-            throws GuideDisplayException {
-        if (panel == null || node == null || background == null) {
-            throw new NullPointerException("Cannot add pair node with null parameters.");
+    private void addPairElement(JPanel panel, Guide.Element element, int width, boolean addPadding,
+            Color background) throws GuideDisplayException {
+        if (panel == null || element == null || background == null) {
+            throw new NullPointerException("Cannot add pair element with null parameters.");
         }
-            
-        if (!node.getNodeName().equals("pair")) {
-            throw new IllegalArgumentException("Must pass text node");
+        if (element.kind != Guide.Kind.PAIR) {
+            throw new IllegalArgumentException("Must pass pair element");
         }
-            
-        Node[] children = getRealChildren(node);
-        if (children.length != 2) {
-            throw new GuideDisplayException("Attempting to create pair with invalid number of children.");
-        }
-        
+
         // find the content width by subtracting the width of the padding
         // between the elements
         int contentWidth = width - Format.POPUP.padding;
-        
-        Node first = children[0];
-        Optional<String> firstScaleOption = getNodeAttribute(first, "scale");
 
-        Node second = children[1];
-        Optional<String> secondScaleOption = getNodeAttribute(second, "scale");
+        Guide.Element first = element.children[0];
+        Optional<String> firstScaleOption = first.scaleOption;
 
+        Guide.Element second = element.children[1];
+        Optional<String> secondScaleOption = second.scaleOption;
         if (firstScaleOption.isPresent() && secondScaleOption.isPresent()) {
             throw new GuideDisplayException("Attempting to construct pair with two sized elements.");
         }
@@ -1429,8 +2153,8 @@ public class ArionDisplay {
         JPanel pair = new JPanel();
         pair.setLayout(new BoxLayout(pair, BoxLayout.X_AXIS));
 
-        addNode(pair, first, firstWidth, true, background);
-        addNode(pair, second, secondWidth, false, background);
+        addElement(pair, first, firstWidth, true, background);
+        addElement(pair, second, secondWidth, false, background);
 
         Dimension maxSize = pair.getMaximumSize();
         maxSize.width = width;
@@ -1493,6 +2217,7 @@ public class ArionDisplay {
     /*
      * readImageFile reads the image from the passed file name into an ImageIcon,
      * scaling it such that its width matches the passed value.
+     * Icons are shared through the icon cache, so an image is only read and scaled once per width.
      * If the file does not exist, the image cannot be read, or any other error
      * occurs, no image is returned.
      *
@@ -1500,39 +2225,13 @@ public class ArionDisplay {
      * Output: optional image read from the file.
      */
     private Optional<ImageIcon> readImageFile(String filename, int width) {
-        if (filename == null) {
-            throw new NullPointerException("Cannot read null image file");
-        }
-        if (width <= 0) {
-            throw new IllegalArgumentException("Cannot make image less than 0 pixels wide.");
-        }
-        
-        InputStream stream = null;
-        for (String dir : IMAGE_DIRECTORIES) {
-            stream = getClass().getResourceAsStream(dir + filename);
-            if (stream != null) {
-                break;
-            }
-        }
-        if (stream == null) {
-            return Optional.empty();
-        }
-
-        BufferedImage img;
-        try {
-            img = ImageIO.read(stream);
-        } catch (IOException e) {
-            return Optional.empty();
-        }
-
-        // -1 indicates to maintain the aspect ratio of the original image
-        Image scaledImage = img.getScaledInstance(width, -1, Image.SCALE_SMOOTH);
-        return Optional.of(new ImageIcon(scaledImage));
+        return ICON_CACHE.get(filename, width);
     }
 
     /*
      * setGuidePopupContent sets the content of the guide pop-up to a certain
      * page of the guide, without having to refresh it.
+     * The page is usually already generated, and the pages next to it are generated afterwards.
      * 
      * Input: the pop-up to edit and the number of the new page to display.
      * Output: no return value, modifies the content of the pop-up.
@@ -1542,7 +2241,8 @@ public class ArionDisplay {
             throw new NullPointerException("Cannot set content of null pop-up");
         }
         try {
-            popup.setContent(generateGuidePanel(popup, pageNum));
+            popup.setContent(getGuidePanel(popup, pageNum));
+            prerenderGuideNeighbours(popup, pageNum);
         } catch (GuideDisplayException e) {
             Arion.displayException(e);
         }
@@ -1589,59 +2289,13 @@ public class ArionDisplay {
     }
 }
 
-/*
- * SAXErrorHandler handles errors that occur when parsing xml documents.
- */
-class SAXErrorHandler implements ErrorHandler {
-
-    /*
-     * error receives notification of a recoverable error.
-     *
-     * Input: recoverable error.
-     * Output: no return value, displays the error to the user.
-     */
-    public void error(SAXParseException e) {
-        if (e == null) {
-            Arion.displayException(new NullPointerException("Cannot parse handle null exception."));
-            return;
-        }
-        Arion.displayException(e);
-    }
-
-    /*
-     * fatalError receives notification of a non-recoverable error.
-     *
-     * Input: non-recoverable error.
-     * Output: no return value, displays the error to the user.
-     */
-    public void fatalError(SAXParseException e) {
-        if (e == null) {
-            Arion.displayException(new NullPointerException("Cannot parse handle null exception."));
-            return;
-        }
-        Arion.displayException(e);
-    }
-
-    /*
-     * warning receives notification of a warning.
-     *
-     * Input: warning.
-     * Output: no return value, displays the warning to the user.
-     */
-    public void warning(SAXParseException e) {
-        if (e == null) {
-            Arion.displayException(new NullPointerException("Cannot parse handle null exception."));
-            return;
-        }
-        Arion.displayException(e);
-    }
-}
-
 /*
  * ExecuteRunnable is a keybind action that simply runs the Runnable it is
  * passed when executed.
  */
 class ExecuteRunnable extends AbstractAction {
+    private final static long serialVersionUID = 1L;
+
     public Runnable run;
 
     /*
@@ -1671,6 +2325,42 @@ class ExecuteRunnable extends AbstractAction {
     }
 }
 
+/*
+ * PaintNotifyingPanel is the frame's content pane. It runs a callback after every paint,
+ * so the time until an input's result appears on screen can be measured.
+ */
+class PaintNotifyingPanel extends JPanel {
+    private final static long serialVersionUID = 1L;
+
+    private Runnable onPaint;
+
+    /*
+     * The constructor creates a panel with the content pane's default layout.
+     *
+     * Input: Runnable to run after each paint.
+     * Output: new PaintNotifyingPanel class.
+     */
+    public PaintNotifyingPanel(Runnable onPaint) {
+        super(new BorderLayout());
+        if (onPaint == null) {
+            throw new NullPointerException("Cannot construct PaintNotifyingPanel with null Runnable");
+        }
+        this.onPaint = onPaint;
+    }
+
+    /*
+     * paint paints the panel, then runs the callback.
+     *
+     * Input: graphics to paint with.
+     * Output: no return value, paints the panel.
+     */
+    @Override
+    public void paint(Graphics g) {
+        super.paint(g);
+        onPaint.run();
+    }
+}
+
 /*
  * The MutablePopup class is a wrapper around the Popup class.
  * It stores the pop-up's child, so it can modify the child to change the
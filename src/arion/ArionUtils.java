@@ -16,16 +16,21 @@ public class ArionUtils {
     static final int RANDOM_WORD_COUNT = 2;
     static final String NOUN_FILEPATH = "./top-1000-nouns.txt";
     static Random rand = new Random();
-    Optional<ArrayList<String>> nounListOption = parseNouns(NOUN_FILEPATH);
+    private Optional<ArrayList<String>> nounListOption = Optional.empty();
+    private boolean nounsParsed = false; // the nouns are parsed when a random string is first generated
 
     /*
      * generateRandomString generates a random string by concatenating "RANDOM_WORD_COUNT" nouns
-     * from "nounListOption".
+     * from "nounListOption", parsing the nouns first if they have not been parsed yet.
      *
      * Input: no input.
      * Output: if the noun list exists, then a random string; otherwise, nothing.
      */
-    public Optional<String> generateRandomString() {
+    public synchronized Optional<String> generateRandomString() {
+        if (!nounsParsed) {
+            nounListOption = parseNouns(NOUN_FILEPATH);
+            nounsParsed = true;
+        }
         if (nounListOption == null) {
             throw new NullPointerException("Cannot generate random String with null noun list.");
         }
@@ -0,0 +1,533 @@
+package arion;
+
+import java.util.Arrays;
+
+/*
+ * CompactBitmap is a compressed set of non-negative ints, laid out like a Roaring bitmap.
+ *
+ * The set is split into chunks of 65536 values by the high 16 bits of each value. A chunk holding at
+ * most ARRAY_LIMIT values stores the low 16 bits of each in a sorted char array, two bytes per value;
+ * a fuller chunk stores a bitmap of 1024 longs, one bit per possible value. Either way a chunk never
+ * takes more than 8 kilobytes, sparse sets take two bytes per value, and dense sets an eighth of a
+ * byte per possible value. Intersections, unions, and differences work chunk by chunk, so their cost
+ * depends on the number of chunks and the sizes of the arrays rather than on the values themselves.
+ */
+
+public class CompactBitmap {
+    public final static int ARRAY_LIMIT = 4096; // past this, a bitmap takes less space than an array
+
+    private final static int BITMAP_WORDS = 1024;
+
+    // chunks in ascending order of their high bits; each chunk has either an array or a bitmap
+    private char[] keys = new char[0];
+    private char[][] arrays = new char[0][];
+    private long[][] bitmaps = new long[0][];
+    private int[] cardinalities = new int[0];
+    private int size = 0;
+
+    /*
+     * add adds a value to the set.
+     *
+     * Input: the value, which cannot be negative.
+     * Output: whether the value was not in the set.
+     */
+    public boolean add(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Cannot add negative value to bitmap.");
+        }
+        char key = (char) (value >>> 16);
+        char low = (char) value;
+        int chunk = Arrays.binarySearch(keys, 0, size, key);
+        if (chunk < 0) {
+            chunk = -chunk - 1;
+            insertChunk(chunk, key, new char[] { low }, null, 1);
+            return true;
+        }
+
+        if (bitmaps[chunk] != null) {
+            long bit = 1L << low;
+            if ((bitmaps[chunk][low >>> 6] & bit) != 0) {
+                return false;
+            }
+            bitmaps[chunk][low >>> 6] |= bit;
+            cardinalities[chunk]++;
+            return true;
+        }
+
+        char[] array = arrays[chunk];
+        int count = cardinalities[chunk];
+        int position = Arrays.binarySearch(array, 0, count, low);
+        if (position >= 0) {
+            return false;
+        }
+        position = -position - 1;
+        if (count == ARRAY_LIMIT) {
+            bitmaps[chunk] = toBitmap(array, count);
+            arrays[chunk] = null;
+            bitmaps[chunk][low >>> 6] |= 1L << low;
+        } else {
+            if (count == array.length) {
+                array = Arrays.copyOf(array, Math.min(ARRAY_LIMIT, count * 2));
+                arrays[chunk] = array;
+            }
+            System.arraycopy(array, position, array, position + 1, count - position);
+            array[position] = low;
+        }
+        cardinalities[chunk]++;
+        return true;
+    }
+
+    /*
+     * remove removes a value from the set.
+     *
+     * Input: the value.
+     * Output: whether the value was in the set.
+     */
+    public boolean remove(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int chunk = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+        if (chunk < 0) {
+            return false;
+        }
+        char low = (char) value;
+
+        if (bitmaps[chunk] != null) {
+            long bit = 1L << low;
+            if ((bitmaps[chunk][low >>> 6] & bit) == 0) {
+                return false;
+            }
+            bitmaps[chunk][low >>> 6] &= ~bit;
+            cardinalities[chunk]--;
+            if (cardinalities[chunk] <= ARRAY_LIMIT / 2) {
+                arrays[chunk] = toArray(bitmaps[chunk], cardinalities[chunk]);
+                bitmaps[chunk] = null;
+            }
+            return true;
+        }
+
+        char[] array = arrays[chunk];
+        int count = cardinalities[chunk];
+        int position = Arrays.binarySearch(array, 0, count, low);
+        if (position < 0) {
+            return false;
+        }
+        System.arraycopy(array, position + 1, array, position, count - position - 1);
+        cardinalities[chunk]--;
+        if (cardinalities[chunk] == 0) {
+            removeChunk(chunk);
+        }
+        return true;
+    }
+
+    /*
+     * contains checks whether a value is in the set.
+     *
+     * Input: the value.
+     * Output: whether the value is in the set.
+     */
+    public boolean contains(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int chunk = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+        if (chunk < 0) {
+            return false;
+        }
+        char low = (char) value;
+        if (bitmaps[chunk] != null) {
+            return (bitmaps[chunk][low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch(arrays[chunk], 0, cardinalities[chunk], low) >= 0;
+    }
+
+    /*
+     * cardinality counts the values in the set.
+     *
+     * Input: no input.
+     * Output: number of values.
+     */
+    public int cardinality() {
+        int total = 0;
+        for (int chunk = 0; chunk < size; chunk++) {
+            total += cardinalities[chunk];
+        }
+        return total;
+    }
+
+    /*
+     * sizeInBytes estimates the memory taken by the values of the set, leaving out object headers.
+     *
+     * Input: no input.
+     * Output: number of bytes.
+     */
+    public long sizeInBytes() {
+        long bytes = 0;
+        for (int chunk = 0; chunk < size; chunk++) {
+            bytes += 2 + 4 + (bitmaps[chunk] != null ? BITMAP_WORDS * 8 : arrays[chunk].length * 2);
+        }
+        return bytes;
+    }
+
+    /*
+     * and intersects this set with another, without modifying either.
+     *
+     * Input: the other set.
+     * Output: new set of the values in both sets.
+     */
+    public CompactBitmap and(CompactBitmap other) {
+        if (other == null) {
+            throw new NullPointerException("Cannot intersect bitmap with null bitmap.");
+        }
+        CompactBitmap result = new CompactBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                if (bitmaps[i] != null && other.bitmaps[j] != null) {
+                    long[] words = new long[BITMAP_WORDS];
+                    for (int w = 0; w < BITMAP_WORDS; w++) {
+                        words[w] = bitmaps[i][w] & other.bitmaps[j][w];
+                    }
+                    result.appendBitmap(keys[i], words);
+                } else if (bitmaps[i] != null || other.bitmaps[j] != null) {
+                    // keep the values of the array that are set in the bitmap
+                    boolean mineIsArray = bitmaps[i] == null;
+                    char[] array = mineIsArray ? arrays[i] : other.arrays[j];
+                    int count = mineIsArray ? cardinalities[i] : other.cardinalities[j];
+                    long[] words = mineIsArray ? other.bitmaps[j] : bitmaps[i];
+                    char[] kept = new char[count];
+                    int keptCount = 0;
+                    for (int k = 0; k < count; k++) {
+                        if ((words[array[k] >>> 6] & (1L << array[k])) != 0) {
+                            kept[keptCount++] = array[k];
+                        }
+                    }
+                    result.appendArray(keys[i], kept, keptCount);
+                } else {
+                    char[] kept = new char[Math.min(cardinalities[i], other.cardinalities[j])];
+                    int keptCount = 0;
+                    int a = 0;
+                    int b = 0;
+                    while (a < cardinalities[i] && b < other.cardinalities[j]) {
+                        char x = arrays[i][a];
+                        char y = other.arrays[j][b];
+                        if (x < y) {
+                            a++;
+                        } else if (x > y) {
+                            b++;
+                        } else {
+                            kept[keptCount++] = x;
+                            a++;
+                            b++;
+                        }
+                    }
+                    result.appendArray(keys[i], kept, keptCount);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /*
+     * or unites this set with another, without modifying either.
+     *
+     * Input: the other set.
+     * Output: new set of the values in either set.
+     */
+    public CompactBitmap or(CompactBitmap other) {
+        if (other == null) {
+            throw new NullPointerException("Cannot unite bitmap with null bitmap.");
+        }
+        CompactBitmap result = new CompactBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                result.appendCopy(this, i++);
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.appendCopy(other, j++);
+            } else {
+                if (bitmaps[i] == null && other.bitmaps[j] == null
+                        && cardinalities[i] + other.cardinalities[j] <= ARRAY_LIMIT) {
+                    char[] merged = new char[cardinalities[i] + other.cardinalities[j]];
+                    int mergedCount = 0;
+                    int a = 0;
+                    int b = 0;
+                    while (a < cardinalities[i] || b < other.cardinalities[j]) {
+                        if (b == other.cardinalities[j]
+                                || (a < cardinalities[i] && arrays[i][a] < other.arrays[j][b])) {
+                            merged[mergedCount++] = arrays[i][a++];
+                        } else if (a == cardinalities[i] || arrays[i][a] > other.arrays[j][b]) {
+                            merged[mergedCount++] = other.arrays[j][b++];
+                        } else {
+                            merged[mergedCount++] = arrays[i][a++];
+                            b++;
+                        }
+                    }
+                    result.appendArray(keys[i], merged, mergedCount);
+                } else {
+                    long[] words = bitmapOf(i);
+                    or(words, other, j);
+                    result.appendBitmap(keys[i], words);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /*
+     * andNot removes the values of another set from this set, without modifying either.
+     *
+     * Input: the other set.
+     * Output: new set of the values in this set but not in the other.
+     */
+    public CompactBitmap andNot(CompactBitmap other) {
+        if (other == null) {
+            throw new NullPointerException("Cannot subtract null bitmap from bitmap.");
+        }
+        CompactBitmap result = new CompactBitmap();
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j == other.size || other.keys[j] != keys[i]) {
+                result.appendCopy(this, i);
+                continue;
+            }
+            if (bitmaps[i] != null) {
+                long[] words = bitmaps[i].clone();
+                if (other.bitmaps[j] != null) {
+                    for (int w = 0; w < BITMAP_WORDS; w++) {
+                        words[w] &= ~other.bitmaps[j][w];
+                    }
+                } else {
+                    for (int k = 0; k < other.cardinalities[j]; k++) {
+                        char value = other.arrays[j][k];
+                        words[value >>> 6] &= ~(1L << value);
+                    }
+                }
+                result.appendBitmap(keys[i], words);
+            } else {
+                char[] kept = new char[cardinalities[i]];
+                int keptCount = 0;
+                if (other.bitmaps[j] != null) {
+                    long[] words = other.bitmaps[j];
+                    for (int k = 0; k < cardinalities[i]; k++) {
+                        char value = arrays[i][k];
+                        if ((words[value >>> 6] & (1L << value)) == 0) {
+                            kept[keptCount++] = value;
+                        }
+                    }
+                } else {
+                    // both arrays are sorted, so one pass over each finds the values missing from the other
+                    char[] removed = other.arrays[j];
+                    int b = 0;
+                    for (int k = 0; k < cardinalities[i]; k++) {
+                        char value = arrays[i][k];
+                        while (b < other.cardinalities[j] && removed[b] < value) {
+                            b++;
+                        }
+                        if (b == other.cardinalities[j] || removed[b] != value) {
+                            kept[keptCount++] = value;
+                        }
+                    }
+                }
+                result.appendArray(keys[i], kept, keptCount);
+            }
+        }
+        return result;
+    }
+
+    /*
+     * toArray lists the values of the set.
+     *
+     * Input: no input.
+     * Output: the values in ascending order.
+     */
+    public int[] toArray() {
+        int[] values = new int[cardinality()];
+        int next = 0;
+        for (int chunk = 0; chunk < size; chunk++) {
+            int high = keys[chunk] << 16;
+            if (bitmaps[chunk] != null) {
+                long[] words = bitmaps[chunk];
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    long word = words[w];
+                    while (word != 0) {
+                        values[next++] = high | (w << 6) | Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                    }
+                }
+            } else {
+                for (int k = 0; k < cardinalities[chunk]; k++) {
+                    values[next++] = high | arrays[chunk][k];
+                }
+            }
+        }
+        return values;
+    }
+
+    /*
+     * bitmapOf copies a chunk into a new bitmap, whichever way it is stored.
+     *
+     * Input: index of the chunk.
+     * Output: the bitmap.
+     */
+    private long[] bitmapOf(int chunk) {
+        return bitmaps[chunk] != null ? bitmaps[chunk].clone() : toBitmap(arrays[chunk], cardinalities[chunk]);
+    }
+
+    /*
+     * or sets the bits of another set's chunk in a bitmap.
+     *
+     * Input: the bitmap, the other set, and the index of the chunk in it.
+     * Output: no return value, modifies the bitmap.
+     */
+    private static void or(long[] words, CompactBitmap other, int chunk) {
+        if (other.bitmaps[chunk] != null) {
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                words[w] |= other.bitmaps[chunk][w];
+            }
+        } else {
+            for (int k = 0; k < other.cardinalities[chunk]; k++) {
+                char value = other.arrays[chunk][k];
+                words[value >>> 6] |= 1L << value;
+            }
+        }
+    }
+
+    /*
+     * appendCopy appends a copy of another set's chunk, whose key is above every key of this set.
+     *
+     * Input: the other set, and the index of the chunk in it.
+     * Output: no return value, modifies the set.
+     */
+    private void appendCopy(CompactBitmap other, int chunk) {
+        if (other.bitmaps[chunk] != null) {
+            insertChunk(size, other.keys[chunk], null, other.bitmaps[chunk].clone(), other.cardinalities[chunk]);
+        } else {
+            insertChunk(size, other.keys[chunk], Arrays.copyOf(other.arrays[chunk], other.cardinalities[chunk]),
+                    null, other.cardinalities[chunk]);
+        }
+    }
+
+    /*
+     * appendArray appends a chunk of sorted low bits, whose key is above every key of this set.
+     * Empty chunks are left out.
+     *
+     * Input: key of the chunk, the low bits, and how many of them are used.
+     * Output: no return value, modifies the set.
+     */
+    private void appendArray(char key, char[] array, int count) {
+        if (count > 0) {
+            insertChunk(size, key, count == array.length ? array : Arrays.copyOf(array, count), null, count);
+        }
+    }
+
+    /*
+     * appendBitmap appends a bitmap chunk, whose key is above every key of this set. The chunk is
+     * stored as an array if it is sparse enough, and left out if it is empty.
+     *
+     * Input: key of the chunk, and the bitmap.
+     * Output: no return value, modifies the set.
+     */
+    private void appendBitmap(char key, long[] words) {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        if (count == 0) {
+            return;
+        }
+        if (count <= ARRAY_LIMIT) {
+            insertChunk(size, key, toArray(words, count), null, count);
+        } else {
+            insertChunk(size, key, null, words, count);
+        }
+    }
+
+    /*
+     * insertChunk inserts a chunk at the given position.
+     *
+     * Input: position, key of the chunk, its array or bitmap, and its cardinality.
+     * Output: no return value, modifies the set.
+     */
+    private void insertChunk(int position, char key, char[] array, long[] bitmap, int cardinality) {
+        if (size == keys.length) {
+            int capacity = Math.max(4, size * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            arrays = Arrays.copyOf(arrays, capacity);
+            bitmaps = Arrays.copyOf(bitmaps, capacity);
+            cardinalities = Arrays.copyOf(cardinalities, capacity);
+        }
+        System.arraycopy(keys, position, keys, position + 1, size - position);
+        System.arraycopy(arrays, position, arrays, position + 1, size - position);
+        System.arraycopy(bitmaps, position, bitmaps, position + 1, size - position);
+        System.arraycopy(cardinalities, position, cardinalities, position + 1, size - position);
+        keys[position] = key;
+        arrays[position] = array;
+        bitmaps[position] = bitmap;
+        cardinalities[position] = cardinality;
+        size++;
+    }
+
+    /*
+     * removeChunk removes the chunk at the given position.
+     *
+     * Input: position of the chunk.
+     * Output: no return value, modifies the set.
+     */
+    private void removeChunk(int position) {
+        System.arraycopy(keys, position + 1, keys, position, size - position - 1);
+        System.arraycopy(arrays, position + 1, arrays, position, size - position - 1);
+        System.arraycopy(bitmaps, position + 1, bitmaps, position, size - position - 1);
+        System.arraycopy(cardinalities, position + 1, cardinalities, position, size - position - 1);
+        size--;
+        arrays[size] = null;
+        bitmaps[size] = null;
+    }
+
+    /*
+     * toBitmap converts sorted low bits into a bitmap.
+     *
+     * Input: the low bits, and how many of them are used.
+     * Output: the bitmap.
+     */
+    private static long[] toBitmap(char[] array, int count) {
+        long[] words = new long[BITMAP_WORDS];
+        for (int k = 0; k < count; k++) {
+            words[array[k] >>> 6] |= 1L << array[k];
+        }
+        return words;
+    }
+
+    /*
+     * toArray converts a bitmap into sorted low bits.
+     *
+     * Input: the bitmap, and the number of bits set in it.
+     * Output: the low bits.
+     */
+    private static char[] toArray(long[] words, int count) {
+        char[] array = new char[count];
+        int next = 0;
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+            long word = words[w];
+            while (word != 0) {
+                array[next++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return array;
+    }
+}
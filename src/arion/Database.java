@@ -1,16 +1,34 @@
 package arion;
 
+import callback.ProgressCallback;
 import exception.*;
 
 import java.io.*;
+import java.nio.charset.Charset;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Optional;
 
 /*
  * The Database class allows reading from and writing to a database file containing flashcards.
+ *
+ * Alongside the database file, a due index lists the review date and byte offset of every flashcard,
+ * ordered by review date, so the flashcards due on a given day can be read without parsing the rest
+ * of the file. The index records the length and modification time of the database file it was written
+ * with, and is ignored once they no longer match.
  */
 
 public class Database {
+    private final static String FORMAT_HEADER = "arion 2";
+    private final static int PROGRESS_INTERVAL = 4096; // flashcards between progress reports
+    private final static String DUE_INDEX_HEADER = "arion due 1";
+    private final static String DUE_INDEX_SUFFIX = ".due";
+
     private File file;
+    private File dueIndexFile;
     public String filepath;
 
     /*
@@ -26,49 +44,148 @@ public class Database {
 
         this.filepath = filepath;
         this.file = new File(filepath);
+        this.dueIndexFile = new File(filepath + DUE_INDEX_SUFFIX);
     }
 
     /*
      * readFlashcards parses the flashcards from this database's file.
+     * Files written before flashcards had identifiers start with the flashcard count;
+     * these are still read, and each flashcard is given a new identifier.
      *
      * Input: no input.
      * Output: ArrayList containing the flashcards in the database file.
      */
     public ArrayList<Flashcard> readFlashcards()
             throws IOException, NumberFormatException, DatabaseFormatException, DatabaseReadException {
+        return readFlashcards(ProgressCallback.NONE);
+    }
+
+    /*
+     * This readFlashcards signature also reports the number of flashcards read so far.
+     * Reading can be cancelled through the progress callback, since it does not modify anything.
+     *
+     * Input: callback told the number of flashcards read and the flashcard count.
+     * Output: ArrayList containing the flashcards in the database file.
+     */
+    public ArrayList<Flashcard> readFlashcards(ProgressCallback progress)
+            throws IOException, NumberFormatException, DatabaseFormatException, DatabaseReadException {
+        if (progress == null) {
+            throw new NullPointerException("Cannot read flashcards with null progress callback.");
+        }
         if (!file.canRead()) {
             throw new DatabaseReadException("Cannot read " + filepath);
         }
 
         // read and write from an external file, not one inside the jar
-        BufferedReader reader = new BufferedReader(new FileReader(file));
-        
-        int flashcardCount = Integer.valueOf(reader.readLine()).intValue();
-        ArrayList<Flashcard> flashcards = new ArrayList<>(flashcardCount);
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
 
-        for (int i = 0; i < flashcardCount; i++) {
-            String[] fields = new String[Flashcard.FIELD_COUNT];
-            for (int j = 0; j < Flashcard.FIELD_COUNT; j++) {
-                fields[j] = reader.readLine();
+            String header = reader.readLine();
+            boolean hasMetadata = FORMAT_HEADER.equals(header);
+            if (hasMetadata) {
+                header = reader.readLine();
             }
+            
+            int flashcardCount = Integer.valueOf(header).intValue();
+            ArrayList<Flashcard> flashcards = new ArrayList<>(flashcardCount);
+            Flashcard.Parser parser = new Flashcard.Parser();
+            HashSet<Long> ids = new HashSet<>();
+
+            for (int i = 0; i < flashcardCount; i++) {
+                if (i % PROGRESS_INTERVAL == 0) {
+                    progress.run(i, flashcardCount);
+                }
+
+                String metadata = null;
+                if (hasMetadata) {
+                    metadata = reader.readLine();
+                }
 
-            // check that none of the fields are null
-            if (fields[Flashcard.FIELD_COUNT - 1] == null) {
-                throw new DatabaseFormatException("Database file is too short.");
+                String[] fields = new String[Flashcard.FIELD_COUNT];
+                for (int j = 0; j < Flashcard.FIELD_COUNT; j++) {
+                    fields[j] = reader.readLine();
+                }
+
+                Flashcard flashcard = parseFlashcard(fields, parser);
+                if (hasMetadata) {
+                    parseMetadata(metadata, flashcard, parser);
+                }
+                if (!ids.add(flashcard.id)) {
+                    throw new DatabaseFormatException("Database contains flashcard " + flashcard.id + " twice.");
+                }
+                flashcards.add(flashcard);
             }
 
-            try {
-                flashcards.add(Flashcard.fromStringArray(fields));
-            } catch (DateFormatException | IntervalFormatException e) {
-                throw new DatabaseFormatException("Database has incorrectly formatted flashcards\n" + e.getMessage());
+            if (reader.readLine() != null) {
+                throw new DatabaseFormatException("Database file is too long.");
             }
+
+            progress.run(flashcardCount, flashcardCount);
+            return flashcards;
         }
+    }
 
-        if (reader.readLine() != null) {
-            throw new DatabaseFormatException("Database file is too long.");
+    /*
+     * readDueFlashcards reads the flashcards due on the given day through the due index, in the
+     * order they are stored in the database file. Only the due flashcards are parsed.
+     * If the index is missing, does not match the database file, or cannot be read, nothing is
+     * returned, and the whole file has to be read instead.
+     *
+     * Input: the day the flashcards are due on.
+     * Output: optionally the due flashcards.
+     */
+    public Optional<ArrayList<Flashcard>> readDueFlashcards(LocalDate today) {
+        if (today == null) {
+            throw new NullPointerException("Cannot read due flashcards for null day.");
+        }
+        if (!dueIndexFile.canRead() || !file.canRead()) {
+            return Optional.empty();
         }
 
-        return flashcards;
+        long[] offsets;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(dueIndexFile)))) {
+            if (!DUE_INDEX_HEADER.equals(in.readUTF())
+                    || in.readLong() != file.length() || in.readLong() != file.lastModified()) {
+                return Optional.empty();
+            }
+
+            // entries are ordered by review date, so the due entries come first
+            int count = in.readInt();
+            long todayDay = today.toEpochDay();
+            offsets = new long[count];
+            int dueCount = 0;
+            while (dueCount < count) {
+                long day = in.readLong();
+                long offset = in.readLong();
+                if (day > todayDay) {
+                    break;
+                }
+                offsets[dueCount++] = offset;
+            }
+            offsets = Arrays.copyOf(offsets, dueCount);
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+        Arrays.sort(offsets);
+
+        ArrayList<Flashcard> flashcards = new ArrayList<>(offsets.length);
+        Flashcard.Parser parser = new Flashcard.Parser();
+        try (LineInput in = new LineInput(file)) {
+            for (long offset : offsets) {
+                in.skipTo(offset);
+                String metadata = in.readLine();
+                String[] fields = new String[Flashcard.FIELD_COUNT];
+                for (int j = 0; j < Flashcard.FIELD_COUNT; j++) {
+                    fields[j] = in.readLine();
+                }
+
+                Flashcard flashcard = parseFlashcard(fields, parser);
+                parseMetadata(metadata, flashcard, parser);
+                flashcards.add(flashcard);
+            }
+        } catch (IOException | DatabaseFormatException e) {
+            return Optional.empty();
+        }
+        return Optional.of(flashcards);
     }
 
     /*
@@ -78,6 +195,19 @@ public class Database {
      * Output: no return value, writes to this database's file.
      */
     public void writeFlashcards(ArrayList<Flashcard> flashcards) throws IOException, DatabaseWriteException {
+        writeFlashcards(flashcards, ProgressCallback.NONE);
+    }
+
+    /*
+     * This writeFlashcards signature also reports the number of flashcards written so far.
+     * Writing should not be cancelled, since the file would be left partly written.
+     *
+     * Input: an ArrayList of flashcards to write, and a callback told the number of flashcards
+     * written and the flashcard count.
+     * Output: no return value, writes to this database's file.
+     */
+    public void writeFlashcards(ArrayList<Flashcard> flashcards, ProgressCallback progress)
+            throws IOException, DatabaseWriteException {
         
         file.createNewFile();
         if (!file.canWrite()) {
@@ -86,16 +216,243 @@ public class Database {
         if (flashcards == null) {
             throw new NullPointerException("Null Flashcard Array");
         }
+        if (progress == null) {
+            throw new NullPointerException("Cannot write flashcards with null progress callback.");
+        }
+
+        // each flashcard is encoded separately, so the offset of every flashcard is known for the due index
+        Charset charset = Charset.defaultCharset();
+        String newLine = System.lineSeparator();
+        long[][] dueEntries = new long[flashcards.size()][];
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            byte[] header = (FORMAT_HEADER + newLine
+                    + flashcards.size() + newLine).getBytes(charset); // second line is entry count
+            out.write(header);
+            long offset = header.length;
 
-        PrintWriter writer = new PrintWriter(file);
-        writer.println(flashcards.size()); // header is entry count
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < flashcards.size(); i++) {
+                if (i % PROGRESS_INTERVAL == 0) {
+                    progress.run(i, flashcards.size());
+                }
+                Flashcard flashcard = flashcards.get(i);
+                builder.setLength(0);
+                builder.append(formatMetadata(flashcard)).append(newLine);
+                for (String field : flashcard.toStringArray()) {
+                    builder.append(field).append(newLine);
+                }
 
-        for (Flashcard flashcard : flashcards) {
-            for (String field : flashcard.toStringArray()) {
-                writer.println(field);
+                byte[] bytes = builder.toString().getBytes(charset);
+                out.write(bytes);
+                dueEntries[i] = new long[] { flashcard.reviewDate.toEpochDay(), offset };
+                offset += bytes.length;
             }
         }
 
-        writer.close();
+        writeDueIndex(dueEntries);
+        progress.run(flashcards.size(), flashcards.size());
+    }
+
+    /*
+     * writeDueIndex writes the due index of the database file that was just written.
+     * The index only speeds up reading, so if it cannot be written, it is deleted instead.
+     *
+     * Input: review date as an epoch day and byte offset of each flashcard, in file order.
+     * Output: no return value, writes to the due index file.
+     */
+    private void writeDueIndex(long[][] dueEntries) {
+        Arrays.sort(dueEntries, Comparator.comparingLong((long[] entry) -> entry[0]));
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(dueIndexFile)))) {
+            out.writeUTF(DUE_INDEX_HEADER);
+            out.writeLong(file.length());
+            out.writeLong(file.lastModified());
+            out.writeInt(dueEntries.length);
+            for (long[] entry : dueEntries) {
+                out.writeLong(entry[0]);
+                out.writeLong(entry[1]);
+            }
+        } catch (IOException e) {
+            dueIndexFile.delete();
+        }
+    }
+
+    /*
+     * parseFlashcard parses the fields of a flashcard read from the database file.
+     *
+     * Input: the fields, which are null past the end of the file, and the parser shared by the file's flashcards.
+     * Output: the flashcard.
+     */
+    private static Flashcard parseFlashcard(String[] fields, Flashcard.Parser parser) throws DatabaseFormatException {
+        // check that none of the fields are null
+        if (fields[Flashcard.FIELD_COUNT - 1] == null) {
+            throw new DatabaseFormatException("Database file is too short.");
+        }
+
+        try {
+            return parser.parse(fields);
+        } catch (DateFormatException | IntervalFormatException e) {
+            throw new DatabaseFormatException("Database has incorrectly formatted flashcards\n" + e.getMessage());
+        }
+    }
+
+    /*
+     * formatMetadata formats the metadata line written before a flashcard's fields.
+     * The line is a list of space separated key=value pairs, so new keys can be
+     * added without changing the format version. Tags are only written for flashcards that have them.
+     *
+     * Input: flashcard to format the metadata of.
+     * Output: metadata line.
+     */
+    private static String formatMetadata(Flashcard flashcard) {
+        if (flashcard == null) {
+            throw new NullPointerException("Cannot format metadata of null flashcard.");
+        }
+        String metadata = "id=" + flashcard.id + " modified=" + flashcard.modified;
+        if (flashcard.tags.length > 0) {
+            metadata += " tags=" + String.join(",", flashcard.tags);
+        }
+        return metadata;
+    }
+
+    /*
+     * parseMetadata parses a metadata line into the passed flashcard.
+     * Unknown keys are ignored so that older versions of Arion can read newer files.
+     * Flashcards written before modification times were recorded get a modification time of zero,
+     * so copies of the same old file agree with each other.
+     *
+     * Input: metadata line, flashcard the metadata belongs to, and the parser shared by the file's flashcards.
+     * Output: no return value, modifies the flashcard.
+     */
+    private static void parseMetadata(String metadata, Flashcard flashcard, Flashcard.Parser parser)
+            throws DatabaseFormatException {
+        if (flashcard == null) {
+            throw new NullPointerException("Cannot parse metadata into null flashcard.");
+        }
+        if (metadata == null) {
+            throw new DatabaseFormatException("Database file is too short.");
+        }
+
+        flashcard.modified = 0;
+        for (String pair : metadata.split(" ")) {
+            int separator = pair.indexOf('=');
+            if (separator < 0) {
+                continue;
+            }
+            String key = pair.substring(0, separator);
+            String value = pair.substring(separator + 1);
+
+            try {
+                switch (key) {
+                    case "id":
+                        flashcard.id = Long.parseLong(value);
+                        break;
+                    case "modified":
+                        flashcard.modified = Long.parseLong(value);
+                        break;
+                    case "tags":
+                        flashcard.tags = parser.parseTagList(value);
+                        break;
+                    default:
+                        break;
+                }
+            } catch (NumberFormatException e) {
+                throw new DatabaseFormatException("Database has incorrectly formatted metadata: " + pair);
+            }
+        }
+    }
+
+    /*
+     * The LineInput class reads lines of the database file from given byte offsets,
+     * decoding each line with the charset the file was written in.
+     * Offsets past the buffered bytes are reached by moving the file's position, without reading
+     * the bytes in between.
+     */
+    private static class LineInput implements Closeable {
+        private final static int BUFFER_SIZE = 8192;
+
+        private FileInputStream in;
+        private byte[] buffer = new byte[BUFFER_SIZE];
+        private int bufferStart = 0;
+        private int bufferEnd = 0;
+        private long bufferOffset = 0; // offset in the file of the start of the buffer
+        private byte[] line = new byte[256];
+
+        private LineInput(File file) throws IOException {
+            this.in = new FileInputStream(file);
+        }
+
+        /*
+         * skipTo skips ahead to a byte offset of the file.
+         *
+         * Input: the offset, which cannot be before the current position.
+         * Output: no return value.
+         */
+        private void skipTo(long offset) throws IOException {
+            long position = bufferOffset + bufferStart;
+            if (offset < position) {
+                throw new IOException("Cannot skip back to offset " + offset);
+            }
+            if (offset <= bufferOffset + bufferEnd) {
+                bufferStart = (int) (offset - bufferOffset);
+                return;
+            }
+            in.getChannel().position(offset);
+            bufferOffset = offset;
+            bufferStart = 0;
+            bufferEnd = 0;
+        }
+
+        /*
+         * readLine reads one line, without its line separator.
+         *
+         * Input: no input.
+         * Output: the line, or null at the end of the file.
+         */
+        private String readLine() throws IOException {
+            int length = 0;
+            boolean read = false;
+            while (true) {
+                if (bufferStart == bufferEnd && !fill()) {
+                    break;
+                }
+                read = true;
+                byte next = buffer[bufferStart++];
+                if (next == '\n') {
+                    break;
+                }
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, line.length * 2);
+                }
+                line[length++] = next;
+            }
+            if (!read) {
+                return null;
+            }
+
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            return new String(line, 0, length, Charset.defaultCharset());
+        }
+
+        /*
+         * fill reads the next bytes of the file into the emptied buffer.
+         *
+         * Input: no input.
+         * Output: whether any bytes were read.
+         */
+        private boolean fill() throws IOException {
+            bufferOffset += bufferEnd;
+            bufferStart = 0;
+            bufferEnd = Math.max(in.read(buffer), 0);
+            return bufferEnd > 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
     }
 }
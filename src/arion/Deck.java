@@ -0,0 +1,700 @@
+package arion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+
+/*
+ * The Deck class holds a list of flashcards that can be safely read and modified from many threads.
+ *
+ * Point updates, such as reviews and edits, lock only the stripe their flashcard's identifier
+ * hashes to, so updates to different flashcards run in parallel. Point reads share the stripe, so
+ * indexes reading many flashcards do not hold up each other.
+ * Structural operations, such as adding, deleting, sorting, and replacing flashcards, start a
+ * new epoch: they take every stripe and the structure lock, so they briefly exclude everything else.
+ * Reads of the list use optimistic reads of the structure lock, so they never block each other.
+ *
+ * Structural operations publish their changes on the deck's event bus once the locks are released.
+ * Point updates cannot tell an edit from a review, so their callers publish them.
+ *
+ * Every flashcard added or updated is stamped with the next version of the deck's clock, so a reader
+ * that read a flashcard at one version can tell whether what it holds is older or newer.
+ */
+
+public class Deck {
+
+    /*
+     * Update modifies one flashcard while its stripe is locked.
+     */
+    public interface Update {
+        public void apply(Flashcard flashcard);
+    }
+
+    /*
+     * Restructure modifies the list of flashcards while the deck is exclusively locked.
+     */
+    public interface Restructure {
+        public void apply(ArrayList<Flashcard> flashcards);
+    }
+
+    /*
+     * BatchUpdate modifies one flashcard of a batch while its stripe is locked.
+     */
+    public interface BatchUpdate {
+        public void apply(int index, Flashcard flashcard);
+    }
+
+    /*
+     * Read reads one flashcard while its stripe is locked for reading; it must not modify it.
+     */
+    public interface Read {
+        public void apply(Flashcard flashcard);
+    }
+
+    /*
+     * BatchRead reads one flashcard of a batch while its stripe is locked for reading; it must not
+     * modify it.
+     */
+    public interface BatchRead {
+        public void apply(int index, Flashcard flashcard);
+    }
+
+    private final static int STRIPE_COUNT = 64; // must be a power of two
+
+    private final ReentrantReadWriteLock[] stripes = new ReentrantReadWriteLock[STRIPE_COUNT];
+    private final StampedLock structureLock = new StampedLock();
+    private final AtomicLong clock = new AtomicLong();
+
+    private ArrayList<Flashcard> flashcards;
+    private HashMap<Long, Flashcard> byId;
+    private volatile long epoch = 0;
+    private final DeckEventBus events = new DeckEventBus();
+
+    /*
+     * The constructor creates an empty deck.
+     *
+     * Input: no input.
+     * Output: new Deck class.
+     */
+    public Deck() {
+        this(new ArrayList<>());
+    }
+
+    /*
+     * This constructor signature creates a deck holding the given flashcards.
+     *
+     * Input: flashcards in the deck.
+     * Output: new Deck class.
+     */
+    public Deck(ArrayList<Flashcard> flashcards) {
+        if (flashcards == null) {
+            throw new NullPointerException("Cannot construct deck with null flashcards.");
+        }
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            stripes[i] = new ReentrantReadWriteLock();
+        }
+        this.flashcards = new ArrayList<>(flashcards);
+        this.byId = indexById(this.flashcards);
+        stamp(this.flashcards);
+    }
+
+    /*
+     * size returns the number of flashcards in the deck.
+     *
+     * Input: no input.
+     * Output: number of flashcards.
+     */
+    public int size() {
+        long stamp = structureLock.tryOptimisticRead();
+        int size = flashcards.size();
+        if (!structureLock.validate(stamp)) {
+            stamp = structureLock.readLock();
+            try {
+                size = flashcards.size();
+            } finally {
+                structureLock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    /*
+     * get returns the flashcard at the given index.
+     *
+     * Input: index of the flashcard.
+     * Output: the flashcard at the index.
+     */
+    public Flashcard get(int index) {
+        long stamp = structureLock.tryOptimisticRead();
+        Flashcard flashcard = null;
+        try {
+            flashcard = flashcards.get(index);
+        } catch (IndexOutOfBoundsException e) {
+            // the list may have been resized during the optimistic read; checked below
+        }
+        if (!structureLock.validate(stamp) || flashcard == null) {
+            stamp = structureLock.readLock();
+            try {
+                if (index < 0 || index >= flashcards.size()) {
+                    throw new IllegalArgumentException("Invalid flashcard index.");
+                }
+                flashcard = flashcards.get(index);
+            } finally {
+                structureLock.unlockRead(stamp);
+            }
+        }
+        return flashcard;
+    }
+
+    /*
+     * find finds the flashcard with the given identifier.
+     *
+     * Input: identifier of the flashcard.
+     * Output: optionally the flashcard with the identifier.
+     */
+    public Optional<Flashcard> find(long id) {
+        long stamp = structureLock.readLock();
+        try {
+            return Optional.ofNullable(byId.get(id));
+        } finally {
+            structureLock.unlockRead(stamp);
+        }
+    }
+
+    /*
+     * contains checks whether the flashcard with the given identifier is in the deck.
+     *
+     * Input: identifier of the flashcard.
+     * Output: whether it is in the deck.
+     */
+    public boolean contains(long id) {
+        long stamp = structureLock.readLock();
+        try {
+            return byId.containsKey(id);
+        } finally {
+            structureLock.unlockRead(stamp);
+        }
+    }
+
+    /*
+     * snapshot copies the list of flashcards.
+     * The copy is not affected by later structural operations; the flashcards themselves are shared.
+     *
+     * Input: no input.
+     * Output: list of the flashcards in the deck.
+     */
+    public ArrayList<Flashcard> snapshot() {
+        long stamp = structureLock.readLock();
+        try {
+            return new ArrayList<>(flashcards);
+        } finally {
+            structureLock.unlockRead(stamp);
+        }
+    }
+
+    /*
+     * epoch returns the number of structural operations applied to the deck so far.
+     * Indices read during one epoch are only valid for that epoch.
+     *
+     * Input: no input.
+     * Output: current epoch.
+     */
+    public long epoch() {
+        return epoch;
+    }
+
+    /*
+     * version returns the version of the deck's clock: every flashcard stamped so far has at most
+     * this version, and every flashcard stamped later has a higher one.
+     *
+     * Input: no input.
+     * Output: current version.
+     */
+    public long version() {
+        return clock.get();
+    }
+
+    /*
+     * events returns the bus the deck's changes are published on.
+     *
+     * Input: no input.
+     * Output: the deck's event bus.
+     */
+    public DeckEventBus events() {
+        return events;
+    }
+
+    /*
+     * update applies a point update to the flashcard with the given identifier, holding only its stripe.
+     *
+     * Input: identifier of the flashcard, and the update to apply.
+     * Output: whether the flashcard was in the deck.
+     */
+    public boolean update(long id, Update update) {
+        if (update == null) {
+            throw new NullPointerException("Cannot apply null update.");
+        }
+
+        Lock stripe = stripes[stripeIndex(id)].writeLock();
+        stripe.lock();
+        try {
+            // structural operations hold every stripe, so byId is stable here
+            Flashcard flashcard = byId.get(id);
+            if (flashcard == null) {
+                return false;
+            }
+            update.apply(flashcard);
+            flashcard.version = clock.incrementAndGet();
+            return true;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /*
+     * read reads the flashcard with the given identifier, sharing its stripe with other reads.
+     *
+     * Input: identifier of the flashcard, and the read to apply.
+     * Output: whether the flashcard was in the deck.
+     */
+    public boolean read(long id, Read read) {
+        if (read == null) {
+            throw new NullPointerException("Cannot apply null read.");
+        }
+
+        Lock stripe = stripes[stripeIndex(id)].readLock();
+        stripe.lock();
+        try {
+            Flashcard flashcard = byId.get(id);
+            if (flashcard == null) {
+                return false;
+            }
+            read.apply(flashcard);
+            return true;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /*
+     * updateAll applies a point update to each flashcard in a batch of identifiers.
+     * The batch is grouped by stripe, so each stripe is locked once per batch instead of once per
+     * flashcard. Updates to the same flashcard are applied in batch order; flashcards that are not
+     * in the deck are skipped.
+     *
+     * Input: identifiers of the flashcards, number of identifiers in the array, and the update,
+     * which receives each flashcard with its position in the batch.
+     * Output: no return value, modifies the flashcards.
+     */
+    public void updateAll(long[] ids, int count, BatchUpdate update) {
+        if (ids == null || update == null) {
+            throw new NullPointerException("Cannot apply batch update with null parameters.");
+        }
+        applyByStripe(ids, count, true, (int index, Flashcard flashcard) -> {
+            update.apply(index, flashcard);
+            flashcard.version = clock.incrementAndGet();
+        });
+    }
+
+    /*
+     * readAll reads each flashcard in a batch of identifiers, grouped by stripe like updateAll, but
+     * sharing each stripe with other reads. Flashcards that are not in the deck are skipped.
+     *
+     * Input: identifiers of the flashcards, number of identifiers in the array, and the read,
+     * which receives each flashcard with its position in the batch.
+     * Output: version of the deck's clock before the batch was read: a flashcard skipped as missing
+     * was deleted after any version up to it.
+     */
+    public long readAll(long[] ids, int count, BatchRead read) {
+        if (ids == null || read == null) {
+            throw new NullPointerException("Cannot apply batch read with null parameters.");
+        }
+        long version = clock.get();
+        applyByStripe(ids, count, false, (int index, Flashcard flashcard) -> read.apply(index, flashcard));
+        return version;
+    }
+
+    /*
+     * applyByStripe applies an operation to each flashcard in a batch of identifiers, locking each
+     * stripe once per batch. The batch positions are grouped by stripe with a counting sort, which
+     * keeps batch order within a stripe.
+     *
+     * Input: identifiers of the flashcards, number of identifiers in the array, whether to lock the
+     * stripes for writing, and the operation.
+     * Output: no return value.
+     */
+    private void applyByStripe(long[] ids, int count, boolean write, BatchUpdate operation) {
+        if (count < 0 || count > ids.length) {
+            throw new IllegalArgumentException("Invalid batch size.");
+        }
+
+        int[] starts = new int[STRIPE_COUNT + 1];
+        int[] stripeOf = new int[count];
+        for (int i = 0; i < count; i++) {
+            stripeOf[i] = stripeIndex(ids[i]);
+            starts[stripeOf[i] + 1]++;
+        }
+        for (int stripe = 0; stripe < STRIPE_COUNT; stripe++) {
+            starts[stripe + 1] += starts[stripe];
+        }
+        int[] order = new int[count];
+        int[] next = starts.clone();
+        for (int i = 0; i < count; i++) {
+            order[next[stripeOf[i]]++] = i;
+        }
+
+        for (int stripe = 0; stripe < STRIPE_COUNT; stripe++) {
+            if (starts[stripe] == starts[stripe + 1]) {
+                continue;
+            }
+            Lock lock = write ? stripes[stripe].writeLock() : stripes[stripe].readLock();
+            lock.lock();
+            try {
+                for (int k = starts[stripe]; k < starts[stripe + 1]; k++) {
+                    Flashcard flashcard = byId.get(ids[order[k]]);
+                    if (flashcard != null) {
+                        operation.apply(order[k], flashcard);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /*
+     * add appends a flashcard to the deck.
+     *
+     * Input: flashcard to add.
+     * Output: no return value, modifies the deck.
+     */
+    public void add(Flashcard flashcard) {
+        if (flashcard == null) {
+            throw new NullPointerException("Cannot add null flashcard.");
+        }
+        long stamp = lockStructure();
+        try {
+            if (byId.containsKey(flashcard.id)) {
+                throw new IllegalArgumentException("Deck already contains flashcard " + flashcard.id);
+            }
+            flashcards.add(flashcard);
+            byId.put(flashcard.id, flashcard);
+            flashcard.version = clock.incrementAndGet();
+        } finally {
+            unlockStructure(stamp);
+        }
+        events.publish(DeckChanges.Change.ADDED, flashcard.id);
+    }
+
+    /*
+     * addAll appends many flashcards to the deck in one structural operation.
+     * If any flashcard is already in the deck, or is in the batch twice, none are added.
+     *
+     * Input: flashcards to add.
+     * Output: no return value, modifies the deck.
+     */
+    public void addAll(ArrayList<Flashcard> newFlashcards) {
+        if (newFlashcards == null) {
+            throw new NullPointerException("Cannot add null flashcards.");
+        }
+        HashMap<Long, Flashcard> batch = indexById(newFlashcards);
+
+        long stamp = lockStructure();
+        try {
+            for (Long id : batch.keySet()) {
+                if (byId.containsKey(id)) {
+                    throw new IllegalArgumentException("Deck already contains flashcard " + id);
+                }
+            }
+            flashcards.addAll(newFlashcards);
+            byId.putAll(batch);
+            stamp(newFlashcards);
+        } finally {
+            unlockStructure(stamp);
+        }
+        events.publish(DeckChanges.Change.ADDED, idsOf(newFlashcards), newFlashcards.size());
+    }
+
+    /*
+     * idsAt finds the identifiers of the flashcards at the given indices, all within one epoch.
+     *
+     * Input: indices of flashcards.
+     * Output: identifiers of the flashcards, in the order of the indices.
+     */
+    public long[] idsAt(int[] indices) {
+        if (indices == null) {
+            throw new NullPointerException("Cannot find identifiers of null indices.");
+        }
+        long[] ids = new long[indices.length];
+        long stamp = structureLock.readLock();
+        try {
+            for (int i = 0; i < indices.length; i++) {
+                if (indices[i] < 0 || indices[i] >= flashcards.size()) {
+                    throw new IllegalArgumentException("Invalid flashcard index.");
+                }
+                ids[i] = flashcards.get(indices[i]).id;
+            }
+        } finally {
+            structureLock.unlockRead(stamp);
+        }
+        return ids;
+    }
+
+    /*
+     * indicesOf finds the indices of the flashcards with the given identifiers, all within one epoch,
+     * with one pass over the deck that stops once every flashcard is found.
+     *
+     * Input: identifiers of flashcards.
+     * Output: index of each flashcard, in the order of the identifiers, or -1 if it is not in the deck.
+     */
+    public int[] indicesOf(long[] ids) {
+        if (ids == null) {
+            throw new NullPointerException("Cannot find indices of null identifiers.");
+        }
+        int[] indices = new int[ids.length];
+        Arrays.fill(indices, -1);
+        LongIntMap positions = new LongIntMap(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            positions.put(ids[i], i);
+        }
+
+        int remaining = positions.size();
+        long stamp = structureLock.readLock();
+        try {
+            for (int index = 0; index < flashcards.size() && remaining > 0; index++) {
+                int position = positions.get(flashcards.get(index).id);
+                if (position != LongIntMap.MISSING && indices[position] < 0) {
+                    indices[position] = index;
+                    remaining--;
+                }
+            }
+        } finally {
+            structureLock.unlockRead(stamp);
+        }
+
+        // an identifier given twice gets the same index both times
+        for (int i = 0; i < ids.length; i++) {
+            int position = positions.get(ids[i]);
+            indices[i] = indices[position];
+        }
+        return indices;
+    }
+
+    /*
+     * removeIndices removes the flashcards at the given ascending indices.
+     *
+     * Input: ascending array of indices to remove.
+     * Output: no return value, modifies the deck.
+     */
+    public void removeIndices(int[] indices) {
+        if (indices == null) {
+            throw new NullPointerException("Cannot remove null indices.");
+        }
+        long[] removedIds = new long[indices.length];
+        long stamp = lockStructure();
+        try {
+            for (int i = 0; i < indices.length; i++) {
+                if (indices[i] < 0 || indices[i] >= flashcards.size()) {
+                    throw new IllegalArgumentException("Invalid index when trying to delete flashcard.");
+                }
+                if (i > 0 && indices[i - 1] >= indices[i]) {
+                    throw new IllegalArgumentException("Indices to delete were not provided in ascending order");
+                }
+            }
+
+            // compact the list in one pass instead of shifting it once per removal
+            int kept = 0;
+            int next = 0;
+            for (int i = 0; i < flashcards.size(); i++) {
+                Flashcard flashcard = flashcards.get(i);
+                if (next < indices.length && indices[next] == i) {
+                    byId.remove(flashcard.id);
+                    removedIds[next] = flashcard.id;
+                    next++;
+                } else {
+                    flashcards.set(kept++, flashcard);
+                }
+            }
+            flashcards.subList(kept, flashcards.size()).clear();
+        } finally {
+            unlockStructure(stamp);
+        }
+        events.publish(DeckChanges.Change.DELETED, removedIds, removedIds.length);
+    }
+
+    /*
+     * removeIds removes the flashcards with the given identifiers.
+     * Unlike indices, identifiers stay valid across epochs, so this is safe to call when other
+     * threads may have restructured the deck since the identifiers were read.
+     *
+     * Input: identifiers of the flashcards to remove.
+     * Output: number of flashcards removed.
+     */
+    public int removeIds(long[] ids) {
+        if (ids == null) {
+            throw new NullPointerException("Cannot remove null identifiers.");
+        }
+        long[] removedIds = new long[ids.length];
+        int removed = 0;
+        long stamp = lockStructure();
+        try {
+            for (long id : ids) {
+                if (byId.remove(id) != null) {
+                    removedIds[removed++] = id;
+                }
+            }
+            if (removed > 0) {
+                flashcards.removeIf((Flashcard flashcard) -> !byId.containsKey(flashcard.id));
+            }
+        } finally {
+            unlockStructure(stamp);
+        }
+        events.publish(DeckChanges.Change.DELETED, removedIds, removed);
+        return removed;
+    }
+
+    /*
+     * replaceAll replaces every flashcard in the deck.
+     * It is published as deleting the old flashcards and adding the new ones, so flashcards in both
+     * are published as edited.
+     *
+     * Input: new flashcards.
+     * Output: no return value, modifies the deck.
+     */
+    public void replaceAll(ArrayList<Flashcard> newFlashcards) {
+        if (newFlashcards == null) {
+            throw new NullPointerException("Cannot replace deck with null flashcards.");
+        }
+        ArrayList<Flashcard> copy = new ArrayList<>(newFlashcards);
+        HashMap<Long, Flashcard> index = indexById(copy);
+
+        ArrayList<Flashcard> old;
+        long stamp = lockStructure();
+        try {
+            old = flashcards;
+            flashcards = copy;
+            byId = index;
+            stamp(copy);
+        } finally {
+            unlockStructure(stamp);
+        }
+
+        DeckChanges changes = new DeckChanges(old.size() + copy.size());
+        changes.add(DeckChanges.Change.DELETED, idsOf(old), old.size());
+        changes.add(DeckChanges.Change.ADDED, idsOf(copy), copy.size());
+        changes.add(DeckChanges.Change.REORDERED, 0);
+        events.publish(changes);
+    }
+
+    /*
+     * restructure applies an arbitrary structural operation, such as sorting, to the list.
+     * The identifier index is rebuilt afterwards, since the operation may add or remove flashcards.
+     * It is published as a reordering; operations that add or remove flashcards should publish those
+     * changes themselves.
+     *
+     * Input: operation to apply.
+     * Output: no return value, modifies the deck.
+     */
+    public void restructure(Restructure restructure) {
+        if (restructure == null) {
+            throw new NullPointerException("Cannot apply null restructure.");
+        }
+        long stamp = lockStructure();
+        try {
+            restructure.apply(flashcards);
+            byId = indexById(flashcards);
+        } finally {
+            unlockStructure(stamp);
+        }
+        events.publish(DeckChanges.Change.REORDERED, 0);
+    }
+
+    /*
+     * lockStructure starts a new epoch, taking every stripe and the structure lock.
+     * Stripes are always taken in the same order so two structural operations cannot deadlock.
+     *
+     * Input: no input.
+     * Output: stamp of the structure lock, to pass to unlockStructure.
+     */
+    private long lockStructure() {
+        for (ReentrantReadWriteLock stripe : stripes) {
+            stripe.writeLock().lock();
+        }
+        return structureLock.writeLock();
+    }
+
+    /*
+     * unlockStructure ends the epoch started by lockStructure.
+     *
+     * Input: stamp returned by lockStructure.
+     * Output: no return value, releases the locks.
+     */
+    private void unlockStructure(long stamp) {
+        epoch++;
+        structureLock.unlockWrite(stamp);
+        for (int i = STRIPE_COUNT - 1; i >= 0; i--) {
+            stripes[i].writeLock().unlock();
+        }
+    }
+
+    /*
+     * stamp stamps flashcards joining the deck with new versions.
+     *
+     * Input: the flashcards.
+     * Output: no return value, modifies the flashcards.
+     */
+    private void stamp(ArrayList<Flashcard> newFlashcards) {
+        for (Flashcard flashcard : newFlashcards) {
+            flashcard.version = clock.incrementAndGet();
+        }
+    }
+
+    /*
+     * idsOf lists the identifiers of flashcards.
+     *
+     * Input: flashcards.
+     * Output: their identifiers, in the same order.
+     */
+    private static long[] idsOf(ArrayList<Flashcard> flashcards) {
+        long[] ids = new long[flashcards.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = flashcards.get(i).id;
+        }
+        return ids;
+    }
+
+    /*
+     * indexById builds a map from identifier to flashcard.
+     *
+     * Input: flashcards to index.
+     * Output: map from identifier to flashcard.
+     */
+    private static HashMap<Long, Flashcard> indexById(ArrayList<Flashcard> flashcards) {
+        HashMap<Long, Flashcard> index = new HashMap<>(flashcards.size() * 2);
+        for (Flashcard flashcard : flashcards) {
+            if (flashcard == null) {
+                throw new NullPointerException("Deck cannot contain null flashcards.");
+            }
+            if (index.put(flashcard.id, flashcard) != null) {
+                throw new IllegalArgumentException("Deck contains flashcard " + flashcard.id + " twice.");
+            }
+        }
+        return index;
+    }
+
+    /*
+     * stripeIndex finds the stripe a flashcard identifier belongs to.
+     *
+     * Input: flashcard identifier.
+     * Output: index of the stripe.
+     */
+    private static int stripeIndex(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 58) & (STRIPE_COUNT - 1);
+    }
+}
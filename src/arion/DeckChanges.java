@@ -0,0 +1,246 @@
+package arion;
+
+import java.util.Arrays;
+
+/*
+ * DeckChanges is a coalesced batch of changes to a deck, delivered by a DeckEventBus.
+ * Each flashcard appears in a batch at most once, with the net effect of every change to it since
+ * the previous batch: a flashcard added and then edited is only added, a flashcard added and then
+ * deleted does not appear at all, and a flashcard deleted and then added again is edited.
+ * A flashcard can be both edited and reviewed in the same batch.
+ */
+
+public class DeckChanges {
+
+    /*
+     * The Change enum represents one kind of change to a deck.
+     * REORDERED applies to the whole deck rather than to particular flashcards.
+     */
+    public enum Change {
+        ADDED,
+        EDITED,
+        REVIEWED,
+        DELETED,
+        REORDERED
+    }
+
+    // bits of the net change to one flashcard
+    private final static int ADDED_BIT = 1;
+    private final static int EDITED_BIT = 2;
+    private final static int REVIEWED_BIT = 4;
+    private final static int DELETED_BIT = 8;
+
+    private long[] ids;
+    private int[] kinds;
+    private int count = 0;
+    private LongIntMap positions;
+    private boolean reordered = false;
+
+    /*
+     * The constructor creates an empty batch.
+     *
+     * Input: no input.
+     * Output: new DeckChanges class.
+     */
+    public DeckChanges() {
+        this(16);
+    }
+
+    /*
+     * This constructor signature creates an empty batch with room for the expected number of flashcards.
+     *
+     * Input: expected number of changed flashcards.
+     * Output: new DeckChanges class.
+     */
+    public DeckChanges(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Cannot construct changes with negative size.");
+        }
+        int capacity = Math.max(4, expectedSize);
+        ids = new long[capacity];
+        kinds = new int[capacity];
+        positions = new LongIntMap(capacity);
+    }
+
+    /*
+     * add records a change to one flashcard, merging it with earlier changes to the same flashcard.
+     *
+     * Input: kind of change, identifier of the changed flashcard.
+     * Output: no return value, modifies the batch.
+     */
+    public void add(Change change, long id) {
+        if (change == null) {
+            throw new NullPointerException("Cannot add null change.");
+        }
+        if (change == Change.REORDERED) {
+            reordered = true;
+            return;
+        }
+
+        int position = positions.get(id);
+        int kind = (position == LongIntMap.MISSING) ? 0 : kinds[position];
+        switch (change) {
+            case ADDED:
+                kind = ((kind & DELETED_BIT) != 0) ? EDITED_BIT : ADDED_BIT;
+                break;
+            case EDITED:
+                if ((kind & (ADDED_BIT | DELETED_BIT)) == 0) {
+                    kind |= EDITED_BIT;
+                }
+                break;
+            case REVIEWED:
+                if ((kind & (ADDED_BIT | DELETED_BIT)) == 0) {
+                    kind |= REVIEWED_BIT;
+                }
+                break;
+            case DELETED:
+                kind = ((kind & ADDED_BIT) != 0) ? 0 : DELETED_BIT;
+                break;
+            default:
+                break;
+        }
+
+        if (position == LongIntMap.MISSING) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+                kinds = Arrays.copyOf(kinds, count * 2);
+            }
+            position = count++;
+            ids[position] = id;
+            positions.put(id, position);
+        }
+        kinds[position] = kind;
+    }
+
+    /*
+     * This add signature records the same change to many flashcards.
+     *
+     * Input: kind of change, identifiers of the changed flashcards, number of identifiers in the array.
+     * Output: no return value, modifies the batch.
+     */
+    public void add(Change change, long[] changedIds, int changedCount) {
+        if (change == null || changedIds == null) {
+            throw new NullPointerException("Cannot add changes with null parameters.");
+        }
+        if (changedCount < 0 || changedCount > changedIds.length) {
+            throw new IllegalArgumentException("Invalid number of changed flashcards.");
+        }
+        for (int i = 0; i < changedCount; i++) {
+            add(change, changedIds[i]);
+        }
+    }
+
+    /*
+     * addAll merges a later batch into this one.
+     *
+     * Input: batch of changes made after the changes in this batch.
+     * Output: no return value, modifies this batch.
+     */
+    public void addAll(DeckChanges later) {
+        if (later == null) {
+            throw new NullPointerException("Cannot merge null changes.");
+        }
+        for (int i = 0; i < later.count; i++) {
+            int kind = later.kinds[i];
+            long id = later.ids[i];
+            // a later net change of both edited and reviewed is merged as two changes
+            if ((kind & ADDED_BIT) != 0) {
+                add(Change.ADDED, id);
+            }
+            if ((kind & EDITED_BIT) != 0) {
+                add(Change.EDITED, id);
+            }
+            if ((kind & REVIEWED_BIT) != 0) {
+                add(Change.REVIEWED, id);
+            }
+            if ((kind & DELETED_BIT) != 0) {
+                add(Change.DELETED, id);
+            }
+        }
+        reordered |= later.reordered;
+    }
+
+    /*
+     * ids finds the flashcards with the given kind of change in this batch, in the order they first changed.
+     *
+     * Input: kind of change.
+     * Output: identifiers of the flashcards, which is empty for REORDERED.
+     */
+    public long[] ids(Change change) {
+        if (change == null) {
+            throw new NullPointerException("Cannot find identifiers of null change.");
+        }
+        int bit = bitOf(change);
+        int matching = 0;
+        for (int i = 0; i < count; i++) {
+            if ((kinds[i] & bit) != 0) {
+                matching++;
+            }
+        }
+        long[] result = new long[matching];
+        int next = 0;
+        for (int i = 0; i < count; i++) {
+            if ((kinds[i] & bit) != 0) {
+                result[next++] = ids[i];
+            }
+        }
+        return result;
+    }
+
+    /*
+     * isReordered checks whether the order of the deck changed.
+     *
+     * Input: no input.
+     * Output: whether the deck was reordered.
+     */
+    public boolean isReordered() {
+        return reordered;
+    }
+
+    /*
+     * size returns the number of flashcards with a net change in this batch.
+     *
+     * Input: no input.
+     * Output: number of changed flashcards.
+     */
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            if (kinds[i] != 0) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /*
+     * isEmpty checks whether this batch has no net change.
+     *
+     * Input: no input.
+     * Output: whether nothing changed.
+     */
+    public boolean isEmpty() {
+        return !reordered && size() == 0;
+    }
+
+    /*
+     * bitOf finds the bit of a per-flashcard change.
+     *
+     * Input: kind of change.
+     * Output: its bit, or 0 for REORDERED.
+     */
+    private static int bitOf(Change change) {
+        switch (change) {
+            case ADDED:
+                return ADDED_BIT;
+            case EDITED:
+                return EDITED_BIT;
+            case REVIEWED:
+                return REVIEWED_BIT;
+            case DELETED:
+                return DELETED_BIT;
+            default:
+                return 0;
+        }
+    }
+}
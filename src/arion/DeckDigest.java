@@ -0,0 +1,328 @@
+package arion;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * DeckDigest is a Merkle tree over the sync records of a deck, used to find the flashcards that differ
+ * between two replicas without comparing every flashcard.
+ *
+ * Flashcards are placed in one of LEAF_COUNT leaves by their identifier, which never changes, so every
+ * replica places a flashcard in the same leaf. Each node of the tree has FANOUT children, and its hash
+ * is the sum of the hashes of the records below it. Sums can be updated in place, so the digest
+ * listens to the deck's changes and keeps itself up to date in time proportional to the depth,
+ * instead of being rebuilt before every synchronization. Two replicas compare the roots, then
+ * the children of the nodes that differ, so they only descend into the parts of the tree that changed.
+ *
+ * Deleted flashcards are kept as deletion records, so that a deletion on one replica is not undone by
+ * the other replica still holding the flashcard.
+ */
+
+public class DeckDigest {
+    public final static int FANOUT = 16;
+    public final static int DEPTH = 3; // levels below the root; leaves are at level DEPTH
+    public final static int LEAF_COUNT = 1 << (4 * DEPTH);
+
+    private Deck deck;
+
+    // levels[level][node] is the sum of the hashes of the records under the node
+    private long[][] levels = new long[DEPTH + 1][];
+    private long[][] leafIds = new long[LEAF_COUNT][];
+    private int[] leafSizes = new int[LEAF_COUNT];
+    private HashMap<Long, Long> hashes = new HashMap<>();
+    private HashMap<Long, Long> deletions = new HashMap<>(); // identifier to time of deletion
+
+    /*
+     * The constructor creates the digest of a deck, and keeps it up to date as the deck changes.
+     *
+     * Input: the deck.
+     * Output: new DeckDigest class.
+     */
+    public DeckDigest(Deck deck) {
+        if (deck == null) {
+            throw new NullPointerException("Cannot construct digest of null deck.");
+        }
+        this.deck = deck;
+        for (int level = 0; level <= DEPTH; level++) {
+            levels[level] = new long[1 << (4 * level)];
+        }
+
+        deck.events().subscribe(DeckEventBus.DIRECT, (DeckChanges changes) -> applyChanges(changes));
+        for (Flashcard flashcard : deck.snapshot()) {
+            refresh(flashcard.id);
+        }
+    }
+
+    /*
+     * hashes returns the hashes of the given nodes of one level of the tree.
+     *
+     * Input: level of the nodes, where 0 is the root, and the indices of the nodes within the level.
+     * Output: hash of each node, in the same order.
+     */
+    public synchronized long[] hashes(int level, int[] nodes) {
+        if (nodes == null) {
+            throw new NullPointerException("Cannot find hashes of null nodes.");
+        }
+        if (level < 0 || level > DEPTH) {
+            throw new IllegalArgumentException("Invalid digest level " + level);
+        }
+        long[] result = new long[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i] < 0 || nodes[i] >= levels[level].length) {
+                throw new IllegalArgumentException("Invalid digest node " + nodes[i]);
+            }
+            result[i] = levels[level][nodes[i]];
+        }
+        return result;
+    }
+
+    /*
+     * records returns the records of every flashcard and deletion in the given leaves.
+     *
+     * Input: indices of the leaves.
+     * Output: the records.
+     */
+    public ArrayList<SyncRecord> records(int[] leaves) {
+        if (leaves == null) {
+            throw new NullPointerException("Cannot find records of null leaves.");
+        }
+        ArrayList<SyncRecord> records = new ArrayList<>();
+        for (long id : idsIn(leaves)) {
+            SyncRecord[] record = new SyncRecord[1];
+            if (!deck.read(id, (Flashcard flashcard) -> record[0] = SyncRecord.of(flashcard))) {
+                synchronized (this) {
+                    Long deleted = deletions.get(id);
+                    if (deleted == null) {
+                        continue; // deleted after it was listed, and not yet seen by the digest
+                    }
+                    record[0] = SyncRecord.deletion(id, deleted);
+                }
+            }
+            records.add(record[0]);
+        }
+        return records;
+    }
+
+    /*
+     * recordDeletion records that a flashcard was deleted at the given time, for deletions received
+     * from another replica. The flashcard should be removed from the deck afterwards.
+     *
+     * Input: identifier of the flashcard, time it was deleted.
+     * Output: no return value, modifies the digest.
+     */
+    public synchronized void recordDeletion(long id, long deleted) {
+        deletions.put(id, deleted);
+        put(id, SyncRecord.deletion(id, deleted).hash());
+    }
+
+    /*
+     * size returns the number of records in the digest, including deletions.
+     *
+     * Input: no input.
+     * Output: number of records.
+     */
+    public synchronized int size() {
+        return hashes.size();
+    }
+
+    /*
+     * readDeletions replaces the recorded deletions with those in a file written by writeDeletions.
+     * A missing file holds no deletions.
+     *
+     * Input: path of the file.
+     * Output: no return value, modifies the digest.
+     */
+    public synchronized void readDeletions(String filepath) throws IOException {
+        if (filepath == null) {
+            throw new NullPointerException("Cannot read deletions from null path.");
+        }
+        for (Long id : new ArrayList<>(deletions.keySet())) {
+            deletions.remove(id);
+            remove(id);
+        }
+
+        File file = new File(filepath);
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] pair = line.split(" ");
+                if (pair.length != 2) {
+                    continue;
+                }
+                try {
+                    long id = Long.parseLong(pair[0]);
+                    if (!hashes.containsKey(id)) {
+                        recordDeletion(id, Long.parseLong(pair[1]));
+                    }
+                } catch (NumberFormatException e) {
+                    // skip the damaged line; the deletion is received again from other replicas
+                }
+            }
+        }
+    }
+
+    /*
+     * writeDeletions writes the recorded deletions to a file, one identifier and time per line.
+     *
+     * Input: path of the file.
+     * Output: no return value, writes to the file.
+     */
+    public void writeDeletions(String filepath) throws IOException {
+        if (filepath == null) {
+            throw new NullPointerException("Cannot write deletions to null path.");
+        }
+        HashMap<Long, Long> copy;
+        synchronized (this) {
+            copy = new HashMap<>(deletions);
+        }
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(filepath)))) {
+            for (Map.Entry<Long, Long> entry : copy.entrySet()) {
+                writer.println(entry.getKey() + " " + entry.getValue());
+            }
+        }
+    }
+
+    /*
+     * leafOf finds the leaf a flashcard identifier belongs to.
+     *
+     * Input: flashcard identifier.
+     * Output: index of the leaf.
+     */
+    public static int leafOf(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> (64 - 4 * DEPTH));
+    }
+
+    /*
+     * applyChanges updates the digest with a batch of changes to the deck.
+     * Each changed flashcard is read again from the deck, so batches delivered late still leave the
+     * digest matching the deck.
+     *
+     * Input: the changes.
+     * Output: no return value, modifies the digest.
+     */
+    private void applyChanges(DeckChanges changes) {
+        for (DeckChanges.Change change : new DeckChanges.Change[] {
+                DeckChanges.Change.ADDED, DeckChanges.Change.EDITED, DeckChanges.Change.REVIEWED }) {
+            for (long id : changes.ids(change)) {
+                refresh(id);
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        for (long id : changes.ids(DeckChanges.Change.DELETED)) {
+            if (deck.find(id).isPresent()) {
+                continue;
+            }
+            synchronized (this) {
+                Long deleted = deletions.get(id);
+                recordDeletion(id, deleted == null ? now : deleted);
+            }
+        }
+    }
+
+    /*
+     * refresh rehashes a flashcard that is in the deck.
+     *
+     * Input: identifier of the flashcard.
+     * Output: no return value, modifies the digest.
+     */
+    private void refresh(long id) {
+        SyncRecord[] record = new SyncRecord[1];
+        if (!deck.read(id, (Flashcard flashcard) -> record[0] = SyncRecord.of(flashcard))) {
+            return;
+        }
+        long hash = record[0].hash();
+        synchronized (this) {
+            deletions.remove(id);
+            put(id, hash);
+        }
+    }
+
+    /*
+     * idsIn lists the identifiers in the given leaves.
+     *
+     * Input: indices of the leaves.
+     * Output: identifiers of the records in the leaves.
+     */
+    private synchronized long[] idsIn(int[] leaves) {
+        int total = 0;
+        for (int leaf : leaves) {
+            if (leaf < 0 || leaf >= LEAF_COUNT) {
+                throw new IllegalArgumentException("Invalid digest leaf " + leaf);
+            }
+            total += leafSizes[leaf];
+        }
+        long[] ids = new long[total];
+        int next = 0;
+        for (int leaf : leaves) {
+            if (leafSizes[leaf] > 0) {
+                System.arraycopy(leafIds[leaf], 0, ids, next, leafSizes[leaf]);
+                next += leafSizes[leaf];
+            }
+        }
+        return ids;
+    }
+
+    /*
+     * put sets the hash of a record, adding it to its leaf if it is new.
+     *
+     * Input: identifier of the record, its hash.
+     * Output: no return value, modifies the digest.
+     */
+    private void put(long id, long hash) {
+        Long old = hashes.put(id, hash);
+        int leaf = leafOf(id);
+        if (old == null) {
+            if (leafIds[leaf] == null) {
+                leafIds[leaf] = new long[4];
+            } else if (leafSizes[leaf] == leafIds[leaf].length) {
+                leafIds[leaf] = Arrays.copyOf(leafIds[leaf], leafSizes[leaf] * 2);
+            }
+            leafIds[leaf][leafSizes[leaf]++] = id;
+            addToPath(leaf, hash);
+        } else {
+            addToPath(leaf, hash - old);
+        }
+    }
+
+    /*
+     * remove removes a record from the digest, if it is present.
+     *
+     * Input: identifier of the record.
+     * Output: no return value, modifies the digest.
+     */
+    private void remove(long id) {
+        Long old = hashes.remove(id);
+        if (old == null) {
+            return;
+        }
+        int leaf = leafOf(id);
+        long[] ids = leafIds[leaf];
+        for (int i = 0; i < leafSizes[leaf]; i++) {
+            if (ids[i] == id) {
+                ids[i] = ids[--leafSizes[leaf]];
+                break;
+            }
+        }
+        addToPath(leaf, -old);
+    }
+
+    /*
+     * addToPath adds a difference to the hash of a leaf and of every node above it.
+     *
+     * Input: index of the leaf, difference to add.
+     * Output: no return value, modifies the tree.
+     */
+    private void addToPath(int leaf, long difference) {
+        for (int level = DEPTH; level >= 0; level--) {
+            levels[level][leaf >>> (4 * (DEPTH - level))] += difference;
+        }
+    }
+}
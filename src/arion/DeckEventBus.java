@@ -0,0 +1,173 @@
+package arion;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/*
+ * DeckEventBus publishes the changes made to a deck to any number of subscribers, such as the
+ * browse table, indexes, and autosave, without them knowing who made the changes.
+ *
+ * Each subscription coalesces the changes published since its last delivery into one DeckChanges
+ * batch, and asks its dispatcher to deliver it. The dispatcher decides when: a user interface
+ * dispatcher can deliver once per frame on its own thread, so a burst of thousands of changes
+ * reaches it as one update, while the DIRECT dispatcher delivers on the publishing thread, once
+ * per published batch. A subscription's batches are delivered one at a time, in order.
+ */
+
+public class DeckEventBus {
+
+    /*
+     * Listener receives the coalesced changes of a subscription.
+     */
+    public interface Listener {
+        public void changed(DeckChanges changes);
+    }
+
+    /*
+     * Dispatcher runs a subscription's delivery, at a time and on a thread of its choosing.
+     */
+    public interface Dispatcher {
+        public void dispatch(Runnable delivery);
+    }
+
+    // delivers immediately on the publishing thread
+    public final static Dispatcher DIRECT = (Runnable delivery) -> delivery.run();
+
+    /*
+     * The Subscription class holds the changes waiting to be delivered to one listener.
+     */
+    public class Subscription {
+        private Dispatcher dispatcher;
+        private Listener listener;
+        private DeckChanges pending = new DeckChanges();
+        private boolean scheduled = false;
+        private volatile boolean cancelled = false;
+        private final Object deliveryLock = new Object();
+
+        /*
+         * The constructor creates a subscription.
+         *
+         * Input: dispatcher of the deliveries, and the listener to deliver to.
+         * Output: new Subscription class.
+         */
+        private Subscription(Dispatcher dispatcher, Listener listener) {
+            this.dispatcher = dispatcher;
+            this.listener = listener;
+        }
+
+        /*
+         * cancel stops deliveries to the listener, including any that are already scheduled.
+         *
+         * Input: no input.
+         * Output: no return value.
+         */
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        /*
+         * enqueue merges published changes into the pending batch, and schedules a delivery if
+         * none is scheduled yet.
+         *
+         * Input: published changes.
+         * Output: no return value.
+         */
+        private void enqueue(DeckChanges changes) {
+            boolean schedule;
+            synchronized (this) {
+                pending.addAll(changes);
+                schedule = !scheduled;
+                scheduled = true;
+            }
+            if (schedule) {
+                dispatcher.dispatch(() -> deliver());
+            }
+        }
+
+        /*
+         * deliver hands the pending batch to the listener.
+         *
+         * Input: no input.
+         * Output: no return value.
+         */
+        private void deliver() {
+            synchronized (deliveryLock) {
+                DeckChanges changes;
+                synchronized (this) {
+                    changes = pending;
+                    pending = new DeckChanges();
+                    scheduled = false;
+                }
+                if (!cancelled && !changes.isEmpty()) {
+                    listener.changed(changes);
+                }
+            }
+        }
+    }
+
+    private CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /*
+     * subscribe starts delivering the changes published from now on to a listener.
+     *
+     * Input: dispatcher of the deliveries, and the listener to deliver to.
+     * Output: the subscription, which can be cancelled.
+     */
+    public Subscription subscribe(Dispatcher dispatcher, Listener listener) {
+        if (dispatcher == null || listener == null) {
+            throw new NullPointerException("Cannot subscribe with null dispatcher or listener.");
+        }
+        Subscription subscription = new Subscription(dispatcher, listener);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /*
+     * publish publishes a change to one flashcard, or a reordering of the deck.
+     *
+     * Input: kind of change, identifier of the changed flashcard, which is ignored for REORDERED.
+     * Output: no return value.
+     */
+    public void publish(DeckChanges.Change change, long id) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        DeckChanges changes = new DeckChanges(1);
+        changes.add(change, id);
+        publish(changes);
+    }
+
+    /*
+     * This publish signature publishes the same change to many flashcards.
+     *
+     * Input: kind of change, identifiers of the changed flashcards, number of identifiers in the array.
+     * Output: no return value.
+     */
+    public void publish(DeckChanges.Change change, long[] ids, int count) {
+        if (subscriptions.isEmpty() || count == 0) {
+            return;
+        }
+        DeckChanges changes = new DeckChanges(count);
+        changes.add(change, ids, count);
+        publish(changes);
+    }
+
+    /*
+     * This publish signature publishes a batch of changes.
+     * The batch must not be modified afterwards.
+     *
+     * Input: changes to publish.
+     * Output: no return value.
+     */
+    public void publish(DeckChanges changes) {
+        if (changes == null) {
+            throw new NullPointerException("Cannot publish null changes.");
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+        for (Subscription subscription : subscriptions) {
+            subscription.enqueue(changes);
+        }
+    }
+}
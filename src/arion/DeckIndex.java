@@ -0,0 +1,259 @@
+package arion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * DeckIndex is the base of the indexes and summaries that follow a deck as it changes. It gives every
+ * flashcard of the deck a dense slot number, listens to the deck's changes, and re-reads the flashcards
+ * that changed, while subclasses decide what each slot holds.
+ *
+ * Flashcards are read from the deck before the index is locked, so a slow index does not hold up the
+ * deck, and two threads refreshing the same flashcard may apply their reads in either order. Each slot
+ * therefore keeps the version of the flashcard it was read at, and a read older than the version already
+ * indexed is dropped. A flashcard found missing is only removed if no newer version was indexed since,
+ * and a flashcard read before it was deleted is only indexed again if it is still in the deck once the
+ * index is locked; a deletion published after that check waits for the lock, and removes it.
+ *
+ * Subclasses lock the index with synchronized methods or blocks on the index itself, which is also
+ * what this class locks.
+ */
+
+abstract class DeckIndex<V> {
+    protected final static int INITIAL_CAPACITY = 1024;
+
+    protected final Deck deck;
+
+    // slots of the indexed flashcards, with the identifier and version of the flashcard in each slot
+    protected LongIntMap slotOf = new LongIntMap(INITIAL_CAPACITY);
+    protected long[] slotIds = new long[INITIAL_CAPACITY];
+    private long[] slotVersions = new long[INITIAL_CAPACITY];
+    protected int slotCount = 0;
+    private int[] freeSlots = new int[INITIAL_CAPACITY];
+    private int freeCount = 0;
+
+    /*
+     * The constructor creates an empty index of a deck. Subclasses call indexDeck once their own
+     * fields are ready.
+     *
+     * Input: the deck, and the name of the index, for error messages.
+     * Output: new DeckIndex class.
+     */
+    protected DeckIndex(Deck deck, String name) {
+        if (deck == null) {
+            throw new NullPointerException("Cannot construct " + name + " of null deck.");
+        }
+        this.deck = deck;
+    }
+
+    /*
+     * read reads what the index holds of a flashcard. It runs while the flashcard's stripe is locked
+     * for reading, so it should only copy fields.
+     *
+     * Input: the flashcard.
+     * Output: the value to index.
+     */
+    protected abstract V read(Flashcard flashcard);
+
+    /*
+     * insert indexes the value of a flashcard in a newly allocated slot.
+     *
+     * Input: the slot, and the value.
+     * Output: no return value, modifies the index.
+     */
+    protected abstract void insert(int slot, V value);
+
+    /*
+     * unindex takes the value of a slot out of the index, before the slot is released.
+     *
+     * Input: the slot.
+     * Output: no return value, modifies the index.
+     */
+    protected abstract void unindex(int slot);
+
+    /*
+     * grow grows the arrays a subclass keeps per slot.
+     *
+     * Input: the new number of slots.
+     * Output: no return value, modifies the index.
+     */
+    protected abstract void grow(int capacity);
+
+    /*
+     * prepare computes whatever is costly about the values read, before the index is locked.
+     *
+     * Input: the values read, null for flashcards not in the deck.
+     * Output: no return value, may modify the values.
+     */
+    protected void prepare(ArrayList<V> values) {
+    }
+
+    /*
+     * update replaces the value of a slot in place, if the subclass can do so more cheaply than
+     * releasing the slot and inserting the value into a new one.
+     *
+     * Input: the slot, and the new value.
+     * Output: whether the slot was updated.
+     */
+    protected boolean update(int slot, V value) {
+        return false;
+    }
+
+    /*
+     * release returns the slot of a removed flashcard to the free slots. Subclasses still referring to
+     * the slot override it, and call freeSlot once they no longer do.
+     *
+     * Input: the slot.
+     * Output: no return value, modifies the index.
+     */
+    protected void release(int slot) {
+        freeSlot(slot);
+    }
+
+    /*
+     * followsReviews returns whether reviews change what the index holds.
+     *
+     * Input: no input.
+     * Output: whether reviewed flashcards are read again.
+     */
+    protected boolean followsReviews() {
+        return false;
+    }
+
+    /*
+     * indexDeck starts listening to the deck's changes, then indexes every flashcard of the deck.
+     * Listening first means a change made while the deck is indexed is not missed.
+     *
+     * Input: no input.
+     * Output: no return value, modifies the index.
+     */
+    protected final void indexDeck() {
+        deck.events().subscribe(DeckEventBus.DIRECT, (DeckChanges changes) -> applyChanges(changes));
+        ArrayList<Flashcard> snapshot = deck.snapshot();
+        long[] ids = new long[snapshot.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = snapshot.get(i).id;
+        }
+        refresh(ids);
+    }
+
+    /*
+     * applyChanges updates the index after the deck changed. Changes are published once the deck is
+     * unlocked, so a deletion may arrive after the flashcard was added back; deleted flashcards are
+     * therefore read again like the others, and only removed if they are still missing.
+     *
+     * Input: the coalesced changes.
+     * Output: no return value, modifies the index.
+     */
+    protected void applyChanges(DeckChanges changes) {
+        refresh(changes.ids(DeckChanges.Change.DELETED));
+        refresh(changes.ids(DeckChanges.Change.ADDED));
+        refresh(changes.ids(DeckChanges.Change.EDITED));
+        if (followsReviews()) {
+            refresh(changes.ids(DeckChanges.Change.REVIEWED));
+        }
+    }
+
+    /*
+     * refresh indexes the current values of the given flashcards, replacing what was indexed before.
+     * The values are read and prepared before the index is locked; a value read before a newer one
+     * was indexed is dropped.
+     *
+     * Input: identifiers of the flashcards.
+     * Output: no return value, modifies the index.
+     */
+    protected final void refresh(long[] ids) {
+        if (ids.length == 0) {
+            return;
+        }
+        ArrayList<V> values = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            values.add(null);
+        }
+        long[] versions = new long[ids.length];
+        long epoch = deck.epoch(); // flashcards are only deleted by structural operations
+        long readVersion = deck.readAll(ids, ids.length, (int index, Flashcard flashcard) -> {
+            values.set(index, read(flashcard));
+            versions[index] = flashcard.version;
+        });
+        prepare(values);
+
+        synchronized (this) {
+            for (int i = 0; i < ids.length; i++) {
+                int slot = slotOf.get(ids[i]);
+                V value = values.get(i);
+                if (value == null) {
+                    // not in the deck when read; removed unless a newer version was indexed since
+                    if (slot != LongIntMap.MISSING && slotVersions[slot] <= readVersion) {
+                        remove(ids[i]);
+                    }
+                    continue;
+                }
+                if (slot != LongIntMap.MISSING) {
+                    if (versions[i] < slotVersions[slot]) {
+                        continue;
+                    }
+                    if (update(slot, value)) {
+                        slotVersions[slot] = versions[i];
+                        continue;
+                    }
+                    remove(ids[i]);
+                } else if (deck.epoch() != epoch && !deck.contains(ids[i])) {
+                    continue; // deleted after it was read
+                }
+                slot = allocateSlot();
+                slotOf.put(ids[i], slot);
+                slotIds[slot] = ids[i];
+                slotVersions[slot] = versions[i];
+                insert(slot, value);
+            }
+        }
+    }
+
+    /*
+     * remove removes a flashcard from the index, if it is indexed, and releases its slot.
+     *
+     * Input: identifier of the flashcard.
+     * Output: no return value, modifies the index.
+     */
+    protected final void remove(long id) {
+        int slot = slotOf.remove(id);
+        if (slot == LongIntMap.MISSING) {
+            return;
+        }
+        unindex(slot);
+        release(slot);
+    }
+
+    /*
+     * freeSlot makes a released slot available to new flashcards.
+     *
+     * Input: the slot.
+     * Output: no return value, modifies the index.
+     */
+    protected final void freeSlot(int slot) {
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    /*
+     * allocateSlot finds a free slot, growing the slot arrays if there is none.
+     *
+     * Input: no input.
+     * Output: the slot.
+     */
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (slotCount == slotIds.length) {
+            int capacity = slotCount * 2;
+            slotIds = Arrays.copyOf(slotIds, capacity);
+            slotVersions = Arrays.copyOf(slotVersions, capacity);
+            grow(capacity);
+        }
+        return slotCount++;
+    }
+}
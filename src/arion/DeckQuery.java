@@ -0,0 +1,584 @@
+package arion;
+
+import exception.QueryFormatException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/*
+ * DeckQuery is a parsed query selecting flashcards of a deck, such as
+ * "due within 7 days AND interval > 30 AND front contains 'ver'".
+ *
+ * A query is made of comparisons joined by AND, OR, and NOT, with parentheses for grouping; AND may be
+ * left out between two comparisons, and binds tighter than OR. The fields that can be compared are:
+ *   front, back    text of the side: contains, =, or != a word or a quoted text, ignoring case
+ *   text           either side: contains, =, or !=, like front and back
+ *   interval       review interval in days: =, !=, <, <=, >, or >= a whole number
+ *   due            days until the review date, negative once overdue: compared like interval, or
+ *                  "due within 7 days", the same as "due <= 7"
+ *   tag            one of the tags: = or != a tag
+ * Keywords and fields ignore case. An empty query selects every flashcard.
+ *
+ * A query is compiled into a predicate over flashcards for a given day, comparing the primitive fields
+ * of each flashcard without allocating. QueryPlanner decides which flashcards the predicate is tested on.
+ */
+
+public class DeckQuery {
+    /*
+     * The Field enum lists the fields a comparison can test.
+     */
+    public enum Field {
+        FRONT, BACK, TEXT, INTERVAL, DUE, TAG
+    }
+
+    /*
+     * The Operator enum lists the comparisons, with how they are written.
+     */
+    public enum Operator {
+        EQUAL("="), NOT_EQUAL("!="), LESS("<"), LESS_OR_EQUAL("<="), GREATER(">"), GREATER_OR_EQUAL(">="),
+        CONTAINS("contains");
+
+        public final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+    }
+
+    /*
+     * The Node class is a node of a parsed query.
+     */
+    public static abstract class Node {
+        /*
+         * compile converts the node into a predicate over flashcards.
+         *
+         * Input: the current day, in days since the epoch.
+         * Output: the predicate.
+         */
+        abstract Predicate<Flashcard> compile(long today);
+
+        /*
+         * format writes the node back as query text.
+         *
+         * Input: builder to append to.
+         * Output: no return value, modifies the builder.
+         */
+        abstract void format(StringBuilder builder);
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            format(builder);
+            return builder.toString();
+        }
+    }
+
+    /*
+     * The Comparison class compares one field of a flashcard with a value.
+     */
+    public static class Comparison extends Node {
+        public final Field field;
+        public final Operator operator;
+        public final String text; // value of text and tag comparisons, lower cased
+        public final long number; // value of interval and due comparisons
+
+        private Comparison(Field field, Operator operator, String text, long number) {
+            this.field = field;
+            this.operator = operator;
+            this.text = text;
+            this.number = number;
+        }
+
+        @Override
+        Predicate<Flashcard> compile(long today) {
+            switch (field) {
+                case FRONT:
+                    return compileText((Flashcard flashcard) -> flashcard.front);
+                case BACK:
+                    return compileText((Flashcard flashcard) -> flashcard.back);
+                case TEXT: {
+                    Predicate<Flashcard> front = compileText((Flashcard flashcard) -> flashcard.front);
+                    Predicate<Flashcard> back = compileText((Flashcard flashcard) -> flashcard.back);
+                    // != holds when neither side is equal, the others when either side matches
+                    return operator == Operator.NOT_EQUAL ? front.and(back) : front.or(back);
+                }
+                case INTERVAL:
+                    return compileNumber((Flashcard flashcard) -> flashcard.reviewInterval, number);
+                case DUE:
+                    return compileNumber((Flashcard flashcard) -> flashcard.reviewDate.toEpochDay(), today + number);
+                default: {
+                    String tag = text;
+                    boolean negated = operator == Operator.NOT_EQUAL;
+                    return (Flashcard flashcard) -> (Arrays.binarySearch(flashcard.tags, tag) >= 0) != negated;
+                }
+            }
+        }
+
+        /*
+         * compileText compiles a comparison of a text field.
+         *
+         * Input: function reading the field from a flashcard.
+         * Output: the predicate.
+         */
+        private Predicate<Flashcard> compileText(Function<Flashcard, String> side) {
+            String value = text;
+            switch (operator) {
+                case CONTAINS:
+                    return (Flashcard flashcard) -> containsIgnoreCase(side.apply(flashcard), value);
+                case EQUAL:
+                    return (Flashcard flashcard) -> side.apply(flashcard).equalsIgnoreCase(value);
+                default:
+                    return (Flashcard flashcard) -> !side.apply(flashcard).equalsIgnoreCase(value);
+            }
+        }
+
+        /*
+         * compileNumber compiles a comparison of a number field.
+         *
+         * Input: function reading the field from a flashcard, and the value it is compared with.
+         * Output: the predicate.
+         */
+        private Predicate<Flashcard> compileNumber(ToLongFunction<Flashcard> side, long value) {
+            switch (operator) {
+                case EQUAL:
+                    return (Flashcard flashcard) -> side.applyAsLong(flashcard) == value;
+                case NOT_EQUAL:
+                    return (Flashcard flashcard) -> side.applyAsLong(flashcard) != value;
+                case LESS:
+                    return (Flashcard flashcard) -> side.applyAsLong(flashcard) < value;
+                case LESS_OR_EQUAL:
+                    return (Flashcard flashcard) -> side.applyAsLong(flashcard) <= value;
+                case GREATER:
+                    return (Flashcard flashcard) -> side.applyAsLong(flashcard) > value;
+                default:
+                    return (Flashcard flashcard) -> side.applyAsLong(flashcard) >= value;
+            }
+        }
+
+        @Override
+        void format(StringBuilder builder) {
+            builder.append(field.name().toLowerCase(Locale.ROOT)).append(' ').append(operator.symbol).append(' ');
+            if (field == Field.INTERVAL || field == Field.DUE) {
+                builder.append(number);
+            } else {
+                builder.append('\'').append(text.replace("'", "''")).append('\'');
+            }
+        }
+    }
+
+    /*
+     * The Junction class joins nodes with AND or OR.
+     */
+    public static class Junction extends Node {
+        public final boolean and; // whether every node must hold, rather than any
+        public final Node[] nodes;
+
+        private Junction(boolean and, Node[] nodes) {
+            this.and = and;
+            this.nodes = nodes;
+        }
+
+        @Override
+        Predicate<Flashcard> compile(long today) {
+            Predicate<Flashcard> predicate = nodes[0].compile(today);
+            for (int i = 1; i < nodes.length; i++) {
+                predicate = and ? predicate.and(nodes[i].compile(today)) : predicate.or(nodes[i].compile(today));
+            }
+            return predicate;
+        }
+
+        @Override
+        void format(StringBuilder builder) {
+            for (int i = 0; i < nodes.length; i++) {
+                if (i > 0) {
+                    builder.append(and ? " AND " : " OR ");
+                }
+                boolean grouped = and && nodes[i] instanceof Junction; // an OR inside an AND
+                builder.append(grouped ? "(" : "");
+                nodes[i].format(builder);
+                builder.append(grouped ? ")" : "");
+            }
+        }
+    }
+
+    /*
+     * The Negation class holds when its node does not.
+     */
+    public static class Negation extends Node {
+        public final Node node;
+
+        private Negation(Node node) {
+            this.node = node;
+        }
+
+        @Override
+        Predicate<Flashcard> compile(long today) {
+            return node.compile(today).negate();
+        }
+
+        @Override
+        void format(StringBuilder builder) {
+            builder.append("NOT (");
+            node.format(builder);
+            builder.append(')');
+        }
+    }
+
+    private String text;
+    private Node root; // null for the empty query
+
+    // tokens of the query being parsed, and where each starts in the text
+    private ArrayList<String> tokens = new ArrayList<>();
+    private ArrayList<Integer> positions = new ArrayList<>();
+    private int next = 0;
+
+    /*
+     * The constructor keeps the text of a query; parse parses it.
+     *
+     * Input: the text of the query.
+     * Output: new DeckQuery class.
+     */
+    private DeckQuery(String text) {
+        this.text = text;
+    }
+
+    /*
+     * parse parses the text of a query.
+     *
+     * Input: the text of the query.
+     * Output: the parsed query.
+     */
+    public static DeckQuery parse(String text) throws QueryFormatException {
+        if (text == null) {
+            throw new NullPointerException("Cannot parse null query.");
+        }
+        DeckQuery query = new DeckQuery(text);
+        query.tokenize();
+        if (!query.tokens.isEmpty()) {
+            query.root = query.parseOr();
+            if (query.next < query.tokens.size()) {
+                throw query.error("Unexpected \"" + query.tokens.get(query.next) + "\".");
+            }
+        }
+        query.tokens = null;
+        query.positions = null;
+        return query;
+    }
+
+    /*
+     * compile converts the query into a predicate over flashcards.
+     *
+     * Input: the current day, in days since the epoch, which due comparisons count from.
+     * Output: the predicate.
+     */
+    public Predicate<Flashcard> compile(long today) {
+        return root == null ? (Flashcard flashcard) -> true : root.compile(today);
+    }
+
+    /*
+     * conjuncts lists the nodes that must all hold for the query to hold: the nodes of an AND at the
+     * top of the query, or else the whole query.
+     *
+     * Input: no input.
+     * Output: the nodes, empty for the empty query.
+     */
+    public Node[] conjuncts() {
+        if (root == null) {
+            return new Node[0];
+        }
+        if (root instanceof Junction && ((Junction) root).and) {
+            return ((Junction) root).nodes.clone();
+        }
+        return new Node[] { root };
+    }
+
+    /*
+     * getText returns the text the query was parsed from.
+     *
+     * Input: no input.
+     * Output: the text.
+     */
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        return root == null ? "every flashcard" : root.toString();
+    }
+
+    /*
+     * containsIgnoreCase checks whether text contains a lower cased word, ignoring case.
+     *
+     * Input: the text, and the lower cased word.
+     * Output: whether the word is in the text.
+     */
+    public static boolean containsIgnoreCase(String text, String word) {
+        if (word.isEmpty()) {
+            return true;
+        }
+        char first = word.charAt(0);
+        char firstUpper = Character.toUpperCase(first);
+        for (int i = 0; i <= text.length() - word.length(); i++) {
+            char c = text.charAt(i);
+            if ((c == first || c == firstUpper || Character.toLowerCase(c) == first)
+                    && text.regionMatches(true, i, word, 0, word.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * parseOr parses nodes joined by OR.
+     *
+     * Input: no input, reads the tokens.
+     * Output: the node.
+     */
+    private Node parseOr() throws QueryFormatException {
+        ArrayList<Node> nodes = new ArrayList<>();
+        nodes.add(parseAnd());
+        while (accept("or")) {
+            nodes.add(parseAnd());
+        }
+        return nodes.size() == 1 ? nodes.get(0) : new Junction(false, nodes.toArray(new Node[0]));
+    }
+
+    /*
+     * parseAnd parses nodes joined by AND, or placed one after another.
+     *
+     * Input: no input, reads the tokens.
+     * Output: the node.
+     */
+    private Node parseAnd() throws QueryFormatException {
+        ArrayList<Node> nodes = new ArrayList<>();
+        nodes.add(parseUnary());
+        while (true) {
+            if (accept("and")) {
+                nodes.add(parseUnary());
+            } else if (next < tokens.size() && !peekIs("or") && !peekIs(")")) {
+                nodes.add(parseUnary());
+            } else {
+                break;
+            }
+        }
+        return nodes.size() == 1 ? nodes.get(0) : new Junction(true, nodes.toArray(new Node[0]));
+    }
+
+    /*
+     * parseUnary parses a negation, a group in parentheses, or a comparison.
+     *
+     * Input: no input, reads the tokens.
+     * Output: the node.
+     */
+    private Node parseUnary() throws QueryFormatException {
+        if (accept("not")) {
+            return new Negation(parseUnary());
+        }
+        if (accept("(")) {
+            Node node = parseOr();
+            if (!accept(")")) {
+                throw error("Expected \")\".");
+            }
+            return node;
+        }
+        return parseComparison();
+    }
+
+    /*
+     * parseComparison parses a field, an operator, and a value.
+     *
+     * Input: no input, reads the tokens.
+     * Output: the comparison.
+     */
+    private Node parseComparison() throws QueryFormatException {
+        String name = take("Expected a field.");
+        Field field;
+        try {
+            field = Field.valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            next--;
+            throw error("Unknown field \"" + name + "\"; expected front, back, text, interval, due, or tag.");
+        }
+
+        if (field == Field.DUE && accept("within")) {
+            long days = takeNumber();
+            if (!accept("days")) {
+                accept("day");
+            }
+            return new Comparison(field, Operator.LESS_OR_EQUAL, null, days);
+        }
+
+        String symbol = take("Expected an operator.").toLowerCase(Locale.ROOT);
+        Operator operator = null;
+        for (Operator candidate : Operator.values()) {
+            if (candidate.symbol.equals(symbol) || (candidate == Operator.EQUAL && symbol.equals("=="))) {
+                operator = candidate;
+            }
+        }
+        if (operator == null) {
+            next--;
+            throw error("Unknown operator \"" + symbol + "\".");
+        }
+
+        boolean numeric = field == Field.INTERVAL || field == Field.DUE;
+        boolean textual = field == Field.FRONT || field == Field.BACK || field == Field.TEXT;
+        if ((numeric && operator == Operator.CONTAINS)
+                || (!numeric && operator != Operator.EQUAL && operator != Operator.NOT_EQUAL
+                        && !(textual && operator == Operator.CONTAINS))) {
+            next--;
+            throw error("Cannot compare " + name + " with " + symbol + ".");
+        }
+        if (numeric) {
+            return new Comparison(field, operator, null, takeNumber());
+        }
+
+        String value = unquote(take("Expected a value."));
+        if (field == Field.TAG) {
+            String[] tags = Flashcard.parseTags(value);
+            if (tags.length != 1) {
+                next--;
+                throw error("Expected one tag.");
+            }
+            value = tags[0];
+        }
+        return new Comparison(field, operator, value.toLowerCase(Locale.ROOT), 0);
+    }
+
+    /*
+     * tokenize splits the text of the query into tokens: parentheses, operators, quoted texts, and
+     * words, which run until a space, a parenthesis, or an operator.
+     *
+     * Input: no input, reads the text.
+     * Output: no return value, fills the tokens.
+     */
+    private void tokenize() throws QueryFormatException {
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            int start = i;
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            if (c == '(' || c == ')') {
+                i++;
+            } else if (c == '<' || c == '>' || c == '=' || c == '!') {
+                i++;
+                if (i < text.length() && text.charAt(i) == '=') {
+                    i++;
+                } else if (c == '!') {
+                    throw new QueryFormatException(start, "Expected \"!=\" (at character " + (start + 1) + ")");
+                }
+            } else if (c == '\'' || c == '"') {
+                // a quote inside a quoted text is written twice
+                i++;
+                while (true) {
+                    if (i >= text.length()) {
+                        throw new QueryFormatException(start, "Unclosed quote (at character " + (start + 1) + ")");
+                    }
+                    if (text.charAt(i) == c) {
+                        if (i + 1 < text.length() && text.charAt(i + 1) == c) {
+                            i += 2;
+                            continue;
+                        }
+                        i++;
+                        break;
+                    }
+                    i++;
+                }
+            } else {
+                while (i < text.length() && !Character.isWhitespace(text.charAt(i))
+                        && "()<>=!'\"".indexOf(text.charAt(i)) < 0) {
+                    i++;
+                }
+            }
+            tokens.add(text.substring(start, i));
+            positions.add(start);
+        }
+    }
+
+    /*
+     * accept consumes the next token if it is the given keyword, ignoring case.
+     *
+     * Input: the keyword.
+     * Output: whether the token was consumed.
+     */
+    private boolean accept(String keyword) {
+        if (peekIs(keyword)) {
+            next++;
+            return true;
+        }
+        return false;
+    }
+
+    /*
+     * peekIs checks whether the next token is the given keyword, ignoring case.
+     *
+     * Input: the keyword.
+     * Output: whether the next token is the keyword.
+     */
+    private boolean peekIs(String keyword) {
+        return next < tokens.size() && tokens.get(next).equalsIgnoreCase(keyword);
+    }
+
+    /*
+     * take consumes the next token.
+     *
+     * Input: message of the error if there are no tokens left.
+     * Output: the token.
+     */
+    private String take(String missing) throws QueryFormatException {
+        if (next == tokens.size()) {
+            throw error(missing);
+        }
+        return tokens.get(next++);
+    }
+
+    /*
+     * takeNumber consumes the next token as a whole number.
+     *
+     * Input: no input.
+     * Output: the number.
+     */
+    private long takeNumber() throws QueryFormatException {
+        String token = take("Expected a number.");
+        try {
+            return Long.parseLong(token);
+        } catch (NumberFormatException e) {
+            next--;
+            throw error("Expected a number instead of \"" + token + "\".");
+        }
+    }
+
+    /*
+     * unquote removes the quotes around a quoted text, if it is quoted.
+     *
+     * Input: the token.
+     * Output: the text.
+     */
+    private static String unquote(String token) {
+        char quote = token.charAt(0);
+        if (quote != '\'' && quote != '"') {
+            return token;
+        }
+        String doubled = String.valueOf(quote) + quote;
+        return token.substring(1, token.length() - 1).replace(doubled, String.valueOf(quote));
+    }
+
+    /*
+     * error creates the exception for an error at the next token, or at the end of the query.
+     *
+     * Input: message describing the error.
+     * Output: the exception.
+     */
+    private QueryFormatException error(String message) {
+        int position = next < positions.size() ? positions.get(next) : text.length();
+        String at = " (at character " + (position + 1) + ")";
+        return new QueryFormatException(position, message.substring(0, message.length() - 1) + at);
+    }
+}
@@ -0,0 +1,340 @@
+package arion;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * DeckStats keeps summaries of a deck that are updated as the deck changes, so its statistics are
+ * shown without a pass over the deck:
+ * - the review intervals and text lengths of the flashcards, in LogHistograms,
+ * - the number of flashcards last edited or reviewed on each day, from which their age is counted,
+ * - the number of reviews and successful reviews on each day, from which retention is estimated,
+ * - the intervals at which flashcards were reviewed, in a TDigest.
+ *
+ * Like the indexes, it is a DeckIndex: every flashcard of the deck is given a dense slot holding the
+ * values it adds to the summaries, so an edit, review, or deletion takes its old values out before
+ * adding its new ones. The reviews are counted from the review log, which is followed, so a review is
+ * counted with its recorded outcome as soon as it is logged, and every review is counted once.
+ */
+
+public class DeckStats extends DeckIndex<long[]> {
+    private final static int BAR_WIDTH = 40;
+    private final static int DAILY_REVIEW_DAYS = 14;
+    private final static long[] AGE_LIMITS = { 1, 8, 31, 91, 366 }; // days, each excluded from its group
+    private final static String[] AGE_TITLES = { "today", "1 to 7 days", "8 to 30 days", "31 to 90 days",
+            "91 to 365 days", "over a year" };
+    private final static long UNKNOWN_DAY = Long.MIN_VALUE; // flashcards without a modification time
+
+    private ZoneId zone = ZoneId.systemDefault();
+
+    // the values each slot adds to the summaries
+    private long[] slotIntervals = new long[INITIAL_CAPACITY];
+    private int[] slotLengths = new int[INITIAL_CAPACITY];
+    private long[] slotModifiedDays = new long[INITIAL_CAPACITY];
+
+    // summaries of the current flashcards
+    private LogHistogram intervals = new LogHistogram();
+    private LogHistogram lengths = new LogHistogram();
+    private TreeMap<Long, Long> modifiedDays = new TreeMap<>();
+
+    // summaries of the reviews; each day holds the number of reviews, then the number of successes
+    private TreeMap<Long, long[]> reviewDays = new TreeMap<>();
+    private TDigest reviewedIntervals = new TDigest();
+
+    /*
+     * The constructor summarizes a deck and its review history, and keeps the summaries up to date as
+     * the deck changes.
+     *
+     * Input: the deck, and the log of its reviews.
+     * Output: new DeckStats class.
+     */
+    public DeckStats(Deck deck, ReviewLog reviewLog) throws IOException {
+        super(deck, "deck statistics");
+        if (reviewLog == null) {
+            throw new NullPointerException("Cannot construct deck statistics with null review log.");
+        }
+
+        reviewLog.follow((long id, long timestamp, boolean success, int prevInterval, int newInterval) ->
+                recordReview(epochDay(timestamp), success, prevInterval));
+        indexDeck();
+    }
+
+    /*
+     * size returns the number of summarized flashcards.
+     *
+     * Input: no input.
+     * Output: number of flashcards.
+     */
+    public synchronized int size() {
+        return slotOf.size();
+    }
+
+    /*
+     * report describes the statistics of the deck for the user. It only reads the summaries, so it
+     * takes the same time however large the deck is.
+     *
+     * Input: the current date, which ages and recent reviews are counted from.
+     * Output: the report.
+     */
+    public synchronized String report(LocalDate today) {
+        if (today == null) {
+            throw new NullPointerException("Cannot report deck statistics for null date.");
+        }
+        long day = today.toEpochDay();
+        long total = slotOf.size();
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("Flashcards: %,d%n", total));
+
+        builder.append(String.format("%nReview intervals (days)%n"));
+        appendPercentiles(builder, intervals);
+        long low = 0;
+        for (long high = 1; low <= intervals.max() && high > 0; high *= 2) {
+            long count = intervals.countBetween(low, high);
+            if (count > 0) {
+                appendBar(builder, (high - low == 1) ? Long.toString(low) : low + " to " + (high - 1), count, total);
+            }
+            low = high;
+        }
+
+        builder.append(String.format("%nTime since last edit or review%n"));
+        long[] ages = new long[AGE_TITLES.length];
+        long unknown = 0;
+        for (Map.Entry<Long, Long> entry : modifiedDays.entrySet()) {
+            if (entry.getKey() == UNKNOWN_DAY) {
+                unknown += entry.getValue();
+                continue;
+            }
+            long age = day - entry.getKey();
+            int group = 0;
+            while (group < AGE_LIMITS.length && age >= AGE_LIMITS[group]) {
+                group++;
+            }
+            ages[group] += entry.getValue();
+        }
+        for (int group = 0; group < ages.length; group++) {
+            appendBar(builder, AGE_TITLES[group], ages[group], total);
+        }
+        if (unknown > 0) {
+            appendBar(builder, "unknown", unknown, total);
+        }
+
+        builder.append(String.format("%nText length (characters of front and back)%n"));
+        appendPercentiles(builder, lengths);
+
+        builder.append(String.format("%nReviews%n"));
+        appendRetention(builder, "last 7 days", day - 6, day);
+        appendRetention(builder, "last 30 days", day - 29, day);
+        appendRetention(builder, "all time", Long.MIN_VALUE, Long.MAX_VALUE);
+        if (reviewedIntervals.count() > 0) {
+            builder.append(String.format("  interval at review: median %.0f, 90th percentile %.0f, "
+                    + "99th percentile %.0f days%n", reviewedIntervals.quantile(0.5),
+                    reviewedIntervals.quantile(0.9), reviewedIntervals.quantile(0.99)));
+        }
+        builder.append(String.format("%nDaily reviews, last %d days%n", DAILY_REVIEW_DAYS));
+        long mostReviews = 1;
+        for (long[] counts : reviewDays.subMap(day - DAILY_REVIEW_DAYS + 1, true, day, true).values()) {
+            mostReviews = Math.max(mostReviews, counts[0]);
+        }
+        for (long d = day - DAILY_REVIEW_DAYS + 1; d <= day; d++) {
+            appendBar(builder, LocalDate.ofEpochDay(d).toString(), reviewCounts(d, d)[0], mostReviews);
+        }
+        return builder.toString();
+    }
+
+    /*
+     * format appends the summaries themselves, so they can be saved or merged with the summaries of
+     * another deck. Each summary starts with its name in brackets, followed by one entry per line:
+     * the lowest value of each histogram bucket and its count, each day since the epoch and its counts,
+     * and the mean and weight of each centroid of the digest.
+     *
+     * Input: builder to append to.
+     * Output: no return value, modifies the builder.
+     */
+    public synchronized void format(StringBuilder builder) {
+        if (builder == null) {
+            throw new NullPointerException("Cannot format deck statistics to null builder.");
+        }
+        builder.append("[intervals]\n");
+        intervals.format(builder);
+        builder.append("[lengths]\n");
+        lengths.format(builder);
+        builder.append("[modified days]\n");
+        for (Map.Entry<Long, Long> entry : modifiedDays.entrySet()) {
+            if (entry.getKey() != UNKNOWN_DAY) {
+                builder.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+            }
+        }
+        builder.append("[review days]\n");
+        for (Map.Entry<Long, long[]> entry : reviewDays.entrySet()) {
+            long[] counts = entry.getValue();
+            builder.append(entry.getKey()).append(' ').append(counts[0]).append(' ').append(counts[1]).append('\n');
+        }
+        builder.append("[reviewed intervals]\n");
+        reviewedIntervals.format(builder);
+    }
+
+    /*
+     * appendPercentiles appends the mean and percentiles of a histogram.
+     *
+     * Input: builder to append to, and the histogram.
+     * Output: no return value, modifies the builder.
+     */
+    private static void appendPercentiles(StringBuilder builder, LogHistogram histogram) {
+        builder.append(String.format("  mean %.1f, median %d, 90th percentile %d, 99th percentile %d, "
+                + "largest %d%n", histogram.mean(), histogram.quantile(0.5), histogram.quantile(0.9),
+                histogram.quantile(0.99), histogram.max()));
+    }
+
+    /*
+     * appendBar appends one line of a bar chart.
+     *
+     * Input: builder to append to, title of the bar, its count, and the count of a full bar.
+     * Output: no return value, modifies the builder.
+     */
+    private static void appendBar(StringBuilder builder, String title, long count, long full) {
+        int width = full == 0 ? 0 : (int) Math.round((double) count / full * BAR_WIDTH);
+        if (count > 0) {
+            width = Math.max(1, width);
+        }
+        builder.append(String.format("  %-16s %,11d", title, count));
+        if (width > 0) {
+            builder.append("  ");
+        }
+        for (int i = 0; i < width; i++) {
+            builder.append('#');
+        }
+        builder.append(String.format("%n"));
+    }
+
+    /*
+     * appendRetention appends the number of reviews in a range of days and the fraction that succeeded.
+     *
+     * Input: builder to append to, title of the range, and first and last day of the range.
+     * Output: no return value, modifies the builder.
+     */
+    private void appendRetention(StringBuilder builder, String title, long firstDay, long lastDay) {
+        long[] counts = reviewCounts(firstDay, lastDay);
+        builder.append(String.format("  %-16s %,11d reviews", title, counts[0]));
+        if (counts[0] > 0) {
+            builder.append(String.format(", %.1f%% remembered", 100.0 * counts[1] / counts[0]));
+        }
+        builder.append(String.format("%n"));
+    }
+
+    /*
+     * reviewCounts adds up the reviews within a range of days.
+     *
+     * Input: first and last day of the range, both included.
+     * Output: the number of reviews, then the number of successful reviews.
+     */
+    private long[] reviewCounts(long firstDay, long lastDay) {
+        long[] total = new long[2];
+        if (firstDay > lastDay) {
+            return total;
+        }
+        for (long[] counts : reviewDays.subMap(firstDay, true, lastDay, true).values()) {
+            total[0] += counts[0];
+            total[1] += counts[1];
+        }
+        return total;
+    }
+
+    /*
+     * recordReview counts one review.
+     *
+     * Input: day of the review in days since the epoch, whether it succeeded, and the interval of the
+     * flashcard when it was reviewed.
+     * Output: no return value, modifies the summaries.
+     */
+    private synchronized void recordReview(long day, boolean success, long interval) {
+        long[] counts = reviewDays.computeIfAbsent(day, (Long key) -> new long[2]);
+        counts[0]++;
+        if (success) {
+            counts[1]++;
+        }
+        reviewedIntervals.add(interval);
+    }
+
+    /*
+     * followsReviews returns true, since reviews change the interval of a flashcard.
+     *
+     * Input: no input.
+     * Output: true.
+     */
+    @Override
+    protected boolean followsReviews() {
+        return true;
+    }
+
+    /*
+     * read reads the values a flashcard adds to the summaries.
+     *
+     * Input: the flashcard.
+     * Output: its review interval, its text length, and the day it was last edited or reviewed.
+     */
+    @Override
+    protected long[] read(Flashcard flashcard) {
+        return new long[] { flashcard.reviewInterval, flashcard.front.length() + flashcard.back.length(),
+                flashcard.modified > 0 ? epochDay(flashcard.modified) : UNKNOWN_DAY };
+    }
+
+    /*
+     * insert adds the values of a slot to the summaries.
+     *
+     * Input: the slot, and its review interval, text length, and day it was last edited or reviewed.
+     * Output: no return value, modifies the summaries.
+     */
+    @Override
+    protected void insert(int slot, long[] values) {
+        slotIntervals[slot] = values[0];
+        slotLengths[slot] = (int) values[1];
+        slotModifiedDays[slot] = values[2];
+        intervals.add(values[0]);
+        lengths.add(values[1]);
+        modifiedDays.merge(values[2], 1L, (Long a, Long b) -> a + b);
+    }
+
+    /*
+     * unindex takes the values of a slot out of the summaries.
+     *
+     * Input: the slot.
+     * Output: no return value, modifies the summaries.
+     */
+    @Override
+    protected void unindex(int slot) {
+        intervals.remove(slotIntervals[slot]);
+        lengths.remove(slotLengths[slot]);
+        long day = slotModifiedDays[slot];
+        if (modifiedDays.merge(day, -1L, (Long a, Long b) -> a + b) == 0) {
+            modifiedDays.remove(day);
+        }
+    }
+
+    /*
+     * grow grows the values of the slots.
+     *
+     * Input: the new number of slots.
+     * Output: no return value, modifies the summaries.
+     */
+    @Override
+    protected void grow(int capacity) {
+        slotIntervals = Arrays.copyOf(slotIntervals, capacity);
+        slotLengths = Arrays.copyOf(slotLengths, capacity);
+        slotModifiedDays = Arrays.copyOf(slotModifiedDays, capacity);
+    }
+
+    /*
+     * epochDay finds the local day of a time.
+     *
+     * Input: the time, in milliseconds since the epoch.
+     * Output: the day, in days since the epoch.
+     */
+    private long epochDay(long millis) {
+        return Instant.ofEpochMilli(millis).atZone(zone).toLocalDate().toEpochDay();
+    }
+}
@@ -0,0 +1,433 @@
+package arion;
+
+import callback.BatchEditCallback;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import javax.swing.table.AbstractTableModel;
+
+/*
+ * DeckTableModel shows a deck in a JTable without copying it, with a column for each field and one for the tags.
+ *
+ * The table only asks for the cells it paints, so each flashcard is read from the deck and formatted
+ * when its row first becomes visible. Formatted rows are kept in a small least recently used cache,
+ * so opening and scrolling the table takes the same extra memory however large the deck is.
+ *
+ * Edited cells are recorded in a set of dirty rows as they are entered, keyed by flashcard identifier,
+ * and commitEdits sends only those rows to the edit callback. Since every row on screen is cached,
+ * a change to a flashcard that is not cached is not visible, so changes only repaint the cached rows
+ * of the flashcards that changed.
+ *
+ * The table can be filtered to a list of flashcards, such as the results of a search, shown in the
+ * order of the list. Rows of a filtered table are then mapped to indices in the deck, which are found
+ * again after each structural change to the deck. Rows remember the deck index they were last shown at,
+ * so committed rows can be repainted, while edits and selected rows are sent by flashcard identifier.
+ */
+
+public class DeckTableModel extends AbstractTableModel {
+    private final static long serialVersionUID = 1L;
+    private final static int ROW_CACHE_SIZE = 1024;
+
+    /*
+     * The Row class holds the formatted fields of a flashcard, and the deck index it was last shown at.
+     */
+    private static class Row {
+        int index;
+        String[] fields;
+
+        Row(int index, String[] fields) {
+            this.index = index;
+            this.fields = fields;
+        }
+    }
+
+    private Deck deck;
+    private BatchEditCallback editCallback;
+    private LinkedHashMap<Long, Row> rowCache = new LinkedHashMap<>(ROW_CACHE_SIZE * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Row> eldest) {
+            return size() > ROW_CACHE_SIZE;
+        }
+    };
+    private LinkedHashMap<Long, Row> dirtyRows = new LinkedHashMap<>();
+    private Optional<long[]> filterOption = Optional.empty();
+    private int[] filterIndices = new int[0]; // deck index of each row of the filtered table
+    private long filterEpoch = -1; // epoch of the deck the filter indices were found in
+
+    /*
+     * The constructor creates a model of a deck.
+     *
+     * Input: the deck, and the callback edited rows are sent to.
+     * Output: new DeckTableModel class.
+     */
+    public DeckTableModel(Deck deck, BatchEditCallback editCallback) {
+        if (deck == null || editCallback == null) {
+            throw new NullPointerException("Cannot construct table model with null parameters.");
+        }
+        this.deck = deck;
+        this.editCallback = editCallback;
+    }
+
+    @Override
+    public int getRowCount() {
+        return filterOption.isPresent() ? filteredIndices().length : deck.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return Flashcard.TAGGED_FIELD_COUNT;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return column < Flashcard.FIELD_COUNT ? Flashcard.FIELD_TITLES[column] : Flashcard.TAGS_TITLE;
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return true;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        return shownRow(row).fields[column];
+    }
+
+    /*
+     * setValueAt records an edited cell, marking its row as dirty until the edits are committed.
+     *
+     * Input: new value of the cell, row and column of the cell.
+     * Output: no return value, notifies the table of the edited cell.
+     */
+    @Override
+    public void setValueAt(Object value, int row, int column) {
+        if (value == null) {
+            throw new NullPointerException("Cannot set cell to null.");
+        }
+        int index = deckIndex(row);
+        Flashcard flashcard;
+        try {
+            flashcard = deck.get(index);
+        } catch (IllegalArgumentException e) {
+            return; // the row was deleted while it was being edited
+        }
+
+        Row shown = shownRow(row);
+        if (shown.fields[column].equals(value.toString())) {
+            return;
+        }
+        String[] fields = shown.fields.clone();
+        fields[column] = value.toString();
+        dirtyRows.put(flashcard.id, new Row(index, fields));
+        fireTableCellUpdated(row, column);
+    }
+
+    /*
+     * setFilter shows only the given flashcards, in the given order.
+     * Flashcards that are not in the deck are left out.
+     *
+     * Input: identifiers of the flashcards to show.
+     * Output: no return value, notifies the table.
+     */
+    public void setFilter(long[] ids) {
+        if (ids == null) {
+            throw new NullPointerException("Cannot filter table to null identifiers.");
+        }
+        filterOption = Optional.of(ids.clone());
+        filterEpoch = -1;
+        fireTableDataChanged();
+    }
+
+    /*
+     * clearFilter shows every flashcard of the deck again.
+     *
+     * Input: no input.
+     * Output: no return value, notifies the table.
+     */
+    public void clearFilter() {
+        if (filterOption.isEmpty()) {
+            return;
+        }
+        filterOption = Optional.empty();
+        filterIndices = new int[0];
+        fireTableDataChanged();
+    }
+
+    /*
+     * deckIndex finds the index in the deck of the flashcard shown at a row.
+     *
+     * Input: index of the row.
+     * Output: index in the deck, or -1 if a filtered table has no such row.
+     */
+    public int deckIndex(int row) {
+        if (filterOption.isEmpty()) {
+            return row;
+        }
+        int[] indices = filteredIndices();
+        return (row >= 0 && row < indices.length) ? indices[row] : -1;
+    }
+
+    /*
+     * idsAt finds the identifiers of the flashcards shown at rows, such as the selected rows.
+     * Rows that no longer show a flashcard, because the deck shrank or the filter is stale, are skipped.
+     *
+     * Input: indices of the rows.
+     * Output: identifiers of the flashcards, in the order of the rows.
+     */
+    public long[] idsAt(int[] rows) {
+        if (rows == null) {
+            throw new NullPointerException("Cannot find identifiers of null rows.");
+        }
+        long[] ids = new long[rows.length];
+        int count = 0;
+        for (int row : rows) {
+            int index = deckIndex(row);
+            if (index < 0) {
+                continue;
+            }
+            try {
+                ids[count] = deck.get(index).id;
+                count++;
+            } catch (IllegalArgumentException e) {
+                // the deck shrank and the table has not been told yet
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    /*
+     * hasEdits checks whether any row has edits that are not committed.
+     *
+     * Input: no input.
+     * Output: whether there are dirty rows.
+     */
+    public boolean hasEdits() {
+        return !dirtyRows.isEmpty();
+    }
+
+    /*
+     * commitEdits sends the dirty rows to the edit callback in one batch, then repaints those rows.
+     * Rows are sent by the identifier of their flashcard, so a deck restructured in the background
+     * cannot move the edits to other flashcards; the rows to repaint are looked up again only if the
+     * deck was restructured since they were edited.
+     *
+     * Input: no input.
+     * Output: no return value.
+     */
+    public void commitEdits() {
+        if (dirtyRows.isEmpty()) {
+            return;
+        }
+        LinkedHashMap<Long, Row> committed = dirtyRows;
+        dirtyRows = new LinkedHashMap<>();
+
+        long[] ids = new long[committed.size()];
+        String[][] fieldsList = new String[committed.size()][];
+        int next = 0;
+        for (Map.Entry<Long, Row> entry : committed.entrySet()) {
+            rowCache.remove(entry.getKey());
+            ids[next] = entry.getKey();
+            fieldsList[next] = entry.getValue().fields;
+            next++;
+        }
+        editCallback.run(ids, fieldsList);
+
+        // rejected edits are discarded, so every committed row shows the deck again
+        boolean moved = false;
+        for (Map.Entry<Long, Row> entry : committed.entrySet()) {
+            if (!rowHolds(entry.getValue().index, entry.getKey())) {
+                moved = true;
+                break;
+            }
+        }
+        if (moved) {
+            relocate(committed);
+        }
+        for (Row row : committed.values()) {
+            fireRowUpdated(row.index);
+        }
+    }
+
+    /*
+     * changed updates the table after the deck changed.
+     * Edited and reviewed flashcards repaint only their own rows, if they are cached; added, deleted,
+     * or reordered flashcards change which flashcard each row shows, so the whole table is refreshed.
+     * Dirty rows of deleted flashcards are dropped.
+     *
+     * Input: the coalesced changes.
+     * Output: no return value, notifies the table.
+     */
+    public void changed(DeckChanges changes) {
+        if (changes == null) {
+            throw new NullPointerException("Cannot apply null changes to table.");
+        }
+        long[] deleted = changes.ids(DeckChanges.Change.DELETED);
+        for (long id : deleted) {
+            rowCache.remove(id);
+            dirtyRows.remove(id);
+        }
+        if (changes.isReordered() || deleted.length > 0 || changes.ids(DeckChanges.Change.ADDED).length > 0) {
+            for (long id : changes.ids(DeckChanges.Change.EDITED)) {
+                rowCache.remove(id);
+            }
+            for (long id : changes.ids(DeckChanges.Change.REVIEWED)) {
+                rowCache.remove(id);
+            }
+            fireTableDataChanged();
+            return;
+        }
+
+        repaintChanged(changes.ids(DeckChanges.Change.EDITED));
+        repaintChanged(changes.ids(DeckChanges.Change.REVIEWED));
+    }
+
+    /*
+     * repaintChanged drops the cached rows of changed flashcards and repaints the rows they were shown in.
+     *
+     * Input: identifiers of the changed flashcards.
+     * Output: no return value, notifies the table.
+     */
+    private void repaintChanged(long[] ids) {
+        for (long id : ids) {
+            Row cached = rowCache.remove(id);
+            if (cached != null && rowHolds(cached.index, id)) {
+                fireRowUpdated(cached.index);
+            }
+        }
+    }
+
+    /*
+     * shownRow finds what a row shows: its uncommitted edits if it is dirty, and otherwise its
+     * flashcard's formatted fields.
+     *
+     * Input: index of the row.
+     * Output: the row, which must not be modified.
+     */
+    private Row shownRow(int row) {
+        Row formatted = formattedRow(row);
+        if (!dirtyRows.isEmpty()) {
+            try {
+                Row dirty = dirtyRows.get(deck.get(deckIndex(row)).id);
+                if (dirty != null) {
+                    return dirty;
+                }
+            } catch (IllegalArgumentException e) {
+                // the deck shrank and the table has not been told yet
+            }
+        }
+        return formatted;
+    }
+
+    /*
+     * fireRowUpdated repaints the row showing the flashcard at a deck index, if it is shown.
+     *
+     * Input: index in the deck.
+     * Output: no return value, notifies the table.
+     */
+    private void fireRowUpdated(int index) {
+        int row = index;
+        if (filterOption.isPresent()) {
+            int[] indices = filteredIndices();
+            row = -1;
+            for (int i = 0; i < indices.length && row < 0; i++) {
+                if (indices[i] == index) {
+                    row = i;
+                }
+            }
+        }
+        if (row >= 0) {
+            fireTableRowsUpdated(row, row);
+        }
+    }
+
+    /*
+     * filteredIndices finds the deck index of each row of the filtered table, finding them again
+     * if the deck was restructured since they were last found.
+     *
+     * Input: no input.
+     * Output: deck index of each row.
+     */
+    private int[] filteredIndices() {
+        long epoch = deck.epoch();
+        if (epoch != filterEpoch) {
+            int[] found = deck.indicesOf(filterOption.get());
+            int count = 0;
+            for (int index : found) {
+                if (index >= 0) {
+                    found[count++] = index;
+                }
+            }
+            filterIndices = Arrays.copyOf(found, count);
+            filterEpoch = epoch;
+        }
+        return filterIndices;
+    }
+
+    /*
+     * rowHolds checks whether a deck index still holds the given flashcard.
+     *
+     * Input: index in the deck, identifier of the flashcard.
+     * Output: whether the flashcard is at the index.
+     */
+    private boolean rowHolds(int index, long id) {
+        try {
+            return deck.get(index).id == id;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /*
+     * relocate updates the indices of rows to where their flashcards are now, with one pass over the deck.
+     * Rows of flashcards no longer in the deck are removed.
+     *
+     * Input: rows to relocate.
+     * Output: no return value, modifies the rows.
+     */
+    private void relocate(LinkedHashMap<Long, Row> rows) {
+        HashSet<Long> found = new HashSet<>();
+        ArrayList<Flashcard> snapshot = deck.snapshot();
+        for (int i = 0; i < snapshot.size(); i++) {
+            Row row = rows.get(snapshot.get(i).id);
+            if (row != null) {
+                row.index = i;
+                found.add(snapshot.get(i).id);
+            }
+        }
+        rows.keySet().retainAll(found);
+    }
+
+    /*
+     * formattedRow finds the formatted fields of the flashcard at a row, formatting them if they are
+     * not cached. The flashcard is read while its stripe is locked.
+     *
+     * Input: index of the row.
+     * Output: the formatted row, which must not be modified; empty fields if the row no longer exists.
+     */
+    private Row formattedRow(int row) {
+        int index = deckIndex(row);
+        Flashcard flashcard;
+        try {
+            flashcard = deck.get(index);
+        } catch (IllegalArgumentException e) {
+            // the deck shrank and the table has not been told yet
+            return new Row(index, new String[] { "", "", "", "", "" });
+        }
+
+        Row cached = rowCache.get(flashcard.id);
+        if (cached == null) {
+            String[][] read = new String[1][];
+            if (!deck.read(flashcard.id, (Flashcard locked) -> read[0] = locked.toTaggedStringArray())) {
+                read[0] = flashcard.toTaggedStringArray(); // deleted after it was found
+            }
+            cached = new Row(index, read[0]);
+            rowCache.put(flashcard.id, cached);
+        }
+        cached.index = index;
+        return cached;
+    }
+}
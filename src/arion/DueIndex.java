@@ -0,0 +1,159 @@
+package arion;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * DueIndex keeps the flashcards of a deck ordered by review date, so the flashcards due in a range of
+ * days are counted and listed without a pass over the deck.
+ *
+ * Every flashcard of the deck is given a dense slot number, and each review date holds a compressed
+ * bitmap of the slots of its flashcards, in a tree ordered by date. A range of dates is then a range
+ * of the tree, and counting it only adds up the cardinalities of its bitmaps. Slots of deleted
+ * flashcards are reused. Like the other DeckIndexes, it listens to the deck's changes, including
+ * reviews, and keeps itself up to date.
+ */
+
+public class DueIndex extends DeckIndex<Long> {
+
+    // the review date of each slot, in days since the epoch, and the slots due on each day
+    private long[] slotDays = new long[INITIAL_CAPACITY];
+    private TreeMap<Long, CompactBitmap> days = new TreeMap<>();
+
+    /*
+     * The constructor indexes a deck, and keeps the index up to date as the deck changes.
+     *
+     * Input: the deck.
+     * Output: new DueIndex class.
+     */
+    public DueIndex(Deck deck) {
+        super(deck, "due index");
+        indexDeck();
+    }
+
+    /*
+     * count counts the flashcards whose review date is within a range of days.
+     *
+     * Input: first and last day of the range, in days since the epoch, both included.
+     * Output: number of flashcards.
+     */
+    public synchronized int count(long firstDay, long lastDay) {
+        int count = 0;
+        for (CompactBitmap slots : range(firstDay, lastDay).values()) {
+            count += slots.cardinality();
+        }
+        return count;
+    }
+
+    /*
+     * ids finds the flashcards whose review date is within a range of days.
+     *
+     * Input: first and last day of the range, in days since the epoch, both included.
+     * Output: identifiers of the flashcards, earliest review date first.
+     */
+    public synchronized long[] ids(long firstDay, long lastDay) {
+        long[] ids = new long[count(firstDay, lastDay)];
+        int next = 0;
+        for (CompactBitmap slots : range(firstDay, lastDay).values()) {
+            for (int slot : slots.toArray()) {
+                ids[next++] = slotIds[slot];
+            }
+        }
+        return ids;
+    }
+
+    /*
+     * size returns the number of indexed flashcards.
+     *
+     * Input: no input.
+     * Output: number of flashcards.
+     */
+    public synchronized int size() {
+        return slotOf.size();
+    }
+
+    /*
+     * range finds the days of the tree within a range.
+     *
+     * Input: first and last day of the range, both included.
+     * Output: view of the days in the range.
+     */
+    private Map<Long, CompactBitmap> range(long firstDay, long lastDay) {
+        if (firstDay > lastDay) {
+            return new TreeMap<>();
+        }
+        return days.subMap(firstDay, true, lastDay, true);
+    }
+
+    /*
+     * read reads the review date of a flashcard.
+     *
+     * Input: the flashcard.
+     * Output: its review date, in days since the epoch.
+     */
+    @Override
+    protected Long read(Flashcard flashcard) {
+        return flashcard.reviewDate.toEpochDay();
+    }
+
+    /*
+     * followsReviews returns true, since reviews change the review date of a flashcard.
+     *
+     * Input: no input.
+     * Output: true.
+     */
+    @Override
+    protected boolean followsReviews() {
+        return true;
+    }
+
+    /*
+     * update keeps a slot whose review date did not change.
+     *
+     * Input: the slot, and the review date.
+     * Output: whether the review date is the one already indexed.
+     */
+    @Override
+    protected boolean update(int slot, Long day) {
+        return slotDays[slot] == day;
+    }
+
+    /*
+     * insert adds a slot to the bitmap of its review date.
+     *
+     * Input: the slot, and its review date in days since the epoch.
+     * Output: no return value, modifies the index.
+     */
+    @Override
+    protected void insert(int slot, Long day) {
+        slotDays[slot] = day;
+        days.computeIfAbsent(day, (Long key) -> new CompactBitmap()).add(slot);
+    }
+
+    /*
+     * unindex removes a slot from the bitmap of its review date.
+     *
+     * Input: the slot.
+     * Output: no return value, modifies the index.
+     */
+    @Override
+    protected void unindex(int slot) {
+        CompactBitmap slots = days.get(slotDays[slot]);
+        slots.remove(slot);
+        if (slots.cardinality() == 0) {
+            days.remove(slotDays[slot]);
+        }
+    }
+
+    /*
+     * grow grows the review dates of the slots.
+     *
+     * Input: the new number of slots.
+     * Output: no return value, modifies the index.
+     */
+    @Override
+    protected void grow(int capacity) {
+        slotDays = Arrays.copyOf(slotDays, capacity);
+    }
+}
@@ -0,0 +1,558 @@
+package arion;
+
+import callback.ProgressCallback;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/*
+ * DuplicateIndex finds flashcards whose text is nearly the same, using MinHash signatures and
+ * locality sensitive hashing, so neither adding a flashcard nor reporting the duplicates of a deck
+ * compares every pair of flashcards.
+ *
+ * The normalized tokens of a flashcard's front and back, as used by SearchIndex, are cut into shingles
+ * of SHINGLE_LENGTH characters. A flashcard's signature holds, for each of HASH_COUNT hash functions,
+ * the lowest 16 bits of the smallest hash of its shingles; two signatures agree at a position about as
+ * often as the shingle sets of the flashcards overlap (their Jaccard similarity). Signatures are split
+ * into BANDS bands of ROWS positions, and flashcards whose signatures agree on a whole band land in the
+ * same bucket of that band, so only flashcards sharing a bucket are compared. With 8 bands of 4 rows,
+ * a pair with a similarity of 0.7 shares a bucket 89% of the time, and a pair with 0.8 does 98.5% of
+ * the time, while dissimilar pairs rarely do.
+ *
+ * Each band is a hash table of doubly linked chains of slots, so flashcards are added and removed in
+ * constant time as the deck changes; like the other DeckIndexes, it listens to the deck's changes.
+ * Flashcards with no letters or digits have no shingles and are not linked into any bucket.
+ */
+
+public class DuplicateIndex extends DeckIndex<DuplicateIndex.Text> {
+    public final static int SHINGLE_LENGTH = 4; // four chars pack into one long
+    public final static int BANDS = 8;
+    public final static int ROWS = 4; // four 16 bit values pack into one long
+    public final static int HASH_COUNT = BANDS * ROWS;
+    public final static double SIMILARITY_THRESHOLD = 0.7;
+
+    private final static int NONE = -1;
+    private final static int PARALLEL_THRESHOLD = 1024; // fewer flashcards are hashed on the calling thread
+    private final static int REPORT_CHUNKS = 256; // parts of the buckets searched between progress reports
+
+    // multipliers and increments of the hash functions, fixed so signatures are reproducible
+    private final static long[] MULTIPLIERS = new long[HASH_COUNT];
+    private final static long[] INCREMENTS = new long[HASH_COUNT];
+    static {
+        long seed = 0x5DEECE66DL;
+        for (int i = 0; i < HASH_COUNT; i++) {
+            seed += 0x9E3779B97F4A7C15L;
+            MULTIPLIERS[i] = mix(seed) | 1;
+            seed += 0x9E3779B97F4A7C15L;
+            INCREMENTS[i] = mix(seed);
+        }
+    }
+
+    /*
+     * The Match class holds a flashcard similar to the text looked up, and its estimated similarity.
+     */
+    public static class Match {
+        public final long id;
+        public final double similarity; // estimated Jaccard similarity of the shingles, from 0 to 1
+
+        private Match(long id, double similarity) {
+            this.id = id;
+            this.similarity = similarity;
+        }
+    }
+
+    /*
+     * The Snapshot class is a copy of the slots and buckets of the index, searched for clusters while
+     * the index itself keeps changing. It is created while the index is locked.
+     */
+    private class Snapshot {
+        final int slotCount = DuplicateIndex.this.slotCount;
+        final long[] slotIds = Arrays.copyOf(DuplicateIndex.this.slotIds, slotCount);
+        final boolean[] live = Arrays.copyOf(DuplicateIndex.this.live, slotCount);
+        final char[] signatures = Arrays.copyOf(DuplicateIndex.this.signatures, slotCount * HASH_COUNT);
+        final int[] next = Arrays.copyOf(DuplicateIndex.this.next, slotCount * BANDS);
+        final int[][] heads = new int[BANDS][];
+
+        Snapshot() {
+            for (int band = 0; band < BANDS; band++) {
+                heads[band] = DuplicateIndex.this.heads[band].clone();
+            }
+        }
+
+        /*
+         * similarPairs compares the flashcards in a range of buckets of one band. Within a bucket,
+         * flashcards agreeing on the band are compared with the first of them.
+         *
+         * Input: the band, the first bucket and the bucket after the last, and the lowest similarity.
+         * Output: pairs of similar slots, flattened.
+         */
+        IntList similarPairs(int band, int fromBucket, int toBucket, double threshold) {
+            IntList pairs = new IntList();
+            IntList leaders = new IntList(); // the first slot of each band key in a bucket
+            for (int bucket = fromBucket; bucket < toBucket; bucket++) {
+                leaders.size = 0;
+                for (int entry = heads[band][bucket]; entry != NONE; entry = next[entry]) {
+                    int slot = entry / BANDS;
+                    long key = bandKey(signatures, slot, band);
+                    int leader = NONE;
+                    for (int l = 0; l < leaders.size && leader == NONE; l++) {
+                        if (bandKey(signatures, leaders.values[l], band) == key) {
+                            leader = leaders.values[l];
+                        }
+                    }
+                    if (leader == NONE) {
+                        leaders.add(slot);
+                    } else if (similarity(signatures, leader, signatures, slot) >= threshold) {
+                        pairs.add(leader);
+                        pairs.add(slot);
+                    }
+                }
+            }
+            return pairs;
+        }
+    }
+
+    /*
+     * The Text class holds the front and back of a flashcard read from the deck, and their signature
+     * once it is computed.
+     */
+    static class Text {
+        final String front;
+        final String back;
+        char[] signature;
+
+        private Text(String front, String back) {
+            this.front = front;
+            this.back = back;
+        }
+    }
+
+    /*
+     * The IntList class is a growable list of ints.
+     */
+    private static class IntList {
+        int[] values = new int[4];
+        int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    // slots holding a signature; signatures[slot * HASH_COUNT + i] is position i of a signature
+    private boolean[] live = new boolean[INITIAL_CAPACITY];
+    private char[] signatures = new char[INITIAL_CAPACITY * HASH_COUNT];
+    private int liveCount = 0;
+
+    // buckets of each band: heads[band][bucket] is the first entry of a chain, where an entry is
+    // slot * BANDS + band; there are as many buckets in a band as slots, so chains stay short
+    private int[][] heads = new int[BANDS][INITIAL_CAPACITY];
+    private int[] next = new int[INITIAL_CAPACITY * BANDS];
+    private int[] previous = new int[INITIAL_CAPACITY * BANDS];
+
+    // query marks, indexed by slot, so a flashcard found in several bands is compared once
+    private int[] marks = new int[INITIAL_CAPACITY];
+    private int mark = 0;
+
+    /*
+     * The constructor indexes a deck, and keeps the index up to date as the deck changes.
+     * Signatures of the deck's flashcards are computed in parallel.
+     *
+     * Input: the deck.
+     * Output: new DuplicateIndex class.
+     */
+    public DuplicateIndex(Deck deck) {
+        super(deck, "duplicate index");
+        for (int band = 0; band < BANDS; band++) {
+            Arrays.fill(heads[band], NONE);
+        }
+        indexDeck();
+    }
+
+    /*
+     * similarTo finds indexed flashcards that are nearly the same as the given text, most similar first.
+     * Only flashcards sharing a bucket with the text are compared, so the expected time does not depend
+     * on the size of the deck.
+     *
+     * Input: front and back of the text, the lowest similarity to report, and the largest number
+     * of flashcards to return.
+     * Output: the similar flashcards.
+     */
+    public ArrayList<Match> similarTo(String front, String back, double threshold, int limit) {
+        if (front == null || back == null) {
+            throw new NullPointerException("Cannot find duplicates of null text.");
+        }
+        if (limit < 0) {
+            throw new IllegalArgumentException("Cannot find duplicates with negative limit.");
+        }
+        ArrayList<Match> matches = new ArrayList<>();
+        char[] signature = signatureOf(front, back);
+        if (signature == null) {
+            return matches;
+        }
+
+        synchronized (this) {
+            if (++mark == 0) {
+                Arrays.fill(marks, 0); // the marks wrapped around
+                mark = 1;
+            }
+            for (int band = 0; band < BANDS; band++) {
+                long key = bandKey(signature, 0, band);
+                for (int entry = heads[band][bucketOf(key, band)]; entry != NONE; entry = next[entry]) {
+                    int slot = entry / BANDS;
+                    if (marks[slot] == mark || bandKey(signatures, slot, band) != key) {
+                        continue;
+                    }
+                    marks[slot] = mark;
+                    double similarity = similarity(signature, 0, signatures, slot);
+                    if (similarity >= threshold) {
+                        matches.add(new Match(slotIds[slot], similarity));
+                    }
+                }
+            }
+        }
+
+        matches.sort((Match first, Match second) -> Double.compare(second.similarity, first.similarity));
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    /*
+     * clusters groups the indexed flashcards into clusters of near duplicates. Flashcards sharing a
+     * bucket are compared, in parallel, with the first flashcard of that bucket, and flashcards similar
+     * enough are joined into one cluster, so a cluster can hold flashcards similar through a chain of
+     * others. The index is only locked while its slots and buckets are copied, so changes to the deck
+     * are applied while the copy is searched, and are not part of the clusters found.
+     *
+     * Input: the lowest similarity for two flashcards to be joined, and the callback told the progress;
+     * the callback may stop the search by throwing a runtime exception.
+     * Output: identifiers of the flashcards in each cluster of more than one flashcard, largest first.
+     */
+    public ArrayList<long[]> clusters(double threshold, ProgressCallback progress) {
+        if (progress == null) {
+            throw new NullPointerException("Cannot find clusters with null progress callback.");
+        }
+        Snapshot snapshot;
+        synchronized (this) {
+            snapshot = new Snapshot();
+        }
+        int slotCount = snapshot.slotCount;
+        int[] parents = new int[slotCount];
+        for (int slot = 0; slot < slotCount; slot++) {
+            parents[slot] = slot;
+        }
+
+        // each chunk is a range of buckets in one band; the chunks of a round are searched in parallel
+        int bucketCount = snapshot.heads[0].length;
+        int chunksPerBand = Math.min(bucketCount, REPORT_CHUNKS);
+        int chunkCount = BANDS * chunksPerBand;
+        int round = Math.max(1, chunkCount / REPORT_CHUNKS * 4);
+        IntList[] edges = new IntList[round];
+        progress.run(0, chunkCount);
+        for (int start = 0; start < chunkCount; start += round) {
+            int first = start;
+            int count = Math.min(round, chunkCount - start);
+            IntStream.range(0, count).parallel().forEach((int offset) -> {
+                int chunk = first + offset;
+                int band = chunk / chunksPerBand;
+                int part = chunk % chunksPerBand;
+                edges[offset] = snapshot.similarPairs(band, (int) ((long) bucketCount * part / chunksPerBand),
+                        (int) ((long) bucketCount * (part + 1) / chunksPerBand), threshold);
+            });
+            for (int offset = 0; offset < count; offset++) {
+                for (int e = 0; e < edges[offset].size; e += 2) {
+                    union(parents, edges[offset].values[e], edges[offset].values[e + 1]);
+                }
+            }
+            progress.run(start + count, chunkCount);
+        }
+
+        // gather the members of each root, then keep the roots with more than one member
+        int[] sizes = new int[slotCount];
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (snapshot.live[slot]) {
+                sizes[find(parents, slot)]++;
+            }
+        }
+        long[][] members = new long[slotCount][];
+        int[] filled = new int[slotCount];
+        ArrayList<long[]> clusters = new ArrayList<>();
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (!snapshot.live[slot]) {
+                continue;
+            }
+            int root = find(parents, slot);
+            if (sizes[root] < 2) {
+                continue;
+            }
+            if (members[root] == null) {
+                members[root] = new long[sizes[root]];
+                clusters.add(members[root]);
+            }
+            members[root][filled[root]++] = snapshot.slotIds[slot];
+        }
+        clusters.sort((long[] first, long[] second) -> Integer.compare(second.length, first.length));
+        return clusters;
+    }
+
+    /*
+     * size returns the number of indexed flashcards.
+     *
+     * Input: no input.
+     * Output: number of flashcards.
+     */
+    public synchronized int size() {
+        return liveCount;
+    }
+
+    /*
+     * read reads the front and back of a flashcard.
+     *
+     * Input: the flashcard.
+     * Output: its text, without a signature yet.
+     */
+    @Override
+    protected Text read(Flashcard flashcard) {
+        return new Text(flashcard.front, flashcard.back);
+    }
+
+    /*
+     * prepare computes the signatures of the text read, in parallel for many flashcards.
+     *
+     * Input: the text read, null for flashcards not in the deck.
+     * Output: no return value, modifies the text.
+     */
+    @Override
+    protected void prepare(ArrayList<Text> texts) {
+        IntStream indices = IntStream.range(0, texts.size());
+        (texts.size() >= PARALLEL_THRESHOLD ? indices.parallel() : indices).forEach((int i) -> {
+            Text text = texts.get(i);
+            if (text != null) {
+                text.signature = signatureOf(text.front, text.back);
+            }
+        });
+    }
+
+    /*
+     * insert links a slot into a bucket of each band. A flashcard with no letters or digits has no
+     * signature, so its slot is kept without being linked.
+     *
+     * Input: the slot, and the text with its signature.
+     * Output: no return value, modifies the index.
+     */
+    @Override
+    protected void insert(int slot, Text text) {
+        if (text.signature == null) {
+            live[slot] = false;
+            return;
+        }
+        System.arraycopy(text.signature, 0, signatures, slot * HASH_COUNT, HASH_COUNT);
+        live[slot] = true;
+        liveCount++;
+        for (int band = 0; band < BANDS; band++) {
+            link(slot, band);
+        }
+    }
+
+    /*
+     * unindex unlinks a slot from its buckets, if it was linked.
+     *
+     * Input: the slot.
+     * Output: no return value, modifies the index.
+     */
+    @Override
+    protected void unindex(int slot) {
+        if (!live[slot]) {
+            return;
+        }
+        for (int band = 0; band < BANDS; band++) {
+            int entry = slot * BANDS + band;
+            if (previous[entry] == NONE) {
+                heads[band][bucketOf(bandKey(signatures, slot, band), band)] = next[entry];
+            } else {
+                next[previous[entry]] = next[entry];
+            }
+            if (next[entry] != NONE) {
+                previous[next[entry]] = previous[entry];
+            }
+        }
+        live[slot] = false;
+        liveCount--;
+    }
+
+    /*
+     * grow grows the signatures and chains of the slots, and relinks every slot into as many buckets
+     * as slots.
+     *
+     * Input: the new number of slots.
+     * Output: no return value, modifies the index.
+     */
+    @Override
+    protected void grow(int capacity) {
+        live = Arrays.copyOf(live, capacity);
+        signatures = Arrays.copyOf(signatures, capacity * HASH_COUNT);
+        next = Arrays.copyOf(next, capacity * BANDS);
+        previous = Arrays.copyOf(previous, capacity * BANDS);
+        marks = Arrays.copyOf(marks, capacity);
+
+        for (int band = 0; band < BANDS; band++) {
+            heads[band] = new int[capacity];
+            Arrays.fill(heads[band], NONE);
+        }
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (live[slot]) {
+                for (int band = 0; band < BANDS; band++) {
+                    link(slot, band);
+                }
+            }
+        }
+    }
+
+    /*
+     * link puts a slot at the front of its bucket in one band.
+     *
+     * Input: the slot, and the band.
+     * Output: no return value, modifies the buckets.
+     */
+    private void link(int slot, int band) {
+        int entry = slot * BANDS + band;
+        int bucket = bucketOf(bandKey(signatures, slot, band), band);
+        int head = heads[band][bucket];
+        next[entry] = head;
+        previous[entry] = NONE;
+        if (head != NONE) {
+            previous[head] = entry;
+        }
+        heads[band][bucket] = entry;
+    }
+
+    /*
+     * signatureOf computes the MinHash signature of a flashcard's text.
+     *
+     * Input: front and back of the flashcard.
+     * Output: the signature, or null if the text has no letters or digits.
+     */
+    private static char[] signatureOf(String front, String back) {
+        StringBuilder builder = new StringBuilder();
+        for (String text : new String[] { front, back }) {
+            for (String token : SearchIndex.tokenize(text)) {
+                if (builder.length() > 0) {
+                    builder.append(' ');
+                }
+                builder.append(token);
+            }
+        }
+        if (builder.length() == 0) {
+            return null;
+        }
+
+        long[] minimums = new long[HASH_COUNT];
+        Arrays.fill(minimums, Long.MAX_VALUE);
+        int shingleCount = Math.max(1, builder.length() - SHINGLE_LENGTH + 1);
+        for (int start = 0; start < shingleCount; start++) {
+            long shingle = 0;
+            for (int i = start; i < Math.min(start + SHINGLE_LENGTH, builder.length()); i++) {
+                shingle = (shingle << 16) | builder.charAt(i);
+            }
+            long hash = mix(shingle);
+            for (int i = 0; i < HASH_COUNT; i++) {
+                long value = (MULTIPLIERS[i] * hash + INCREMENTS[i]) >>> 32;
+                if (value < minimums[i]) {
+                    minimums[i] = value;
+                }
+            }
+        }
+        char[] signature = new char[HASH_COUNT];
+        for (int i = 0; i < HASH_COUNT; i++) {
+            signature[i] = (char) minimums[i]; // the low bits, since the high bits of a minimum are mostly 0
+        }
+        return signature;
+    }
+
+    /*
+     * similarity estimates the similarity of two signatures, as the fraction of positions they agree on.
+     *
+     * Input: the arrays holding each signature, and the index of each signature in its array.
+     * Output: the estimated similarity, from 0 to 1.
+     */
+    private static double similarity(char[] first, int firstIndex, char[] second, int secondIndex) {
+        int firstStart = firstIndex * HASH_COUNT;
+        int secondStart = secondIndex * HASH_COUNT;
+        int agreeing = 0;
+        for (int i = 0; i < HASH_COUNT; i++) {
+            if (first[firstStart + i] == second[secondStart + i]) {
+                agreeing++;
+            }
+        }
+        return (double) agreeing / HASH_COUNT;
+    }
+
+    /*
+     * bandKey packs the rows of one band of a signature into a long.
+     *
+     * Input: the array holding the signature, the index of the signature in it, and the band.
+     * Output: the key of the band.
+     */
+    private static long bandKey(char[] array, int index, int band) {
+        int start = index * HASH_COUNT + band * ROWS;
+        long key = 0;
+        for (int row = 0; row < ROWS; row++) {
+            key = (key << 16) | array[start + row];
+        }
+        return key;
+    }
+
+    /*
+     * bucketOf finds the bucket of a band key.
+     *
+     * Input: the band key, and the band.
+     * Output: index of the bucket.
+     */
+    private int bucketOf(long key, int band) {
+        return (int) mix(key + band) & (heads[band].length - 1);
+    }
+
+    /*
+     * find finds the root of a slot's cluster, halving the path to it.
+     *
+     * Input: parent of each slot, and the slot.
+     * Output: the root slot.
+     */
+    private static int find(int[] parents, int slot) {
+        while (parents[slot] != slot) {
+            parents[slot] = parents[parents[slot]];
+            slot = parents[slot];
+        }
+        return slot;
+    }
+
+    /*
+     * union joins the clusters of two slots.
+     *
+     * Input: parent of each slot, and the two slots.
+     * Output: no return value, modifies the parents.
+     */
+    private static void union(int[] parents, int first, int second) {
+        int firstRoot = find(parents, first);
+        int secondRoot = find(parents, second);
+        if (firstRoot != secondRoot) {
+            parents[Math.max(firstRoot, secondRoot)] = Math.min(firstRoot, secondRoot);
+        }
+    }
+
+    /*
+     * mix scrambles the bits of a long.
+     *
+     * Input: the long.
+     * Output: its hash.
+     */
+    private static long mix(long value) {
+        long h = value;
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+}
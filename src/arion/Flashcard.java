@@ -4,11 +4,20 @@ import exception.*;
 
 import java.time.LocalDate;
 import java.time.format.*;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.TreeSet;
 import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadLocalRandom;
 
 /*
  * The Flashcard class represents a flashcard. It contains the flashcard's front, back, review date, and review interval.
  * It contains Flashcard specific methods, such as checking whether it is due, and updating the review interval after studying.
+ *
+ * A flashcard can also carry tags, such as a chapter or a part of speech, used to study or browse part of a deck.
+ * Tags are kept apart from the four fields: a String array of a flashcard may have one more element after its
+ * fields, listing its tags.
  */
 
 public class Flashcard {
@@ -49,7 +58,75 @@ public class Flashcard {
         }
     }
 
+    /*
+     * The Parser class converts many String arrays into flashcards, like fromStringArray.
+     * Review dates, intervals, and tags usually repeat across the rows of a table, so each distinct
+     * String is only parsed once per parser, and flashcards with the same tags share one array.
+     */
+    public static class Parser {
+        private HashMap<String, LocalDate> dates = new HashMap<>();
+        private HashMap<String, Long> intervals = new HashMap<>();
+        private HashMap<String, String[]> tagLists = new HashMap<>();
+
+        /*
+         * parse converts a String array, containing either a front and a back or all four fields,
+         * optionally followed by the tags, into a flashcard.
+         *
+         * Input: String array to convert.
+         * Output: flashcard.
+         */
+        public Flashcard parse(String[] array) throws DateFormatException, IntervalFormatException {
+            if (array == null) {
+                throw new NullPointerException("Received null array");
+            }
+
+            if (array.length == 2 || array.length == 3) {
+                Flashcard flashcard = new Flashcard(array[0], array[1]);
+                flashcard.tags = array.length == 3 ? parseTagList(array[2]) : NO_TAGS;
+                return flashcard;
+            } else if (array.length != FIELD_COUNT && array.length != TAGGED_FIELD_COUNT) {
+                throw new IllegalArgumentException("Array has to be of length two to five.");
+            }
+
+            LocalDate date = dates.get(array[2]);
+            if (date == null) {
+                date = parseDateString(array[2]);
+                dates.put(array[2], date);
+            }
+            Long interval = intervals.get(array[3]);
+            if (interval == null) {
+                interval = parseIntervalString(array[3]);
+                intervals.put(array[3], interval);
+            }
+            Flashcard flashcard = new Flashcard(array[0], array[1], date, interval);
+            flashcard.tags = array.length == TAGGED_FIELD_COUNT ? parseTagList(array[FIELD_COUNT]) : NO_TAGS;
+            return flashcard;
+        }
+
+        /*
+         * parseTagList parses a list of tags like parseTags, reusing the array of an identical list
+         * parsed before.
+         *
+         * Input: the list of tags.
+         * Output: the tags.
+         */
+        public String[] parseTagList(String text) {
+            if (text == null) {
+                throw new NullPointerException("Received null tags");
+            }
+            String[] tags = tagLists.get(text);
+            if (tags == null) {
+                tags = parseTags(text);
+                tagLists.put(text, tags);
+            }
+            return tags;
+        }
+    }
+
     public final static int FIELD_COUNT = 4;
+    public final static int TAGGED_FIELD_COUNT = FIELD_COUNT + 1; // the fields, then the tags
+    public final static String TAGS_TITLE = "Tags";
+    public final static String[] NO_TAGS = new String[0];
     public final static Field[] FIELDS = { Field.FRONT, Field.BACK, Field.REVIEW_DATE, Field.REVIEW_INTERVAL };
     public static String[] FIELD_TITLES = generateFieldTitles(FIELDS);
 
@@ -57,12 +134,14 @@ public class Flashcard {
             .ofPattern("MMMM d, uuuu")
             .withResolverStyle(ResolverStyle.STRICT); // ensure the date is valid
 
+    public long id;
     public String front;
     public String back;
     public LocalDate reviewDate;
     public long reviewInterval;
-
-    private static final double INTERVAL_MULTIPLICAND = 1.6;
+    public long modified; // time of the last edit or review, in milliseconds since the epoch
+    public String[] tags = NO_TAGS; // sorted and distinct; replaced rather than modified, so it can be shared
+    public long version; // stamped by the deck holding the flashcard on every change, so reads can be ordered
 
     /*
      * The constructor sets the internal fields of Flashcard to the values passed in
@@ -78,10 +157,12 @@ public class Flashcard {
             throw new NullPointerException("Attempted to construct flashcard with null fields.");
         }
 
+        this.id = generateId();
         this.front = front;
         this.back = back;
         this.reviewDate = reviewDate;
         this.reviewInterval = reviewInterval;
+        this.modified = System.currentTimeMillis();
         if (reviewInterval <= 0) {
             throw new IllegalArgumentException("Attempted to construct flashcard with invalid review interval.");
         }
@@ -138,10 +219,25 @@ public class Flashcard {
         };
     }
 
+    /*
+     * toTaggedStringArray converts the flashcard into a String array of its four fields followed by its tags.
+     *
+     * Input: no input.
+     * Output: String array representing this Flashcard and its tags.
+     */
+    public String[] toTaggedStringArray() {
+        String[] fields = toStringArray();
+        String[] array = new String[TAGGED_FIELD_COUNT];
+        System.arraycopy(fields, 0, array, 0, FIELD_COUNT);
+        array[FIELD_COUNT] = formatTags(tags);
+        return array;
+    }
+
     /*
      * fromStringArray converts a String array which represents a Flashcard into a
      * Flashcard.
-     * The array contains either a front and a back, or all four fields represented as Strings.
+     * The array contains either a front and a back, or all four fields represented as Strings,
+     * optionally followed by the tags.
      *
      * Input: String array to convert.
      * Output: flashcard.
@@ -150,35 +246,142 @@ public class Flashcard {
         if (array == null) {
             throw new NullPointerException("Received null array");
         }
-
-        if (array.length == 2) {
-            return new Flashcard(array[0], array[1]);
-        } else if (array.length == 4) {
-            return new Flashcard(array[0], array[1], array[2], array[3]);
+        Flashcard flashcard;
+        if (array.length == 2 || array.length == 3) {
+            flashcard = new Flashcard(array[0], array[1]);
+        } else if (array.length == FIELD_COUNT || array.length == TAGGED_FIELD_COUNT) {
+            flashcard = new Flashcard(array[0], array[1], array[2], array[3]);
         } else {
-            throw new IllegalArgumentException("Array has to be of length two or four.");
+            throw new IllegalArgumentException("Array has to be of length two to five.");
+        }
+        if (array.length == 3 || array.length == TAGGED_FIELD_COUNT) {
+            flashcard.tags = parseTags(array[array.length - 1]);
+        }
+        return flashcard;
+    }
+
+    /*
+     * parseTags parses a list of tags separated by commas, spaces, or vertical bars.
+     * Tags are lower cased and any leading minus signs are dropped, since a minus sign excludes
+     * a tag in a tag filter; the result is sorted, without repeats.
+     *
+     * Input: the list of tags.
+     * Output: the tags.
+     */
+    public static String[] parseTags(String text) {
+        if (text == null) {
+            throw new NullPointerException("Cannot parse null tags.");
+        }
+        TreeSet<String> tags = new TreeSet<>();
+        for (String tag : text.split("[\\s,|]+")) {
+            int start = 0;
+            while (start < tag.length() && tag.charAt(start) == '-') {
+                start++;
+            }
+            if (start < tag.length()) {
+                tags.add(tag.substring(start).toLowerCase(Locale.ROOT));
+            }
+        }
+        return tags.isEmpty() ? NO_TAGS : tags.toArray(new String[0]);
+    }
+
+    /*
+     * unionTags combines two sorted lists of tags without repeats.
+     * If the second list adds no tag, the first list itself is returned.
+     *
+     * Input: the two lists of tags.
+     * Output: the combined tags.
+     */
+    public static String[] unionTags(String[] tags, String[] added) {
+        if (tags == null || added == null) {
+            throw new NullPointerException("Cannot combine null tags.");
+        }
+        if (added.length == 0) {
+            return tags;
+        }
+        TreeSet<String> union = new TreeSet<>(Arrays.asList(tags));
+        boolean grown = false;
+        for (String tag : added) {
+            grown |= union.add(tag);
         }
+        return grown ? union.toArray(new String[0]) : tags;
+    }
+
+    /*
+     * formatTags formats tags as a list separated by commas, as parseTags reads them.
+     *
+     * Input: the tags.
+     * Output: the list of tags.
+     */
+    public static String formatTags(String[] tags) {
+        if (tags == null) {
+            throw new NullPointerException("Cannot format null tags.");
+        }
+        return String.join(", ", tags);
     }
 
     /*
      * updateReviewDate updates the review date and interval of this flashcard
      * according to whether the user failed or succeeded in recalling the back
-     * information.
-     * If successful, the review interval gets 1.6 times longer, and the review date
-     * is set to the current date plus the interval.
-     * Otherwise, the interval is reset to one day and the review date is today.
+     * information, using the default scheduling parameters.
      *
      * Input: whether the user successfully reviewed the flashcard.
      * Output: no return value, modifies the review date and interval.
      */
     public void updateReview(boolean success) {
+        updateReview(success, SchedulerParameters.DEFAULT);
+    }
+
+    /*
+     * This updateReview signature schedules the flashcard with the given parameters.
+     * If successful, the review interval gets the interval multiplicand times longer, and the review date
+     * is set to the current date plus the interval.
+     * Otherwise, the interval is reset to one day and the review date is today.
+     *
+     * Input: whether the user successfully reviewed the flashcard, and the scheduling parameters.
+     * Output: no return value, modifies the review date and interval.
+     */
+    public void updateReview(boolean success, SchedulerParameters parameters) {
+        updateReview(success, parameters, LocalDate.now());
+    }
+
+    /*
+     * This updateReview signature takes the current date, so it can be looked up once for many reviews.
+     *
+     * Input: whether the user successfully reviewed the flashcard, the scheduling parameters, and today's date.
+     * Output: no return value, modifies the review date and interval.
+     */
+    public void updateReview(boolean success, SchedulerParameters parameters, LocalDate today) {
+        if (parameters == null || today == null) {
+            throw new NullPointerException("Cannot update review with null scheduling parameters or date.");
+        }
+
         if (success) {
-            reviewDate = LocalDate.now().plusDays(reviewInterval);
-            reviewInterval = (long) (reviewInterval * INTERVAL_MULTIPLICAND) + 1;
+            reviewDate = today.plusDays(reviewInterval);
+            reviewInterval = (long) (reviewInterval * parameters.intervalMultiplicand) + 1;
         } else {
-            reviewDate = LocalDate.now();
+            reviewDate = today;
             reviewInterval = 1;
         }
+        modified = System.currentTimeMillis();
+    }
+
+    /*
+     * copyFields copies the front, back, review date, review interval, and modification time of
+     * another flashcard into this one, keeping this flashcard's identifier and tags.
+     *
+     * Input: flashcard to copy the fields of.
+     * Output: no return value, modifies this flashcard.
+     */
+    public void copyFields(Flashcard other) {
+        if (other == null) {
+            throw new NullPointerException("Cannot copy fields of null flashcard.");
+        }
+        front = other.front;
+        back = other.back;
+        reviewDate = other.reviewDate;
+        reviewInterval = other.reviewInterval;
+        modified = other.modified;
     }
 
     /*
@@ -296,6 +499,18 @@ public class Flashcard {
         return dayCount;
     }
 
+    /*
+     * generateId generates a random identifier for a new flashcard.
+     * Identifiers are random rather than sequential so that flashcards created in
+     * different copies of a deck do not collide.
+     *
+     * Input: no input.
+     * Output: new flashcard identifier.
+     */
+    private static long generateId() {
+        return ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+    }
+
     /*
      * generateFieldTitles statically generates a list of field titles from the passed
      * field array.
@@ -0,0 +1,255 @@
+package arion;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Optional;
+
+/*
+ * FrontIndex is a hash index from the normalized front of each flashcard to the flashcard, used to find
+ * the flashcard a row of an imported list already exists as.
+ *
+ * A front is normalized by applying Unicode compatibility composition, lower casing it, and collapsing
+ * runs of whitespace, so fronts differing only in case or spacing are the same key; accents and
+ * punctuation are kept, since they can tell two words apart. Only a 64 bit hash of each normalized
+ * front is stored, so the index stays small for large decks, and the fronts of the flashcards found
+ * are read back from the deck to rule out collisions. Flashcards sharing a front are chained, and the
+ * one indexed first is the one found. Like the other DeckIndexes, it listens to the deck's changes and
+ * keeps itself up to date.
+ */
+
+public class FrontIndex extends DeckIndex<Long> {
+    private final static int NONE = -1;
+
+    // the key of each slot; flashcards with the same key are chained through next and previous,
+    // newest first, and heads maps each key to the newest slot holding it
+    private LongIntMap heads = new LongIntMap(INITIAL_CAPACITY);
+    private long[] slotKeys = new long[INITIAL_CAPACITY];
+    private int[] next = new int[INITIAL_CAPACITY];
+    private int[] previous = new int[INITIAL_CAPACITY];
+
+    /*
+     * The constructor indexes a deck, and keeps the index up to date as the deck changes.
+     *
+     * Input: the deck.
+     * Output: new FrontIndex class.
+     */
+    public FrontIndex(Deck deck) {
+        super(deck, "front index");
+        indexDeck();
+    }
+
+    /*
+     * find finds the flashcard with the given front, after normalizing it.
+     *
+     * Input: the front.
+     * Output: optionally the identifier of the flashcard.
+     */
+    public Optional<Long> find(String front) {
+        if (front == null) {
+            throw new NullPointerException("Cannot find flashcard with null front.");
+        }
+        return findAll(new String[] { front }).get(0);
+    }
+
+    /*
+     * findAll finds the flashcards with each of the given fronts, after normalizing them. The fronts
+     * of the candidate flashcards are read from the deck in one pass, so finding every row of a list
+     * takes time proportional to the length of the list.
+     *
+     * Input: the fronts.
+     * Output: optionally the identifier of the flashcard with each front, in the same order.
+     */
+    public ArrayList<Optional<Long>> findAll(String[] fronts) {
+        if (fronts == null) {
+            throw new NullPointerException("Cannot find flashcards with null fronts.");
+        }
+        String[] normalized = new String[fronts.length];
+        long[] keys = new long[fronts.length];
+        for (int i = 0; i < fronts.length; i++) {
+            if (fronts[i] == null) {
+                throw new NullPointerException("Cannot find flashcard with null front.");
+            }
+            normalized[i] = normalize(fronts[i]);
+            keys[i] = keyOf(normalized[i]);
+        }
+
+        // the candidates of row i are candidates[starts[i]] to candidates[starts[i + 1]], oldest first
+        int[] starts = new int[fronts.length + 1];
+        long[] candidates = new long[fronts.length];
+        int candidateCount = 0;
+        synchronized (this) {
+            for (int i = 0; i < fronts.length; i++) {
+                starts[i] = candidateCount;
+                int slot = heads.get(keys[i]);
+                if (slot == LongIntMap.MISSING) {
+                    continue;
+                }
+                while (next[slot] != NONE) {
+                    slot = next[slot]; // the oldest slot is at the end of the chain
+                }
+                for (; slot != NONE; slot = previous[slot]) {
+                    if (candidateCount == candidates.length) {
+                        candidates = Arrays.copyOf(candidates, candidateCount * 2);
+                    }
+                    candidates[candidateCount++] = slotIds[slot];
+                }
+            }
+            starts[fronts.length] = candidateCount;
+        }
+
+        String[] candidateFronts = new String[candidateCount];
+        deck.readAll(candidates, candidateCount,
+                (int index, Flashcard flashcard) -> candidateFronts[index] = flashcard.front);
+
+        ArrayList<Optional<Long>> found = new ArrayList<>(fronts.length);
+        for (int i = 0; i < fronts.length; i++) {
+            Optional<Long> match = Optional.empty();
+            for (int c = starts[i]; c < starts[i + 1] && match.isEmpty(); c++) {
+                // deleted since it was listed, or a different front with the same hash
+                if (candidateFronts[c] != null && normalize(candidateFronts[c]).equals(normalized[i])) {
+                    match = Optional.of(candidates[c]);
+                }
+            }
+            found.add(match);
+        }
+        return found;
+    }
+
+    /*
+     * size returns the number of indexed flashcards.
+     *
+     * Input: no input.
+     * Output: number of flashcards.
+     */
+    public synchronized int size() {
+        return slotOf.size();
+    }
+
+    /*
+     * normalize converts a front into the key text it is indexed by: compatibility characters are
+     * composed, letters are lower cased, and runs of whitespace become one space, with none at the ends.
+     *
+     * Input: the front.
+     * Output: the normalized front.
+     */
+    public static String normalize(String front) {
+        if (front == null) {
+            throw new NullPointerException("Cannot normalize null front.");
+        }
+        boolean ascii = true;
+        for (int i = 0; i < front.length() && ascii; i++) {
+            ascii = front.charAt(i) < 0x80;
+        }
+        String composed = ascii ? front : Normalizer.normalize(front, Normalizer.Form.NFKC);
+
+        StringBuilder builder = new StringBuilder(composed.length());
+        boolean space = false;
+        for (int i = 0; i < composed.length(); ) {
+            int codePoint = composed.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (Character.isWhitespace(codePoint) || Character.isSpaceChar(codePoint)) {
+                space = builder.length() > 0;
+                continue;
+            }
+            if (space) {
+                builder.append(' ');
+                space = false;
+            }
+            builder.appendCodePoint(codePoint);
+        }
+        return builder.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /*
+     * read reads the front of a flashcard, and hashes it into its key.
+     *
+     * Input: the flashcard.
+     * Output: the key of its front.
+     */
+    @Override
+    protected Long read(Flashcard flashcard) {
+        return keyOf(normalize(flashcard.front));
+    }
+
+    /*
+     * update keeps a slot whose front did not change, so the flashcard keeps its place in its chain.
+     *
+     * Input: the slot, and the key of the front.
+     * Output: whether the key is the one already indexed.
+     */
+    @Override
+    protected boolean update(int slot, Long key) {
+        return slotKeys[slot] == key;
+    }
+
+    /*
+     * insert puts a slot at the head of the chain of its key.
+     *
+     * Input: the slot, and the key of its front.
+     * Output: no return value, modifies the index.
+     */
+    @Override
+    protected void insert(int slot, Long key) {
+        int head = heads.get(key);
+        slotKeys[slot] = key;
+        previous[slot] = NONE;
+        next[slot] = head == LongIntMap.MISSING ? NONE : head;
+        if (head != LongIntMap.MISSING) {
+            previous[head] = slot;
+        }
+        heads.put(key, slot);
+    }
+
+    /*
+     * unindex takes a slot out of the chain of its key.
+     *
+     * Input: the slot.
+     * Output: no return value, modifies the index.
+     */
+    @Override
+    protected void unindex(int slot) {
+        if (previous[slot] == NONE) {
+            if (next[slot] == NONE) {
+                heads.remove(slotKeys[slot]);
+            } else {
+                heads.put(slotKeys[slot], next[slot]);
+            }
+        } else {
+            next[previous[slot]] = next[slot];
+        }
+        if (next[slot] != NONE) {
+            previous[next[slot]] = previous[slot];
+        }
+    }
+
+    /*
+     * grow grows the keys and chains of the slots.
+     *
+     * Input: the new number of slots.
+     * Output: no return value, modifies the index.
+     */
+    @Override
+    protected void grow(int capacity) {
+        slotKeys = Arrays.copyOf(slotKeys, capacity);
+        next = Arrays.copyOf(next, capacity);
+        previous = Arrays.copyOf(previous, capacity);
+    }
+
+    /*
+     * keyOf hashes a normalized front into the key it is indexed by.
+     *
+     * Input: the normalized front.
+     * Output: the key.
+     */
+    private static long keyOf(String normalized) {
+        long h = 0xCBF29CE484222325L; // FNV-1a over the chars, then mixed
+        for (int i = 0; i < normalized.length(); i++) {
+            h = (h ^ normalized.charAt(i)) * 0x100000001B3L;
+        }
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+}
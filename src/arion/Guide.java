@@ -0,0 +1,306 @@
+package arion;
+
+import exception.GuideDisplayException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Optional;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/*
+ * Guide is the parsed guide: a list of pages, each holding the text, images, and pairs shown on it.
+ *
+ * The guide xml is read once with a streaming parser straight into this model, without building a
+ * document tree or validating against the DTD. The rules of the DTD are checked while reading instead:
+ * pages have a name, pairs hold two text or image elements, text holds only characters and breaks,
+ * images have a source, and an image without a scale gets the DTD's default scale.
+ */
+
+public class Guide {
+    public final static String DEFAULT_IMAGE_SCALE = "0.4";
+
+    /*
+     * Kind is the kind of an element of a page.
+     */
+    public enum Kind {
+        TEXT, IMAGE, PAIR
+    }
+
+    /*
+     * The Element class is one element of a page: text, an image, or a pair of elements side by side.
+     */
+    public static class Element {
+        public final Kind kind;
+        public final String text; // text with breaks as new lines, for TEXT
+        public final String src; // file name of the image, for IMAGE
+        public final Optional<String> scaleOption; // proportion of the available width, for IMAGE
+        public final Element[] children; // the two elements, for PAIR
+
+        private Element(Kind kind, String text, String src, Optional<String> scaleOption, Element[] children) {
+            this.kind = kind;
+            this.text = text;
+            this.src = src;
+            this.scaleOption = scaleOption;
+            this.children = children;
+        }
+    }
+
+    /*
+     * The Page class is one page of the guide.
+     */
+    public static class Page {
+        public final String name;
+        public final Element[] elements;
+
+        private Page(String name, Element[] elements) {
+            this.name = name;
+            this.elements = elements;
+        }
+    }
+
+    private Page[] pages;
+
+    /*
+     * The constructor creates a guide from its pages.
+     *
+     * Input: the pages.
+     * Output: new Guide class.
+     */
+    private Guide(Page[] pages) {
+        this.pages = pages;
+    }
+
+    /*
+     * read reads the guide from a resource.
+     *
+     * Input: class the resource is loaded relative to, path of the resource.
+     * Output: the guide.
+     */
+    public static Guide read(Class<?> resourceBase, String filepath) throws GuideDisplayException {
+        if (resourceBase == null || filepath == null) {
+            throw new NullPointerException("Cannot read guide with null parameters.");
+        }
+        try (InputStream stream = resourceBase.getResourceAsStream(filepath)) {
+            if (stream == null) {
+                throw new GuideDisplayException("Guide is not available.");
+            }
+            return parse(stream);
+        } catch (IOException e) {
+            throw new GuideDisplayException("Guide is not available.");
+        }
+    }
+
+    /*
+     * parse parses a guide from a stream of xml.
+     *
+     * Input: the stream, which is not closed.
+     * Output: the guide.
+     */
+    public static Guide parse(InputStream stream) throws GuideDisplayException {
+        if (stream == null) {
+            throw new NullPointerException("Cannot parse null guide.");
+        }
+
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+
+        XMLStreamReader reader = null;
+        try {
+            reader = factory.createXMLStreamReader(stream);
+            while (reader.hasNext() && !reader.isStartElement()) {
+                reader.next(); // skip the declaration, DTD, and comments before the guide
+            }
+            expectStart(reader, "guide");
+
+            ArrayList<Page> pages = new ArrayList<>();
+            while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                expectStart(reader, "page");
+                pages.add(parsePage(reader));
+            }
+            return new Guide(pages.toArray(new Page[0]));
+        } catch (XMLStreamException e) {
+            throw new GuideDisplayException("Guide is invalid: " + e.getMessage());
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // the guide was already read or rejected
+                }
+            }
+        }
+    }
+
+    /*
+     * pageCount returns the number of pages.
+     *
+     * Input: no input.
+     * Output: number of pages.
+     */
+    public int pageCount() {
+        return pages.length;
+    }
+
+    /*
+     * page returns a page of the guide.
+     *
+     * Input: number of the page, starting from 0.
+     * Output: the page.
+     */
+    public Page page(int pageNum) throws GuideDisplayException {
+        if (pageNum < 0) {
+            throw new GuideDisplayException("Cannot display guide page "
+                    + pageNum + " because it is less than 0.");
+        }
+        if (pageNum >= pages.length) {
+            throw new GuideDisplayException("Cannot display guide page "
+                    + pageNum + " because there are only " + pages.length + " pages.");
+        }
+        return pages[pageNum];
+    }
+
+    /*
+     * parsePage parses a page, from its start tag to its end tag.
+     *
+     * Input: reader positioned at the start tag of the page.
+     * Output: the page.
+     */
+    private static Page parsePage(XMLStreamReader reader) throws XMLStreamException, GuideDisplayException {
+        String name = attribute(reader, "name")
+                .orElseThrow(() -> new GuideDisplayException("Page has no name."));
+
+        ArrayList<Element> elements = new ArrayList<>();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            elements.add(parseElement(reader, true));
+        }
+        return new Page(name, elements.toArray(new Element[0]));
+    }
+
+    /*
+     * parseElement parses a text, image, or pair element, from its start tag to its end tag.
+     *
+     * Input: reader positioned at the start tag of the element, whether pairs are allowed here.
+     * Output: the element.
+     */
+    private static Element parseElement(XMLStreamReader reader, boolean allowPair)
+            throws XMLStreamException, GuideDisplayException {
+        String name = reader.getLocalName();
+        switch (name) {
+            case "txt":
+                return parseText(reader);
+            case "img":
+                String src = attribute(reader, "src")
+                        .orElseThrow(() -> new GuideDisplayException("Image has no source."));
+                String scale = attribute(reader, "scale").orElse(DEFAULT_IMAGE_SCALE);
+                if (reader.nextTag() != XMLStreamConstants.END_ELEMENT) {
+                    throw new GuideDisplayException("Image cannot have content.");
+                }
+                return new Element(Kind.IMAGE, null, src, Optional.of(scale), null);
+            case "pair":
+                if (!allowPair) {
+                    break;
+                }
+                Element[] children = new Element[2];
+                for (int i = 0; i < children.length; i++) {
+                    if (reader.nextTag() != XMLStreamConstants.START_ELEMENT) {
+                        throw new GuideDisplayException("Attempting to create pair with invalid number of children.");
+                    }
+                    children[i] = parseElement(reader, false);
+                }
+                if (reader.nextTag() != XMLStreamConstants.END_ELEMENT) {
+                    throw new GuideDisplayException("Attempting to create pair with invalid number of children.");
+                }
+                return new Element(Kind.PAIR, null, null, Optional.empty(), children);
+            default:
+                break;
+        }
+        throw new GuideDisplayException("Encountered invalid guide element " + name);
+    }
+
+    /*
+     * parseText parses a text element. Each run of characters is joined into one line with its leading
+     * and trailing spaces removed, and each break becomes a new line.
+     *
+     * Input: reader positioned at the start tag of the text.
+     * Output: the text element.
+     */
+    private static Element parseText(XMLStreamReader reader) throws XMLStreamException, GuideDisplayException {
+        StringBuilder textBuilder = new StringBuilder();
+        StringBuilder run = new StringBuilder();
+
+        while (true) {
+            int event = reader.next();
+            switch (event) {
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    run.append(reader.getText());
+                    break;
+                case XMLStreamConstants.COMMENT:
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    appendRun(textBuilder, run);
+                    break;
+                case XMLStreamConstants.START_ELEMENT:
+                    if (!reader.getLocalName().equals("brk")) {
+                        throw new GuideDisplayException("Encountered invalid guide element " + reader.getLocalName());
+                    }
+                    if (reader.nextTag() != XMLStreamConstants.END_ELEMENT) {
+                        throw new GuideDisplayException("Break cannot have content.");
+                    }
+                    appendRun(textBuilder, run);
+                    textBuilder.append("\n");
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    appendRun(textBuilder, run);
+                    return new Element(Kind.TEXT, textBuilder.toString(), null, Optional.empty(), null);
+                default:
+                    throw new GuideDisplayException("Text ended unexpectedly.");
+            }
+        }
+    }
+
+    /*
+     * appendRun appends a run of characters as one line, and empties the run.
+     *
+     * Input: text to append to, the run.
+     * Output: no return value, modifies both builders.
+     */
+    private static void appendRun(StringBuilder textBuilder, StringBuilder run) {
+        if (run.length() == 0) {
+            return;
+        }
+        textBuilder.append(run.toString()
+                .replaceAll("\n *", " ") // remove new lines
+                .replaceAll("^ *", "") // remove leading spaces
+                .replaceAll(" *$", "")); // remove trailing spaces
+        run.setLength(0);
+    }
+
+    /*
+     * expectStart checks that the reader is at the start tag of an element.
+     *
+     * Input: the reader, expected name of the element.
+     * Output: no return value.
+     */
+    private static void expectStart(XMLStreamReader reader, String name) throws GuideDisplayException {
+        if (!reader.isStartElement() || !reader.getLocalName().equals(name)) {
+            throw new GuideDisplayException("Expected guide element " + name);
+        }
+    }
+
+    /*
+     * attribute optionally gets an attribute of the element the reader is at.
+     *
+     * Input: the reader, name of the attribute.
+     * Output: optionally the value of the attribute.
+     */
+    private static Optional<String> attribute(XMLStreamReader reader, String name) {
+        return Optional.ofNullable(reader.getAttributeValue(null, name));
+    }
+}
@@ -0,0 +1,188 @@
+package arion;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+
+/*
+ * IconCache reads image resources into icons scaled to a width, and keeps them for the next time the
+ * same image is shown at the same width, such as the back button on every screen, or guide images
+ * when a page is shown again.
+ *
+ * Icons are evicted least recently used first once their decoded pixels take more than the cache's
+ * byte budget. The directory each resource was found in is remembered, including resources that
+ * were not found, so directories are only probed once per resource.
+ * Every method may be called from any thread.
+ */
+
+public class IconCache {
+    private final static int BYTES_PER_PIXEL = 4;
+
+    private Class<?> resourceBase;
+    private String[] directories;
+    private long maxBytes;
+    private long bytes = 0;
+
+    private ConcurrentHashMap<String, Optional<String>> resolvedPaths = new ConcurrentHashMap<>();
+    private LinkedHashMap<String, ImageIcon> icons = new LinkedHashMap<>(16, 0.75f, true);
+
+    /*
+     * The constructor creates an empty cache.
+     *
+     * Input: class the resources are loaded relative to, directories to look for resources in, in
+     * order, and the most bytes of decoded pixels to keep.
+     * Output: new IconCache class.
+     */
+    public IconCache(Class<?> resourceBase, String[] directories, long maxBytes) {
+        if (resourceBase == null || directories == null) {
+            throw new NullPointerException("Cannot construct icon cache with null parameters.");
+        }
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Cannot construct icon cache with a negative size.");
+        }
+        this.resourceBase = resourceBase;
+        this.directories = directories.clone();
+        this.maxBytes = maxBytes;
+    }
+
+    /*
+     * get returns the icon of an image resource scaled to the given width, keeping its aspect ratio.
+     * If the resource does not exist or cannot be decoded, no icon is returned.
+     *
+     * Input: file name of the resource, width of the icon.
+     * Output: optionally the icon.
+     */
+    public Optional<ImageIcon> get(String filename, int width) {
+        if (filename == null) {
+            throw new NullPointerException("Cannot read null image file");
+        }
+        if (width <= 0) {
+            throw new IllegalArgumentException("Cannot make image less than 0 pixels wide.");
+        }
+
+        String key = width + "/" + filename;
+        synchronized (this) {
+            ImageIcon icon = icons.get(key);
+            if (icon != null) {
+                return Optional.of(icon);
+            }
+        }
+
+        // decode outside of the lock so other icons can be served meanwhile
+        Optional<ImageIcon> iconOption = read(filename, width);
+        iconOption.ifPresent((ImageIcon icon) -> put(key, icon));
+        return iconOption;
+    }
+
+    /*
+     * warm reads icons on a background thread, so they are cached before they are first shown.
+     *
+     * Input: file names of the resources, and the width of each.
+     * Output: no return value.
+     */
+    public void warm(String[] filenames, int[] widths) {
+        if (filenames == null || widths == null) {
+            throw new NullPointerException("Cannot warm icon cache with null parameters.");
+        }
+        if (filenames.length != widths.length) {
+            throw new IllegalArgumentException("Each warmed icon requires one width.");
+        }
+        String[] filenamesCopy = filenames.clone();
+        int[] widthsCopy = widths.clone();
+        Thread warmer = new Thread(() -> {
+            for (int i = 0; i < filenamesCopy.length; i++) {
+                get(filenamesCopy[i], widthsCopy[i]);
+            }
+        }, "icon-cache-warmer");
+        warmer.setDaemon(true);
+        warmer.setPriority(Thread.MIN_PRIORITY);
+        warmer.start();
+    }
+
+    /*
+     * put adds an icon, evicting the least recently used icons while the cache is over its budget.
+     * The newest icon is always kept, even if it is larger than the budget by itself.
+     *
+     * Input: key of the icon, the icon.
+     * Output: no return value, modifies the cache.
+     */
+    private synchronized void put(String key, ImageIcon icon) {
+        ImageIcon old = icons.put(key, icon);
+        if (old != null) {
+            bytes -= sizeOf(old);
+        }
+        bytes += sizeOf(icon);
+
+        Iterator<Map.Entry<String, ImageIcon>> iterator = icons.entrySet().iterator();
+        while (bytes > maxBytes && icons.size() > 1) {
+            Map.Entry<String, ImageIcon> eldest = iterator.next();
+            bytes -= sizeOf(eldest.getValue());
+            iterator.remove();
+        }
+    }
+
+    /*
+     * read reads a resource and scales it.
+     *
+     * Input: file name of the resource, width to scale to.
+     * Output: optionally the scaled icon.
+     */
+    private Optional<ImageIcon> read(String filename, int width) {
+        Optional<String> pathOption = resolvedPaths.computeIfAbsent(filename, (String name) -> resolve(name));
+        if (pathOption.isEmpty()) {
+            return Optional.empty();
+        }
+
+        BufferedImage img;
+        try (InputStream stream = resourceBase.getResourceAsStream(pathOption.get())) {
+            if (stream == null) {
+                return Optional.empty();
+            }
+            img = ImageIO.read(stream);
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+        if (img == null) {
+            return Optional.empty();
+        }
+
+        // -1 indicates to maintain the aspect ratio of the original image;
+        // ImageIcon waits for the scaled image to be produced, so it is scaled once, here
+        Image scaledImage = img.getScaledInstance(width, -1, Image.SCALE_SMOOTH);
+        return Optional.of(new ImageIcon(scaledImage));
+    }
+
+    /*
+     * resolve finds the first directory holding a resource.
+     *
+     * Input: file name of the resource.
+     * Output: optionally the resource's path.
+     */
+    private Optional<String> resolve(String filename) {
+        for (String directory : directories) {
+            String path = directory + filename;
+            if (resourceBase.getResource(path) != null) {
+                return Optional.of(path);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /*
+     * sizeOf estimates the bytes taken by an icon's pixels.
+     *
+     * Input: the icon.
+     * Output: estimated size in bytes.
+     */
+    private static long sizeOf(ImageIcon icon) {
+        return (long) Math.max(icon.getIconWidth(), 0) * Math.max(icon.getIconHeight(), 0) * BYTES_PER_PIXEL;
+    }
+}
@@ -0,0 +1,77 @@
+package arion;
+
+import java.util.Arrays;
+
+/*
+ * LatencyRecorder measures the time between an input and the moment its result is painted.
+ * It keeps the most recent SAMPLE_CAPACITY samples so percentiles reflect recent behaviour.
+ * It is not thread safe; inputs and paints are both marked on the event dispatch thread.
+ */
+
+public class LatencyRecorder {
+    private final static int SAMPLE_CAPACITY = 1024;
+
+    private String name;
+    private long[] samples = new long[SAMPLE_CAPACITY];
+    private long sampleCount = 0;
+    private long pendingInput = -1;
+
+    /*
+     * The constructor creates an empty recorder.
+     *
+     * Input: name of the measured interaction, used in the summary.
+     * Output: new LatencyRecorder class.
+     */
+    public LatencyRecorder(String name) {
+        if (name == null) {
+            throw new NullPointerException("Cannot construct latency recorder with null name.");
+        }
+        this.name = name;
+    }
+
+    /*
+     * markInput records that an input was received; the next paint completes the sample.
+     *
+     * Input: no input.
+     * Output: no return value, starts a sample.
+     */
+    public void markInput() {
+        pendingInput = System.nanoTime();
+    }
+
+    /*
+     * markPainted completes the pending sample, if there is one.
+     *
+     * Input: no input.
+     * Output: no return value, records a sample.
+     */
+    public void markPainted() {
+        if (pendingInput < 0) {
+            return;
+        }
+        samples[(int) (sampleCount % SAMPLE_CAPACITY)] = System.nanoTime() - pendingInput;
+        sampleCount++;
+        pendingInput = -1;
+    }
+
+    /*
+     * summary summarizes the recorded samples.
+     *
+     * Input: no input.
+     * Output: String with the sample count, median, 95th percentile, and maximum in milliseconds.
+     */
+    public String summary() {
+        int count = (int) Math.min(sampleCount, SAMPLE_CAPACITY);
+        if (count == 0) {
+            return name + ": no samples";
+        }
+
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return String.format("%s: %d samples, p50 %.2f ms, p95 %.2f ms, max %.2f ms",
+                name, sampleCount,
+                sorted[count / 2] / 1e6,
+                sorted[Math.min(count - 1, (int) (count * 0.95))] / 1e6,
+                sorted[count - 1] / 1e6);
+    }
+}
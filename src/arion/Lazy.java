@@ -0,0 +1,61 @@
+package arion;
+
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/*
+ * Lazy holds a value built the first time it is needed, such as an index of a deck.
+ *
+ * Each Lazy locks only itself while its value is built, so building one index does not hold up threads
+ * using another, and once built the value is read from a volatile field without locking. If building
+ * throws, nothing is kept, and the next call builds it again.
+ */
+
+class Lazy<T> {
+    private final Supplier<T> builder;
+    private volatile T value; // null until built
+
+    /*
+     * The constructor creates a holder that has not built its value yet.
+     *
+     * Input: the function building the value, which must not return null.
+     * Output: new Lazy class.
+     */
+    Lazy(Supplier<T> builder) {
+        if (builder == null) {
+            throw new NullPointerException("Cannot construct lazy value with null builder.");
+        }
+        this.builder = builder;
+    }
+
+    /*
+     * get returns the value, building it if it was not built yet. Threads asking while it is built
+     * wait for it.
+     *
+     * Input: no input.
+     * Output: the value.
+     */
+    T get() {
+        T built = value;
+        if (built == null) {
+            synchronized (this) {
+                built = value;
+                if (built == null) {
+                    built = builder.get();
+                    value = built;
+                }
+            }
+        }
+        return built;
+    }
+
+    /*
+     * ifBuilt returns the value if it was built, without building it or waiting for it.
+     *
+     * Input: no input.
+     * Output: optionally the value.
+     */
+    Optional<T> ifBuilt() {
+        return Optional.ofNullable(value);
+    }
+}
@@ -0,0 +1,219 @@
+package arion;
+
+import java.util.Arrays;
+
+/*
+ * LogHistogram counts non-negative whole numbers, such as review intervals or text lengths, in buckets
+ * whose width grows with the value: values below SUB_BUCKETS get a bucket each, and every higher power
+ * of two is split into SUB_BUCKETS buckets of equal width. Percentiles are then exact for small values
+ * and within about 3% for large ones, in a few kilobytes however many values are counted.
+ *
+ * Unlike most streaming summaries, a value can be removed as well as added, so the histogram can follow
+ * the current values of a deck as flashcards are edited, reviewed, and deleted. Two histograms are
+ * merged by adding their counts, so summaries of separate decks combine into a summary of both.
+ * It is not thread-safe; its owner locks it.
+ */
+
+public class LogHistogram {
+    private final static int SUB_BUCKET_BITS = 5;
+    public final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private long[] counts = new long[SUB_BUCKETS * 2];
+    private long count = 0;
+    private long sum = 0;
+
+    /*
+     * add counts a value. Negative values are counted as zero.
+     *
+     * Input: the value.
+     * Output: no return value, modifies the histogram.
+     */
+    public void add(long value) {
+        add(value, 1);
+    }
+
+    /*
+     * remove uncounts a value counted before.
+     *
+     * Input: the value.
+     * Output: no return value, modifies the histogram.
+     */
+    public void remove(long value) {
+        add(value, -1);
+    }
+
+    /*
+     * This add signature counts a value several times, or uncounts it if the number of times is negative.
+     *
+     * Input: the value, and the number of times to count it.
+     * Output: no return value, modifies the histogram.
+     */
+    public void add(long value, long times) {
+        value = Math.max(0, value);
+        int bucket = bucketOf(value);
+        if (bucket >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(bucket + 1, counts.length * 2));
+        }
+        if (counts[bucket] + times < 0) {
+            throw new IllegalStateException("Cannot remove a value that was not added.");
+        }
+        counts[bucket] += times;
+        count += times;
+        sum += value * times;
+    }
+
+    /*
+     * merge adds the counts of another histogram to this one.
+     *
+     * Input: the other histogram.
+     * Output: no return value, modifies this histogram.
+     */
+    public void merge(LogHistogram other) {
+        if (other == null) {
+            throw new NullPointerException("Cannot merge null histogram.");
+        }
+        if (other.counts.length > counts.length) {
+            counts = Arrays.copyOf(counts, other.counts.length);
+        }
+        for (int bucket = 0; bucket < other.counts.length; bucket++) {
+            counts[bucket] += other.counts[bucket];
+        }
+        count += other.count;
+        sum += other.sum;
+    }
+
+    /*
+     * count returns the number of values counted.
+     *
+     * Input: no input.
+     * Output: number of values.
+     */
+    public long count() {
+        return count;
+    }
+
+    /*
+     * mean returns the exact mean of the values counted.
+     *
+     * Input: no input.
+     * Output: the mean, or 0 if there are no values.
+     */
+    public double mean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /*
+     * quantile estimates the value below which a fraction of the values fall, as the middle of the
+     * bucket holding it.
+     *
+     * Input: the fraction, from 0 to 1.
+     * Output: the estimated value, or 0 if there are no values.
+     */
+    public long quantile(double fraction) {
+        if (fraction < 0 || fraction > 1) {
+            throw new IllegalArgumentException("Quantile fraction must be between 0 and 1.");
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return lowestOf(bucket) + (widthOf(bucket) - 1) / 2;
+            }
+        }
+        return max();
+    }
+
+    /*
+     * max estimates the largest value counted, as the highest value of its bucket.
+     *
+     * Input: no input.
+     * Output: the estimated value, or 0 if there are no values.
+     */
+    public long max() {
+        for (int bucket = counts.length - 1; bucket >= 0; bucket--) {
+            if (counts[bucket] > 0) {
+                return lowestOf(bucket) + widthOf(bucket) - 1;
+            }
+        }
+        return 0;
+    }
+
+    /*
+     * countBetween counts the values within a range. The count is exact when both ends are below
+     * SUB_BUCKETS or powers of two, since those always start a bucket; otherwise it is rounded
+     * to whole buckets.
+     *
+     * Input: lowest value of the range, included, and highest value of the range, excluded.
+     * Output: number of values in the range.
+     */
+    public long countBetween(long low, long high) {
+        long between = 0;
+        for (int bucket = bucketOf(Math.max(0, low)); bucket < counts.length; bucket++) {
+            if (lowestOf(bucket) >= high) {
+                break;
+            }
+            between += counts[bucket];
+        }
+        return between;
+    }
+
+    /*
+     * format appends every bucket holding values, one per line, as the lowest value of the bucket
+     * followed by its count.
+     *
+     * Input: builder to append to.
+     * Output: no return value, modifies the builder.
+     */
+    public void format(StringBuilder builder) {
+        if (builder == null) {
+            throw new NullPointerException("Cannot format histogram to null builder.");
+        }
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            if (counts[bucket] > 0) {
+                builder.append(lowestOf(bucket)).append(' ').append(counts[bucket]).append('\n');
+            }
+        }
+    }
+
+    /*
+     * bucketOf finds the bucket of a value.
+     *
+     * Input: the value, not negative.
+     * Output: index of the bucket.
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    /*
+     * lowestOf finds the lowest value of a bucket.
+     *
+     * Input: index of the bucket.
+     * Output: the lowest value.
+     */
+    private static long lowestOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+
+    /*
+     * widthOf finds the number of values a bucket holds.
+     *
+     * Input: index of the bucket.
+     * Output: the width.
+     */
+    private static long widthOf(int bucket) {
+        return bucket < SUB_BUCKETS ? 1 : 1L << (bucket / SUB_BUCKETS - 1);
+    }
+}
@@ -0,0 +1,186 @@
+package arion;
+
+import java.util.Arrays;
+
+/*
+ * LongIntMap is an open addressing hash map from long keys to int values.
+ * It stores keys and values in primitive arrays, so lookups on large maps do not box or allocate.
+ */
+
+public class LongIntMap {
+    public final static int MISSING = -1;
+
+    private final static long EMPTY_KEY = Long.MIN_VALUE;
+    private final static float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private boolean hasEmptyKey;
+    private int emptyKeyValue;
+
+    /*
+     * The constructor creates an empty map with room for the expected number of keys.
+     *
+     * Input: expected number of keys.
+     * Output: new LongIntMap class.
+     */
+    public LongIntMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Cannot construct map with negative size.");
+        }
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY_KEY);
+    }
+
+    /*
+     * get gets the value mapped to the given key.
+     *
+     * Input: key to look up.
+     * Output: the key's value, or MISSING if it is not in the map.
+     */
+    public int get(long key) {
+        if (key == EMPTY_KEY) {
+            return hasEmptyKey ? emptyKeyValue : MISSING;
+        }
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                return values[i];
+            }
+            if (k == EMPTY_KEY) {
+                return MISSING;
+            }
+        }
+    }
+
+    /*
+     * put maps the key to the given value, replacing any previous value.
+     *
+     * Input: key and value; the value cannot be MISSING.
+     * Output: no return value, modifies the map.
+     */
+    public void put(long key, int value) {
+        if (value == MISSING) {
+            throw new IllegalArgumentException("Cannot store the missing value marker.");
+        }
+        if (key == EMPTY_KEY) {
+            if (!hasEmptyKey) {
+                size++;
+            }
+            hasEmptyKey = true;
+            emptyKeyValue = value;
+            return;
+        }
+
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (keys[i] != EMPTY_KEY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == EMPTY_KEY) {
+            size++;
+        }
+        keys[i] = key;
+        values[i] = value;
+
+        if (size > keys.length * LOAD_FACTOR) {
+            grow();
+        }
+    }
+
+    /*
+     * remove removes the key from the map, if it is present.
+     * Following entries are shifted back so lookups never need tombstones.
+     *
+     * Input: key to remove.
+     * Output: the removed value, or MISSING if the key was not in the map.
+     */
+    public int remove(long key) {
+        if (key == EMPTY_KEY) {
+            if (!hasEmptyKey) {
+                return MISSING;
+            }
+            hasEmptyKey = false;
+            size--;
+            return emptyKeyValue;
+        }
+
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (keys[i] != key) {
+            if (keys[i] == EMPTY_KEY) {
+                return MISSING;
+            }
+            i = (i + 1) & mask;
+        }
+        int removed = values[i];
+        size--;
+
+        // shift back the entries that probed past the removed slot
+        int gap = i;
+        for (int j = (gap + 1) & mask; keys[j] != EMPTY_KEY; j = (j + 1) & mask) {
+            int home = mix(keys[j]) & mask;
+            boolean movable = (gap <= j) ? (home <= gap || home > j) : (home <= gap && home > j);
+            if (movable) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        keys[gap] = EMPTY_KEY;
+        return removed;
+    }
+
+    /*
+     * size returns the number of keys in the map.
+     *
+     * Input: no input.
+     * Output: number of keys.
+     */
+    public int size() {
+        return size;
+    }
+
+    /*
+     * grow doubles the capacity of the map and reinserts every key.
+     *
+     * Input: no input.
+     * Output: no return value, modifies the map.
+     */
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        Arrays.fill(keys, EMPTY_KEY);
+
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key == EMPTY_KEY) {
+                continue;
+            }
+            int j = mix(key) & mask;
+            while (keys[j] != EMPTY_KEY) {
+                j = (j + 1) & mask;
+            }
+            keys[j] = key;
+            values[j] = oldValues[i];
+        }
+    }
+
+    /*
+     * mix scrambles the bits of a key so nearby keys land in different slots.
+     *
+     * Input: key to hash.
+     * Output: hash of the key.
+     */
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,124 @@
+package arion;
+
+import exception.QueryFormatException;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ * QueryBenchmark measures how much the indexes of QueryPlanner speed up queries on a large deck.
+ * It fills a deck with generated flashcards, whose review dates spread over two years and whose fronts
+ * are made of random syllables, then runs each query as planned and as a full scan, checks that both
+ * find the same flashcards, and prints the access path and the best time of each.
+ * Nothing is written to disk.
+ */
+
+public class QueryBenchmark {
+    private final static String[] SYLLABLES = { "ver", "ka", "lo", "mi", "sun", "ta", "re", "bo", "nel", "dra",
+            "pi", "qu", "as", "tor", "en", "gu" };
+    private final static String[] TAGS = { "noun", "verb", "adjective", "chapter1", "chapter2", "chapter3",
+            "chapter4", "learned" };
+    private final static String[] QUERIES = {
+            "due within 7 days AND interval > 30 AND front contains 'ver'",
+            "due = 0",
+            "due < 0 AND interval <= 3",
+            "front contains 'sunpi'",
+            "text contains 'dratorgu'",
+            "tag = chapter3 AND tag = verb AND tag != learned",
+            "interval > 300",
+            "front contains 'ka' OR back contains 'ka'",
+            "NOT (due > 30) AND tag = noun",
+    };
+    private final static int REPEATS = 5;
+    private final static int SPREAD_DAYS = 730; // review dates run from a year ago to a year from now
+
+    /*
+     * fill adds generated flashcards to a deck.
+     *
+     * Input: the deck, the number of flashcards, and the seed of the generator.
+     * Output: no return value, modifies the deck.
+     */
+    private static void fill(Deck deck, int count, long seed) {
+        Random random = new Random(seed);
+        LocalDate first = LocalDate.now().minusDays(SPREAD_DAYS / 2);
+        ArrayList<Flashcard> flashcards = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder front = new StringBuilder();
+            int syllables = 2 + random.nextInt(3);
+            for (int s = 0; s < syllables; s++) {
+                front.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            Flashcard flashcard = new Flashcard(front.toString(), "meaning " + i + " of " + front,
+                    first.plusDays(random.nextInt(SPREAD_DAYS)), 1 + random.nextInt(365));
+            flashcard.tags = Flashcard.parseTags(TAGS[random.nextInt(3)] + " " + TAGS[3 + random.nextInt(4)]
+                    + (random.nextInt(5) == 0 ? " learned" : ""));
+            flashcards.add(flashcard);
+        }
+        deck.addAll(flashcards);
+    }
+
+    /*
+     * best runs a plan several times.
+     *
+     * Input: the planner, and the plan.
+     * Output: the fastest result.
+     */
+    private static QueryPlanner.Result best(QueryPlanner planner, QueryPlanner.Plan plan) {
+        QueryPlanner.Result best = planner.execute(plan);
+        for (int i = 1; i < REPEATS; i++) {
+            QueryPlanner.Result result = planner.execute(plan);
+            if (result.nanos < best.nanos) {
+                best = result;
+            }
+        }
+        return best;
+    }
+
+    /*
+     * main runs the benchmark.
+     *
+     * Input: command line arguments: optionally the number of flashcards, then queries to run instead
+     * of the default ones.
+     * Output: no output.
+     */
+    public static void main(String[] args) throws QueryFormatException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        String[] queries = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) : QUERIES;
+
+        ArionCore core = new ArionCore(new File(System.getProperty("java.io.tmpdir"), "arion-querybench").getPath());
+        long start = System.nanoTime();
+        fill(core.getDeck(), count, 1);
+        System.out.printf("generated %d flashcards in %.0f ms%n", count, (System.nanoTime() - start) / 1e6);
+
+        start = System.nanoTime();
+        core.getDueIndex();
+        core.getTagIndex();
+        core.getSearchIndex();
+        System.out.printf("built due, tag, and search indexes in %.0f ms%n%n", (System.nanoTime() - start) / 1e6);
+
+        QueryPlanner planner = core.getQueryPlanner();
+        System.out.printf("%-60s %-11s %9s %9s %10s %10s %8s%n", "query", "path", "examined", "matches",
+                "plan ms", "scan ms", "speedup");
+        for (String text : queries) {
+            DeckQuery query = DeckQuery.parse(text);
+            QueryPlanner.Result planned = best(planner, planner.plan(query));
+            QueryPlanner.Result scanned = best(planner, planner.scanPlan(query));
+
+            long[] plannedIds = planned.ids.clone();
+            long[] scannedIds = scanned.ids.clone();
+            Arrays.sort(plannedIds);
+            Arrays.sort(scannedIds);
+            if (!Arrays.equals(plannedIds, scannedIds)) {
+                throw new IllegalStateException("Planned and scanned results differ for " + text);
+            }
+            System.out.printf("%-60s %-11s %9d %9d %10.2f %10.2f %7.1fx%n", text, planned.plan.path.title,
+                    planned.examined, planned.ids.length, planned.nanos / 1e6, scanned.nanos / 1e6,
+                    (double) scanned.nanos / planned.nanos);
+        }
+
+        System.out.printf("%nEXPLAIN %s%n%s", queries[0], planner.run(DeckQuery.parse(queries[0])).explain());
+    }
+}
@@ -0,0 +1,391 @@
+package arion;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/*
+ * QueryPlanner runs DeckQuery queries over a deck, choosing for each query the cheapest way to find the
+ * flashcards its predicate must be tested on.
+ *
+ * Only comparisons that every result must satisfy, the ones joined by AND at the top of the query, can
+ * narrow the flashcards read. Each access path gives a superset of the results, and the predicate of
+ * the whole query is then tested on every flashcard of that superset:
+ *   due range     the due comparisons bound a range of review dates, read from DueIndex
+ *   tag index     the tag comparisons form a tag filter, read from TagIndex
+ *   text index    a text comparison with a word of at least three letters or digits is looked up in
+ *                 SearchIndex, which finds every flashcard with a term containing the word
+ *   full scan     every flashcard of the deck
+ * Each path's number of flashcards is counted exactly from its index, and the path reading the fewest,
+ * weighing a flashcard read through an index as INDEX_CANDIDATE_COST flashcards scanned, is chosen.
+ *
+ * Indexes are only asked for when a query could use them, since building one takes a pass over the deck.
+ */
+
+public class QueryPlanner {
+    // a flashcard read through an index is looked up by identifier under its stripe's lock, which
+    // measured about 16 times slower than reading the next flashcard of a scan on a 1M flashcard deck
+    public final static int INDEX_CANDIDATE_COST = 16;
+
+    /*
+     * The AccessPath enum lists the ways of finding the flashcards a query is tested on.
+     */
+    public enum AccessPath {
+        FULL_SCAN("full scan"), DUE_RANGE("due range"), TAG_INDEX("tag index"), TEXT_INDEX("text index");
+
+        public final String title;
+
+        AccessPath(String title) {
+            this.title = title;
+        }
+    }
+
+    /*
+     * The Plan class holds the access path chosen for a query, and the paths that were considered.
+     */
+    public static class Plan {
+        public final DeckQuery query;
+        public final AccessPath path;
+        public final int estimate; // flashcards the path reads
+        public final long today; // day the due comparisons count from
+        private final String explanation;
+        private final Supplier<long[]> candidates; // null for a full scan
+
+        private Plan(DeckQuery query, AccessPath path, int estimate, long today, String explanation,
+                Supplier<long[]> candidates) {
+            this.query = query;
+            this.path = path;
+            this.estimate = estimate;
+            this.today = today;
+            this.explanation = explanation;
+            this.candidates = candidates;
+        }
+
+        /*
+         * explain describes the plan: the query as it was parsed, the chosen access path, and the paths
+         * that were considered with the number of flashcards each would read.
+         *
+         * Input: no input.
+         * Output: the description, one line per item.
+         */
+        public String explain() {
+            return explanation;
+        }
+    }
+
+    /*
+     * The Result class holds the flashcards matching a query, and how they were found.
+     */
+    public static class Result {
+        public final Plan plan;
+        public final long[] ids; // deck order for a full scan, index order otherwise
+        public final int examined; // flashcards the predicate was tested on
+        public final long nanos; // time taken to run the plan
+
+        private Result(Plan plan, long[] ids, int examined, long nanos) {
+            this.plan = plan;
+            this.ids = ids;
+            this.examined = examined;
+            this.nanos = nanos;
+        }
+
+        /*
+         * explain describes the plan, followed by what running it found, like EXPLAIN ANALYZE.
+         *
+         * Input: no input.
+         * Output: the description, one line per item.
+         */
+        public String explain() {
+            return String.format("%sexecuted: %d matches of %d flashcards examined in %.2f ms%n",
+                    plan.explain(), ids.length, examined, nanos / 1e6);
+        }
+    }
+
+    /*
+     * The Candidate class is an access path that was considered for a query.
+     */
+    private static class Candidate {
+        AccessPath path;
+        String detail;
+        int estimate;
+        Supplier<long[]> ids;
+
+        Candidate(AccessPath path, String detail, int estimate, Supplier<long[]> ids) {
+            this.path = path;
+            this.detail = detail;
+            this.estimate = estimate;
+            this.ids = ids;
+        }
+
+        long cost() {
+            return path == AccessPath.FULL_SCAN ? estimate : (long) estimate * INDEX_CANDIDATE_COST;
+        }
+    }
+
+    private Deck deck;
+    private Supplier<DueIndex> dueIndex;
+    private Supplier<TagIndex> tagIndex;
+    private Supplier<SearchIndex> searchIndex;
+
+    /*
+     * The constructor creates a planner over a deck and its indexes. Each index is only built, by its
+     * supplier, when a query could use it.
+     *
+     * Input: the deck, and the suppliers of its due, tag, and search indexes.
+     * Output: new QueryPlanner class.
+     */
+    public QueryPlanner(Deck deck, Supplier<DueIndex> dueIndex, Supplier<TagIndex> tagIndex,
+            Supplier<SearchIndex> searchIndex) {
+        if (deck == null || dueIndex == null || tagIndex == null || searchIndex == null) {
+            throw new NullPointerException("Cannot construct query planner with null parameters.");
+        }
+        this.deck = deck;
+        this.dueIndex = dueIndex;
+        this.tagIndex = tagIndex;
+        this.searchIndex = searchIndex;
+    }
+
+    /*
+     * run plans a query and runs the plan.
+     *
+     * Input: the query.
+     * Output: the matching flashcards.
+     */
+    public Result run(DeckQuery query) {
+        return execute(plan(query));
+    }
+
+    /*
+     * plan chooses the access path of a query.
+     *
+     * Input: the query.
+     * Output: the plan.
+     */
+    public Plan plan(DeckQuery query) {
+        return plan(query, true);
+    }
+
+    /*
+     * scanPlan plans a query as a full scan, whatever indexes it could use, such as to compare
+     * the two in a benchmark.
+     *
+     * Input: the query.
+     * Output: the plan.
+     */
+    public Plan scanPlan(DeckQuery query) {
+        return plan(query, false);
+    }
+
+    /*
+     * execute runs a plan: the flashcards of its access path are read, and the predicate of the query
+     * is tested on each. A full scan reads the flashcards without locking, like other passes over the
+     * deck; flashcards read through an index are read while their stripes are locked.
+     *
+     * Input: the plan.
+     * Output: the matching flashcards.
+     */
+    public Result execute(Plan plan) {
+        if (plan == null) {
+            throw new NullPointerException("Cannot execute null plan.");
+        }
+        long start = System.nanoTime();
+        Predicate<Flashcard> predicate = plan.query.compile(plan.today);
+
+        long[] ids;
+        int count = 0;
+        int examined;
+        if (plan.candidates == null) {
+            ArrayList<Flashcard> snapshot = deck.snapshot();
+            examined = snapshot.size();
+            ids = new long[examined];
+            for (Flashcard flashcard : snapshot) {
+                if (predicate.test(flashcard)) {
+                    ids[count++] = flashcard.id;
+                }
+            }
+        } else {
+            long[] candidates = plan.candidates.get();
+            examined = candidates.length;
+            boolean[] matches = new boolean[candidates.length];
+            deck.readAll(candidates, candidates.length,
+                    (int index, Flashcard flashcard) -> matches[index] = predicate.test(flashcard));
+            ids = candidates;
+            for (int i = 0; i < candidates.length; i++) {
+                if (matches[i]) {
+                    ids[count++] = candidates[i];
+                }
+            }
+        }
+        return new Result(plan, Arrays.copyOf(ids, count), examined, System.nanoTime() - start);
+    }
+
+    /*
+     * plan considers the access paths of a query, and chooses the cheapest.
+     *
+     * Input: the query, and whether indexes may be used.
+     * Output: the plan.
+     */
+    private Plan plan(DeckQuery query, boolean useIndexes) {
+        if (query == null) {
+            throw new NullPointerException("Cannot plan null query.");
+        }
+        long today = LocalDate.now().toEpochDay();
+        ArrayList<Candidate> candidates = new ArrayList<>();
+        candidates.add(new Candidate(AccessPath.FULL_SCAN, "every flashcard", deck.size(), null));
+        if (useIndexes) {
+            considerDueRange(query, today, candidates);
+            considerTags(query, candidates);
+            considerText(query, candidates);
+        }
+
+        Candidate best = candidates.get(0);
+        for (Candidate candidate : candidates) {
+            if (candidate.cost() < best.cost()) {
+                best = candidate;
+            }
+        }
+
+        StringBuilder explanation = new StringBuilder();
+        explanation.append(String.format("query: %s%n", query));
+        explanation.append(String.format("access path: %s on %s, reading %d flashcards%n",
+                best.path.title, best.detail, best.estimate));
+        for (Candidate candidate : candidates) {
+            if (candidate != best) {
+                explanation.append(String.format("  rejected: %s on %s, reading %d flashcards%n",
+                        candidate.path.title, candidate.detail, candidate.estimate));
+            }
+        }
+        if (!useIndexes) {
+            explanation.append(String.format("  indexes were not considered%n"));
+        }
+        explanation.append(String.format("filter: %s%n", query));
+        return new Plan(query, best.path, best.estimate, today, explanation.toString(), best.ids);
+    }
+
+    /*
+     * considerDueRange considers reading the range of review dates bounded by the due comparisons.
+     *
+     * Input: the query, the current day, and the considered paths.
+     * Output: no return value, adds to the considered paths.
+     */
+    private void considerDueRange(DeckQuery query, long today, ArrayList<Candidate> candidates) {
+        long first = Long.MIN_VALUE;
+        long last = Long.MAX_VALUE;
+        boolean bounded = false;
+        for (DeckQuery.Node node : query.conjuncts()) {
+            if (!(node instanceof DeckQuery.Comparison) || ((DeckQuery.Comparison) node).field != DeckQuery.Field.DUE) {
+                continue;
+            }
+            DeckQuery.Comparison comparison = (DeckQuery.Comparison) node;
+            long day = today + comparison.number;
+            switch (comparison.operator) {
+                case EQUAL:
+                    first = Math.max(first, day);
+                    last = Math.min(last, day);
+                    break;
+                case LESS:
+                    last = Math.min(last, day - 1);
+                    break;
+                case LESS_OR_EQUAL:
+                    last = Math.min(last, day);
+                    break;
+                case GREATER:
+                    first = Math.max(first, day + 1);
+                    break;
+                case GREATER_OR_EQUAL:
+                    first = Math.max(first, day);
+                    break;
+                default:
+                    continue; // != excludes one day, which leaves no range
+            }
+            bounded = true;
+        }
+        if (!bounded) {
+            return;
+        }
+
+        DueIndex index = dueIndex.get();
+        long firstDay = first;
+        long lastDay = last;
+        String detail = "review dates " + (first == Long.MIN_VALUE ? "..." : LocalDate.ofEpochDay(first).toString())
+                + " to " + (last == Long.MAX_VALUE ? "..." : LocalDate.ofEpochDay(last).toString());
+        candidates.add(new Candidate(AccessPath.DUE_RANGE, detail, index.count(firstDay, lastDay),
+                () -> index.ids(firstDay, lastDay)));
+    }
+
+    /*
+     * considerTags considers reading the flashcards matching the tag filter formed by the tag comparisons.
+     *
+     * Input: the query, and the considered paths.
+     * Output: no return value, adds to the considered paths.
+     */
+    private void considerTags(DeckQuery query, ArrayList<Candidate> candidates) {
+        StringBuilder filter = new StringBuilder();
+        for (DeckQuery.Node node : query.conjuncts()) {
+            if (node instanceof DeckQuery.Comparison && ((DeckQuery.Comparison) node).field == DeckQuery.Field.TAG) {
+                DeckQuery.Comparison comparison = (DeckQuery.Comparison) node;
+                filter.append(filter.length() > 0 ? " " : "");
+                filter.append(comparison.operator == DeckQuery.Operator.NOT_EQUAL ? "-" : "").append(comparison.text);
+            }
+        }
+        if (filter.length() == 0) {
+            return;
+        }
+
+        TagIndex index = tagIndex.get();
+        String tags = filter.toString();
+        candidates.add(new Candidate(AccessPath.TAG_INDEX, "tags \"" + tags + "\"", index.count(tags),
+                () -> index.ids(tags)));
+    }
+
+    /*
+     * considerText considers looking up each text comparison that the search index can answer: those
+     * containing or equal to text whose every flashcard has a term containing the searched word.
+     *
+     * Input: the query, and the considered paths.
+     * Output: no return value, adds to the considered paths.
+     */
+    private void considerText(DeckQuery query, ArrayList<Candidate> candidates) {
+        for (DeckQuery.Node node : query.conjuncts()) {
+            if (!(node instanceof DeckQuery.Comparison)) {
+                continue;
+            }
+            DeckQuery.Comparison comparison = (DeckQuery.Comparison) node;
+            boolean textual = comparison.field == DeckQuery.Field.FRONT || comparison.field == DeckQuery.Field.BACK
+                    || comparison.field == DeckQuery.Field.TEXT;
+            if (!textual || comparison.operator == DeckQuery.Operator.NOT_EQUAL || !isSearchable(comparison.text)) {
+                continue;
+            }
+
+            SearchIndex index = searchIndex.get();
+            String word = comparison.text;
+            long[] matches = index.matches(word);
+            candidates.add(new Candidate(AccessPath.TEXT_INDEX, "\"" + word + "\"", matches.length,
+                    () -> matches));
+        }
+    }
+
+    /*
+     * isSearchable checks whether every flashcard containing a word is found by searching for it.
+     * The search index matches query words inside its terms from three characters on, and its terms
+     * are runs of letters and digits with accents removed, so the word must be at least three ASCII
+     * letters or digits.
+     *
+     * Input: the lower cased word.
+     * Output: whether searching for the word finds every flashcard containing it.
+     */
+    private static boolean isSearchable(String word) {
+        if (word.length() < SearchIndex.MIN_TRIGRAM_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,479 @@
+package arion;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * The ReviewLog class records every review as an append-only, columnar log.
+ * Reviews are buffered into blocks of BLOCK_SIZE records; each block is written as one column
+ * after another (identifiers, timestamps, previous intervals, new intervals, then the outcomes
+ * packed as bits), so scans over a single column read contiguous memory.
+ * Once a segment file holds SEGMENT_BLOCKS blocks, a new segment is started.
+ * A visitor may also follow the log, receiving each review as it is appended.
+ */
+
+public class ReviewLog {
+
+    /*
+     * Block holds the columns of one block of the log.
+     * Blocks are reused between reads, so a visitor must copy any values it wants to keep.
+     */
+    public static class Block {
+        public int count;
+        public final long[] ids = new long[BLOCK_SIZE];
+        public final long[] timestamps = new long[BLOCK_SIZE];
+        public final int[] prevIntervals = new int[BLOCK_SIZE];
+        public final int[] newIntervals = new int[BLOCK_SIZE];
+        public final long[] outcomes = new long[OUTCOME_WORDS];
+
+        /*
+         * isSuccess checks whether the review at the given index of this block succeeded.
+         *
+         * Input: index of the review in the block.
+         * Output: whether the review succeeded.
+         */
+        public boolean isSuccess(int i) {
+            if (i < 0 || i >= count) {
+                throw new IllegalArgumentException("Review index out of range.");
+            }
+            return (outcomes[i >>> 6] & (1L << i)) != 0;
+        }
+
+        /*
+         * copyFrom copies the first count records of another block into this block.
+         *
+         * Input: block to copy.
+         * Output: no return value, modifies this block.
+         */
+        void copyFrom(Block other) {
+            count = other.count;
+            System.arraycopy(other.ids, 0, ids, 0, count);
+            System.arraycopy(other.timestamps, 0, timestamps, 0, count);
+            System.arraycopy(other.prevIntervals, 0, prevIntervals, 0, count);
+            System.arraycopy(other.newIntervals, 0, newIntervals, 0, count);
+            System.arraycopy(other.outcomes, 0, outcomes, 0, OUTCOME_WORDS);
+        }
+    }
+
+    /*
+     * BlockVisitor is called once for every block of the log, in the order the reviews were recorded.
+     */
+    public interface BlockVisitor {
+        public void visit(Block block);
+    }
+
+    /*
+     * RecordVisitor is called once for every review in the log, in the order they were recorded.
+     */
+    public interface RecordVisitor {
+        public void visit(long id, long timestamp, boolean success, int prevInterval, int newInterval);
+    }
+
+    public final static int BLOCK_SIZE = 4096;
+    public final static int SEGMENT_BLOCKS = 256;
+    private final static int OUTCOME_WORDS = BLOCK_SIZE / 64;
+    private final static int MAGIC = 0x41524c31; // "ARL1"
+    private final static String SEGMENT_PREFIX = "segment-";
+    private final static String SEGMENT_SUFFIX = ".log";
+
+    // bytes of a full block: count, ids, timestamps, both intervals, and the outcome words
+    private final static int MAX_BLOCK_BYTES = 4 + BLOCK_SIZE * (8 + 8 + 4 + 4) + OUTCOME_WORDS * 8;
+
+    private File directory;
+    private Block pending = new Block();
+    private ByteBuffer writeBuffer = ByteBuffer.allocateDirect(MAX_BLOCK_BYTES);
+
+    private FileChannel segmentChannel;
+    private int segmentNumber;
+    private int segmentBlocks;
+
+    private ArrayList<RecordVisitor> followers = new ArrayList<>(); // told of every review appended
+
+    /*
+     * The constructor opens the log stored in the given directory, creating the directory if needed.
+     * New reviews are appended to a new segment, so an existing segment is never rewritten.
+     *
+     * Input: path of the directory containing the log segments.
+     * Output: new ReviewLog class.
+     */
+    public ReviewLog(String directoryPath) {
+        if (directoryPath == null) {
+            throw new NullPointerException("Null directory in ReviewLog constructor.");
+        }
+        directory = new File(directoryPath);
+
+        File[] segments = listSegments();
+        if (segments.length == 0) {
+            segmentNumber = 0;
+        } else {
+            segmentNumber = parseSegmentNumber(segments[segments.length - 1]) + 1;
+        }
+    }
+
+    /*
+     * append records a review in the log.
+     * The review is buffered in memory and written once its block is full, or when flush is called.
+     *
+     * Input: flashcard identifier, time of the review in epoch milliseconds, whether the review
+     * succeeded, and the review interval before and after the review.
+     * Output: no return value, appends to the log.
+     */
+    public synchronized void append(long id, long timestamp, boolean success, long prevInterval, long newInterval)
+            throws IOException {
+        appendRecord(id, timestamp, success, prevInterval, newInterval);
+    }
+
+    /*
+     * appendAll records a batch of reviews in the log, taking the log's lock once for the whole batch.
+     *
+     * Input: arrays holding each review's flashcard identifier, time, outcome, and review interval
+     * before and after the review, and the number of reviews in the arrays.
+     * Output: no return value, appends to the log.
+     */
+    public synchronized void appendAll(long[] ids, long[] timestamps, boolean[] successes,
+            long[] prevIntervals, long[] newIntervals, int count) throws IOException {
+        if (ids == null || timestamps == null || successes == null || prevIntervals == null || newIntervals == null) {
+            throw new NullPointerException("Cannot append reviews from null arrays.");
+        }
+        for (int i = 0; i < count; i++) {
+            appendRecord(ids[i], timestamps[i], successes[i], prevIntervals[i], newIntervals[i]);
+        }
+    }
+
+    /*
+     * appendRecord buffers one review; the caller holds the log's lock.
+     *
+     * Input: flashcard identifier, time of the review, whether it succeeded, and the review
+     * interval before and after the review.
+     * Output: no return value, appends to the log.
+     */
+    private void appendRecord(long id, long timestamp, boolean success, long prevInterval, long newInterval)
+            throws IOException {
+        int i = pending.count;
+        pending.ids[i] = id;
+        pending.timestamps[i] = timestamp;
+        pending.prevIntervals[i] = clampInterval(prevInterval);
+        pending.newIntervals[i] = clampInterval(newInterval);
+        if (success) {
+            pending.outcomes[i >>> 6] |= 1L << i;
+        }
+        pending.count++;
+        for (RecordVisitor follower : followers) {
+            follower.visit(id, timestamp, success, pending.prevIntervals[i], pending.newIntervals[i]);
+        }
+
+        if (pending.count == BLOCK_SIZE) {
+            writePendingBlock();
+        }
+    }
+
+    /*
+     * flush writes any buffered reviews to disk.
+     *
+     * Input: no input.
+     * Output: no return value, writes to the current segment.
+     */
+    public synchronized void flush() throws IOException {
+        if (pending.count > 0) {
+            writePendingBlock();
+        }
+        if (segmentChannel != null) {
+            segmentChannel.force(false);
+        }
+    }
+
+    /*
+     * close flushes the log and closes the current segment.
+     *
+     * Input: no input.
+     * Output: no return value, closes the current segment.
+     */
+    public synchronized void close() throws IOException {
+        flush();
+        if (segmentChannel != null) {
+            segmentChannel.close();
+            segmentChannel = null;
+        }
+    }
+
+    /*
+     * scan passes every block of the log to the visitor, oldest first.
+     * Only the reviews recorded before the scan starts are visited; reviews appended during the
+     * scan are not blocked by it.
+     *
+     * Input: visitor to pass the blocks to.
+     * Output: no return value.
+     */
+    public void scan(BlockVisitor visitor) throws IOException {
+        if (visitor == null) {
+            throw new NullPointerException("Cannot scan review log with null visitor.");
+        }
+        scan(visitor, null);
+    }
+
+    /*
+     * This scan signature passes every individual review to the visitor, oldest first.
+     *
+     * Input: visitor to pass the reviews to.
+     * Output: no return value.
+     */
+    public void scan(RecordVisitor visitor) throws IOException {
+        if (visitor == null) {
+            throw new NullPointerException("Cannot scan review log with null visitor.");
+        }
+        scan(blockVisitor(visitor), null);
+    }
+
+    /*
+     * follow passes every review in the log to the visitor, like scan, and then every review appended
+     * from then on, as it is appended. The reviews scanned are exactly those recorded before the
+     * visitor started following, so each review is passed once. Reviews appended during the scan may
+     * be passed before it ends, from the appending thread, while holding the log's lock.
+     *
+     * Input: visitor to pass the reviews to.
+     * Output: no return value.
+     */
+    public void follow(RecordVisitor visitor) throws IOException {
+        if (visitor == null) {
+            throw new NullPointerException("Cannot follow review log with null visitor.");
+        }
+        scan(blockVisitor(visitor), visitor);
+    }
+
+    /*
+     * This scan signature passes every block of the log to the visitor, and optionally starts a
+     * follower at the point the scan ends, both decided while holding the log's lock.
+     *
+     * Input: visitor to pass the blocks to, and follower to pass later reviews to, or null.
+     * Output: no return value.
+     */
+    private void scan(BlockVisitor visitor, RecordVisitor follower) throws IOException {
+        File[] segments;
+        long lastLength;
+        Block buffered = new Block();
+        synchronized (this) {
+            segments = listSegments();
+            lastLength = (segmentChannel == null) ? -1 : segmentChannel.size();
+            buffered.copyFrom(pending);
+            if (follower != null) {
+                followers.add(follower);
+            }
+        }
+
+        Block block = new Block();
+        ByteBuffer readBuffer = ByteBuffer.allocateDirect(MAX_BLOCK_BYTES);
+        for (int i = 0; i < segments.length; i++) {
+            boolean current = (i == segments.length - 1 && lastLength >= 0);
+            long limit = current ? lastLength : segments[i].length();
+            scanSegment(segments[i], limit, block, readBuffer, visitor);
+        }
+
+        if (buffered.count > 0) {
+            visitor.visit(buffered);
+        }
+    }
+
+    /*
+     * blockVisitor adapts a visitor of reviews to a visitor of blocks.
+     *
+     * Input: visitor of reviews.
+     * Output: visitor passing each review of a block to it.
+     */
+    private static BlockVisitor blockVisitor(RecordVisitor visitor) {
+        return (Block block) -> {
+            for (int i = 0; i < block.count; i++) {
+                visitor.visit(block.ids[i], block.timestamps[i], block.isSuccess(i),
+                        block.prevIntervals[i], block.newIntervals[i]);
+            }
+        };
+    }
+
+    /*
+     * writePendingBlock writes the pending block to the current segment, starting a new segment
+     * if the current one is full, then clears the pending block.
+     *
+     * Input: no input.
+     * Output: no return value, writes to the current segment.
+     */
+    private void writePendingBlock() throws IOException {
+        if (segmentChannel == null || segmentBlocks == SEGMENT_BLOCKS) {
+            openNextSegment();
+        }
+
+        int count = pending.count;
+        writeBuffer.clear();
+        writeBuffer.putInt(count);
+        writeBuffer.asLongBuffer().put(pending.ids, 0, count);
+        writeBuffer.position(writeBuffer.position() + count * 8);
+        writeBuffer.asLongBuffer().put(pending.timestamps, 0, count);
+        writeBuffer.position(writeBuffer.position() + count * 8);
+        writeBuffer.asIntBuffer().put(pending.prevIntervals, 0, count);
+        writeBuffer.position(writeBuffer.position() + count * 4);
+        writeBuffer.asIntBuffer().put(pending.newIntervals, 0, count);
+        writeBuffer.position(writeBuffer.position() + count * 4);
+        int outcomeWords = outcomeWords(count);
+        writeBuffer.asLongBuffer().put(pending.outcomes, 0, outcomeWords);
+        writeBuffer.position(writeBuffer.position() + outcomeWords * 8);
+        writeBuffer.flip();
+
+        while (writeBuffer.hasRemaining()) {
+            segmentChannel.write(writeBuffer);
+        }
+        segmentBlocks++;
+
+        pending.count = 0;
+        Arrays.fill(pending.outcomes, 0);
+    }
+
+    /*
+     * openNextSegment closes the current segment, if any, and creates the next one.
+     *
+     * Input: no input.
+     * Output: no return value, creates a segment file.
+     */
+    private void openNextSegment() throws IOException {
+        if (segmentChannel != null) {
+            segmentChannel.close();
+            segmentNumber++;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create review log directory " + directory.getPath());
+        }
+
+        File segment = new File(directory, String.format("%s%08d%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX));
+        segmentChannel = FileChannel.open(segment.toPath(),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segmentBlocks = 0;
+
+        ByteBuffer magic = ByteBuffer.allocate(4);
+        magic.putInt(MAGIC);
+        magic.flip();
+        segmentChannel.write(magic);
+    }
+
+    /*
+     * scanSegment reads the blocks of one segment file, up to the given length, and passes them
+     * to the visitor.
+     *
+     * Input: segment file, number of bytes to read, block and buffer to read into, and the visitor.
+     * Output: no return value.
+     */
+    private static void scanSegment(File segment, long limit, Block block, ByteBuffer readBuffer,
+            BlockVisitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            readFully(channel, magic, 4);
+            if (magic.getInt() != MAGIC) {
+                throw new IOException(segment.getName() + " is not a review log segment.");
+            }
+
+            long position = 4;
+            while (position + 4 <= limit) {
+                ByteBuffer countBuffer = readBuffer;
+                countBuffer.clear();
+                readFully(channel, countBuffer, 4);
+                int count = countBuffer.getInt();
+                if (count <= 0 || count > BLOCK_SIZE) {
+                    throw new IOException(segment.getName() + " contains a corrupt block.");
+                }
+
+                int outcomeWords = outcomeWords(count);
+                int bodyBytes = count * (8 + 8 + 4 + 4) + outcomeWords * 8;
+                if (position + 4 + bodyBytes > limit) {
+                    break; // the block was only partially written
+                }
+
+                readBuffer.clear();
+                readFully(channel, readBuffer, bodyBytes);
+
+                block.count = count;
+                readBuffer.asLongBuffer().get(block.ids, 0, count);
+                readBuffer.position(readBuffer.position() + count * 8);
+                readBuffer.asLongBuffer().get(block.timestamps, 0, count);
+                readBuffer.position(readBuffer.position() + count * 8);
+                readBuffer.asIntBuffer().get(block.prevIntervals, 0, count);
+                readBuffer.position(readBuffer.position() + count * 4);
+                readBuffer.asIntBuffer().get(block.newIntervals, 0, count);
+                readBuffer.position(readBuffer.position() + count * 4);
+                readBuffer.asLongBuffer().get(block.outcomes, 0, outcomeWords);
+
+                visitor.visit(block);
+                position += 4 + bodyBytes;
+            }
+        }
+    }
+
+    /*
+     * readFully reads exactly the given number of bytes from the channel into the buffer,
+     * then flips the buffer for reading.
+     *
+     * Input: channel to read from, buffer to read into, number of bytes to read.
+     * Output: no return value, fills the buffer.
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, int length) throws IOException {
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Review log segment ended unexpectedly.");
+            }
+        }
+        buffer.flip();
+    }
+
+    /*
+     * listSegments lists the segment files in the log directory, oldest first.
+     *
+     * Input: no input.
+     * Output: sorted array of segment files.
+     */
+    private File[] listSegments() {
+        File[] segments = directory.listFiles((File dir, String name) ->
+                name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (segments == null) {
+            return new File[0];
+        }
+        Arrays.sort(segments); // segment numbers are zero padded, so names sort numerically
+        return segments;
+    }
+
+    /*
+     * parseSegmentNumber parses the number out of a segment file name.
+     *
+     * Input: segment file.
+     * Output: segment number.
+     */
+    private static int parseSegmentNumber(File segment) {
+        String name = segment.getName();
+        String number = name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length());
+        try {
+            return Integer.parseInt(number);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Invalid review log segment name " + name);
+        }
+    }
+
+    /*
+     * outcomeWords calculates how many longs hold the outcome bits of a block.
+     *
+     * Input: number of reviews in the block.
+     * Output: number of outcome words.
+     */
+    private static int outcomeWords(int count) {
+        return (count + 63) >>> 6;
+    }
+
+    /*
+     * clampInterval converts a review interval to an int, clamping intervals too long to fit.
+     *
+     * Input: review interval in days.
+     * Output: review interval as an int.
+     */
+    private static int clampInterval(long interval) {
+        return (int) Math.min(interval, Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,332 @@
+package arion;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * ReviewQueue applies reviews submitted from many threads on a single writer thread.
+ *
+ * Submitting threads claim a slot of a bounded ring buffer with one compare-and-set and publish the
+ * review by advancing the slot's sequence number, so they never take a lock. The writer drains
+ * every published review at once, applies the batch to the deck holding each stripe once, records
+ * it in the review log holding the log's lock once, publishes it, and then completes each review's future.
+ * When the ring is full, submitting threads wait for the writer, which bounds memory and latency.
+ *
+ * A review's future completes with whether the flashcard was in the deck. Futures are completed on
+ * the writer thread, so callers should not attach slow non-async stages to them. A batch that fails,
+ * including in a listener the batch is published to, completes its futures exceptionally, and the
+ * writer goes on with the next batch.
+ * Each applied batch is published on the deck's event bus as one batch of reviews, before its futures
+ * complete, so once a review is acknowledged, the indexes listening directly to the deck include it.
+ */
+
+public class ReviewQueue {
+
+    /*
+     * ParameterSource provides the scheduling parameters each batch is applied with.
+     */
+    public interface ParameterSource {
+        public SchedulerParameters get();
+    }
+
+    public final static int DEFAULT_CAPACITY = 1 << 16;
+    private final static int MAX_BATCH = ReviewLog.BLOCK_SIZE;
+    private final static long CLOSED = Long.MIN_VALUE; // bit of tail set once the queue is closed
+    private final static int FULL_SPINS = 64;
+    private final static long FULL_PARK_NANOS = 10_000;
+
+    private Deck deck;
+    private ReviewLog reviewLog;
+    private ParameterSource parameterSource;
+
+    // ring buffer; a slot is free for position p when its sequence is p, and published when it is p + 1
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final long[] slotIds;
+    private final long[] slotTimestamps;
+    private final boolean[] slotSuccesses;
+    private final AtomicReferenceArray<CompletableFuture<Boolean>> slotAcks;
+    private final AtomicLong tail = new AtomicLong();
+
+    // writer state
+    private long head = 0;
+    private volatile long applied = 0;
+    private volatile boolean writerParked = false;
+    private final Thread writer;
+
+    private final long[] batchIds = new long[MAX_BATCH];
+    private final long[] batchTimestamps = new long[MAX_BATCH];
+    private final boolean[] batchSuccesses = new boolean[MAX_BATCH];
+    private final long[] batchPrevIntervals = new long[MAX_BATCH];
+    private final long[] batchNewIntervals = new long[MAX_BATCH];
+    private final boolean[] batchPresent = new boolean[MAX_BATCH];
+    private final ArrayList<CompletableFuture<Boolean>> batchAcks = new ArrayList<>(MAX_BATCH);
+
+    /*
+     * The constructor creates a queue with the default capacity, and starts its writer thread.
+     *
+     * Input: deck to apply reviews to, log to record them in, and source of the scheduling parameters.
+     * Output: new ReviewQueue class.
+     */
+    public ReviewQueue(Deck deck, ReviewLog reviewLog, ParameterSource parameterSource) {
+        this(deck, reviewLog, parameterSource, DEFAULT_CAPACITY);
+    }
+
+    /*
+     * This constructor signature also sets the capacity of the queue.
+     *
+     * Input: deck to apply reviews to, log to record them in, source of the scheduling parameters,
+     * and the maximum number of reviews waiting to be applied, which must be a power of two.
+     * Output: new ReviewQueue class.
+     */
+    public ReviewQueue(Deck deck, ReviewLog reviewLog, ParameterSource parameterSource, int capacity) {
+        if (deck == null || reviewLog == null || parameterSource == null) {
+            throw new NullPointerException("Cannot construct review queue with null parameters.");
+        }
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Review queue capacity must be a power of two.");
+        }
+        this.deck = deck;
+        this.reviewLog = reviewLog;
+        this.parameterSource = parameterSource;
+
+        mask = capacity - 1;
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        slotIds = new long[capacity];
+        slotTimestamps = new long[capacity];
+        slotSuccesses = new boolean[capacity];
+        slotAcks = new AtomicReferenceArray<>(capacity);
+
+        writer = new Thread(() -> runWriter(), "review-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /*
+     * submit queues a review of a flashcard.
+     * The time of the review is the time it is submitted. A review cannot be submitted once the queue
+     * is closed or its writer has stopped, rather than waiting for a writer that will never free a slot.
+     *
+     * Input: identifier of the flashcard, whether it was reviewed correctly.
+     * Output: future completed with whether the flashcard was in the deck once the review is applied
+     * and recorded, or completed exceptionally if it could not be recorded or published.
+     */
+    public CompletableFuture<Boolean> submit(long id, boolean success) {
+        CompletableFuture<Boolean> ack = new CompletableFuture<>();
+        long timestamp = System.currentTimeMillis();
+
+        int spins = 0;
+        while (true) {
+            long position = tail.get();
+            if ((position & CLOSED) != 0) {
+                throw new IllegalStateException("Cannot submit review to a closed queue.");
+            }
+            if (!writer.isAlive()) {
+                throw new IllegalStateException("Cannot submit review, since the review writer has stopped.");
+            }
+            int index = (int) position & mask;
+            long sequence = sequences.get(index);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slotIds[index] = id;
+                    slotTimestamps[index] = timestamp;
+                    slotSuccesses[index] = success;
+                    slotAcks.setPlain(index, ack);
+                    sequences.set(index, position + 1); // publishes the slot to the writer
+                    if (writerParked) {
+                        LockSupport.unpark(writer);
+                    }
+                    return ack;
+                }
+            } else if (sequence < position) {
+                // the ring is full; wait for the writer to free a slot
+                if (++spins < FULL_SPINS) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(FULL_PARK_NANOS);
+                }
+            }
+            // otherwise another thread claimed this position first; retry with the new tail
+        }
+    }
+
+    /*
+     * awaitApplied waits until every review submitted before the call has been applied and recorded.
+     *
+     * Input: no input.
+     * Output: no return value.
+     */
+    public void awaitApplied() {
+        long target = tail.get() & ~CLOSED;
+        while (applied < target && writer.isAlive()) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+        }
+    }
+
+    /*
+     * close stops accepting reviews, and waits for the writer to apply the reviews already submitted.
+     *
+     * Input: no input.
+     * Output: no return value.
+     */
+    public void close() {
+        long position;
+        do {
+            position = tail.get();
+        } while ((position & CLOSED) == 0 && !tail.compareAndSet(position, position | CLOSED));
+
+        LockSupport.unpark(writer);
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * runWriter is the writer thread's loop. It applies batches until the queue is closed and empty.
+     *
+     * Input: no input.
+     * Output: no return value.
+     */
+    private void runWriter() {
+        while (true) {
+            int count = drain();
+            if (count > 0) {
+                try {
+                    applyBatch(count);
+                } catch (Throwable e) {
+                    failBatch(e); // keep the writer running, so later reviews are still applied
+                }
+                applied = head;
+                continue;
+            }
+
+            long position = tail.get();
+            if ((position & CLOSED) != 0 && (position & ~CLOSED) == head) {
+                return;
+            }
+
+            // submitters read writerParked after publishing, so either they see it or the check below
+            // sees their review
+            writerParked = true;
+            if (sequences.get((int) head & mask) != head + 1 && (tail.get() & CLOSED) == 0) {
+                LockSupport.park(this);
+            }
+            writerParked = false;
+        }
+    }
+
+    /*
+     * drain moves the published reviews at the head of the ring into the batch arrays, freeing their slots.
+     *
+     * Input: no input.
+     * Output: number of reviews in the batch.
+     */
+    private int drain() {
+        int count = 0;
+        while (count < MAX_BATCH) {
+            int index = (int) head & mask;
+            if (sequences.get(index) != head + 1) {
+                break;
+            }
+            batchIds[count] = slotIds[index];
+            batchTimestamps[count] = slotTimestamps[index];
+            batchSuccesses[count] = slotSuccesses[index];
+            batchAcks.add(slotAcks.getPlain(index));
+            slotAcks.setPlain(index, null);
+            sequences.set(index, head + mask + 1); // frees the slot for the next lap
+            head++;
+            count++;
+        }
+        return count;
+    }
+
+    /*
+     * applyBatch applies the batch to the deck, records it in the review log, publishes it, and then
+     * acknowledges it.
+     *
+     * Input: number of reviews in the batch.
+     * Output: no return value, modifies the deck and the log.
+     */
+    private void applyBatch(int count) {
+        Throwable failure = null;
+        int recorded = 0;
+        try {
+            SchedulerParameters parameters = parameterSource.get();
+            LocalDate today = LocalDate.now();
+            Arrays.fill(batchPresent, 0, count, false);
+            deck.updateAll(batchIds, count, (int i, Flashcard flashcard) -> {
+                batchPrevIntervals[i] = flashcard.reviewInterval;
+                flashcard.updateReview(batchSuccesses[i], parameters, today);
+                batchNewIntervals[i] = flashcard.reviewInterval;
+                batchPresent[i] = true;
+            });
+
+            // only reviews of flashcards in the deck are recorded; compact them in batch order
+            for (int i = 0; i < count; i++) {
+                if (batchPresent[i]) {
+                    batchIds[recorded] = batchIds[i];
+                    batchTimestamps[recorded] = batchTimestamps[i];
+                    batchSuccesses[recorded] = batchSuccesses[i];
+                    batchPrevIntervals[recorded] = batchPrevIntervals[i];
+                    batchNewIntervals[recorded] = batchNewIntervals[i];
+                    recorded++;
+                }
+            }
+            reviewLog.appendAll(batchIds, batchTimestamps, batchSuccesses,
+                    batchPrevIntervals, batchNewIntervals, recorded);
+        } catch (Throwable e) {
+            failure = e;
+        }
+
+        // publish before acknowledging, so a review is in the directly listening indexes once acknowledged;
+        // direct listeners run on this thread, so their failures fail the batch rather than the writer
+        try {
+            deck.events().publish(DeckChanges.Change.REVIEWED, batchIds, recorded);
+        } catch (Throwable e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            CompletableFuture<Boolean> ack = batchAcks.get(i);
+            if (failure == null) {
+                ack.complete(batchPresent[i]);
+            } else {
+                ack.completeExceptionally(failure);
+            }
+        }
+        batchAcks.clear();
+    }
+
+    /*
+     * failBatch fails the reviews of the batch not acknowledged yet, after applying it failed unexpectedly.
+     *
+     * Input: the failure.
+     * Output: no return value, completes the futures of the batch.
+     */
+    private void failBatch(Throwable failure) {
+        for (CompletableFuture<Boolean> ack : batchAcks) {
+            ack.completeExceptionally(failure);
+        }
+        batchAcks.clear();
+    }
+}
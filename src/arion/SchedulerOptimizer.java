@@ -0,0 +1,338 @@
+package arion;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+/*
+ * SchedulerOptimizer fits a deck's scheduling parameters to its review history.
+ *
+ * The memory model predicts the chance of recalling a flashcard after t days as
+ * TARGET_RETENTION^(t / (m * s)), where s is the gap the flashcard last survived and m is the
+ * interval multiplicand: a flashcard reviewed m times later than its last successful gap is
+ * recalled with the target retention. Flashcards that have not survived a gap yet use a fitted
+ * initial stability instead of s.
+ *
+ * Since the model only depends on the ratio of the elapsed time to the last gap, the log is scanned
+ * once to build a histogram of outcomes by that ratio (and by elapsed time for flashcards without a
+ * survived gap). The parameters minimizing the log loss over the histogram are then found with a
+ * parallel grid search, so the cost of the search does not depend on the number of reviews.
+ */
+
+public class SchedulerOptimizer {
+
+    /*
+     * Result holds the fitted parameters and statistics about the fit.
+     */
+    public static class Result {
+        public final SchedulerParameters parameters;
+        public final double initialStability;
+        public final double loss;
+        public final long reviewCount;
+        public final double retention;
+
+        Result(SchedulerParameters parameters, double initialStability, double loss, long reviewCount,
+                double retention) {
+            this.parameters = parameters;
+            this.initialStability = initialStability;
+            this.loss = loss;
+            this.reviewCount = reviewCount;
+            this.retention = retention;
+        }
+    }
+
+    public final static double TARGET_RETENTION = 0.9;
+    public final static long MIN_REVIEWS = 100;
+
+    private final static double LN_TARGET_RETENTION = Math.log(TARGET_RETENTION);
+    private final static double MS_PER_DAY = 24 * 60 * 60 * 1000.0;
+
+    // reviews closer together than this are relearning steps, not spaced reviews
+    private final static double MIN_ELAPSED_DAYS = 0.5;
+
+    // ratios of elapsed time to survived gap are bucketed logarithmically, from 2^RATIO_MIN_OCTAVE
+    private final static int RATIO_MIN_OCTAVE = -6;
+    private final static int RATIO_OCTAVES = 14;
+
+    // elapsed times of flashcards without a survived gap are bucketed from 2^ELAPSED_MIN_OCTAVE days
+    private final static int ELAPSED_MIN_OCTAVE = -1;
+    private final static int ELAPSED_OCTAVES = 16;
+
+    private final static int BUCKETS_PER_OCTAVE = 16;
+    private final static int RATIO_BUCKETS = RATIO_OCTAVES * BUCKETS_PER_OCTAVE;
+    private final static int ELAPSED_BUCKETS = ELAPSED_OCTAVES * BUCKETS_PER_OCTAVE;
+
+    private final static double MIN_MULTIPLICAND = 1.1;
+    private final static double MAX_MULTIPLICAND = 5.0;
+    private final static double COARSE_STEP = 0.01;
+    private final static double FINE_STEP = 0.0005;
+    private final static double MIN_INITIAL_STABILITY = 0.25;
+    private final static int INITIAL_STABILITY_STEPS = 97; // quarter day to 16 days in 1/16 octaves
+
+    private final static double MIN_PROBABILITY = 1e-6;
+    private final static double INV_LN_2 = 1 / Math.log(2);
+
+    /*
+     * fit fits the scheduling parameters to the reviews in the log.
+     * If the log has fewer than MIN_REVIEWS spaced reviews, nothing is returned.
+     *
+     * Input: review log of the deck.
+     * Output: optionally the fitted parameters.
+     */
+    public static Optional<Result> fit(ReviewLog log) throws IOException {
+        if (log == null) {
+            throw new NullPointerException("Cannot fit scheduler to null review log.");
+        }
+
+        Histogram histogram = buildHistogram(log);
+        if (histogram.total < MIN_REVIEWS) {
+            return Optional.empty();
+        }
+        Cells cells = histogram.toCells();
+
+        // coarse search over both parameters, then refine the multiplicand around the best point
+        int coarseSteps = (int) Math.round((MAX_MULTIPLICAND - MIN_MULTIPLICAND) / COARSE_STEP) + 1;
+        double[] coarseMultiplicands = new double[coarseSteps];
+        for (int i = 0; i < coarseSteps; i++) {
+            coarseMultiplicands[i] = MIN_MULTIPLICAND + i * COARSE_STEP;
+        }
+        double[] stabilities = new double[INITIAL_STABILITY_STEPS];
+        for (int i = 0; i < INITIAL_STABILITY_STEPS; i++) {
+            stabilities[i] = MIN_INITIAL_STABILITY * Math.pow(2, (double) i / BUCKETS_PER_OCTAVE);
+        }
+        double[] best = searchGrid(cells, coarseMultiplicands, stabilities);
+
+        int fineSteps = (int) Math.round(2 * COARSE_STEP / FINE_STEP) + 1;
+        double[] fineMultiplicands = new double[fineSteps];
+        for (int i = 0; i < fineSteps; i++) {
+            fineMultiplicands[i] = Math.max(MIN_MULTIPLICAND, best[0] - COARSE_STEP + i * FINE_STEP);
+        }
+        best = searchGrid(cells, fineMultiplicands, new double[] { best[1] });
+
+        double retention = (double) histogram.successes / histogram.total;
+        return Optional.of(new Result(new SchedulerParameters(best[0]), best[1], best[2] / histogram.total,
+                histogram.total, retention));
+    }
+
+    /*
+     * searchGrid evaluates the loss at every pair of the given multiplicands and initial
+     * stabilities in parallel, and returns the best pair.
+     *
+     * Input: histogram cells, candidate multiplicands and initial stabilities.
+     * Output: array of the best multiplicand, initial stability, and its loss.
+     */
+    private static double[] searchGrid(Cells cells, double[] multiplicands, double[] stabilities) {
+        int pointCount = multiplicands.length * stabilities.length;
+        double[] losses = new double[pointCount];
+        IntStream.range(0, pointCount).parallel().forEach((int point) -> {
+            double multiplicand = multiplicands[point / stabilities.length];
+            double stability = stabilities[point % stabilities.length];
+            losses[point] = cells.loss(multiplicand, stability);
+        });
+
+        int bestPoint = 0;
+        for (int point = 1; point < pointCount; point++) {
+            if (losses[point] < losses[bestPoint]) {
+                bestPoint = point;
+            }
+        }
+        return new double[] {
+            multiplicands[bestPoint / stabilities.length],
+            stabilities[bestPoint % stabilities.length],
+            losses[bestPoint],
+        };
+    }
+
+    /*
+     * buildHistogram scans the log, tracking each flashcard's last review time and last
+     * survived gap, and counts the outcome of every spaced review by its elapsed time and gap.
+     *
+     * Input: review log.
+     * Output: histogram of review outcomes.
+     */
+    private static Histogram buildHistogram(ReviewLog log) throws IOException {
+        Histogram histogram = new Histogram();
+        CardStates states = new CardStates();
+
+        log.scan((ReviewLog.Block block) -> {
+            for (int i = 0; i < block.count; i++) {
+                int card = states.slot(block.ids[i]);
+                long timestamp = block.timestamps[i];
+                boolean success = block.isSuccess(i);
+
+                long lastTimestamp = states.lastTimestamps[card];
+                states.lastTimestamps[card] = timestamp;
+                if (lastTimestamp == Long.MIN_VALUE) {
+                    continue; // first review of the flashcard, nothing elapsed yet
+                }
+
+                double elapsed = (timestamp - lastTimestamp) / MS_PER_DAY;
+                if (elapsed < MIN_ELAPSED_DAYS) {
+                    continue;
+                }
+
+                histogram.add(elapsed, states.survivedGaps[card], success);
+                states.survivedGaps[card] = success ? (float) elapsed : 0f;
+            }
+        });
+        return histogram;
+    }
+
+    /*
+     * bucket finds the logarithmic bucket of a value.
+     *
+     * Input: value to bucket, lowest octave of the buckets, and the number of buckets.
+     * Output: bucket index, clamped to the bucket range.
+     */
+    private static int bucket(double value, int minOctave, int buckets) {
+        double position = (Math.log(value) * INV_LN_2 - minOctave) * BUCKETS_PER_OCTAVE;
+        return (int) Math.max(0, Math.min(buckets - 1, Math.floor(position)));
+    }
+
+    /*
+     * bucketValue finds the value in the middle of a bucket.
+     *
+     * Input: bucket index and the lowest octave of the buckets.
+     * Output: value in the middle of the bucket.
+     */
+    private static double bucketValue(int bucket, int minOctave) {
+        return Math.pow(2, minOctave + (bucket + 0.5) / BUCKETS_PER_OCTAVE);
+    }
+
+    /*
+     * CardStates tracks the last review time and last survived gap of every flashcard in the log.
+     */
+    private static class CardStates {
+        LongIntMap slots = new LongIntMap(1024);
+        long[] lastTimestamps = new long[1024];
+        float[] survivedGaps = new float[1024];
+
+        /*
+         * slot finds the index of a flashcard's state, adding it if this is its first review.
+         *
+         * Input: flashcard identifier.
+         * Output: index into the state arrays.
+         */
+        int slot(long id) {
+            int slot = slots.get(id);
+            if (slot != LongIntMap.MISSING) {
+                return slot;
+            }
+            slot = slots.size();
+            slots.put(id, slot);
+            if (slot == lastTimestamps.length) {
+                lastTimestamps = Arrays.copyOf(lastTimestamps, slot * 2);
+                survivedGaps = Arrays.copyOf(survivedGaps, slot * 2);
+            }
+            lastTimestamps[slot] = Long.MIN_VALUE;
+            survivedGaps[slot] = 0f;
+            return slot;
+        }
+    }
+
+    /*
+     * Histogram counts review outcomes of flashcards with a survived gap by the ratio of elapsed
+     * time to gap, and outcomes of flashcards without one by elapsed time.
+     * Both sets of buckets share one array, with the elapsed time buckets after the ratio buckets.
+     */
+    private static class Histogram {
+        long[] successCounts = new long[RATIO_BUCKETS + ELAPSED_BUCKETS];
+        long[] failureCounts = new long[RATIO_BUCKETS + ELAPSED_BUCKETS];
+        long total;
+        long successes;
+
+        /*
+         * add counts one review.
+         *
+         * Input: days elapsed since the last review, last survived gap (0 if none), and the outcome.
+         * Output: no return value, modifies the histogram.
+         */
+        void add(double elapsed, double survivedGap, boolean success) {
+            int cell;
+            if (survivedGap > 0) {
+                cell = bucket(elapsed / survivedGap, RATIO_MIN_OCTAVE, RATIO_BUCKETS);
+            } else {
+                cell = RATIO_BUCKETS + bucket(elapsed, ELAPSED_MIN_OCTAVE, ELAPSED_BUCKETS);
+            }
+
+            if (success) {
+                successCounts[cell]++;
+                successes++;
+            } else {
+                failureCounts[cell]++;
+            }
+            total++;
+        }
+
+        /*
+         * toCells converts the non-empty cells of the histogram into compact arrays.
+         *
+         * Input: no input.
+         * Output: non-empty histogram cells.
+         */
+        Cells toCells() {
+            int count = 0;
+            for (int cell = 0; cell < successCounts.length; cell++) {
+                if (successCounts[cell] + failureCounts[cell] > 0) {
+                    count++;
+                }
+            }
+
+            Cells cells = new Cells(count);
+            int i = 0;
+            for (int cell = 0; cell < successCounts.length; cell++) {
+                if (successCounts[cell] + failureCounts[cell] == 0) {
+                    continue;
+                }
+                if (cell < RATIO_BUCKETS) {
+                    cells.values[i] = bucketValue(cell, RATIO_MIN_OCTAVE);
+                    cells.survived[i] = true;
+                } else {
+                    cells.values[i] = bucketValue(cell - RATIO_BUCKETS, ELAPSED_MIN_OCTAVE);
+                    cells.survived[i] = false;
+                }
+                cells.successes[i] = successCounts[cell];
+                cells.failures[i] = failureCounts[cell];
+                i++;
+            }
+            return cells;
+        }
+    }
+
+    /*
+     * Cells holds the non-empty histogram cells the loss is evaluated over.
+     * The value of a cell is the ratio of elapsed time to survived gap if the flashcard had
+     * survived a gap, or the elapsed time in days otherwise.
+     */
+    private static class Cells {
+        final double[] values;
+        final boolean[] survived;
+        final long[] successes;
+        final long[] failures;
+
+        Cells(int count) {
+            values = new double[count];
+            survived = new boolean[count];
+            successes = new long[count];
+            failures = new long[count];
+        }
+
+        /*
+         * loss calculates the total log loss of the model over all cells.
+         *
+         * Input: interval multiplicand and initial stability.
+         * Output: total log loss.
+         */
+        double loss(double multiplicand, double initialStability) {
+            double loss = 0;
+            for (int i = 0; i < values.length; i++) {
+                double scaledElapsed = survived[i] ? values[i] : values[i] / initialStability;
+                double logRecall = LN_TARGET_RETENTION * scaledElapsed / multiplicand;
+                double recall = Math.min(1 - MIN_PROBABILITY, Math.max(MIN_PROBABILITY, Math.exp(logRecall)));
+                loss -= successes[i] * Math.log(recall) + failures[i] * Math.log1p(-recall);
+            }
+            return loss;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package arion;
+
+import java.io.*;
+import java.util.Optional;
+
+/*
+ * SchedulerParameters holds the parameters used to schedule a deck's flashcards.
+ * The defaults are used until the interval multiplicand is fitted to the deck's review history
+ * by SchedulerOptimizer. Relearning steps can be changed by editing the parameter file.
+ */
+
+public class SchedulerParameters {
+    public final static double DEFAULT_INTERVAL_MULTIPLICAND = 1.6;
+    public final static int[] DEFAULT_RELEARNING_STEPS = { 3, 10 };
+    public final static SchedulerParameters DEFAULT =
+            new SchedulerParameters(DEFAULT_INTERVAL_MULTIPLICAND, DEFAULT_RELEARNING_STEPS);
+
+    public final double intervalMultiplicand;
+    private final int[] relearningSteps;
+
+    /*
+     * The constructor sets the scheduling parameters.
+     *
+     * Input: factor the review interval grows by after a successful review, and the number of
+     * flashcards studied before an incorrectly reviewed flashcard is shown again, for each failure
+     * in a session.
+     * Output: new SchedulerParameters class.
+     */
+    public SchedulerParameters(double intervalMultiplicand, int[] relearningSteps) {
+        if (relearningSteps == null) {
+            throw new NullPointerException("Cannot construct scheduler parameters with null relearning steps.");
+        }
+        if (!(intervalMultiplicand > 1)) { // also rejects NaN
+            throw new IllegalArgumentException("Interval multiplicand must be greater than 1.");
+        }
+        SessionQueue.validateSteps(relearningSteps);
+
+        this.intervalMultiplicand = intervalMultiplicand;
+        this.relearningSteps = relearningSteps.clone();
+    }
+
+    /*
+     * This constructor signature uses the default relearning steps.
+     *
+     * Input: factor the review interval grows by after a successful review.
+     * Output: new SchedulerParameters class.
+     */
+    public SchedulerParameters(double intervalMultiplicand) {
+        this(intervalMultiplicand, DEFAULT_RELEARNING_STEPS);
+    }
+
+    /*
+     * getRelearningSteps returns a copy of the relearning steps.
+     *
+     * Input: no input.
+     * Output: relearning steps.
+     */
+    public int[] getRelearningSteps() {
+        return relearningSteps.clone();
+    }
+
+    /*
+     * withIntervalMultiplicand copies these parameters with a different interval multiplicand.
+     *
+     * Input: new interval multiplicand.
+     * Output: new SchedulerParameters class.
+     */
+    public SchedulerParameters withIntervalMultiplicand(double intervalMultiplicand) {
+        return new SchedulerParameters(intervalMultiplicand, relearningSteps);
+    }
+
+    /*
+     * read reads scheduling parameters from a file; parameters missing from the file keep their defaults.
+     * If the file does not exist or is improperly formatted, nothing is returned.
+     *
+     * Input: path of the parameter file.
+     * Output: optionally the parameters in the file.
+     */
+    public static Optional<SchedulerParameters> read(String filepath) {
+        if (filepath == null) {
+            throw new NullPointerException("Cannot read scheduler parameters from null filepath.");
+        }
+
+        File file = new File(filepath);
+        if (!file.canRead()) {
+            return Optional.empty();
+        }
+
+        double multiplicand = DEFAULT_INTERVAL_MULTIPLICAND;
+        int[] steps = DEFAULT_RELEARNING_STEPS;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf('=');
+                if (separator < 0) {
+                    continue;
+                }
+                String value = line.substring(separator + 1).trim();
+                switch (line.substring(0, separator).trim()) {
+                    case "intervalMultiplicand":
+                        multiplicand = Double.parseDouble(value);
+                        break;
+                    case "relearningSteps":
+                        String[] parts = value.split(",");
+                        steps = new int[parts.length];
+                        for (int i = 0; i < parts.length; i++) {
+                            steps[i] = Integer.parseInt(parts[i].trim());
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return Optional.of(new SchedulerParameters(multiplicand, steps));
+        } catch (IOException | IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    /*
+     * write writes these parameters to a file.
+     *
+     * Input: path of the parameter file.
+     * Output: no return value, writes to the file.
+     */
+    public void write(String filepath) throws IOException {
+        if (filepath == null) {
+            throw new NullPointerException("Cannot write scheduler parameters to null filepath.");
+        }
+
+        StringBuilder steps = new StringBuilder();
+        for (int i = 0; i < relearningSteps.length; i++) {
+            if (i > 0) {
+                steps.append(",");
+            }
+            steps.append(relearningSteps[i]);
+        }
+
+        try (PrintWriter writer = new PrintWriter(filepath)) {
+            writer.println("intervalMultiplicand=" + intervalMultiplicand);
+            writer.println("relearningSteps=" + steps);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package arion;
+
+import exception.MainPanelDisplayException;
+
+import java.awt.CardLayout;
+import java.util.HashMap;
+import java.util.Optional;
+import javax.swing.JPanel;
+
+/*
+ * ScreenRegistry holds the screens of the window as cards of one CardLayout panel.
+ *
+ * Each named screen is built the first time it is shown and kept afterwards, so showing it again only
+ * rebinds its data and flips the visible card, instead of building, styling, and laying out a new
+ * component tree. Panels that are built elsewhere and change with every display, such as the study
+ * panels of each flashcard, are shown in a single replaceable card.
+ * It is only used on the event dispatch thread.
+ */
+
+public class ScreenRegistry {
+    private final static String PANEL_CARD = " panel"; // cannot clash with screen names, which have no spaces
+
+    /*
+     * The Screen class is a built screen: its panel, and what to do each time it is shown,
+     * such as clearing its inputs or binding it to new data.
+     */
+    public static class Screen {
+        final JPanel panel;
+        final Runnable onShow;
+
+        public Screen(JPanel panel, Runnable onShow) {
+            if (panel == null || onShow == null) {
+                throw new NullPointerException("Cannot construct screen with null parameters.");
+            }
+            this.panel = panel;
+            this.onShow = onShow;
+        }
+    }
+
+    /*
+     * Builder builds a screen the first time it is shown.
+     */
+    public interface Builder {
+        public Screen build() throws MainPanelDisplayException;
+    }
+
+    private CardLayout layout = new CardLayout();
+    private JPanel cards = new JPanel(layout);
+    private HashMap<String, Screen> screens = new HashMap<>();
+    private Optional<JPanel> panelOption = Optional.empty();
+
+    /*
+     * getContainer returns the panel holding the cards, to be added to the window once.
+     *
+     * Input: no input.
+     * Output: the panel holding the cards.
+     */
+    public JPanel getContainer() {
+        return cards;
+    }
+
+    /*
+     * show shows a named screen, building it first if it is not registered yet.
+     * The screen's show action runs before it becomes visible.
+     *
+     * Input: name of the screen, which must not contain spaces, and the builder of the screen.
+     * Output: the shown screen.
+     */
+    public Screen show(String name, Builder builder) throws MainPanelDisplayException {
+        if (name == null || builder == null) {
+            throw new NullPointerException("Cannot show screen with null parameters.");
+        }
+        if (name.contains(" ")) {
+            throw new IllegalArgumentException("Screen names cannot contain spaces.");
+        }
+
+        Screen screen = screens.get(name);
+        if (screen == null) {
+            screen = builder.build();
+            screens.put(name, screen);
+            cards.add(screen.panel, name);
+        }
+        screen.onShow.run();
+        layout.show(cards, name);
+        return screen;
+    }
+
+    /*
+     * showPanel shows a panel that is not a registered screen, replacing the previous such panel.
+     *
+     * Input: the panel.
+     * Output: no return value, shows the panel.
+     */
+    public void showPanel(JPanel panel) {
+        if (panel == null) {
+            throw new NullPointerException("Cannot show null panel.");
+        }
+        if (panelOption.isEmpty() || panelOption.get() != panel) {
+            panelOption.ifPresent((JPanel old) -> cards.remove(old));
+            cards.add(panel, PANEL_CARD);
+            panelOption = Optional.of(panel);
+        }
+        layout.show(cards, PANEL_CARD);
+    }
+
+    /*
+     * clear discards every built screen, so each is built again when next shown, such as after
+     * the window was resized.
+     * Nothing is shown until the next screen or panel is shown.
+     *
+     * Input: no input.
+     * Output: no return value, empties the registry.
+     */
+    public void clear() {
+        screens.clear();
+        cards.removeAll();
+        panelOption = Optional.empty();
+    }
+}
@@ -0,0 +1,549 @@
+package arion;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/*
+ * SearchIndex is an in-memory inverted index over the fronts and backs of a deck's flashcards,
+ * ranking the flashcards that match a query with BM25.
+ *
+ * Text is split into tokens of letters and digits, which are Unicode normalized, stripped of accents,
+ * and lower cased, so an accented word and its plain spelling are the same term. Each query token
+ * matches its own term, and, with a lower weight, the terms it is a prefix of, so a word matches
+ * while it is being typed; a single character only matches its own term.
+ * With trigrams enabled, a query token of at least three characters also matches the terms it is
+ * found inside of, through an index from each trigram to the terms holding it. Every query token
+ * must be matched for a flashcard to match.
+ *
+ * Flashcards are kept in dense slots, so postings hold slot numbers and a query scores flashcards in
+ * reusable arrays indexed by slot, without allocating per flashcard. Like the other DeckIndexes, it
+ * listens to the deck's changes and updates itself as flashcards are added, edited, and deleted.
+ * A deleted flashcard's postings are left in place and skipped until enough have built up, when every
+ * posting list is compacted and the freed slots are reused.
+ */
+
+public class SearchIndex extends DeckIndex<String> {
+    public final static double K1 = 1.2; // how quickly repeated terms stop adding to the score
+    public final static double B = 0.75; // how much longer flashcards are penalized
+    public final static double PREFIX_WEIGHT = 0.5;
+    public final static double SUBSTRING_WEIGHT = 0.25;
+    public final static int MIN_PREFIX_LENGTH = 2; // a single character would match most of a large deck
+    public final static int MIN_TRIGRAM_LENGTH = 3;
+
+    /*
+     * The Results class holds the best matching flashcards of a query, and how many matched.
+     */
+    public static class Results {
+        public final long[] ids; // best matches first
+        public final int total;
+
+        private Results(long[] ids, int total) {
+            this.ids = ids;
+            this.total = total;
+        }
+    }
+
+    /*
+     * The IntList class is a growable list of ints.
+     */
+    private static class IntList {
+        int[] values = new int[4];
+        int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    private boolean trigrams;
+
+    // the length and terms of each slot; a slot with null terms is free or holds a deleted flashcard
+    private int[] slotLengths = new int[INITIAL_CAPACITY];
+    private int[][] slotTerms = new int[INITIAL_CAPACITY][];
+    private IntList deadSlots = new IntList(); // deleted, and still in the postings
+    private int liveCount = 0;
+    private long totalLength = 0;
+
+    // terms, and for each term its postings: the slots holding it and how often each holds it
+    private HashMap<String, Integer> termIds = new HashMap<>();
+    private TreeMap<String, Integer> sortedTerms = new TreeMap<>();
+    private ArrayList<String> terms = new ArrayList<>();
+    private ArrayList<IntList> postingSlots = new ArrayList<>();
+    private ArrayList<IntList> postingCounts = new ArrayList<>();
+    private IntList documentCounts = new IntList(); // live slots holding each term
+    private HashMap<Long, IntList> trigramTerms = new HashMap<>();
+    private long livePostings = 0;
+    private long deadPostings = 0;
+
+    // scratch arrays of a query, indexed by slot
+    private double[] scores = new double[INITIAL_CAPACITY];
+    private int[] matched = new int[INITIAL_CAPACITY]; // query tokens matched so far
+
+    /*
+     * The constructor indexes a deck, and keeps the index up to date as the deck changes.
+     *
+     * Input: the deck, and whether to index trigrams for substring matches.
+     * Output: new SearchIndex class.
+     */
+    public SearchIndex(Deck deck, boolean trigrams) {
+        super(deck, "search index");
+        this.trigrams = trigrams;
+        indexDeck();
+    }
+
+    /*
+     * search finds the flashcards matching a query, best matches first.
+     *
+     * Input: the query, and the largest number of flashcards to return.
+     * Output: the best matches, and the number of flashcards that matched.
+     */
+    public synchronized Results search(String query, int limit) {
+        if (query == null) {
+            throw new NullPointerException("Cannot search for null query.");
+        }
+        if (limit < 0) {
+            throw new IllegalArgumentException("Cannot search with negative limit.");
+        }
+
+        String[] tokens = distinct(tokenize(query));
+        IntList candidates = score(tokens);
+
+        // keep the best matches in a heap whose head is the worst of them
+        PriorityQueue<Integer> best = new PriorityQueue<>(Math.max(1, Math.min(limit, candidates.size)),
+                (Integer first, Integer second) -> compareSlots(second, first));
+        int total = 0;
+        for (int c = 0; c < candidates.size; c++) {
+            int slot = candidates.values[c];
+            if (matched[slot] == tokens.length) {
+                total++;
+                if (best.size() < limit) {
+                    best.add(slot);
+                } else if (limit > 0 && compareSlots(slot, best.peek()) < 0) {
+                    best.poll();
+                    best.add(slot);
+                }
+            }
+        }
+
+        long[] ids = new long[best.size()];
+        for (int i = ids.length - 1; i >= 0; i--) {
+            ids[i] = slotIds[best.poll()];
+        }
+        reset(candidates);
+        return new Results(ids, total);
+    }
+
+    /*
+     * matches finds every flashcard matching a query, without ranking them, such as to narrow the
+     * flashcards a DeckQuery is tested on.
+     *
+     * Input: the query.
+     * Output: identifiers of the matching flashcards, in no particular order.
+     */
+    public synchronized long[] matches(String query) {
+        if (query == null) {
+            throw new NullPointerException("Cannot search for null query.");
+        }
+
+        String[] tokens = distinct(tokenize(query));
+        IntList candidates = score(tokens);
+        long[] ids = new long[candidates.size];
+        int count = 0;
+        for (int c = 0; c < candidates.size; c++) {
+            if (matched[candidates.values[c]] == tokens.length) {
+                ids[count++] = slotIds[candidates.values[c]];
+            }
+        }
+        reset(candidates);
+        return Arrays.copyOf(ids, count);
+    }
+
+    /*
+     * size returns the number of indexed flashcards.
+     *
+     * Input: no input.
+     * Output: number of flashcards.
+     */
+    public synchronized int size() {
+        return liveCount;
+    }
+
+    /*
+     * tokenize splits text into normalized tokens: runs of letters and digits, with compatibility
+     * characters decomposed, accents removed, and letters lower cased.
+     *
+     * Input: the text.
+     * Output: the tokens, in the order they appear.
+     */
+    public static ArrayList<String> tokenize(String text) {
+        if (text == null) {
+            throw new NullPointerException("Cannot tokenize null text.");
+        }
+
+        boolean ascii = true;
+        for (int i = 0; i < text.length() && ascii; i++) {
+            ascii = text.charAt(i) < 0x80;
+        }
+        String normalized = ascii ? text : Normalizer.normalize(text, Normalizer.Form.NFKD);
+
+        ArrayList<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < normalized.length(); ) {
+            int codePoint = normalized.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (Character.getType(codePoint) == Character.NON_SPACING_MARK) {
+                continue; // accents of the decomposed letter before
+            }
+            if (Character.isLetterOrDigit(codePoint)) {
+                token.appendCodePoint(Character.toLowerCase(codePoint));
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    /*
+     * read reads the text of a flashcard, its front and back.
+     *
+     * Input: the flashcard.
+     * Output: its text.
+     */
+    @Override
+    protected String read(Flashcard flashcard) {
+        return flashcard.front + " " + flashcard.back;
+    }
+
+    /*
+     * insert indexes the text of a flashcard in a new slot.
+     *
+     * Input: the slot, and the text.
+     * Output: no return value, modifies the index.
+     */
+    @Override
+    protected void insert(int slot, String text) {
+        ArrayList<String> tokens = tokenize(text);
+        String[] sorted = tokens.toArray(new String[0]);
+        Arrays.sort(sorted); // repeated tokens are next to each other
+
+        int[] slotTermIds = new int[sorted.length];
+        int next = 0;
+        for (int start = 0; start < sorted.length; ) {
+            int end = start + 1;
+            while (end < sorted.length && sorted[end].equals(sorted[start])) {
+                end++;
+            }
+            int term = termId(sorted[start]);
+            postingSlots.get(term).add(slot);
+            postingCounts.get(term).add(end - start);
+            documentCounts.values[term]++;
+            slotTermIds[next++] = term;
+            start = end;
+        }
+        slotTermIds = Arrays.copyOf(slotTermIds, next);
+
+        slotLengths[slot] = tokens.size();
+        slotTerms[slot] = slotTermIds;
+        liveCount++;
+        totalLength += tokens.size();
+        livePostings += slotTermIds.length;
+    }
+
+    /*
+     * unindex takes a slot out of the counts of its terms. Its postings are skipped from now on.
+     *
+     * Input: the slot.
+     * Output: no return value, modifies the index.
+     */
+    @Override
+    protected void unindex(int slot) {
+        for (int term : slotTerms[slot]) {
+            documentCounts.values[term]--;
+        }
+        liveCount--;
+        totalLength -= slotLengths[slot];
+        livePostings -= slotTerms[slot].length;
+        deadPostings += slotTerms[slot].length;
+        slotTerms[slot] = null;
+    }
+
+    /*
+     * release keeps the slot of a deleted flashcard until its postings are removed, once enough
+     * postings are skipped.
+     *
+     * Input: the slot.
+     * Output: no return value, modifies the index.
+     */
+    @Override
+    protected void release(int slot) {
+        deadSlots.add(slot);
+        if (deadPostings > livePostings) {
+            compact();
+        }
+    }
+
+    /*
+     * grow grows the lengths and terms of the slots, and the scratch arrays of a query.
+     *
+     * Input: the new number of slots.
+     * Output: no return value, modifies the index.
+     */
+    @Override
+    protected void grow(int capacity) {
+        slotLengths = Arrays.copyOf(slotLengths, capacity);
+        slotTerms = Arrays.copyOf(slotTerms, capacity);
+        scores = Arrays.copyOf(scores, capacity);
+        matched = Arrays.copyOf(matched, capacity);
+    }
+
+    /*
+     * compact removes the postings of deleted flashcards, and frees their slots.
+     *
+     * Input: no input.
+     * Output: no return value, modifies the index.
+     */
+    private void compact() {
+        for (int term = 0; term < terms.size(); term++) {
+            IntList slots = postingSlots.get(term);
+            IntList counts = postingCounts.get(term);
+            int kept = 0;
+            for (int p = 0; p < slots.size; p++) {
+                if (slotTerms[slots.values[p]] != null) {
+                    slots.values[kept] = slots.values[p];
+                    counts.values[kept] = counts.values[p];
+                    kept++;
+                }
+            }
+            slots.size = kept;
+            counts.size = kept;
+        }
+        for (int d = 0; d < deadSlots.size; d++) {
+            freeSlot(deadSlots.values[d]);
+        }
+        deadSlots.size = 0;
+        deadPostings = 0;
+    }
+
+    /*
+     * termId finds the identifier of a term, adding the term if it is new.
+     *
+     * Input: the term.
+     * Output: identifier of the term.
+     */
+    private int termId(String term) {
+        Integer id = termIds.get(term);
+        if (id != null) {
+            return id;
+        }
+
+        id = terms.size();
+        termIds.put(term, id);
+        sortedTerms.put(term, id);
+        terms.add(term);
+        postingSlots.add(new IntList());
+        postingCounts.add(new IntList());
+        documentCounts.add(0);
+        if (trigrams) {
+            for (long trigram : trigramsOf(term)) {
+                trigramTerms.computeIfAbsent(trigram, (Long key) -> new IntList()).add(id);
+            }
+        }
+        return id;
+    }
+
+    /*
+     * score scores the flashcards holding the tokens of a query. Each candidate's score and number of
+     * tokens matched are left in the scratch arrays, which reset must clear once they are read.
+     *
+     * Input: the distinct tokens of the query.
+     * Output: slots of the flashcards that matched the first token; the flashcards that matched every
+     * token matched as many tokens as the query has.
+     */
+    private IntList score(String[] tokens) {
+        IntList candidates = new IntList();
+        if (tokens.length == 0 || liveCount == 0) {
+            return candidates;
+        }
+
+        // the terms each token matches, with their weights; the most selective token goes first,
+        // so later tokens only score the flashcards that are still candidates
+        int[][] tokenTerms = new int[tokens.length][];
+        double[][] tokenWeights = new double[tokens.length][];
+        long[] postingTotals = new long[tokens.length];
+        Integer[] order = new Integer[tokens.length];
+        for (int t = 0; t < tokens.length; t++) {
+            matchTerms(tokens[t], t, tokenTerms, tokenWeights);
+            for (int term : tokenTerms[t]) {
+                postingTotals[t] += postingSlots.get(term).size;
+            }
+            order[t] = t;
+        }
+        Arrays.sort(order, (Integer first, Integer second) -> Long.compare(postingTotals[first], postingTotals[second]));
+        if (postingTotals[order[0]] == 0) {
+            return candidates;
+        }
+
+        double averageLength = (double) totalLength / liveCount;
+        for (int step = 0; step < order.length; step++) {
+            int t = order[step];
+            for (int i = 0; i < tokenTerms[t].length; i++) {
+                int term = tokenTerms[t][i];
+                double idf = idf(documentCounts.values[term]) * tokenWeights[t][i];
+                IntList slots = postingSlots.get(term);
+                IntList counts = postingCounts.get(term);
+                for (int p = 0; p < slots.size; p++) {
+                    int slot = slots.values[p];
+                    if (slotTerms[slot] == null || matched[slot] < step) {
+                        continue; // deleted, or missed an earlier token
+                    }
+                    if (matched[slot] == step) {
+                        matched[slot] = step + 1;
+                        if (step == 0) {
+                            candidates.add(slot);
+                        }
+                    }
+                    int count = counts.values[p];
+                    double norm = K1 * (1 - B + B * slotLengths[slot] / averageLength);
+                    scores[slot] += idf * count * (K1 + 1) / (count + norm);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /*
+     * reset clears the scratch arrays of the candidates of a query.
+     *
+     * Input: the candidates.
+     * Output: no return value, modifies the scratch arrays.
+     */
+    private void reset(IntList candidates) {
+        for (int c = 0; c < candidates.size; c++) {
+            scores[candidates.values[c]] = 0;
+            matched[candidates.values[c]] = 0;
+        }
+    }
+
+    /*
+     * matchTerms finds the terms a query token matches, and the weight of each: the token itself,
+     * the terms it is a prefix of, and with trigrams, the terms it is inside of.
+     *
+     * Input: the token, its position in the query, and the arrays to store the terms and weights in.
+     * Output: no return value, stores the terms and weights of the token.
+     */
+    private void matchTerms(String token, int position, int[][] tokenTerms, double[][] tokenWeights) {
+        IntList matchedTerms = new IntList();
+        ArrayList<Double> weights = new ArrayList<>();
+
+        if (token.length() >= MIN_PREFIX_LENGTH) {
+            for (int term : sortedTerms.subMap(token, true, token + Character.MAX_VALUE, true).values()) {
+                matchedTerms.add(term);
+                weights.add(terms.get(term).length() == token.length() ? 1.0 : PREFIX_WEIGHT);
+            }
+        } else if (termIds.containsKey(token)) {
+            matchedTerms.add(termIds.get(token));
+            weights.add(1.0);
+        }
+
+        if (trigrams && token.length() >= MIN_TRIGRAM_LENGTH) {
+            // candidates hold the token's rarest trigram, and are then checked for the whole token
+            IntList rarest = null;
+            for (long trigram : trigramsOf(token)) {
+                IntList holding = trigramTerms.get(trigram);
+                if (holding == null) {
+                    rarest = null;
+                    break;
+                }
+                if (rarest == null || holding.size < rarest.size) {
+                    rarest = holding;
+                }
+            }
+            for (int c = 0; rarest != null && c < rarest.size; c++) {
+                String term = terms.get(rarest.values[c]);
+                if (!term.startsWith(token) && term.contains(token)) {
+                    matchedTerms.add(rarest.values[c]);
+                    weights.add(SUBSTRING_WEIGHT);
+                }
+            }
+        }
+
+        tokenTerms[position] = Arrays.copyOf(matchedTerms.values, matchedTerms.size);
+        tokenWeights[position] = new double[weights.size()];
+        for (int i = 0; i < weights.size(); i++) {
+            tokenWeights[position][i] = weights.get(i);
+        }
+    }
+
+    /*
+     * idf finds the inverse document frequency of a term held by the given number of flashcards.
+     *
+     * Input: number of flashcards holding the term.
+     * Output: the inverse document frequency, which is never negative.
+     */
+    private double idf(int documentCount) {
+        return Math.log(1 + (liveCount - documentCount + 0.5) / (documentCount + 0.5));
+    }
+
+    /*
+     * compareSlots orders two slots of the current query, better matches first; equal scores are
+     * ordered by slot, so results do not depend on the order postings were read in.
+     *
+     * Input: the two slots.
+     * Output: negative if the first is better, positive if the second is better.
+     */
+    private int compareSlots(int first, int second) {
+        int comparison = Double.compare(scores[second], scores[first]);
+        return comparison != 0 ? comparison : Integer.compare(first, second);
+    }
+
+    /*
+     * trigramsOf finds the distinct trigrams of a term, each packed into a long.
+     *
+     * Input: the term.
+     * Output: the trigrams.
+     */
+    private static long[] trigramsOf(String term) {
+        if (term.length() < MIN_TRIGRAM_LENGTH) {
+            return new long[0];
+        }
+        long[] trigrams = new long[term.length() - 2];
+        for (int i = 0; i < trigrams.length; i++) {
+            trigrams[i] = ((long) term.charAt(i) << 32) | ((long) term.charAt(i + 1) << 16) | term.charAt(i + 2);
+        }
+        Arrays.sort(trigrams);
+        int distinct = 0;
+        for (int i = 0; i < trigrams.length; i++) {
+            if (distinct == 0 || trigrams[i] != trigrams[distinct - 1]) {
+                trigrams[distinct++] = trigrams[i];
+            }
+        }
+        return Arrays.copyOf(trigrams, distinct);
+    }
+
+    /*
+     * distinct removes repeated tokens, keeping the first of each.
+     *
+     * Input: the tokens.
+     * Output: the distinct tokens.
+     */
+    private static String[] distinct(ArrayList<String> tokens) {
+        ArrayList<String> result = new ArrayList<>();
+        for (String token : tokens) {
+            if (!result.contains(token)) {
+                result.add(token);
+            }
+        }
+        return result.toArray(new String[0]);
+    }
+}
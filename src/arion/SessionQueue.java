@@ -0,0 +1,239 @@
+package arion;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*
+ * SessionQueue is the queue of flashcards in a study session.
+ * The session's flashcards are numbered when the session starts, and the queue is a ring buffer of
+ * those numbers, so studying does not allocate no matter how long the session is.
+ * A flashcard that is reviewed incorrectly is reinserted a few positions later, given by the
+ * relearning steps: the first failure uses the first step, the second failure the second step,
+ * and so on, repeating the last step.
+ */
+
+public class SessionQueue {
+    private final static int MAGIC = 0x41525331; // "ARS1"
+
+    private Flashcard[] cards;
+    private int[] lapses;
+    private int[] relearningSteps;
+
+    private int[] ring;
+    private int head = 0;
+    private int size = 0;
+
+    /*
+     * The constructor creates a session that studies the given flashcards in order.
+     *
+     * Input: flashcards to study, and the relearning steps.
+     * Output: new SessionQueue class.
+     */
+    public SessionQueue(ArrayList<Flashcard> flashcards, int[] relearningSteps) {
+        if (flashcards == null || relearningSteps == null) {
+            throw new NullPointerException("Cannot construct session with null parameters.");
+        }
+        validateSteps(relearningSteps);
+
+        int count = flashcards.size();
+        cards = flashcards.toArray(new Flashcard[count]);
+        lapses = new int[count];
+        ring = new int[Math.max(1, count)];
+        this.relearningSteps = relearningSteps.clone();
+
+        for (int card = 0; card < count; card++) {
+            if (cards[card] == null) {
+                throw new NullPointerException("Cannot construct session with null flashcards.");
+            }
+            ring[card] = card;
+        }
+        size = count;
+    }
+
+    /*
+     * isEmpty checks whether every flashcard in the session has been reviewed correctly.
+     *
+     * Input: no input.
+     * Output: whether the queue is empty.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /*
+     * size returns the number of flashcards left in the queue.
+     *
+     * Input: no input.
+     * Output: number of queued flashcards.
+     */
+    public int size() {
+        return size;
+    }
+
+    /*
+     * current returns the flashcard being studied, which is at the front of the queue.
+     *
+     * Input: no input.
+     * Output: the current flashcard.
+     */
+    public Flashcard current() {
+        return peek(0);
+    }
+
+    /*
+     * peek returns the flashcard at the given position in the queue.
+     *
+     * Input: position in the queue, where 0 is the current flashcard.
+     * Output: flashcard at the position.
+     */
+    public Flashcard peek(int position) {
+        if (position < 0 || position >= size) {
+            throw new IllegalArgumentException("Queue position out of range.");
+        }
+        return cards[ring[(head + position) % ring.length]];
+    }
+
+    /*
+     * review removes the current flashcard from the front of the queue.
+     * If it was reviewed incorrectly, it is reinserted after the number of positions given by
+     * its relearning step, or at the end if fewer flashcards are left.
+     *
+     * Input: whether the current flashcard was reviewed correctly.
+     * Output: no return value, modifies the queue.
+     */
+    public void review(boolean success) {
+        if (size == 0) {
+            throw new IllegalStateException("Cannot review flashcard in an empty session.");
+        }
+
+        int card = ring[head];
+        head = (head + 1) % ring.length;
+        size--;
+        if (success) {
+            return;
+        }
+
+        int step = relearningSteps[Math.min(lapses[card], relearningSteps.length - 1)];
+        lapses[card]++;
+        insert(card, Math.min(step, size));
+    }
+
+    /*
+     * write writes the state of the queue, so the session can be resumed later.
+     * Flashcards are written by identifier, since their session numbers change between sessions.
+     *
+     * Input: stream to write to.
+     * Output: no return value, writes to the stream.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        if (out == null) {
+            throw new NullPointerException("Cannot write session to null stream.");
+        }
+
+        out.writeInt(MAGIC);
+        out.writeInt(relearningSteps.length);
+        for (int step : relearningSteps) {
+            out.writeInt(step);
+        }
+        out.writeInt(size);
+        for (int position = 0; position < size; position++) {
+            int card = ring[(head + position) % ring.length];
+            out.writeLong(cards[card].id);
+            out.writeInt(lapses[card]);
+        }
+    }
+
+    /*
+     * read reads a queue written by write, matching the flashcards by identifier.
+     * Flashcards that no longer exist are left out of the resumed session.
+     *
+     * Input: stream to read from, and the flashcards that can be in the session.
+     * Output: the resumed session.
+     */
+    public static SessionQueue read(DataInputStream in, ArrayList<Flashcard> flashcards) throws IOException {
+        if (in == null || flashcards == null) {
+            throw new NullPointerException("Cannot read session with null parameters.");
+        }
+
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a saved study session.");
+        }
+        int stepCount = in.readInt();
+        if (stepCount <= 0) {
+            throw new IOException("Saved study session has no relearning steps.");
+        }
+        int[] steps = new int[stepCount];
+        for (int i = 0; i < stepCount; i++) {
+            steps[i] = in.readInt();
+        }
+
+        HashMap<Long, Flashcard> byId = new HashMap<>();
+        for (Flashcard flashcard : flashcards) {
+            byId.put(flashcard.id, flashcard);
+        }
+
+        int savedSize = in.readInt();
+        ArrayList<Flashcard> queued = new ArrayList<>();
+        ArrayList<Integer> queuedLapses = new ArrayList<>();
+        for (int i = 0; i < savedSize; i++) {
+            Flashcard flashcard = byId.get(in.readLong());
+            int lapseCount = in.readInt();
+            if (flashcard != null) {
+                queued.add(flashcard);
+                queuedLapses.add(lapseCount);
+            }
+        }
+
+        SessionQueue session;
+        try {
+            session = new SessionQueue(queued, steps);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Saved study session has invalid relearning steps.");
+        }
+        for (int card = 0; card < queued.size(); card++) {
+            session.lapses[card] = queuedLapses.get(card);
+        }
+        return session;
+    }
+
+    /*
+     * insert inserts a flashcard number at a position in the queue.
+     * Whichever side of the position is shorter is shifted, so inserting near the front is cheap.
+     *
+     * Input: flashcard number, position to insert it at.
+     * Output: no return value, modifies the queue.
+     */
+    private void insert(int card, int position) {
+        int length = ring.length;
+        if (position < size - position) {
+            head = (head - 1 + length) % length;
+            for (int i = 0; i < position; i++) {
+                ring[(head + i) % length] = ring[(head + i + 1) % length];
+            }
+        } else {
+            for (int i = size; i > position; i--) {
+                ring[(head + i) % length] = ring[(head + i - 1) % length];
+            }
+        }
+        ring[(head + position) % length] = card;
+        size++;
+    }
+
+    /*
+     * validateSteps checks that there is at least one relearning step, and none are negative.
+     *
+     * Input: relearning steps.
+     * Output: no return value.
+     */
+    static void validateSteps(int[] relearningSteps) {
+        if (relearningSteps.length == 0) {
+            throw new IllegalArgumentException("At least one relearning step is required.");
+        }
+        for (int step : relearningSteps) {
+            if (step < 0) {
+                throw new IllegalArgumentException("Relearning steps cannot be negative.");
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package arion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * StartupTimeline records when each phase of starting Arion finished, measured in nanoseconds from
+ * the moment the timeline was created, and the thread that finished it.
+ * Phases may be marked from any thread, so work done concurrently on background threads shows up
+ * alongside the phases of the main and event dispatch threads.
+ */
+
+public class StartupTimeline {
+    private long start = System.nanoTime();
+    private ArrayList<String> phases = new ArrayList<>();
+    private ArrayList<String> threads = new ArrayList<>();
+    private long[] times = new long[16];
+
+    /*
+     * mark records that a phase finished now.
+     *
+     * Input: name of the phase.
+     * Output: no return value, records the phase.
+     */
+    public synchronized void mark(String phase) {
+        if (phase == null) {
+            throw new NullPointerException("Cannot mark null startup phase.");
+        }
+        if (phases.size() == times.length) {
+            times = Arrays.copyOf(times, times.length * 2);
+        }
+        times[phases.size()] = System.nanoTime() - start;
+        phases.add(phase);
+        threads.add(Thread.currentThread().getName());
+    }
+
+    /*
+     * elapsed finds how long after the start of the timeline a phase finished.
+     * If the phase was marked more than once, the first mark is used.
+     *
+     * Input: name of the phase.
+     * Output: nanoseconds from the start to the phase, or -1 if it was not marked.
+     */
+    public synchronized long elapsed(String phase) {
+        int index = phases.indexOf(phase);
+        return index < 0 ? -1 : times[index];
+    }
+
+    /*
+     * summary lists the phases in the order they finished, with the time since the start and
+     * since the previous phase.
+     *
+     * Input: no input.
+     * Output: String with one line per phase, in milliseconds.
+     */
+    public synchronized String summary() {
+        StringBuilder builder = new StringBuilder("Startup timeline:\n");
+        long previous = 0;
+        for (int i = 0; i < phases.size(); i++) {
+            builder.append(String.format("%10.2f ms %+10.2f ms  %-24s [%s]%n",
+                    times[i] / 1e6, (times[i] - previous) / 1e6, phases.get(i), threads.get(i)));
+            previous = times[i];
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,211 @@
+package arion;
+
+import exception.*;
+
+import java.util.ArrayList;
+
+/*
+ * SyncRecord is the state of one flashcard exchanged when two replicas of a deck are synchronized:
+ * either its fields, tags, and modification time, or the time it was deleted.
+ *
+ * When two replicas disagree about a flashcard, the record modified most recently wins, so the latest
+ * edit, review, or deletion is kept. Records modified at the same time are ordered by their hash, so
+ * every replica picks the same winner.
+ */
+
+public class SyncRecord {
+    public final long id;
+    public final long modified;
+    public final boolean deleted;
+    public final String[] fields; // null for deletions
+    public final String[] tags; // empty for deletions
+
+    /*
+     * The constructor creates a record of a flashcard without tags, or of a deletion.
+     *
+     * Input: identifier of the flashcard, modification or deletion time, whether the flashcard was
+     * deleted, and its four fields, which are null for deletions.
+     * Output: new SyncRecord class.
+     */
+    public SyncRecord(long id, long modified, boolean deleted, String[] fields) {
+        this(id, modified, deleted, fields, Flashcard.NO_TAGS);
+    }
+
+    /*
+     * This constructor signature also takes the tags of the flashcard.
+     *
+     * Input: identifier of the flashcard, modification or deletion time, whether the flashcard was
+     * deleted, its four fields, which are null for deletions, and its sorted tags.
+     * Output: new SyncRecord class.
+     */
+    public SyncRecord(long id, long modified, boolean deleted, String[] fields, String[] tags) {
+        if (!deleted && (fields == null || fields.length != Flashcard.FIELD_COUNT)) {
+            throw new IllegalArgumentException("Sync record of a flashcard requires four fields.");
+        }
+        if (tags == null) {
+            throw new NullPointerException("Cannot construct sync record with null tags.");
+        }
+        this.id = id;
+        this.modified = modified;
+        this.deleted = deleted;
+        this.fields = deleted ? null : fields.clone();
+        this.tags = deleted || tags.length == 0 ? Flashcard.NO_TAGS : tags.clone();
+    }
+
+    /*
+     * of creates the record of a flashcard. The flashcard's stripe should be locked while it is read.
+     *
+     * Input: the flashcard.
+     * Output: its record.
+     */
+    public static SyncRecord of(Flashcard flashcard) {
+        if (flashcard == null) {
+            throw new NullPointerException("Cannot create sync record of null flashcard.");
+        }
+        return new SyncRecord(flashcard.id, flashcard.modified, false, flashcard.toStringArray(), flashcard.tags);
+    }
+
+    /*
+     * deletion creates the record of a deleted flashcard.
+     *
+     * Input: identifier of the flashcard, time it was deleted.
+     * Output: its record.
+     */
+    public static SyncRecord deletion(long id, long deleted) {
+        return new SyncRecord(id, deleted, true, null);
+    }
+
+    /*
+     * toFlashcard converts a record of a flashcard that is not deleted into a flashcard with the
+     * record's identifier and modification time.
+     *
+     * Input: parser to parse the fields with.
+     * Output: the flashcard.
+     */
+    public Flashcard toFlashcard(Flashcard.Parser parser) throws DateFormatException, IntervalFormatException {
+        if (deleted) {
+            throw new IllegalStateException("Cannot convert a deletion to a flashcard.");
+        }
+        Flashcard flashcard = parser.parse(fields);
+        flashcard.tags = tags;
+        flashcard.id = id;
+        flashcard.modified = modified;
+        return flashcard;
+    }
+
+    /*
+     * hash hashes the whole record, so two replicas holding the same record have the same hash.
+     *
+     * Input: no input.
+     * Output: 64 bit hash of the record.
+     */
+    public long hash() {
+        long h = mix(id) ^ mix(modified + 0x632BE59BD9B4E019L);
+        if (deleted) {
+            return mix(h ^ 0xD6E8FEB86659FD93L);
+        }
+        for (String field : fields) {
+            for (int i = 0; i < field.length(); i++) {
+                h = (h ^ field.charAt(i)) * 0x100000001B3L;
+            }
+            h = (h ^ 0x1F) * 0x100000001B3L; // separates the fields
+        }
+        // untagged records hash as they did before flashcards had tags
+        for (String tag : tags) {
+            for (int i = 0; i < tag.length(); i++) {
+                h = (h ^ tag.charAt(i)) * 0x100000001B3L;
+            }
+            h = (h ^ 0x1E) * 0x100000001B3L; // separates the tags
+        }
+        return mix(h);
+    }
+
+    /*
+     * winsOver checks whether this record should replace another record of the same flashcard.
+     *
+     * Input: other record of the same flashcard.
+     * Output: whether this record wins.
+     */
+    public boolean winsOver(SyncRecord other) {
+        if (other == null) {
+            throw new NullPointerException("Cannot compare with null sync record.");
+        }
+        if (modified != other.modified) {
+            return modified > other.modified;
+        }
+        return Long.compareUnsigned(hash(), other.hash()) > 0;
+    }
+
+    /*
+     * format appends the record to a text list of records: the identifier, time, and either
+     * "deleted" or "card" on one line, followed by the four fields of a flashcard on their own lines.
+     * The tags of a tagged flashcard follow "card" on the first line, separated by commas.
+     *
+     * Input: builder to append to.
+     * Output: no return value, modifies the builder.
+     */
+    public void format(StringBuilder builder) {
+        builder.append(id).append(' ').append(modified).append(' ').append(deleted ? "deleted" : "card");
+        if (tags.length > 0) {
+            builder.append(' ').append(String.join(",", tags));
+        }
+        builder.append('\n');
+        if (!deleted) {
+            for (String field : fields) {
+                builder.append(field).append('\n');
+            }
+        }
+    }
+
+    /*
+     * parseAll parses a text list of records written by format.
+     *
+     * Input: the text.
+     * Output: the records.
+     */
+    public static ArrayList<SyncRecord> parseAll(String text) {
+        if (text == null) {
+            throw new NullPointerException("Cannot parse null sync records.");
+        }
+        ArrayList<SyncRecord> records = new ArrayList<>();
+        String[] lines = text.split("\n", -1);
+        int line = 0;
+        while (line < lines.length && !lines[line].isEmpty()) {
+            String[] header = lines[line++].split(" ");
+            if (header.length != 3 && header.length != 4) {
+                throw new IllegalArgumentException("Invalid sync record header.");
+            }
+            long id = Long.parseLong(header[0]);
+            long modified = Long.parseLong(header[1]);
+            if (header[2].equals("deleted")) {
+                records.add(deletion(id, modified));
+                continue;
+            }
+            if (line + Flashcard.FIELD_COUNT > lines.length) {
+                throw new IllegalArgumentException("Sync record is missing fields.");
+            }
+            String[] fields = new String[Flashcard.FIELD_COUNT];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = lines[line++];
+            }
+            String[] tags = header.length == 4 ? Flashcard.parseTags(header[3]) : Flashcard.NO_TAGS;
+            records.add(new SyncRecord(id, modified, false, fields, tags));
+        }
+        return records;
+    }
+
+    /*
+     * mix finalizes a 64 bit hash so every input bit affects every output bit.
+     *
+     * Input: value to mix.
+     * Output: mixed value.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
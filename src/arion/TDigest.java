@@ -0,0 +1,265 @@
+package arion;
+
+import java.util.Arrays;
+
+/*
+ * TDigest summarizes a stream of numbers so their percentiles can be estimated, following Dunning's
+ * merging t-digest. The numbers are kept as centroids, each a mean and the number of values merged
+ * into it; centroids near the median may hold many values, while centroids near either end hold few,
+ * so the extreme percentiles stay accurate. The number of centroids is bounded by the compression,
+ * however many values are added.
+ *
+ * Values are first collected in a buffer, which is merged into the centroids when it fills up or a
+ * percentile is asked for. Two digests are merged by adding the centroids of one to the other, so
+ * digests of separate streams combine into a digest of both. Values cannot be removed.
+ * It is not thread-safe; its owner locks it.
+ */
+
+public class TDigest {
+    public final static double DEFAULT_COMPRESSION = 200;
+
+    private double compression;
+
+    // centroids, ordered by mean
+    private double[] means;
+    private double[] weights;
+    private int centroidCount = 0;
+
+    // values not merged into the centroids yet
+    private double[] bufferMeans;
+    private double[] bufferWeights;
+    private int bufferCount = 0;
+
+    private double totalWeight = 0;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /*
+     * The constructor creates an empty digest with the default compression.
+     *
+     * Input: no input.
+     * Output: new TDigest class.
+     */
+    public TDigest() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    /*
+     * This constructor signature creates an empty digest with the given compression; higher compressions
+     * keep more centroids and estimate percentiles more closely.
+     *
+     * Input: the compression, at least 10.
+     * Output: new TDigest class.
+     */
+    public TDigest(double compression) {
+        if (!(compression >= 10)) {
+            throw new IllegalArgumentException("Digest compression must be at least 10.");
+        }
+        this.compression = compression;
+        int capacity = (int) Math.ceil(compression) * 2;
+        means = new double[capacity];
+        weights = new double[capacity];
+        bufferMeans = new double[capacity * 4];
+        bufferWeights = new double[capacity * 4];
+    }
+
+    /*
+     * add adds a value to the digest.
+     *
+     * Input: the value.
+     * Output: no return value, modifies the digest.
+     */
+    public void add(double value) {
+        add(value, 1);
+    }
+
+    /*
+     * This add signature adds a value with a weight, as if it were added that many times.
+     *
+     * Input: the value, and its positive weight.
+     * Output: no return value, modifies the digest.
+     */
+    public void add(double value, double weight) {
+        if (Double.isNaN(value) || !(weight > 0)) {
+            throw new IllegalArgumentException("Cannot add a value that is not a number or has no weight.");
+        }
+        if (bufferCount == bufferMeans.length) {
+            compress();
+        }
+        bufferMeans[bufferCount] = value;
+        bufferWeights[bufferCount] = weight;
+        bufferCount++;
+        totalWeight += weight;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /*
+     * merge adds every value summarized by another digest to this one.
+     *
+     * Input: the other digest.
+     * Output: no return value, modifies this digest.
+     */
+    public void merge(TDigest other) {
+        if (other == null) {
+            throw new NullPointerException("Cannot merge null digest.");
+        }
+        other.compress();
+        for (int i = 0; i < other.centroidCount; i++) {
+            add(other.means[i], other.weights[i]);
+        }
+        if (other.centroidCount > 0) {
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+    }
+
+    /*
+     * count returns the number of values added.
+     *
+     * Input: no input.
+     * Output: total weight of the values.
+     */
+    public double count() {
+        return totalWeight;
+    }
+
+    /*
+     * quantile estimates the value below which a fraction of the values fall, interpolating between
+     * the means of neighbouring centroids.
+     *
+     * Input: the fraction, from 0 to 1.
+     * Output: the estimated value, or NaN if the digest is empty.
+     */
+    public double quantile(double fraction) {
+        if (fraction < 0 || fraction > 1) {
+            throw new IllegalArgumentException("Quantile fraction must be between 0 and 1.");
+        }
+        compress();
+        if (centroidCount == 0) {
+            return Double.NaN;
+        }
+        if (centroidCount == 1) {
+            return means[0];
+        }
+        double rank = fraction * totalWeight;
+        if (rank < weights[0] / 2) {
+            return min + (means[0] - min) * rank / (weights[0] / 2);
+        }
+        double seen = weights[0] / 2; // the values up to the middle of the current centroid
+        for (int i = 0; i < centroidCount - 1; i++) {
+            double span = (weights[i] + weights[i + 1]) / 2;
+            if (rank < seen + span) {
+                return means[i] + (means[i + 1] - means[i]) * (rank - seen) / span;
+            }
+            seen += span;
+        }
+        double last = weights[centroidCount - 1] / 2;
+        return means[centroidCount - 1] + (max - means[centroidCount - 1]) * Math.min(1, (rank - seen) / last);
+    }
+
+    /*
+     * centroidCount returns the number of centroids kept after merging the buffer.
+     *
+     * Input: no input.
+     * Output: number of centroids.
+     */
+    public int centroidCount() {
+        compress();
+        return centroidCount;
+    }
+
+    /*
+     * format appends every centroid, one per line, as its mean followed by its weight.
+     *
+     * Input: builder to append to.
+     * Output: no return value, modifies the builder.
+     */
+    public void format(StringBuilder builder) {
+        if (builder == null) {
+            throw new NullPointerException("Cannot format digest to null builder.");
+        }
+        compress();
+        for (int i = 0; i < centroidCount; i++) {
+            builder.append(means[i]).append(' ').append(weights[i]).append('\n');
+        }
+    }
+
+    /*
+     * compress merges the buffer into the centroids. The centroids and buffered values are sorted
+     * together, then each is merged into the one before it while the combined centroid stays within
+     * the size the scale function allows at its position.
+     *
+     * Input: no input.
+     * Output: no return value, modifies the digest.
+     */
+    private void compress() {
+        if (bufferCount == 0) {
+            return;
+        }
+        int total = centroidCount + bufferCount;
+        double[] allMeans = Arrays.copyOf(means, total);
+        double[] allWeights = Arrays.copyOf(weights, total);
+        System.arraycopy(bufferMeans, 0, allMeans, centroidCount, bufferCount);
+        System.arraycopy(bufferWeights, 0, allWeights, centroidCount, bufferCount);
+        bufferCount = 0;
+
+        Integer[] order = new Integer[total];
+        for (int i = 0; i < total; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (Integer a, Integer b) -> Double.compare(allMeans[a], allMeans[b]));
+
+        centroidCount = 0;
+        double mean = allMeans[order[0]];
+        double weight = allWeights[order[0]];
+        double before = 0; // weight of the centroids finished so far
+        double limit = totalWeight * limitAfter(0);
+        for (int i = 1; i < total; i++) {
+            double nextMean = allMeans[order[i]];
+            double nextWeight = allWeights[order[i]];
+            if (before + weight + nextWeight <= limit) {
+                weight += nextWeight;
+                mean += (nextMean - mean) * nextWeight / weight;
+            } else {
+                append(mean, weight);
+                before += weight;
+                limit = totalWeight * limitAfter(before / totalWeight);
+                mean = nextMean;
+                weight = nextWeight;
+            }
+        }
+        append(mean, weight);
+    }
+
+    /*
+     * append adds a centroid after the last one.
+     *
+     * Input: mean and weight of the centroid.
+     * Output: no return value, modifies the digest.
+     */
+    private void append(double mean, double weight) {
+        if (centroidCount == means.length) {
+            means = Arrays.copyOf(means, centroidCount * 2);
+            weights = Arrays.copyOf(weights, centroidCount * 2);
+        }
+        means[centroidCount] = mean;
+        weights[centroidCount] = weight;
+        centroidCount++;
+    }
+
+    /*
+     * limitAfter finds how far a centroid starting at a fraction of the values may extend, using the
+     * arcsine scale function, which allows one unit of scale per centroid.
+     *
+     * Input: fraction of the values before the centroid.
+     * Output: fraction of the values the centroid may extend to.
+     */
+    private double limitAfter(double fraction) {
+        double scale = compression / (2 * Math.PI) * Math.asin(2 * fraction - 1) + 1;
+        if (scale >= compression / 4) {
+            return 1;
+        }
+        return (Math.sin(scale * 2 * Math.PI / compression) + 1) / 2;
+    }
+}
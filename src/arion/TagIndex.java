@@ -0,0 +1,273 @@
+package arion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+
+/*
+ * TagIndex keeps a compressed bitmap of the flashcards holding each tag, so the flashcards matching
+ * a combination of tags are found with a few bitmap operations instead of a pass over the deck.
+ *
+ * Every flashcard of the deck is given a dense slot number, and each tag's bitmap holds the slots of
+ * its flashcards. A tag filter is a list of terms separated by spaces, all of which must match: a term
+ * is a tag, several tags separated by vertical bars, any of which may match, or either of those after
+ * a minus sign, which must not match. "chapter3 noun|verb -learned" matches the nouns and verbs of
+ * chapter 3 that are not tagged as learned. An empty filter matches every flashcard.
+ *
+ * Slots of deleted flashcards are reused, so the bitmaps stay as dense as the deck. Like the other
+ * DeckIndexes, it listens to the deck's changes and keeps itself up to date.
+ */
+
+public class TagIndex extends DeckIndex<String[]> {
+
+    // the tags of each slot, null for untagged slots, and every slot in use
+    private int[][] slotTags = new int[INITIAL_CAPACITY][];
+    private CompactBitmap everySlot = new CompactBitmap();
+
+    // tags, and the bitmap of the slots holding each tag
+    private HashMap<String, Integer> tagIds = new HashMap<>();
+    private ArrayList<String> tags = new ArrayList<>();
+    private ArrayList<CompactBitmap> bitmaps = new ArrayList<>();
+
+    /*
+     * The constructor indexes a deck, and keeps the index up to date as the deck changes.
+     *
+     * Input: the deck.
+     * Output: new TagIndex class.
+     */
+    public TagIndex(Deck deck) {
+        super(deck, "tag index");
+        indexDeck();
+    }
+
+    /*
+     * count counts the flashcards matching a tag filter.
+     *
+     * Input: the tag filter.
+     * Output: number of matching flashcards.
+     */
+    public synchronized int count(String filter) {
+        return select(filter).cardinality();
+    }
+
+    /*
+     * ids finds the flashcards matching a tag filter.
+     *
+     * Input: the tag filter.
+     * Output: identifiers of the matching flashcards, in no particular order.
+     */
+    public synchronized long[] ids(String filter) {
+        int[] slots = select(filter).toArray();
+        long[] ids = new long[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            ids[i] = slotIds[slots[i]];
+        }
+        return ids;
+    }
+
+    /*
+     * matches checks which of the given flashcards match a tag filter, such as the due flashcards
+     * of a study session limited to some tags. Flashcards that are not indexed do not match.
+     *
+     * Input: identifiers of the flashcards, and the tag filter.
+     * Output: whether each flashcard matches, in the same order.
+     */
+    public synchronized boolean[] matches(long[] ids, String filter) {
+        if (ids == null) {
+            throw new NullPointerException("Cannot match null identifiers.");
+        }
+        CompactBitmap selected = select(filter);
+        boolean[] matches = new boolean[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            int slot = slotOf.get(ids[i]);
+            matches[i] = slot != LongIntMap.MISSING && selected.contains(slot);
+        }
+        return matches;
+    }
+
+    /*
+     * tags lists every tag held by a flashcard of the deck.
+     *
+     * Input: no input.
+     * Output: the tags, sorted.
+     */
+    public synchronized String[] tags() {
+        ArrayList<String> held = new ArrayList<>();
+        for (int tag = 0; tag < tags.size(); tag++) {
+            if (bitmaps.get(tag).cardinality() > 0) {
+                held.add(tags.get(tag));
+            }
+        }
+        String[] sorted = held.toArray(new String[0]);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /*
+     * sizeInBytes estimates the memory taken by the bitmaps of the index.
+     *
+     * Input: no input.
+     * Output: number of bytes.
+     */
+    public synchronized long sizeInBytes() {
+        long bytes = everySlot.sizeInBytes();
+        for (CompactBitmap bitmap : bitmaps) {
+            bytes += bitmap.sizeInBytes();
+        }
+        return bytes;
+    }
+
+    /*
+     * size returns the number of indexed flashcards.
+     *
+     * Input: no input.
+     * Output: number of flashcards.
+     */
+    public synchronized int size() {
+        return slotOf.size();
+    }
+
+    /*
+     * select finds the slots matching a tag filter. Unknown tags match no flashcard.
+     * Bitmap operations do not modify their operands, so the bitmaps of the index are used as they are.
+     *
+     * Input: the tag filter.
+     * Output: bitmap of the matching slots, which must not be modified.
+     */
+    private CompactBitmap select(String filter) {
+        if (filter == null) {
+            throw new NullPointerException("Cannot select flashcards with null tag filter.");
+        }
+        CompactBitmap selected = null; // every slot, until a term narrows it
+        for (String term : filter.trim().split("\\s+")) {
+            boolean excluded = term.startsWith("-");
+            CompactBitmap any = null;
+            for (String tag : term.split("\\|")) {
+                String name = tag.replaceFirst("^-+", "").toLowerCase(Locale.ROOT);
+                if (name.isEmpty()) {
+                    continue;
+                }
+                Integer id = tagIds.get(name);
+                CompactBitmap tagged = id == null ? new CompactBitmap() : bitmaps.get(id);
+                any = any == null ? tagged : any.or(tagged);
+            }
+            if (any == null) {
+                continue;
+            }
+            if (excluded) {
+                selected = (selected == null ? everySlot : selected).andNot(any);
+            } else {
+                selected = selected == null ? any : selected.and(any);
+            }
+        }
+        return selected == null ? everySlot : selected;
+    }
+
+    /*
+     * read reads the tags of a flashcard. Tags are replaced rather than modified, so the array is
+     * not copied.
+     *
+     * Input: the flashcard.
+     * Output: its tags.
+     */
+    @Override
+    protected String[] read(Flashcard flashcard) {
+        return flashcard.tags;
+    }
+
+    /*
+     * update replaces the tags of a slot in place.
+     *
+     * Input: the slot, and its new tags.
+     * Output: true.
+     */
+    @Override
+    protected boolean update(int slot, String[] names) {
+        setTags(slot, names);
+        return true;
+    }
+
+    /*
+     * insert adds a slot to the bitmaps of its tags.
+     *
+     * Input: the slot, and its tags.
+     * Output: no return value, modifies the index.
+     */
+    @Override
+    protected void insert(int slot, String[] names) {
+        everySlot.add(slot);
+        setTags(slot, names);
+    }
+
+    /*
+     * unindex removes a slot from every bitmap.
+     *
+     * Input: the slot.
+     * Output: no return value, modifies the index.
+     */
+    @Override
+    protected void unindex(int slot) {
+        setTags(slot, Flashcard.NO_TAGS);
+        everySlot.remove(slot);
+    }
+
+    /*
+     * grow grows the tags of the slots.
+     *
+     * Input: the new number of slots.
+     * Output: no return value, modifies the index.
+     */
+    @Override
+    protected void grow(int capacity) {
+        slotTags = Arrays.copyOf(slotTags, capacity);
+    }
+
+    /*
+     * setTags replaces the tags of a slot.
+     *
+     * Input: the slot, and its new tags.
+     * Output: no return value, modifies the index.
+     */
+    private void setTags(int slot, String[] names) {
+        int[] old = slotTags[slot];
+        int[] updated = null;
+        if (names.length > 0) {
+            updated = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                updated[i] = tagId(names[i]);
+            }
+        }
+        if (Arrays.equals(old, updated)) {
+            return;
+        }
+        if (old != null) {
+            for (int tag : old) {
+                bitmaps.get(tag).remove(slot);
+            }
+        }
+        if (updated != null) {
+            for (int tag : updated) {
+                bitmaps.get(tag).add(slot);
+            }
+        }
+        slotTags[slot] = updated;
+    }
+
+    /*
+     * tagId finds the identifier of a tag, adding the tag if it is new.
+     *
+     * Input: the tag.
+     * Output: identifier of the tag.
+     */
+    private int tagId(String tag) {
+        Integer id = tagIds.get(tag);
+        if (id == null) {
+            id = tags.size();
+            tagIds.put(tag, id);
+            tags.add(tag);
+            bitmaps.add(new CompactBitmap());
+        }
+        return id;
+    }
+}
@@ -0,0 +1,174 @@
+package arion;
+
+import callback.ProgressCallback;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import javax.swing.SwingWorker;
+
+/*
+ * TaskRunner runs long operations, such as loading, saving, and sorting the deck, on a worker thread,
+ * so the window keeps responding while they run.
+ *
+ * Only one task runs at a time, so operations that would conflict, such as saving during a sort,
+ * cannot overlap; a task submitted while another is running is refused. Tasks report their progress
+ * through a progress callback, and progress is passed to a listener on the event dispatch thread,
+ * at most PROGRESS_STEPS times per task. Cancellation is cooperative: once a cancellable task is
+ * cancelled, its next progress report throws a CancellationException, and the task counts as running
+ * until it has actually stopped. Results are handed to the task's completion on the event dispatch
+ * thread, and unexpected exceptions are displayed to the user.
+ * Every method must be called on the event dispatch thread.
+ */
+
+public class TaskRunner {
+    private final static int PROGRESS_STEPS = 200;
+
+    /*
+     * Task is the work of a task, run on a worker thread.
+     */
+    public interface Task<T> {
+        public T run(ProgressCallback progress) throws Exception;
+    }
+
+    /*
+     * Completion receives the result of a task that finished, on the event dispatch thread.
+     */
+    public interface Completion<T> {
+        public void done(T result);
+    }
+
+    /*
+     * Listener is told when tasks start, progress, and finish, on the event dispatch thread.
+     * A total of 0 or less means the progress of the task is not known.
+     */
+    public interface Listener {
+        public void started(String name, boolean cancellable);
+        public void progressed(long done, long total);
+        public void finished(String name);
+    }
+
+    /*
+     * The Worker class runs one task.
+     */
+    private class Worker<T> extends SwingWorker<T, long[]> {
+        private String name;
+        private boolean cancellable;
+        private Task<T> task;
+        private Completion<T> completion;
+        private volatile boolean cancelRequested = false;
+        private long lastReported = Long.MIN_VALUE; // only used by the worker thread
+
+        private Worker(String name, boolean cancellable, Task<T> task, Completion<T> completion) {
+            this.name = name;
+            this.cancellable = cancellable;
+            this.task = task;
+            this.completion = completion;
+        }
+
+        @Override
+        protected T doInBackground() throws Exception {
+            return task.run((long done, long total) -> {
+                if (cancellable && cancelRequested) {
+                    throw new CancellationException(name + " was cancelled.");
+                }
+                // report the first and last progress, and otherwise only steps of the total
+                boolean step = total > 0 && (done - lastReported) * PROGRESS_STEPS >= total;
+                if (lastReported == Long.MIN_VALUE || (total > 0 && done >= total) || step) {
+                    lastReported = done;
+                    publish(new long[] { done, total });
+                }
+            });
+        }
+
+        @Override
+        protected void process(List<long[]> reports) {
+            if (runningOption.orElse(null) != this) {
+                return; // reports delivered after the task finished
+            }
+            long[] latest = reports.get(reports.size() - 1);
+            listener.progressed(latest[0], latest[1]);
+        }
+
+        @Override
+        protected void done() {
+            runningOption = Optional.empty();
+            listener.finished(name);
+
+            T result;
+            try {
+                result = get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof CancellationException) {
+                    return;
+                }
+                Arion.displayException(name + " failed.", cause instanceof Exception ? (Exception) cause : e);
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            completion.done(result);
+        }
+    }
+
+    private Listener listener;
+    private Optional<Worker<?>> runningOption = Optional.empty();
+
+    /*
+     * The constructor creates a runner with no running task.
+     *
+     * Input: listener told about the tasks.
+     * Output: new TaskRunner class.
+     */
+    public TaskRunner(Listener listener) {
+        if (listener == null) {
+            throw new NullPointerException("Cannot construct task runner with null listener.");
+        }
+        this.listener = listener;
+    }
+
+    /*
+     * submit starts a task on a worker thread, unless another task is running.
+     *
+     * Input: name of the task shown to the user, whether it may be cancelled, the task, and the
+     * completion to run with its result.
+     * Output: whether the task was started.
+     */
+    public <T> boolean submit(String name, boolean cancellable, Task<T> task, Completion<T> completion) {
+        if (name == null || task == null || completion == null) {
+            throw new NullPointerException("Cannot submit task with null parameters.");
+        }
+        if (runningOption.isPresent()) {
+            return false;
+        }
+
+        Worker<T> worker = new Worker<>(name, cancellable, task, completion);
+        runningOption = Optional.of(worker);
+        listener.started(name, cancellable);
+        worker.execute();
+        return true;
+    }
+
+    /*
+     * running returns the name of the running task.
+     *
+     * Input: no input.
+     * Output: optionally the name of the running task.
+     */
+    public Optional<String> running() {
+        return runningOption.map((Worker<?> worker) -> worker.name);
+    }
+
+    /*
+     * cancel asks the running task to stop, if it may be cancelled.
+     *
+     * Input: no input.
+     * Output: no return value.
+     */
+    public void cancel() {
+        runningOption.ifPresent((Worker<?> worker) -> worker.cancelRequested = true);
+    }
+}
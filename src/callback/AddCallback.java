@@ -1,5 +1,5 @@
 package callback;
 
 public interface AddCallback {
-    public void run(String[] fields);
+    public void run(String[] fields, boolean merge);
 }
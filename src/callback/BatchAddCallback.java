@@ -0,0 +1,5 @@
+package callback;
+
+public interface BatchAddCallback {
+    public void run(String[][] fieldsList, boolean merge);
+}
@@ -0,0 +1,5 @@
+package callback;
+
+public interface BatchEditCallback {
+    public void run(long[] ids, String[][] fieldsList);
+}
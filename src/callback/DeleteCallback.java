@@ -1,5 +1,5 @@
 package callback;
 
 public interface DeleteCallback {
-    public void run(int[] indices);
+    public void run(long[] ids);
 }
@@ -0,0 +1,12 @@
+package callback;
+
+/*
+ * ProgressCallback is told how far a long operation has come.
+ * It may throw java.util.concurrent.CancellationException to stop the operation, which is only
+ * done where stopping leaves the deck and its files as they were.
+ */
+public interface ProgressCallback {
+    public final static ProgressCallback NONE = (long done, long total) -> {};
+
+    public void run(long done, long total);
+}
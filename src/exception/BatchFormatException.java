@@ -0,0 +1,16 @@
+package exception;
+
+public class BatchFormatException extends Exception {
+    private final static long serialVersionUID = 1L;
+
+    public final int[] rows;
+
+    public BatchFormatException(int[] rows) {
+        this.rows = rows;
+    }
+
+    public BatchFormatException(int[] rows, String message) {
+        super(message);
+        this.rows = rows;
+    }
+}
@@ -0,0 +1,16 @@
+package exception;
+
+public class QueryFormatException extends Exception {
+    private final static long serialVersionUID = 1L;
+
+    public final int position; // character of the query where the error was found
+
+    public QueryFormatException(int position) {
+        this.position = position;
+    }
+
+    public QueryFormatException(int position, String message) {
+        super(message);
+        this.position = position;
+    }
+}
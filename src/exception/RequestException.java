@@ -0,0 +1,16 @@
+package exception;
+
+public class RequestException extends Exception {
+    private final static long serialVersionUID = 1L;
+
+    public final int status;
+
+    public RequestException(int status) {
+        this.status = status;
+    }
+
+    public RequestException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+}
@@ -0,0 +1,241 @@
+package server;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * LoadTest simulates many learners studying one deck on a StudyServer running on this machine.
+ * Each learner runs on its own thread: it starts a session and reviews until the session is finished,
+ * then starts another, adding a flashcard whenever nothing is due.
+ * At the end, the request throughput and the latency percentiles are printed.
+ */
+
+public class LoadTest {
+    private final static double SUCCESS_RATE = 0.3;
+
+    private HttpClient client;
+    private String deckUrl;
+    private int seconds;
+    private long deadline;
+
+    private AtomicLong errors = new AtomicLong();
+
+    /*
+     * Latencies is a growable array of request latencies, owned by one learner.
+     */
+    private static class Latencies {
+        long[] samples = new long[1024];
+        int count = 0;
+
+        void add(long nanos) {
+            if (count == samples.length) {
+                samples = Arrays.copyOf(samples, count * 2);
+            }
+            samples[count++] = nanos;
+        }
+    }
+
+    /*
+     * The constructor prepares a load test against a deck.
+     *
+     * Input: port of the server, name of the deck, duration of the test in seconds.
+     * Output: new LoadTest class.
+     */
+    public LoadTest(int port, String deck, int seconds) {
+        if (deck == null) {
+            throw new NullPointerException("Cannot construct load test with null deck.");
+        }
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        deckUrl = "http://localhost:" + port + "/decks/" + deck;
+        this.seconds = seconds;
+    }
+
+    /*
+     * run creates the deck if it does not exist, then runs the learners until the test's duration has
+     * passed, then prints the results.
+     *
+     * Input: number of learners, number of flashcards to add before starting.
+     * Output: no return value, prints the results.
+     */
+    public void run(int learners, int flashcards) throws IOException, InterruptedException {
+        send(HttpRequest.newBuilder(URI.create(deckUrl)).PUT(HttpRequest.BodyPublishers.noBody()), new Latencies());
+        for (int i = 0; i < flashcards; i++) {
+            addFlashcard(new Latencies());
+        }
+
+        long start = System.nanoTime();
+        deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+        ExecutorService executor = newLearnerExecutor();
+        Future<?>[] futures = new Future<?>[learners];
+        Latencies[] latencies = new Latencies[learners];
+        for (int learner = 0; learner < learners; learner++) {
+            Latencies learnerLatencies = new Latencies();
+            latencies[learner] = learnerLatencies;
+            futures[learner] = executor.submit(() -> study(learnerLatencies));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                errors.incrementAndGet();
+                e.getCause().printStackTrace();
+            }
+        }
+        executor.shutdown();
+        long elapsed = System.nanoTime() - start;
+
+        int total = 0;
+        for (Latencies learnerLatencies : latencies) {
+            total += learnerLatencies.count;
+        }
+        long[] sorted = new long[total];
+        int offset = 0;
+        for (Latencies learnerLatencies : latencies) {
+            System.arraycopy(learnerLatencies.samples, 0, sorted, offset, learnerLatencies.count);
+            offset += learnerLatencies.count;
+        }
+        Arrays.sort(sorted);
+
+        System.out.printf("%d learners, %d requests in %.1f s (%.0f requests/s), %d errors%n",
+                learners, total, elapsed / 1e9, total / (elapsed / 1e9), errors.get());
+        if (total > 0) {
+            System.out.printf("latency p50 %.2f ms, p95 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms%n",
+                    percentile(sorted, 0.5), percentile(sorted, 0.95), percentile(sorted, 0.99),
+                    percentile(sorted, 0.999), sorted[total - 1] / 1e6);
+        }
+    }
+
+    /*
+     * study is one learner's loop: study sessions until the deadline.
+     *
+     * Input: the learner's latencies.
+     * Output: no return value, records latencies.
+     */
+    private void study(Latencies latencies) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+            while (System.nanoTime() < deadline) {
+                String[] session = send(HttpRequest.newBuilder(URI.create(deckUrl + "/sessions"))
+                        .POST(HttpRequest.BodyPublishers.noBody()), latencies);
+                if (session == null) {
+                    continue;
+                }
+                String sessionUrl = deckUrl + "/sessions/" + session[0];
+                if (session[1].equals("0")) {
+                    addFlashcard(latencies);
+                    continue;
+                }
+
+                String[] card = Arrays.copyOfRange(session, 1, session.length);
+                while (card != null && !card[0].equals("0") && System.nanoTime() < deadline) {
+                    boolean success = random.nextDouble() < SUCCESS_RATE;
+                    card = send(HttpRequest.newBuilder(URI.create(sessionUrl + "/review"))
+                            .POST(form("success=" + success + "&id=" + card[1])), latencies);
+                }
+                send(HttpRequest.newBuilder(URI.create(sessionUrl)).DELETE(), latencies);
+            }
+        } catch (IOException e) {
+            errors.incrementAndGet();
+            System.err.println("Learner stopped: " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * addFlashcard adds a flashcard with a random front and back to the deck.
+     *
+     * Input: latencies to record the request in.
+     * Output: no return value.
+     */
+    private void addFlashcard(Latencies latencies) throws IOException, InterruptedException {
+        long suffix = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+        send(HttpRequest.newBuilder(URI.create(deckUrl + "/flashcards"))
+                .POST(form("front=" + URLEncoder.encode("front " + suffix, StandardCharsets.UTF_8)
+                        + "&back=" + URLEncoder.encode("back " + suffix, StandardCharsets.UTF_8))), latencies);
+    }
+
+    /*
+     * send sends a request and records its latency.
+     * Responses other than 200 are counted as errors; 409 is expected when learners race, so it is not printed.
+     *
+     * Input: request to send, latencies to record the request in.
+     * Output: lines of the response, or null if the request failed.
+     */
+    private String[] send(HttpRequest.Builder request, Latencies latencies) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        HttpResponse<String> response = client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        latencies.add(System.nanoTime() - start);
+
+        if (response.statusCode() != 200) {
+            errors.incrementAndGet();
+            if (response.statusCode() != 409) {
+                System.err.println(response.statusCode() + " " + response.body().trim());
+            }
+            return null;
+        }
+        return response.body().split("\n");
+    }
+
+    /*
+     * form creates a URL encoded form body.
+     *
+     * Input: the encoded form.
+     * Output: body publisher of the form.
+     */
+    private static HttpRequest.BodyPublisher form(String encoded) {
+        return HttpRequest.BodyPublishers.ofString(encoded);
+    }
+
+    /*
+     * percentile finds a percentile of sorted latencies.
+     *
+     * Input: sorted latencies in nanoseconds, fraction of the percentile.
+     * Output: the percentile in milliseconds.
+     */
+    private static double percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))] / 1e6;
+    }
+
+    /*
+     * newLearnerExecutor creates the executor learners run on.
+     * Every learner needs its own thread, so without virtual threads a cached pool is used.
+     *
+     * Input: no input.
+     * Output: executor that runs each learner on its own thread.
+     */
+    private static ExecutorService newLearnerExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /*
+     * main runs a load test against a study server on this machine.
+     *
+     * Input: command line arguments: optionally the port, the number of learners, the duration in seconds,
+     * and the number of flashcards to add first.
+     * Output: no output.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : StudyServer.DEFAULT_PORT;
+        int learners = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int flashcards = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+
+        String deck = "loadtest-" + System.currentTimeMillis();
+        new LoadTest(port, deck, seconds).run(learners, flashcards);
+    }
+}
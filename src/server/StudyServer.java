@@ -0,0 +1,696 @@
+package server;
+
+import arion.*;
+import exception.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * StudyServer serves decks to many learners over HTTP, so one JVM can replace one Arion window per learner.
+ * Each deck is a subdirectory of the server's directory, opened with ArionCore the first time it is requested.
+ * Requests for a deck that does not exist are refused, so only an explicit PUT creates a deck directory.
+ * Every learner gets their own study session; sessions idle for longer than SESSION_IDLE_MILLIS are dropped.
+ *
+ * Requests are handled on a virtual thread each when the JVM supports them, and on a bounded pool of
+ * platform threads otherwise. Handlers only hold the deck's per-flashcard stripe locks, so learners
+ * reviewing different flashcards do not wait for each other.
+ *
+ * Request bodies are URL encoded forms, and responses are plain text with one field per line:
+ *   PUT    /decks/{deck}                           create the deck if it does not exist
+ *   POST   /decks/{deck}/sessions                  start a session; responds with its token, then as GET
+ *   GET    /decks/{deck}/sessions/{token}          remaining count, then the current id, front, and back
+ *   POST   /decks/{deck}/sessions/{token}/review   success=true|false[&id=...]; responds as GET
+ *   DELETE /decks/{deck}/sessions/{token}          end a session
+ *   GET    /decks/{deck}/flashcards                flashcard count, then id, front, back, date, interval of each
+ *   POST   /decks/{deck}/flashcards                front=...&back=...; responds with the new id
+ *   PUT    /decks/{deck}/flashcards/{id}           front=...&back=...&date=...&interval=...
+ *   DELETE /decks/{deck}/flashcards/{id}           delete a flashcard
+ *   POST   /decks/{deck}/sort                      field=FRONT|BACK|DATE|INTERVAL&reversed=true|false
+ *   POST   /decks/{deck}/save                      write the deck to its database
+ *   POST   /decks/{deck}/sync/hashes               level=...&nodes=1,2,...; hash of each digest node
+ *   POST   /decks/{deck}/sync/records              leaves=1,2,...; the sync records in the digest leaves
+ *   POST   /decks/{deck}/sync/apply                records=...; apply records that won a synchronization
+ */
+
+public class StudyServer {
+    public final static int DEFAULT_PORT = 8040;
+
+    private final static long SESSION_IDLE_MILLIS = 30 * 60 * 1000;
+    private final static long SWEEP_PERIOD_MILLIS = 60 * 1000;
+    private final static int CONNECTION_BACKLOG = 4096;
+    private final static int MAX_IDLE_CONNECTIONS = 16384;
+
+    private String directory;
+    private HttpServer server;
+    private ExecutorService executor;
+    private ScheduledExecutorService sweeper;
+
+    // decks that are open or being opened; each is opened once, by the first request for it
+    private ConcurrentHashMap<String, CompletableFuture<ArionCore>> decks = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, LearnerSession> sessions = new ConcurrentHashMap<>();
+
+    static {
+        // responses are written as headers then body; without this, Nagle's algorithm delays the body
+        // until the client's delayed acknowledgement, adding about 40 ms to every request
+        setDefaultProperty("sun.net.httpserver.nodelay", "true");
+
+        // by default, connections beyond the 200th idle one are closed after each response, so with
+        // thousands of learners most requests would pay for a new connection
+        setDefaultProperty("sun.net.httpserver.maxIdleConnections", String.valueOf(MAX_IDLE_CONNECTIONS));
+    }
+
+    /*
+     * LearnerSession is one learner's study session over a deck.
+     * Requests for the same session are serialized by the session's lock. It is a ReentrantLock rather
+     * than a monitor, since a virtual thread blocked inside a monitor pins its carrier thread, and a
+     * review waits for the review writer while holding the lock.
+     */
+    private static class LearnerSession {
+        final ArionCore core;
+        final SessionQueue queue;
+        final ReentrantLock lock = new ReentrantLock();
+        volatile long lastUsed = System.currentTimeMillis();
+
+        LearnerSession(ArionCore core, SessionQueue queue) {
+            this.core = core;
+            this.queue = queue;
+        }
+    }
+
+    /*
+     * The constructor binds the server to a port. Requests are not handled until start is called.
+     *
+     * Input: directory holding the decks, port to listen on.
+     * Output: new StudyServer class.
+     */
+    public StudyServer(String directory, int port) throws IOException {
+        if (directory == null) {
+            throw new NullPointerException("Cannot construct server with null directory.");
+        }
+        this.directory = directory;
+
+        server = HttpServer.create(new InetSocketAddress(port), CONNECTION_BACKLOG);
+        executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/decks/", (HttpExchange exchange) -> handle(exchange));
+
+        sweeper = Executors.newSingleThreadScheduledExecutor((Runnable task) -> {
+            Thread thread = new Thread(task, "session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /*
+     * start starts handling requests.
+     *
+     * Input: no input.
+     * Output: no return value.
+     */
+    public void start() {
+        sweeper.scheduleAtFixedRate(() -> sweepSessions(),
+                SWEEP_PERIOD_MILLIS, SWEEP_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        server.start();
+    }
+
+    /*
+     * getPort returns the port the server listens on.
+     *
+     * Input: no input.
+     * Output: port number.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /*
+     * stop stops handling requests, then saves and closes every open deck.
+     *
+     * Input: no input.
+     * Output: no return value, writes the decks to their databases.
+     */
+    public void stop() {
+        server.stop(1);
+        sweeper.shutdownNow();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (Map.Entry<String, CompletableFuture<ArionCore>> entry : decks.entrySet()) {
+            CompletableFuture<ArionCore> opened = entry.getValue();
+            if (!opened.isDone() || opened.isCompletedExceptionally()) {
+                continue;
+            }
+            try {
+                opened.join().save();
+                opened.join().close();
+            } catch (IOException | DatabaseWriteException e) {
+                System.err.println("Could not save deck " + entry.getKey() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /*
+     * newRequestExecutor creates the executor requests are handled on.
+     * Virtual threads are used when the JVM provides them (Java 21 and later); they are looked up
+     * reflectively so Arion still builds and runs on Java 17, where a bounded pool is used instead.
+     *
+     * Input: no input.
+     * Output: executor that runs each task on its own thread, or on a pool of threads.
+     */
+    public static ExecutorService newRequestExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            int threads = Math.max(16, Runtime.getRuntime().availableProcessors() * 8);
+            return Executors.newFixedThreadPool(threads);
+        }
+    }
+
+    /*
+     * handle routes a request to the method handling it, and sends the response.
+     *
+     * Input: the exchange of the request.
+     * Output: no return value, responds to the request.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            // the body is always read, since the server closes connections whose request body is left unread
+            HashMap<String, String> form = readForm(exchange);
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            String method = exchange.getRequestMethod();
+            if (path.length < 3 || !path[1].equals("decks")) {
+                throw new RequestException(404);
+            }
+            if (path.length == 3) {
+                if (!method.equals("PUT")) {
+                    throw new RequestException(404);
+                }
+                openDeck(path[2], true);
+                respond(exchange, 200, "");
+                return;
+            }
+            ArionCore core = openDeck(path[2], false);
+
+            String response;
+            switch (path[3] + "/" + path.length + "/" + method) {
+                case "sessions/4/POST":
+                    response = startSession(core);
+                    break;
+                case "sessions/5/GET":
+                    response = describeSession(findSession(path[4], core));
+                    break;
+                case "sessions/5/DELETE":
+                    findSession(path[4], core);
+                    sessions.remove(path[4]);
+                    response = "";
+                    break;
+                case "sessions/6/POST":
+                    if (!path[5].equals("review")) {
+                        throw new RequestException(404);
+                    }
+                    response = review(findSession(path[4], core), form);
+                    break;
+                case "flashcards/4/GET":
+                    response = listFlashcards(core);
+                    break;
+                case "flashcards/4/POST":
+                    response = addFlashcard(core, form);
+                    break;
+                case "flashcards/5/PUT":
+                    response = editFlashcard(core, parseId(path[4]), form);
+                    break;
+                case "flashcards/5/DELETE":
+                    if (core.deleteFlashcardsById(new long[] { parseId(path[4]) }) == 0) {
+                        throw new RequestException(404, "No flashcard " + path[4]);
+                    }
+                    response = "";
+                    break;
+                case "sort/4/POST":
+                    response = sortFlashcards(core, form);
+                    break;
+                case "save/4/POST":
+                    core.save();
+                    response = "";
+                    break;
+                case "sync/5/POST":
+                    response = sync(core, path[4], form);
+                    break;
+                default:
+                    throw new RequestException(404);
+            }
+            respond(exchange, 200, response);
+        } catch (RequestException e) {
+            respond(exchange, e.status, e.getMessage() == null ? "" : e.getMessage() + "\n");
+        } catch (DatabaseFormatException | DatabaseWriteException | IOException e) {
+            respond(exchange, 500, "Deck error: " + e.getMessage() + "\n");
+        } catch (RuntimeException e) {
+            System.err.println("Could not handle " + exchange.getRequestMethod() + " "
+                    + exchange.getRequestURI().getPath() + ": " + e);
+            respond(exchange, 500, "Internal error\n");
+        }
+    }
+
+    /*
+     * openDeck finds the open deck with the given name, opening it if it is not open yet.
+     * Each deck is opened under its own future, so opening one large deck does not hold up requests
+     * for other decks, and concurrent first requests for the same deck wait for one open.
+     *
+     * Input: name of the deck, and whether to create it if it does not exist; a deck created without
+     * a database starts empty.
+     * Output: the deck's core.
+     */
+    private ArionCore openDeck(String name, boolean create)
+            throws RequestException, IOException, DatabaseFormatException {
+        if (!name.matches("[A-Za-z0-9_-]{1,64}")) {
+            throw new RequestException(400, "Invalid deck name.");
+        }
+        CompletableFuture<ArionCore> opened = decks.get(name);
+        if (opened == null) {
+            File deckDirectory = new File(directory, name);
+            if (!create && !deckDirectory.isDirectory()) {
+                throw new RequestException(404, "No deck " + name);
+            }
+            CompletableFuture<ArionCore> opening = new CompletableFuture<>();
+            opened = decks.putIfAbsent(name, opening);
+            if (opened == null) {
+                opened = opening;
+                try {
+                    opening.complete(loadDeck(deckDirectory));
+                } catch (IOException | DatabaseFormatException | RuntimeException e) {
+                    decks.remove(name, opening); // the next request tries again
+                    opening.completeExceptionally(e);
+                }
+            }
+        }
+
+        try {
+            return opened.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof DatabaseFormatException) {
+                throw (DatabaseFormatException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /*
+     * loadDeck opens a deck and reads its database, creating its directory if needed.
+     * A deck without a database starts empty.
+     *
+     * Input: directory of the deck.
+     * Output: the deck's core.
+     */
+    private static ArionCore loadDeck(File deckDirectory) throws IOException, DatabaseFormatException {
+        if (!deckDirectory.isDirectory() && !deckDirectory.mkdirs()) {
+            throw new IOException("Could not create " + deckDirectory.getPath());
+        }
+        ArionCore core = new ArionCore(deckDirectory.getPath());
+        try {
+            core.load();
+        } catch (DatabaseReadException e) {
+            // new deck; it is created by the first save
+        }
+        return core;
+    }
+
+    /*
+     * startSession starts a learner's study session over the due flashcards.
+     *
+     * Input: deck to study.
+     * Output: response holding the session token, then the session.
+     */
+    private String startSession(ArionCore core) {
+        LearnerSession session = new LearnerSession(core, core.createSession());
+        String token = UUID.randomUUID().toString();
+        sessions.put(token, session);
+        return token + "\n" + describeSession(session);
+    }
+
+    /*
+     * findSession finds a learner's session, and marks it as used.
+     *
+     * Input: session token, deck the session must belong to.
+     * Output: the session.
+     */
+    private LearnerSession findSession(String token, ArionCore core) throws RequestException {
+        LearnerSession session = sessions.get(token);
+        if (session == null || session.core != core) {
+            throw new RequestException(404, "No session " + token);
+        }
+        session.lastUsed = System.currentTimeMillis();
+        return session;
+    }
+
+    /*
+     * describeSession describes the flashcard a learner is studying.
+     * Flashcards deleted since the session started are skipped.
+     *
+     * Input: the session.
+     * Output: response holding the number of flashcards left, then the current flashcard's id, front, and back.
+     */
+    private String describeSession(LearnerSession session) {
+        session.lock.lock();
+        try {
+            SessionQueue queue = session.queue;
+            String[] fields = new String[2];
+            while (!queue.isEmpty()) {
+                // read under the flashcard's stripe, so a concurrent edit is seen whole or not at all
+                boolean present = session.core.getDeck().read(queue.current().id, (Flashcard flashcard) -> {
+                    fields[0] = flashcard.front;
+                    fields[1] = flashcard.back;
+                });
+                if (present) {
+                    return queue.size() + "\n" + queue.current().id + "\n" + fields[0] + "\n" + fields[1] + "\n";
+                }
+                queue.review(true);
+            }
+            return "0\n";
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    /*
+     * review reviews the flashcard a learner is studying.
+     * If the request names a flashcard that is not the current one, the review is rejected, so
+     * a retried request cannot review the next flashcard by mistake.
+     *
+     * Input: the session, form holding success and optionally id.
+     * Output: response describing the session after the review.
+     */
+    private String review(LearnerSession session, HashMap<String, String> form)
+            throws RequestException, IOException {
+        boolean success = parseBoolean(requireField(form, "success"));
+        session.lock.lock();
+        try {
+            describeSession(session); // skips deleted flashcards
+            if (session.queue.isEmpty()) {
+                throw new RequestException(409, "Session is finished.");
+            }
+            Flashcard flashcard = session.queue.current();
+            if (form.containsKey("id") && parseId(form.get("id")) != flashcard.id) {
+                throw new RequestException(409, "Flashcard " + form.get("id") + " is not being studied.");
+            }
+            // the queue only moves on once the review is recorded, so a failed review can be retried
+            session.core.review(flashcard.id, success);
+            session.queue.review(success);
+            return describeSession(session);
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    /*
+     * listFlashcards lists every flashcard in a deck.
+     *
+     * Input: the deck.
+     * Output: response holding the flashcard count, then the id and fields of each flashcard.
+     */
+    private String listFlashcards(ArionCore core) {
+        ArrayList<Flashcard> snapshot = core.getDeck().snapshot();
+        StringBuilder response = new StringBuilder();
+        response.append(snapshot.size()).append("\n");
+        String[][] fields = new String[1][];
+        for (Flashcard flashcard : snapshot) {
+            if (!core.getDeck().read(flashcard.id, (Flashcard locked) -> fields[0] = locked.toStringArray())) {
+                fields[0] = flashcard.toStringArray(); // deleted after the snapshot
+            }
+            response.append(flashcard.id).append("\n");
+            for (String field : fields[0]) {
+                response.append(field).append("\n");
+            }
+        }
+        return response.toString();
+    }
+
+    /*
+     * addFlashcard adds a flashcard to a deck.
+     *
+     * Input: the deck, form holding front and back.
+     * Output: response holding the new flashcard's id.
+     */
+    private String addFlashcard(ArionCore core, HashMap<String, String> form) throws RequestException {
+        String[] fields = new String[] { requireField(form, "front"), requireField(form, "back") };
+        try {
+            return core.addFlashcard(fields).id + "\n";
+        } catch (DateFormatException | IntervalFormatException e) {
+            throw new RequestException(400, e.getMessage());
+        }
+    }
+
+    /*
+     * editFlashcard replaces the fields of a flashcard.
+     *
+     * Input: the deck, flashcard id, form holding front, back, date, and interval.
+     * Output: empty response.
+     */
+    private String editFlashcard(ArionCore core, long id, HashMap<String, String> form) throws RequestException {
+        String[] fields = new String[] {
+                requireField(form, "front"),
+                requireField(form, "back"),
+                requireField(form, "date"),
+                requireField(form, "interval"),
+        };
+        try {
+            if (!core.editFlashcardById(id, fields)) {
+                throw new RequestException(404, "No flashcard " + id);
+            }
+        } catch (DateFormatException e) {
+            throw new RequestException(400, "Incorrectly formatted review date.");
+        } catch (IntervalFormatException e) {
+            throw new RequestException(400, "Incorrectly formatted review interval.");
+        }
+        return "";
+    }
+
+    /*
+     * sortFlashcards sorts a deck.
+     *
+     * Input: the deck, form holding field and optionally reversed.
+     * Output: empty response.
+     */
+    private String sortFlashcards(ArionCore core, HashMap<String, String> form) throws RequestException {
+        Flashcard.Field field;
+        try {
+            field = Flashcard.Field.valueOf(requireField(form, "field"));
+        } catch (IllegalArgumentException e) {
+            throw new RequestException(400, "Unknown field " + form.get("field"));
+        }
+        boolean reversed = form.containsKey("reversed") && parseBoolean(form.get("reversed"));
+        core.sortFlashcards(field, reversed);
+        return "";
+    }
+
+    /*
+     * sync serves one step of a synchronization with a replica of the deck elsewhere.
+     *
+     * Input: the deck, name of the step, form of the step.
+     * Output: response holding the hashes or records asked for, or empty once records are applied.
+     */
+    private String sync(ArionCore core, String step, HashMap<String, String> form)
+            throws RequestException, DatabaseFormatException {
+        StringBuilder response = new StringBuilder();
+        try {
+            switch (step) {
+                case "hashes":
+                    int level = Integer.parseInt(requireField(form, "level"));
+                    for (long hash : core.getDigest().hashes(level, parseIndices(requireField(form, "nodes")))) {
+                        response.append(hash).append("\n");
+                    }
+                    break;
+                case "records":
+                    for (SyncRecord record : core.getDigest().records(parseIndices(requireField(form, "leaves")))) {
+                        record.format(response);
+                    }
+                    break;
+                case "apply":
+                    String records = form.get("records");
+                    if (records == null) {
+                        throw new RequestException(400, "Missing records");
+                    }
+                    core.applySyncRecords(SyncRecord.parseAll(records));
+                    break;
+                default:
+                    throw new RequestException(404);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new RequestException(400, "Invalid sync request: " + e.getMessage());
+        }
+        return response.toString();
+    }
+
+    /*
+     * sweepSessions drops sessions that have been idle for too long.
+     *
+     * Input: no input.
+     * Output: no return value, modifies the sessions.
+     */
+    private void sweepSessions() {
+        long cutoff = System.currentTimeMillis() - SESSION_IDLE_MILLIS;
+        sessions.values().removeIf((LearnerSession session) -> session.lastUsed < cutoff);
+    }
+
+    /*
+     * readForm reads a URL encoded form from a request body.
+     *
+     * Input: the exchange of the request.
+     * Output: map from each form field to its value.
+     */
+    private static HashMap<String, String> readForm(HttpExchange exchange) throws IOException {
+        String body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        HashMap<String, String> form = new HashMap<>();
+        for (String pair : body.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int separator = pair.indexOf('=');
+            String key = separator < 0 ? pair : pair.substring(0, separator);
+            String value = separator < 0 ? "" : pair.substring(separator + 1);
+            form.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return form;
+    }
+
+    /*
+     * requireField returns a form field, which must be present and fit on one line.
+     *
+     * Input: the form, name of the field.
+     * Output: value of the field.
+     */
+    private static String requireField(HashMap<String, String> form, String name) throws RequestException {
+        String value = form.get(name);
+        if (value == null) {
+            throw new RequestException(400, "Missing " + name);
+        }
+        if (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            throw new RequestException(400, name + " cannot contain line breaks.");
+        }
+        return value;
+    }
+
+    /*
+     * parseId parses a flashcard id.
+     *
+     * Input: String holding the id.
+     * Output: the id.
+     */
+    private static long parseId(String id) throws RequestException {
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            throw new RequestException(400, "Invalid flashcard id " + id);
+        }
+    }
+
+    /*
+     * parseIndices parses a comma separated list of indices.
+     *
+     * Input: String holding the indices.
+     * Output: the indices.
+     */
+    private static int[] parseIndices(String list) throws RequestException {
+        if (list.isEmpty()) {
+            return new int[0];
+        }
+        String[] parts = list.split(",");
+        int[] indices = new int[parts.length];
+        try {
+            for (int i = 0; i < parts.length; i++) {
+                indices[i] = Integer.parseInt(parts[i]);
+            }
+        } catch (NumberFormatException e) {
+            throw new RequestException(400, "Invalid index list.");
+        }
+        return indices;
+    }
+
+    /*
+     * parseBoolean parses a boolean, which must be true or false.
+     *
+     * Input: String holding the boolean.
+     * Output: the boolean.
+     */
+    private static boolean parseBoolean(String value) throws RequestException {
+        if (value.equals("true")) {
+            return true;
+        }
+        if (value.equals("false")) {
+            return false;
+        }
+        throw new RequestException(400, "Expected true or false, not " + value);
+    }
+
+    /*
+     * setDefaultProperty sets a system property, unless it was set on the command line.
+     *
+     * Input: name of the property, its default value.
+     * Output: no return value.
+     */
+    private static void setDefaultProperty(String name, String value) {
+        if (System.getProperty(name) == null) {
+            System.setProperty(name, value);
+        }
+    }
+
+    /*
+     * respond sends a plain text response.
+     *
+     * Input: the exchange of the request, status code, response body.
+     * Output: no return value, sends the response.
+     */
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        if (bytes.length == 0) {
+            // opening the body stream of a response without a body makes the server drop the connection
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /*
+     * main runs a study server until the JVM is stopped, then saves the decks.
+     *
+     * Input: command line arguments: optionally the port, then optionally the deck directory.
+     * Output: no output.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        String directory = args.length > 1 ? args[1] : "./decks/";
+
+        StudyServer server = new StudyServer(directory, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop()));
+        server.start();
+        System.out.println("Serving decks in " + directory + " on port " + server.getPort());
+    }
+}
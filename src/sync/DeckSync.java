@@ -0,0 +1,165 @@
+package sync;
+
+import arion.ArionCore;
+import arion.DeckDigest;
+import arion.SyncRecord;
+import exception.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/*
+ * DeckSync synchronizes two replicas of a deck by comparing their digests.
+ *
+ * Starting from the roots, each round asks both replicas for the hashes of the nodes that differed in
+ * the previous round's parents, so only the paths down to changed flashcards are visited, one round
+ * per level. The records in the differing leaves are then exchanged, the winner of each flashcard is
+ * chosen by SyncRecord.winsOver, and each replica receives only the records it lost. Afterwards both
+ * replicas hold the same records, so their digests are equal.
+ */
+
+public class DeckSync {
+
+    /*
+     * The Result class describes a finished synchronization.
+     */
+    public static class Result {
+        public int differingLeaves = 0;
+        public int sentToFirst = 0;
+        public int sentToSecond = 0;
+    }
+
+    /*
+     * sync synchronizes two replicas.
+     *
+     * Input: the two replicas.
+     * Output: what was exchanged.
+     */
+    public static Result sync(SyncPeer first, SyncPeer second) throws IOException, DatabaseFormatException {
+        if (first == null || second == null) {
+            throw new NullPointerException("Cannot synchronize null peers.");
+        }
+        Result result = new Result();
+
+        int[] nodes = { 0 };
+        for (int level = 0; level <= DeckDigest.DEPTH && nodes.length > 0; level++) {
+            long[] firstHashes = first.hashes(level, nodes);
+            long[] secondHashes = second.hashes(level, nodes);
+            int differing = 0;
+            for (int i = 0; i < nodes.length; i++) {
+                if (firstHashes[i] != secondHashes[i]) {
+                    nodes[differing++] = nodes[i];
+                }
+            }
+            if (level == DeckDigest.DEPTH) {
+                nodes = Arrays.copyOf(nodes, differing);
+                break;
+            }
+
+            int[] children = new int[differing * DeckDigest.FANOUT];
+            for (int i = 0; i < differing; i++) {
+                for (int child = 0; child < DeckDigest.FANOUT; child++) {
+                    children[i * DeckDigest.FANOUT + child] = nodes[i] * DeckDigest.FANOUT + child;
+                }
+            }
+            nodes = children;
+        }
+        result.differingLeaves = nodes.length;
+        if (nodes.length == 0) {
+            return result;
+        }
+
+        HashMap<Long, SyncRecord> firstRecords = byId(first.records(nodes));
+        HashMap<Long, SyncRecord> secondRecords = byId(second.records(nodes));
+        ArrayList<SyncRecord> toFirst = new ArrayList<>();
+        ArrayList<SyncRecord> toSecond = new ArrayList<>();
+        for (SyncRecord record : firstRecords.values()) {
+            SyncRecord other = secondRecords.get(record.id);
+            if (other == null || record.winsOver(other)) {
+                toSecond.add(record);
+            }
+        }
+        for (SyncRecord record : secondRecords.values()) {
+            SyncRecord other = firstRecords.get(record.id);
+            if (other == null || record.winsOver(other)) {
+                toFirst.add(record);
+            }
+        }
+
+        if (!toFirst.isEmpty()) {
+            first.apply(toFirst);
+        }
+        if (!toSecond.isEmpty()) {
+            second.apply(toSecond);
+        }
+        result.sentToFirst = toFirst.size();
+        result.sentToSecond = toSecond.size();
+        return result;
+    }
+
+    /*
+     * byId maps records by their flashcard's identifier.
+     *
+     * Input: the records.
+     * Output: map from identifier to record.
+     */
+    private static HashMap<Long, SyncRecord> byId(ArrayList<SyncRecord> records) {
+        HashMap<Long, SyncRecord> map = new HashMap<>(records.size() * 2);
+        for (SyncRecord record : records) {
+            map.put(record.id, record);
+        }
+        return map;
+    }
+
+    /*
+     * openPeer opens a replica given on the command line: a URL of a deck on a StudyServer, or a
+     * directory holding a deck.
+     *
+     * Input: the URL or directory, list to add opened local decks to.
+     * Output: the replica.
+     */
+    private static SyncPeer openPeer(String location, ArrayList<ArionCore> opened)
+            throws IOException, DatabaseFormatException {
+        if (location.startsWith("http://") || location.startsWith("https://")) {
+            return new HttpPeer(location);
+        }
+        ArionCore core = new ArionCore(location);
+        try {
+            core.load();
+        } catch (DatabaseReadException e) {
+            // no database yet; the replica starts empty
+        }
+        opened.add(core);
+        return new LocalPeer(core);
+    }
+
+    /*
+     * main synchronizes two replicas given on the command line, and saves the local ones.
+     *
+     * Input: command line arguments: two deck directories or deck URLs.
+     * Output: no output.
+     */
+    public static void main(String[] args) throws IOException, DatabaseFormatException, DatabaseWriteException {
+        if (args.length != 2) {
+            System.err.println("Usage: --sync <deck directory or URL> <deck directory or URL>");
+            System.exit(2);
+        }
+
+        ArrayList<ArionCore> opened = new ArrayList<>();
+        SyncPeer first = openPeer(args[0], opened);
+        SyncPeer second = openPeer(args[1], opened);
+
+        long start = System.nanoTime();
+        Result result = sync(first, second);
+        long elapsed = System.nanoTime() - start;
+
+        for (ArionCore core : opened) {
+            core.save();
+            core.close();
+        }
+        System.out.printf("%d differing leaves, %d records sent to %s, %d records sent to %s, in %.1f ms%n",
+                result.differingLeaves, result.sentToFirst, args[0], result.sentToSecond, args[1], elapsed / 1e6);
+    }
+}
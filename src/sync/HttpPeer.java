@@ -0,0 +1,108 @@
+package sync;
+
+import arion.SyncRecord;
+import exception.DatabaseFormatException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/*
+ * HttpPeer is a replica of a deck served by a StudyServer, reached through its sync endpoints.
+ */
+
+public class HttpPeer implements SyncPeer {
+    private HttpClient client;
+    private String deckUrl;
+
+    /*
+     * The constructor creates a peer for a deck on a server.
+     *
+     * Input: URL of the deck, such as http://localhost:8040/decks/spanish.
+     * Output: new HttpPeer class.
+     */
+    public HttpPeer(String deckUrl) {
+        if (deckUrl == null) {
+            throw new NullPointerException("Cannot construct HTTP peer with null URL.");
+        }
+        this.client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        this.deckUrl = deckUrl.endsWith("/") ? deckUrl.substring(0, deckUrl.length() - 1) : deckUrl;
+    }
+
+    @Override
+    public long[] hashes(int level, int[] nodes) throws IOException {
+        String body = post("hashes", "level=" + level + "&nodes=" + joinIndices(nodes));
+        long[] hashes = new long[nodes.length];
+        String[] lines = body.split("\n");
+        if (nodes.length > 0 && lines.length != nodes.length) {
+            throw new IOException("Server sent " + lines.length + " hashes for " + nodes.length + " nodes.");
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            hashes[i] = Long.parseLong(lines[i]);
+        }
+        return hashes;
+    }
+
+    @Override
+    public ArrayList<SyncRecord> records(int[] leaves) throws IOException {
+        try {
+            return SyncRecord.parseAll(post("records", "leaves=" + joinIndices(leaves)));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Server sent incorrectly formatted records.", e);
+        }
+    }
+
+    @Override
+    public void apply(ArrayList<SyncRecord> records) throws IOException, DatabaseFormatException {
+        StringBuilder text = new StringBuilder();
+        for (SyncRecord record : records) {
+            record.format(text);
+        }
+        post("apply", "records=" + URLEncoder.encode(text.toString(), StandardCharsets.UTF_8));
+    }
+
+    /*
+     * post sends a form to one of the deck's sync endpoints.
+     *
+     * Input: name of the endpoint, the URL encoded form.
+     * Output: body of the response.
+     */
+    private String post(String endpoint, String form) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(deckUrl + "/sync/" + endpoint))
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build();
+        HttpResponse<String> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while synchronizing.", e);
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("Server responded " + response.statusCode() + ": " + response.body().trim());
+        }
+        return response.body();
+    }
+
+    /*
+     * joinIndices joins indices with commas.
+     *
+     * Input: the indices.
+     * Output: comma separated indices.
+     */
+    private static String joinIndices(int[] indices) {
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < indices.length; i++) {
+            if (i > 0) {
+                joined.append(',');
+            }
+            joined.append(indices[i]);
+        }
+        return joined.toString();
+    }
+}
@@ -0,0 +1,43 @@
+package sync;
+
+import arion.ArionCore;
+import arion.SyncRecord;
+import exception.DatabaseFormatException;
+
+import java.util.ArrayList;
+
+/*
+ * LocalPeer is a replica of a deck open in this process, such as a deck directory on this machine.
+ */
+
+public class LocalPeer implements SyncPeer {
+    private ArionCore core;
+
+    /*
+     * The constructor creates a peer for an open deck.
+     *
+     * Input: the deck's core.
+     * Output: new LocalPeer class.
+     */
+    public LocalPeer(ArionCore core) {
+        if (core == null) {
+            throw new NullPointerException("Cannot construct local peer with null core.");
+        }
+        this.core = core;
+    }
+
+    @Override
+    public long[] hashes(int level, int[] nodes) {
+        return core.getDigest().hashes(level, nodes);
+    }
+
+    @Override
+    public ArrayList<SyncRecord> records(int[] leaves) {
+        return core.getDigest().records(leaves);
+    }
+
+    @Override
+    public void apply(ArrayList<SyncRecord> records) throws DatabaseFormatException {
+        core.applySyncRecords(records);
+    }
+}
@@ -0,0 +1,39 @@
+package sync;
+
+import arion.SyncRecord;
+import exception.DatabaseFormatException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/*
+ * SyncPeer is one replica of a deck taking part in a synchronization, either open in this process or
+ * reached over the network. Nodes of its digest are addressed as in DeckDigest.
+ */
+
+public interface SyncPeer {
+
+    /*
+     * hashes returns the hashes of the given nodes of one level of the replica's digest.
+     *
+     * Input: level of the nodes, indices of the nodes within the level.
+     * Output: hash of each node, in the same order.
+     */
+    public long[] hashes(int level, int[] nodes) throws IOException;
+
+    /*
+     * records returns the records of every flashcard and deletion in the given leaves of the digest.
+     *
+     * Input: indices of the leaves.
+     * Output: the records.
+     */
+    public ArrayList<SyncRecord> records(int[] leaves) throws IOException;
+
+    /*
+     * apply applies records that won over the replica's own records.
+     *
+     * Input: the winning records.
+     * Output: no return value, modifies the replica.
+     */
+    public void apply(ArrayList<SyncRecord> records) throws IOException, DatabaseFormatException;
+}